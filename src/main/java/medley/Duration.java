@@ -7,10 +7,33 @@ import medley.util.Validator;
  * {@code Duration} class that contains all the informations about musical
  * duration and time span.
  *
+ * <p>The duration value and the number of ticks of every combination of
+ * {@code Value} and dots are precomputed, so reading them is a table lookup.
+ * The {@link #valueOf(Value value, int dots) valueOf} methods return shared,
+ * immutable instances: score elements use them, so identical durations are
+ * stored once no matter how many notes use them.
+ *
  * @author Salvatore Gentile
  */
 public class Duration {
 
+    /**
+     * Number of ticks in a {@code Crotchet}. The resolution is high enough to
+     * represent exactly every dotted {@code Value} and every triplet.
+     */
+    public static final int TICKS_PER_CROTCHET = 384;
+
+    /**
+     * Number of ticks in a {@code Semibreve}.
+     */
+    public static final int TICKS_PER_SEMIBREVE = 4 * TICKS_PER_CROTCHET;
+
+    private static final int MAX_DOTS = 3;
+
+    private static final double[][] durationValues;
+    private static final int[][] ticks;
+    private static final Duration[][] shared;
+
     /**
      * Musical values, that represent the notes durations.
      */
@@ -77,8 +100,36 @@ public class Duration {
         }
     }
 
+    static {
+        Value[] values = Value.values();
+
+        durationValues = new double[values.length][MAX_DOTS + 1];
+        ticks = new int[values.length][MAX_DOTS + 1];
+        shared = new Duration[values.length][MAX_DOTS + 1];
+
+        for (Value value : values) {
+            double base = value.getDurationValue();
+            double increment = 0;
+
+            for (int dots = 0; dots <= MAX_DOTS; dots++) {
+                // Each dot adds half of the previous addition.
+                if (dots > 0) {
+                    increment += base / (1 << dots);
+                }
+
+                int i = value.ordinal();
+
+                durationValues[i][dots] = base + increment;
+                ticks[i][dots] = (int) Math.round((base + increment)
+                                                  * TICKS_PER_SEMIBREVE);
+                shared[i][dots] = new Duration(value, dots, true);
+            }
+        }
+    }
+
     private Value value;
     private int dots;
+    private final boolean immutable;
 
     /**
      * Initializes a newly created {@code Duration} object with the specified
@@ -89,6 +140,7 @@ public class Duration {
     public Duration(Value value) {
         this.value = value;
         this.dots = Element.DEFAULT_DOTS;
+        this.immutable = false;
     }
 
     /**
@@ -106,6 +158,7 @@ public class Duration {
 
         this.value = value;
         this.dots = dots;
+        this.immutable = false;
     }
 
     /**
@@ -118,6 +171,69 @@ public class Duration {
     public Duration(Duration duration) {
         this.value = duration.value;
         this.dots = duration.dots;
+        this.immutable = false;
+    }
+
+    private Duration(Value value, int dots, boolean immutable) {
+        this.value = value;
+        this.dots = dots;
+        this.immutable = immutable;
+    }
+
+    /**
+     * Returns the shared, immutable {@code Duration} with the specified
+     * {@code Value} and no dots.
+     *
+     * @param value a specified {@code Value}.
+     * @return the shared {@code Duration} with the specified {@code Value}.
+     * @see #valueOf(Value value, int dots)
+     */
+    public static Duration valueOf(Value value) {
+        return shared[value.ordinal()][0];
+    }
+
+    /**
+     * Returns the shared, immutable {@code Duration} with the specified
+     * {@code Value} and dots number.
+     *
+     * <p>Calling {@link #setValue(Value value) setValue} or
+     * {@link #setDots(int dots) setDots} on the returned instance throws an
+     * {@code UnsupportedOperationException}.
+     *
+     * @param value a specified {@code Value}.
+     * @param dots a specified number of dots.
+     * @return the shared {@code Duration} with the specified {@code Value}
+     *         and dots number.
+     * @throws IllegalArgumentException
+     *         if the specified dots number is not a positive integer between 0
+     *         and 3.
+     */
+    public static Duration valueOf(Value value, int dots)
+            throws IllegalArgumentException {
+        Validator.dots(dots);
+
+        return shared[value.ordinal()][dots];
+    }
+
+    /**
+     * Returns the shared, immutable {@code Duration} equal to the specified
+     * one.
+     *
+     * @param duration a specified {@code Duration}.
+     * @return the shared {@code Duration} equal to the specified one.
+     */
+    public static Duration valueOf(Duration duration) {
+        return shared[duration.value.ordinal()][duration.dots];
+    }
+
+    /**
+     * Returns {@code true} if this {@code Duration} cannot be edited.
+     *
+     * @return {@code true} if this {@code Duration} is one of the shared
+     *         instances returned by {@code valueOf}; {@code false} otherwise.
+     */
+    public boolean isImmutable() {
+        return immutable;
     }
 
     /**
@@ -134,8 +250,12 @@ public class Duration {
      * one.
      *
      * @param value a specified {@code Value}.
+     * @throws UnsupportedOperationException
+     *         if this {@code Duration} is immutable.
      */
-    public void setValue(Value value) {
+    public void setValue(Value value) throws UnsupportedOperationException {
+        checkMutable();
+
         this.value = value;
     }
 
@@ -156,9 +276,13 @@ public class Duration {
      * @throws IllegalArgumentException
      *         if the specified dots number is not a positive integer between 0
      *         and 3.
+     * @throws UnsupportedOperationException
+     *         if this {@code Duration} is immutable.
      * @see medley.util.Validator#dots(int dots)
      */
-    public void setDots(int dots) throws IllegalArgumentException {
+    public void setDots(int dots)
+            throws IllegalArgumentException, UnsupportedOperationException {
+        checkMutable();
         Validator.dots(dots);
 
         this.dots = dots;
@@ -170,24 +294,28 @@ public class Duration {
      * @return the duration value of this {@code Duration}.
      */
     public double getDurationValue() {
-        if (dots != 0) {
-            switch (dots) {
-                case 1:
-                    return increaseDurationValue(1 / 2.0);
+        return durationValues[value.ordinal()][dots];
+    }
 
-                case 2:
-                    return increaseDurationValue(1 / 2.0 + 1 / 4.0);
+    /**
+     * Returns the number of ticks of this {@code Duration}.
+     *
+     * @return the number of ticks of this {@code Duration}.
+     * @see #TICKS_PER_SEMIBREVE
+     */
+    public int getTicks() {
+        return ticks[value.ordinal()][dots];
+    }
 
-                case 3:
-                    return increaseDurationValue(1 / 2.0 + 1 / 4.0 + 1 / 8.0);
-            }
-        }
+    private void checkMutable() throws UnsupportedOperationException {
+        if (immutable) {
+            StringBuilder e = new StringBuilder(60);
 
-        return value.getDurationValue();
-    }
+            e.append("Invalid operation! ");
+            e.append("A shared duration cannot be edited.");
 
-    private double increaseDurationValue(double increment) {
-        return value.getDurationValue() + value.getDurationValue() * increment;
+            throw new UnsupportedOperationException(e.toString());
+        }
     }
 
     /**
@@ -230,21 +358,17 @@ public class Duration {
      */
     @Override
     public boolean equals(Object o) {
-        if (!(o instanceof Duration)) {
-            return false;
-        }
-
         if (o == this) {
             return true;
         }
 
-        Duration d = (Duration) o;
-
-        if (d.getDurationValue() != this.getDurationValue()) {
+        if (!(o instanceof Duration)) {
             return false;
         }
 
-        if (d.getValue() == this.value && d.getDots() == this.dots){
+        Duration d = (Duration) o;
+
+        if (d.value == this.value && d.dots == this.dots) {
             return true;
         }
 
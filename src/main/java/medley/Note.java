@@ -23,16 +23,42 @@ import medley.util.Validator;
  * {@link #semitoneUp() semitoneUp}, {@link #semitoneDown() semitoneDown} and
  * {@link #transpose(int semitones) transpose}.
  *
+ * <p>A note only stores its MIDI note number and its spelling (which of the
+ * two names of its pitch class it uses, and how far its written octave is
+ * from the one of its MIDI note number). The frequency, the octave, the
+ * {@code Name} and the {@code Accidental} are looked up in shared tables
+ * when they are requested.
+ *
  * @author Salvatore Gentile
  * @see medley.score.Element
  * @see medley.score.ScoreElement
  */
 public class Note extends ScoreElement {
 
-    private double frequency;
-    private int midiNumber;
-    private Tone tone;
-    private int octave;
+    private static final double[] FREQUENCIES = new double[128];
+    private static final Name[][] NAMES = new Name[12][2];
+    private static final Accidental[][] ACCIDENTALS = new Accidental[12][2];
+
+    static {
+        for (int midi = 0; midi < FREQUENCIES.length; midi++) {
+            FREQUENCIES[midi] = Frequency.getMIDINumberFrequency(midi);
+        }
+
+        // The default spelling first, then the other one.
+        for (int pitchClass = 0; pitchClass < NAMES.length; pitchClass++) {
+            Tone tone = new Tone(pitchClass);
+
+            for (int spelling = 0; spelling < 2; spelling++) {
+                NAMES[pitchClass][spelling] = tone.getName();
+                ACCIDENTALS[pitchClass][spelling] = tone.getAccidental();
+                tone.switchAccidental();
+            }
+        }
+    }
+
+    private byte midiNumber;
+    private byte spelling;
+    private byte octaveShift;
 
     /**
      * Initializes a newly created {@code Note} object with the specified
@@ -88,10 +114,7 @@ public class Note extends ScoreElement {
             throws IllegalArgumentException {
         super(duration, volume);
 
-        this.midiNumber = Frequency.getMIDINumber(frequency);
-        this.frequency = frequency;
-        this.tone = new Tone(frequency);
-        this.octave = (midiNumber / 12) - 1;
+        this.midiNumber = (byte) Frequency.getMIDINumber(frequency);
     }
 
     /**
@@ -141,10 +164,9 @@ public class Note extends ScoreElement {
             throws IllegalArgumentException {
         super(duration, volume);
 
-        this.frequency = Frequency.getMIDINumberFrequency(midiNumber);
-        this.midiNumber = midiNumber;
-        this.tone = new Tone(midiNumber);
-        this.octave = (midiNumber / 12) - 1;
+        Validator.midiNumber(midiNumber);
+
+        this.midiNumber = (byte) midiNumber;
     }
 
     /**
@@ -203,10 +225,9 @@ public class Note extends ScoreElement {
         super(duration, volume);
 
         Note newNote = StringParser.getNote(note);
-        this.frequency = newNote.frequency;
         this.midiNumber = newNote.midiNumber;
-        this.tone = newNote.tone;
-        this.octave = newNote.octave;
+        this.spelling = newNote.spelling;
+        this.octaveShift = newNote.octaveShift;
     }
 
     /**
@@ -242,15 +263,21 @@ public class Note extends ScoreElement {
      * @param octave a specified octave.
      * @param duration a specified {@code Duration}.
      * @param volume a specified volume value.
-     * @see medley.util.Frequency#getMIDINumberFrequency(int midiNumber)
+     * @throws IllegalArgumentException
+     *         if the resulting MIDI note number is not a positive integer
+     *         between 0 and 127.
      */
-    public Note(Tone tone, int octave, Duration duration, int volume) {
+    public Note(Tone tone, int octave, Duration duration, int volume)
+            throws IllegalArgumentException {
         super(duration, volume);
 
-        this.tone = tone;
-        this.octave = octave;
-        this.midiNumber = tone.getPitchClass() + 12 * (octave + 1);
-        this.frequency = Frequency.getMIDINumberFrequency(midiNumber);
+        int midi = tone.getPitchClass() + 12 * (octave + 1);
+
+        Validator.midiNumber(midi);
+
+        this.midiNumber = (byte) midi;
+        this.spelling = (byte) (NAMES[tone.getPitchClass()][0]
+                                == tone.getName() ? 0 : 1);
     }
 
     /**
@@ -264,10 +291,9 @@ public class Note extends ScoreElement {
      * @param note a specified {@code Note}.
      */
     public Note(Note note) {
-        this.frequency = note.frequency;
         this.midiNumber = note.midiNumber;
-        this.tone = note.tone;
-        this.octave = note.octave;
+        this.spelling = note.spelling;
+        this.octaveShift = note.octaveShift;
         // Inherited fields
         this.duration = note.duration;
         this.volume = note.volume;
@@ -279,7 +305,7 @@ public class Note extends ScoreElement {
      * @return the {@code Name} of this {@code Note}.
      */
     public Name getName() {
-        return tone.getName();
+        return NAMES[midiNumber % 12][spelling];
     }
 
     /**
@@ -288,7 +314,7 @@ public class Note extends ScoreElement {
      * @return the {@code Accidental} of this {@code Note}.
      */
     public Accidental getAccidental() {
-        return tone.getAccidental();
+        return ACCIDENTALS[midiNumber % 12][spelling];
     }
 
     /**
@@ -297,7 +323,7 @@ public class Note extends ScoreElement {
      * @return the octave of this {@code Note}.
      */
     public int getOctave() {
-        return octave;
+        return midiNumber / 12 - 1 + octaveShift;
     }
 
     /**
@@ -306,7 +332,7 @@ public class Note extends ScoreElement {
      * @return the frequency of this {@code Note}.
      */
     public double getFrequency() {
-        return frequency;
+        return FREQUENCIES[midiNumber];
     }
 
     /**
@@ -353,9 +379,8 @@ public class Note extends ScoreElement {
         Validator.transpose(midiNumber, semitones);
 
         this.midiNumber += semitones;
-        this.frequency = Frequency.getMIDINumberFrequency(midiNumber);
-        this.tone = new Tone(midiNumber);
-        this.octave = (midiNumber / 12) - 1;
+        this.spelling = 0;
+        this.octaveShift = 0;
     }
 
     /**
@@ -363,19 +388,30 @@ public class Note extends ScoreElement {
      * one.
      */
     public void switchAccidental() {
+        Name name = getName();
+        Accidental accidental = getAccidental();
+
         // Adjusts the octave when switching from C to B-Sharp...
-        if (tone.getName() == Name.C
-                && tone.getAccidental() == Accidental.Natural) {
-            octave--;
+        if (name == Name.C && accidental == Accidental.Natural) {
+            octaveShift--;
         }
 
         // ...and viceversa.
-        if (tone.getName() == Name.B
-                && tone.getAccidental() == Accidental.Sharp) {
-            octave++;
+        if (name == Name.B && accidental == Accidental.Sharp) {
+            octaveShift++;
         }
 
-        tone.switchAccidental();
+        // The same happens when switching from B to C-Flat...
+        if (name == Name.B && accidental == Accidental.Natural) {
+            octaveShift++;
+        }
+
+        // ...and viceversa.
+        if (name == Name.C && accidental == Accidental.Flat) {
+            octaveShift--;
+        }
+
+        spelling ^= 1;
     }
 
     /**
@@ -391,16 +427,16 @@ public class Note extends ScoreElement {
         sb.append(this.toString());
 
         sb.append("\nName:\t\t");
-        sb.append(tone.getName());
+        sb.append(getName());
 
         sb.append("\nAccidental:\t");
-        sb.append(tone.getAccidental().getName());
+        sb.append(getAccidental().getName());
 
         sb.append("\nOctave:\t\t");
-        sb.append(octave);
+        sb.append(getOctave());
 
         sb.append("\nFrequency:\t");
-        sb.append(String.format(Locale.ENGLISH, "%1.3f", frequency));
+        sb.append(String.format(Locale.ENGLISH, "%1.3f", getFrequency()));
         sb.append("Hz");
 
         sb.append("\nMIDI number:\t");
@@ -431,13 +467,13 @@ public class Note extends ScoreElement {
     public String toString() {
         StringBuilder sb = new StringBuilder(3);
 
-        sb.append(tone.getName());
+        sb.append(getName());
 
-        if (tone.getAccidental() != Accidental.Natural) {
-            sb.append(tone.getAccidental());
+        if (getAccidental() != Accidental.Natural) {
+            sb.append(getAccidental());
         }
 
-        sb.append(octave);
+        sb.append(getOctave());
 
         return sb.toString();
     }
@@ -466,7 +502,8 @@ public class Note extends ScoreElement {
 
         Note n = (Note) o;
 
-        if (n.getFrequency() == this.frequency
+        // The frequency only depends on the MIDI note number.
+        if (n.midiNumber == this.midiNumber
                 && n.duration.equals(this.duration)) {
             return true;
         }
@@ -477,17 +514,19 @@ public class Note extends ScoreElement {
     /**
      * Returns the hash code value for this {@code Note}.
      *
+     * <p>Only the frequency and the {@code Duration} are hashed, consistently
+     * with {@link #equals(Object) equals}: enharmonic notes, or notes with
+     * different volumes, are equal and have the same hash code.
+     *
      * @return the hash code value for this {@code Note}.
      */
     @Override
     public int hashCode() {
         final int prime = 911;
 
-        int hash = super.hashCode();
-        hash = prime * hash + new Double(frequency).hashCode();
-        hash = prime * hash + midiNumber;
-        hash = prime * hash + tone.hashCode();
-        hash = prime * hash + octave;
+        int hash = 1;
+        hash = prime * hash + Double.hashCode(getFrequency());
+        hash = prime * hash + duration.hashCode();
 
         return hash;
     }
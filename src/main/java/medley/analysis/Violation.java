@@ -0,0 +1,126 @@
+package medley.analysis;
+
+/**
+ * {@code Violation} class that describes a voice-leading rule broken at a
+ * specified position of a score.
+ *
+ * <p>Instances of this class are immutable.
+ *
+ * @author Salvatore Gentile
+ * @see medley.analysis.VoiceLeadingChecker
+ */
+public final class Violation {
+
+    /**
+     * Voice-leading rules.
+     */
+    public enum Rule {
+        /**
+         * Two voices move in the same direction from a perfect fifth to
+         * another perfect fifth (or compound fifth).
+         */
+        PARALLEL_FIFTHS,
+
+        /**
+         * Two voices move in the same direction from an octave or unison to
+         * another octave or unison.
+         */
+        PARALLEL_OCTAVES,
+
+        /**
+         * A voice sounds below a lower voice; reported at the slice where
+         * the crossing starts.
+         */
+        VOICE_CROSSING,
+
+        /**
+         * A voice sounds outside its range; reported at the slice where the
+         * note starts.
+         */
+        RANGE
+    }
+
+    private final Rule rule;
+    private final int voice;
+    private final int otherVoice;
+    private final int slice;
+    private final long tick;
+
+    Violation(Rule rule, int voice, int otherVoice, int slice, long tick) {
+        this.rule = rule;
+        this.voice = voice;
+        this.otherVoice = otherVoice;
+        this.slice = slice;
+        this.tick = tick;
+    }
+
+    /**
+     * Returns the {@code Rule} broken by this {@code Violation}.
+     *
+     * @return the {@code Rule} broken by this {@code Violation}.
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Returns the index of the voice that breaks the rule; for rules that
+     * involve two voices, the upper one.
+     *
+     * @return the index of the voice that breaks the rule.
+     */
+    public int getVoice() {
+        return voice;
+    }
+
+    /**
+     * Returns the index of the lower voice involved in the violation.
+     *
+     * @return the index of the lower voice, or {@code -1} if the rule
+     *         involves a single voice.
+     */
+    public int getOtherVoice() {
+        return otherVoice;
+    }
+
+    /**
+     * Returns the index of the vertical slice at which the violation occurs.
+     * A new slice starts whenever a voice starts a new element.
+     *
+     * @return the index of the vertical slice of this {@code Violation}.
+     */
+    public int getSlice() {
+        return slice;
+    }
+
+    /**
+     * Returns the position, in ticks, at which the violation occurs.
+     *
+     * @return the position, in ticks, of this {@code Violation}.
+     * @see medley.Duration#getTicks()
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns a string representation of this {@code Violation}.
+     *
+     * @return a string representation of this {@code Violation}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(rule).append(" (voice ").append(voice);
+
+        if (otherVoice >= 0) {
+            sb.append(", ").append(otherVoice);
+        }
+
+        sb.append(", tick ").append(tick).append(')');
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,345 @@
+package medley.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import medley.Note;
+import medley.analysis.Violation.Rule;
+import medley.score.ScoreElement;
+
+/**
+ * {@code VoiceLeadingChecker} class that looks for parallel fifths and
+ * octaves, voice crossings and range violations in polyphonic music.
+ *
+ * <p>The music is given as a list of voices, from the highest to the lowest
+ * one; each voice is a sequence of notes and rests played one after the
+ * other. The voices are first packed into a grid of MIDI note numbers with a
+ * row for each vertical slice, i.e. for each position at which at least one
+ * voice starts a new element; then all the rules are evaluated in a single
+ * sweep over the rows.
+ *
+ * <p>The grid is kept between checks, so checking does not allocate besides
+ * the reported violations; for the same reason a
+ * {@code VoiceLeadingChecker} must not be shared between threads. Use
+ * {@link #check(List, ExecutorService) check} to check many pieces in
+ * parallel.
+ *
+ * @author Salvatore Gentile
+ * @see medley.analysis.Violation
+ */
+public final class VoiceLeadingChecker {
+
+    /**
+     * The lowest MIDI note numbers of soprano, alto, tenor and bass.
+     */
+    private static final int[] SATB_LOW = {60, 55, 48, 40};
+
+    /**
+     * The highest MIDI note numbers of soprano, alto, tenor and bass.
+     */
+    private static final int[] SATB_HIGH = {81, 74, 69, 62};
+
+    private static final int REST = -1;
+
+    private final int[] low;
+    private final int[] high;
+
+    // Packed pitches: the pitch of voice v at slice s is grid[s * voices + v].
+    private int[] grid = new int[0];
+    // Whether the element of voice v at slice s starts at that slice.
+    private boolean[] starts = new boolean[0];
+    private long[] ticks = new long[0];
+
+    /**
+     * Initializes a newly created {@code VoiceLeadingChecker} object for
+     * four-part harmony, with the usual soprano, alto, tenor and bass ranges.
+     */
+    public VoiceLeadingChecker() {
+        this(SATB_LOW, SATB_HIGH);
+    }
+
+    /**
+     * Initializes a newly created {@code VoiceLeadingChecker} object with the
+     * specified voice ranges.
+     *
+     * @param low the lowest MIDI note number of each voice.
+     * @param high the highest MIDI note number of each voice.
+     * @throws IllegalArgumentException
+     *         if the arrays have different lengths, or a range is empty.
+     */
+    public VoiceLeadingChecker(int[] low, int[] high)
+            throws IllegalArgumentException {
+        if (low.length != high.length) {
+            throw new IllegalArgumentException("Invalid ranges! The arrays "
+                                               + "must have the same length.");
+        }
+
+        for (int v = 0; v < low.length; v++) {
+            if (low[v] > high[v]) {
+                StringBuilder e = new StringBuilder(80);
+                e.append("Invalid ranges! The range of voice ");
+                e.append(v).append(" is empty.");
+
+                throw new IllegalArgumentException(e.toString());
+            }
+        }
+
+        this.low = low.clone();
+        this.high = high.clone();
+    }
+
+    /**
+     * Checks the specified voices.
+     *
+     * @param voices the specified voices, from the highest to the lowest.
+     * @return the violations, sorted by position.
+     * @throws IllegalArgumentException
+     *         if the number of voices differs from the number of ranges.
+     */
+    public List<Violation> check(List<? extends List<? extends ScoreElement>>
+                                 voices) throws IllegalArgumentException {
+        int count = voices.size();
+
+        if (count != low.length) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid voices! Expected ").append(low.length);
+            e.append(" voices, found ").append(count).append('.');
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        int slices = pack(voices);
+        List<Violation> violations = new ArrayList<Violation>();
+
+        sweep(slices, count, violations);
+
+        return violations;
+    }
+
+    /**
+     * Checks each specified piece, splitting the pieces among the threads of
+     * the specified executor.
+     *
+     * @param pieces the specified pieces; each piece is a list of voices,
+     *        from the highest to the lowest.
+     * @param executor the executor that runs the checks.
+     * @return the violations of each piece, in the order of the pieces.
+     * @throws InterruptedException
+     *         if the current thread is interrupted while waiting.
+     */
+    public List<List<Violation>> check(
+            final List<? extends List<? extends List<? extends ScoreElement>>>
+            pieces, ExecutorService executor) throws InterruptedException {
+        final List<List<Violation>> result =
+                new ArrayList<List<Violation>>(pieces.size());
+        int tasks = Math.min(pieces.size(),
+                             4 * Runtime.getRuntime().availableProcessors());
+        List<Future<?>> futures = new ArrayList<Future<?>>(tasks);
+
+        for (int i = 0; i < pieces.size(); i++) {
+            result.add(null);
+        }
+
+        for (int t = 0; t < tasks; t++) {
+            final int from = (int) ((long) pieces.size() * t / tasks);
+            final int to = (int) ((long) pieces.size() * (t + 1) / tasks);
+
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    VoiceLeadingChecker checker = copy();
+
+                    for (int i = from; i < to; i++) {
+                        result.set(i, checker.check(pieces.get(i)));
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        return result;
+    }
+
+    private VoiceLeadingChecker copy() {
+        return new VoiceLeadingChecker(low, high);
+    }
+
+    // Packs the voices into the grid and returns the number of slices.
+    private int pack(List<? extends List<? extends ScoreElement>> voices) {
+        int count = voices.size();
+        int capacity = 0;
+
+        for (List<? extends ScoreElement> voice : voices) {
+            capacity += voice.size();
+        }
+
+        // Collects and sorts the onsets of every element of every voice.
+        long[] onsets = ensureTicks(capacity);
+        int n = 0;
+
+        for (List<? extends ScoreElement> voice : voices) {
+            long tick = 0;
+
+            for (ScoreElement element : voice) {
+                onsets[n++] = tick;
+                tick += element.getDuration().getTicks();
+            }
+        }
+
+        Arrays.sort(onsets, 0, n);
+
+        int slices = 0;
+
+        for (int i = 0; i < n; i++) {
+            if (slices == 0 || onsets[i] != onsets[slices - 1]) {
+                onsets[slices++] = onsets[i];
+            }
+        }
+
+        if (grid.length < slices * count) {
+            grid = new int[Math.max(slices * count, 2 * grid.length)];
+            starts = new boolean[grid.length];
+        }
+
+        // Fills the column of each voice, walking its elements once.
+        for (int v = 0; v < count; v++) {
+            Iterator<? extends ScoreElement> elements =
+                    voices.get(v).iterator();
+            long start = 0;
+            long end = 0;
+            int pitch = REST;
+
+            for (int s = 0; s < slices; s++) {
+                while (onsets[s] >= end && elements.hasNext()) {
+                    ScoreElement element = elements.next();
+
+                    start = end;
+                    end += element.getDuration().getTicks();
+                    pitch = (element instanceof Note
+                             ? ((Note) element).getMIDINumber() : REST);
+                }
+
+                grid[s * count + v] = (onsets[s] < end ? pitch : REST);
+                starts[s * count + v] = (onsets[s] == start);
+            }
+        }
+
+        return slices;
+    }
+
+    private long[] ensureTicks(int capacity) {
+        if (ticks.length < capacity) {
+            ticks = new long[Math.max(capacity, 2 * ticks.length)];
+        }
+
+        return ticks;
+    }
+
+    private void sweep(int slices, int count, List<Violation> violations) {
+        int[] g = grid;
+
+        for (int s = 0; s < slices; s++) {
+            int row = s * count;
+            int previous = row - count;
+
+            for (int v = 0; v < count; v++) {
+                int pitch = g[row + v];
+
+                if (pitch == REST) {
+                    continue;
+                }
+
+                // A held note is only reported where it starts.
+                if ((pitch < low[v] || pitch > high[v]) && starts[row + v]) {
+                    violations.add(new Violation(Rule.RANGE, v, -1, s,
+                                                 ticks[s]));
+                }
+
+                for (int w = v + 1; w < count; w++) {
+                    int lower = g[row + w];
+
+                    if (lower == REST) {
+                        continue;
+                    }
+
+                    // A crossing is only reported where it starts.
+                    boolean started = (s == 0
+                                       || !crossed(g[previous + v],
+                                                   g[previous + w]));
+
+                    if (lower > pitch && started) {
+                        violations.add(new Violation(Rule.VOICE_CROSSING, v,
+                                                     w, s, ticks[s]));
+                    }
+
+                    if (s == 0) {
+                        continue;
+                    }
+
+                    Rule rule = parallel(g[previous + v], g[previous + w],
+                                         pitch, lower);
+
+                    if (rule != null) {
+                        violations.add(new Violation(rule, v, w, s,
+                                                     ticks[s]));
+                    }
+                }
+            }
+        }
+    }
+
+    // Returns true if two sounding voices are crossed.
+    private static boolean crossed(int upper, int lower) {
+        return upper != REST && lower != REST && lower > upper;
+    }
+
+    // Returns the parallel rule broken by two voices moving from a1/b1 to
+    // a2/b2, or null.
+    private static Rule parallel(int a1, int b1, int a2, int b2) {
+        if (a1 == REST || b1 == REST || a1 == a2 || b1 == b2) {
+            return null;
+        }
+
+        // Both voices must move in the same direction.
+        if ((a2 > a1) != (b2 > b1)) {
+            return null;
+        }
+
+        int before = Math.abs(a1 - b1) % 12;
+        int after = Math.abs(a2 - b2) % 12;
+
+        if (before != after) {
+            return null;
+        }
+
+        if (after == 7) {
+            return Rule.PARALLEL_FIFTHS;
+        }
+
+        if (after == 0) {
+            return Rule.PARALLEL_OCTAVES;
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,6 @@
+/**
+ * Package that contains classes used to analyze musical scores.
+ *
+ * @author Salvatore Gentile
+ */
+package medley.analysis;
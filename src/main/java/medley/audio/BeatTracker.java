@@ -0,0 +1,432 @@
+package medley.audio;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import medley.time.TempoMap;
+
+/**
+ * {@code BeatTracker} class that estimates the tempo and the beats of a
+ * stream from the onset strengths of an {@link OnsetDetector}.
+ *
+ * <p>The tempo is the period that maximizes the autocorrelation of the onset
+ * strengths, weighted by a log-normal preference centered on
+ * {@link TempoMap#DEFAULT_TEMPO}. The autocorrelation decays exponentially,
+ * so the estimate follows tempo changes. Once the tempo is known, the first
+ * beat is the strongest frame of the last period; each following beat is the
+ * strongest frame around one period after the previous beat, weighted by its
+ * distance from the expected position.
+ *
+ * <p>Each frame updates one autocorrelation value per candidate period, and
+ * the tracker keeps a fixed history of strengths, so memory and the work per
+ * frame only depend on the tempo range, not on the length of the stream.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.OnsetDetector
+ * @see medley.time.TempoMap
+ * @see medley.time.Quantizer
+ */
+public class BeatTracker implements OnsetDetector.Listener {
+
+    /**
+     * {@code Listener} interface that receives the beats of a stream.
+     */
+    public interface Listener {
+
+        /**
+         * Receives a beat.
+         *
+         * @param time the time of the beat, in seconds.
+         * @param tempo the tempo estimated at the beat, in crotchets per
+         *        minute.
+         */
+        void beat(double time, double tempo);
+
+    }
+
+    /**
+     * {@code Result} class that contains the onsets, the beats and the tempo
+     * of an audio file.
+     */
+    public static final class Result {
+
+        private final double[] onsets;
+        private final double[] beats;
+        private final double tempo;
+
+        private Result(double[] onsets, double[] beats, double tempo) {
+            this.onsets = onsets;
+            this.beats = beats;
+            this.tempo = tempo;
+        }
+
+        /**
+         * Returns the times of the onsets, in seconds.
+         *
+         * @return the times of the onsets, in seconds.
+         */
+        public double[] getOnsets() {
+            return onsets.clone();
+        }
+
+        /**
+         * Returns the times of the beats, in seconds.
+         *
+         * @return the times of the beats, in seconds.
+         */
+        public double[] getBeats() {
+            return beats.clone();
+        }
+
+        /**
+         * Returns the estimated tempo, in crotchets per minute.
+         *
+         * @return the estimated tempo, or {@code 0} if the file is too short
+         *         to estimate it.
+         */
+        public double getTempo() {
+            return tempo;
+        }
+
+        /**
+         * Returns the length of a crotchet at the estimated tempo, that can
+         * be passed to a {@link medley.time.Quantizer} with the onsets.
+         *
+         * @return the length of a crotchet, in seconds.
+         * @throws IllegalStateException
+         *         if the tempo was not estimated.
+         */
+        public double getCrotchetLength() throws IllegalStateException {
+            if (tempo == 0) {
+                throw new IllegalStateException("Unknown tempo!");
+            }
+
+            return 60 / tempo;
+        }
+
+        /**
+         * Returns a tempo map with the estimated constant tempo.
+         *
+         * @return a tempo map with the estimated tempo.
+         * @throws IllegalStateException
+         *         if the tempo was not estimated.
+         */
+        public TempoMap getTempoMap() throws IllegalStateException {
+            if (tempo == 0) {
+                throw new IllegalStateException("Unknown tempo!");
+            }
+
+            return new TempoMap(tempo);
+        }
+
+    }
+
+    /**
+     * The default lowest tempo, in crotchets per minute.
+     */
+    public static final double MIN_TEMPO = 60;
+
+    /**
+     * The default highest tempo, in crotchets per minute.
+     */
+    public static final double MAX_TEMPO = 200;
+
+    private static final int FRAME_SIZE = 2048;
+    private static final int HOP_SIZE = 512;
+    private static final int BLOCK = 4096;
+
+    // Half-life of the autocorrelation and of the mean strength, in seconds,
+    // and width of the tempo preference, in octaves.
+    private static final double MEMORY = 8;
+    private static final double SPREAD = 1;
+
+    private final OnsetDetector detector;
+    private final Listener listener;
+    private final double frameRate;
+    private final int minLag;
+    private final int maxLag;
+    private final double decay;
+    private final double[] weights;
+    private final double[] correlation;
+    private final double[] deviations;
+    private final double[] strengths;
+
+    private double mean;
+    private double period;
+    private double next;
+    private long frames;
+
+    /**
+     * Initializes a newly created {@code BeatTracker} object for the
+     * specified detector, with the default tempo range.
+     *
+     * @param detector the detector whose onset strengths are tracked; its
+     *        listener must pass them to this tracker.
+     * @param listener the listener that receives the beats, or {@code null}.
+     */
+    public BeatTracker(OnsetDetector detector, Listener listener) {
+        this(detector, MIN_TEMPO, MAX_TEMPO, listener);
+    }
+
+    /**
+     * Initializes a newly created {@code BeatTracker} object for the
+     * specified detector and tempo range.
+     *
+     * @param detector the detector whose onset strengths are tracked; its
+     *        listener must pass them to this tracker.
+     * @param minTempo the lowest tempo, in crotchets per minute.
+     * @param maxTempo the highest tempo, in crotchets per minute.
+     * @param listener the listener that receives the beats, or {@code null}.
+     * @throws IllegalArgumentException
+     *         if {@code minTempo <= 0}, or {@code maxTempo < minTempo}, or
+     *         the range is too narrow for the frame rate of the detector.
+     */
+    public BeatTracker(OnsetDetector detector, double minTempo,
+                       double maxTempo, Listener listener)
+            throws IllegalArgumentException {
+        this.detector = detector;
+        this.listener = listener;
+        this.frameRate = detector.getFrameRate();
+        this.minLag = (int) Math.floor(60 * frameRate / maxTempo);
+        this.maxLag = (int) Math.ceil(60 * frameRate / minTempo);
+
+        if (!(minTempo > 0) || !(maxTempo >= minTempo) || minLag < 2
+                || maxLag - minLag < 2) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid tempo range! ").append(minTempo).append("-");
+            e.append(maxTempo).append(" BPM at ").append(frameRate);
+            e.append(" frames per second.");
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        this.decay = Math.pow(0.5, 1 / (MEMORY * frameRate));
+        this.weights = new double[maxLag + 1];
+        this.correlation = new double[maxLag + 1];
+        this.deviations = new double[maxLag + 1];
+        this.strengths = new double[2 * maxLag];
+
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            double octaves = Math.log(60 * frameRate / lag
+                                      / TempoMap.DEFAULT_TEMPO) / Math.log(2);
+            weights[lag] = Math.exp(-0.5 * octaves * octaves
+                                    / (SPREAD * SPREAD));
+        }
+
+        reset();
+    }
+
+    /**
+     * Returns the estimated tempo.
+     *
+     * @return the estimated tempo, in crotchets per minute, or {@code 0} if
+     *         it is not known yet.
+     */
+    public double getTempo() {
+        return period > 0 ? 60 * frameRate / period : 0;
+    }
+
+    @Override
+    public void frame(long index, double strength, boolean onset) {
+        // The autocorrelation uses the deviations from the mean strength,
+        // so that its constant part does not favour any period.
+        mean = decay * mean + (1 - decay) * strength;
+
+        double deviation = strength - mean;
+
+        deviations[(int) (frames % deviations.length)] = deviation;
+        strengths[(int) (index % strengths.length)] = strength;
+
+        long available = Math.min(frames, maxLag);
+
+        for (int lag = minLag; lag <= available; lag++) {
+            double past = deviations[(int) ((frames - lag)
+                                            % deviations.length)];
+            correlation[lag] = decay * correlation[lag] + deviation * past;
+        }
+
+        frames++;
+
+        if (frames < 2 * maxLag) {
+            return;
+        }
+
+        estimate();
+
+        if (period == 0) {
+            return;
+        }
+
+        if (next < 0) {
+            // The first beat is the strongest frame of the last period.
+            next = best(index - (long) period + 1, index, index, 0, index);
+            beat(next);
+            next += period;
+        }
+
+        int width = (int) Math.max(1, period / 4);
+
+        while (index >= next + width) {
+            long expected = Math.round(next);
+            long beat = best(expected - width, expected + width, expected,
+                             width, index);
+
+            beat(beat);
+            next = beat + period;
+        }
+    }
+
+    /**
+     * Clears the state of this {@code BeatTracker}, to start a new stream.
+     */
+    public void reset() {
+        Arrays.fill(correlation, 0);
+        Arrays.fill(deviations, 0);
+        Arrays.fill(strengths, 0);
+        mean = 0;
+        period = 0;
+        next = -1;
+        frames = 0;
+    }
+
+    /**
+     * Detects the onsets, the beats and the tempo of the specified audio
+     * file, with the default parameters.
+     *
+     * @param file a specified audio file, e.g. a WAV file.
+     * @return the onsets, the beats and the tempo of the file.
+     * @throws IOException
+     *         if the file cannot be read or its format is not supported.
+     */
+    public static Result track(Path file) throws IOException {
+        try (PcmStream input = PcmStream.open(file)) {
+            Spectrogram spectrogram = new Spectrogram(FRAME_SIZE, HOP_SIZE);
+            Collector collector = new Collector();
+
+            collector.detector = new OnsetDetector(spectrogram,
+                                                   input.getSampleRate(),
+                                                   collector);
+            collector.tracker = new BeatTracker(collector.detector,
+                                                collector);
+
+            float[] buffer = new float[BLOCK];
+            int n;
+
+            while ((n = input.read(buffer)) >= 0) {
+                spectrogram.process(buffer, 0, n, collector.detector);
+            }
+
+            return new Result(Arrays.copyOf(collector.onsets,
+                                            collector.onsetCount),
+                              Arrays.copyOf(collector.beats,
+                                            collector.beatCount),
+                              collector.tracker.getTempo());
+        }
+    }
+
+    private void estimate() {
+        int lag = -1;
+        double max = 0;
+
+        for (int l = minLag; l <= maxLag; l++) {
+            double value = correlation[l] * weights[l];
+
+            if (value > max) {
+                max = value;
+                lag = l;
+            }
+        }
+
+        if (lag < 0) {
+            period = 0;
+            return;
+        }
+
+        // Parabolic interpolation of the peak, between whole frames.
+        double offset = 0;
+
+        if (lag > minLag && lag < maxLag) {
+            double a = correlation[lag - 1] * weights[lag - 1];
+            double c = correlation[lag + 1] * weights[lag + 1];
+            double d = a - 2 * max + c;
+
+            if (d < 0) {
+                offset = 0.5 * (a - c) / d;
+            }
+        }
+
+        period = lag + offset;
+    }
+
+    // Returns the strongest frame between from and to, weighted by its
+    // distance from the expected frame; only the frames of the history up
+    // to the current one are known.
+    private long best(long from, long to, long expected, int width,
+                      long index) {
+        long first = Math.max(from, index - strengths.length + 1);
+        long last = Math.min(to, index);
+        long best = expected;
+        double max = -1;
+
+        for (long f = first; f <= last; f++) {
+            double distance = width > 0 ? (double) (f - expected) / width : 0;
+            double value = strengths[(int) (f % strengths.length)]
+                           * Math.exp(-2 * distance * distance);
+
+            if (value > max || value == max && Math.abs(f - expected)
+                                               < Math.abs(best - expected)) {
+                max = value;
+                best = f;
+            }
+        }
+
+        return best;
+    }
+
+    private void beat(double index) {
+        if (listener != null) {
+            listener.beat(detector.getTime(Math.round(index)), getTempo());
+        }
+    }
+
+    // Collects the onsets and the beats of a file.
+    private static final class Collector
+            implements OnsetDetector.Listener, Listener {
+
+        private OnsetDetector detector;
+        private BeatTracker tracker;
+        private double[] onsets = new double[64];
+        private double[] beats = new double[64];
+        private int onsetCount;
+        private int beatCount;
+
+        @Override
+        public void frame(long index, double strength, boolean onset) {
+            tracker.frame(index, strength, onset);
+
+            if (onset) {
+                onsets = add(onsets, onsetCount++, detector.getTime(index));
+            }
+        }
+
+        @Override
+        public void beat(double time, double tempo) {
+            beats = add(beats, beatCount++, time);
+        }
+
+        private static double[] add(double[] times, int index, double time) {
+            if (index == times.length) {
+                times = Arrays.copyOf(times, 2 * index);
+            }
+
+            times[index] = time;
+
+            return times;
+        }
+
+    }
+
+}
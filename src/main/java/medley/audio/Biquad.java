@@ -0,0 +1,346 @@
+package medley.audio;
+
+/**
+ * {@code Biquad} class that implements the second-order filters of Robert
+ * Bristow-Johnson's "Audio EQ Cookbook".
+ *
+ * <p>The filter runs in transposed direct form II with {@code double} state.
+ * When its parameters change, the coefficients move linearly to the new ones
+ * over {@code 10 ms}, so that e.g. a cutoff sweep does not click.
+ *
+ * <p>Parameters may be set from any thread; {@code process} and {@code reset}
+ * must be called by the audio thread.
+ *
+ * @author Salvatore Gentile
+ */
+public class Biquad implements Effect {
+
+    /**
+     * Types of the filter.
+     */
+    public enum Type {
+        /**
+         * Low-pass filter.
+         */
+        LOW_PASS,
+
+        /**
+         * High-pass filter.
+         */
+        HIGH_PASS,
+
+        /**
+         * Band-pass filter, with a peak gain of {@code 0 dB}.
+         */
+        BAND_PASS,
+
+        /**
+         * Notch filter.
+         */
+        NOTCH,
+
+        /**
+         * Peaking equalizer.
+         */
+        PEAK,
+
+        /**
+         * Low shelving equalizer.
+         */
+        LOW_SHELF,
+
+        /**
+         * High shelving equalizer.
+         */
+        HIGH_SHELF
+    }
+
+    private static final double RAMP_SECONDS = 0.01;
+    private static final double DENORMAL = 1e-20;
+
+    private final float sampleRate;
+
+    private volatile Type type;
+    private volatile double frequency;
+    private volatile double q;
+    private volatile double gain;
+
+    // Normalized b0, b1, b2, a1, a2, replaced on every parameter change.
+    private volatile double[] coefficients;
+    private double[] applied;
+
+    private final Ramp[] ramps = new Ramp[5];
+    private final int rampLength;
+    private int ramping;
+    private double z1;
+    private double z2;
+
+    /**
+     * Initializes a newly created {@code Biquad} object with the specified
+     * parameters and a gain of {@code 0 dB}.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param type the type of the filter.
+     * @param frequency the cutoff or center frequency, in Hz.
+     * @param q the quality factor.
+     * @throws IllegalArgumentException
+     *         if a parameter is not valid.
+     */
+    public Biquad(float sampleRate, Type type, double frequency, double q)
+            throws IllegalArgumentException {
+        this(sampleRate, type, frequency, q, 0);
+    }
+
+    /**
+     * Initializes a newly created {@code Biquad} object with the specified
+     * parameters.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param type the type of the filter.
+     * @param frequency the cutoff or center frequency, in Hz.
+     * @param q the quality factor.
+     * @param gain the gain of the peaking and shelving filters, in dB.
+     * @throws IllegalArgumentException
+     *         if a parameter is not valid.
+     */
+    public Biquad(float sampleRate, Type type, double frequency, double q,
+                  double gain) throws IllegalArgumentException {
+        if (!(sampleRate > 0)) {
+            throw new IllegalArgumentException("Invalid sample rate! It must "
+                                               + "be positive.");
+        }
+
+        this.sampleRate = sampleRate;
+
+        setParameters(type, frequency, q, gain);
+
+        this.rampLength = Ramp.samples(sampleRate, RAMP_SECONDS);
+
+        for (int k = 0; k < ramps.length; k++) {
+            ramps[k] = new Ramp(coefficients[k], rampLength);
+        }
+
+        this.applied = coefficients;
+    }
+
+    /**
+     * Sets the parameters of this {@code Biquad}.
+     *
+     * @param type the type of the filter.
+     * @param frequency the cutoff or center frequency, in Hz, lower than half
+     *        the sample rate.
+     * @param q the quality factor.
+     * @param gain the gain of the peaking and shelving filters, in dB.
+     * @throws IllegalArgumentException
+     *         if a parameter is not valid.
+     */
+    public void setParameters(Type type, double frequency, double q,
+                              double gain) throws IllegalArgumentException {
+        if (!(frequency > 0 && frequency < sampleRate / 2) || !(q > 0)
+                || Double.isNaN(gain) || Double.isInfinite(gain)) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid filter! Frequency ").append(frequency);
+            e.append(", Q ").append(q).append(", gain ").append(gain);
+            e.append('.');
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        this.type = type;
+        this.frequency = frequency;
+        this.q = q;
+        this.gain = gain;
+        this.coefficients = design(type, frequency / sampleRate, q, gain);
+    }
+
+    /**
+     * Sets the cutoff or center frequency of this {@code Biquad}.
+     *
+     * @param frequency a specified frequency, in Hz.
+     * @throws IllegalArgumentException
+     *         if the frequency is not valid.
+     */
+    public void setFrequency(double frequency)
+            throws IllegalArgumentException {
+        setParameters(type, frequency, q, gain);
+    }
+
+    /**
+     * Returns the type of this {@code Biquad}.
+     *
+     * @return the type of this {@code Biquad}.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the cutoff or center frequency of this {@code Biquad}, in Hz.
+     *
+     * @return the cutoff or center frequency of this {@code Biquad}, in Hz.
+     */
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Returns the quality factor of this {@code Biquad}.
+     *
+     * @return the quality factor of this {@code Biquad}.
+     */
+    public double getQ() {
+        return q;
+    }
+
+    /**
+     * Returns the gain of this {@code Biquad}, in dB.
+     *
+     * @return the gain of this {@code Biquad}, in dB.
+     */
+    public double getGain() {
+        return gain;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        double[] c = coefficients;
+
+        if (c != applied) {
+            applied = c;
+
+            for (int k = 0; k < ramps.length; k++) {
+                ramps[k].setTarget(c[k]);
+            }
+
+            ramping = rampLength;
+        }
+
+        int i = offset;
+        int end = offset + length;
+        double s1 = z1;
+        double s2 = z2;
+
+        // Coefficients moving: updates them on every sample.
+        for (; i < end && ramping > 0; ramping--) {
+            double b0 = ramps[0].next();
+            double b1 = ramps[1].next();
+            double b2 = ramps[2].next();
+            double a1 = ramps[3].next();
+            double a2 = ramps[4].next();
+            double x = buffer[i];
+            double y = b0 * x + s1;
+
+            s1 = b1 * x - a1 * y + s2;
+            s2 = b2 * x - a2 * y;
+            buffer[i++] = (float) y;
+        }
+
+        double b0 = ramps[0].getValue();
+        double b1 = ramps[1].getValue();
+        double b2 = ramps[2].getValue();
+        double a1 = ramps[3].getValue();
+        double a2 = ramps[4].getValue();
+
+        for (; i < end; i++) {
+            double x = buffer[i];
+            double y = b0 * x + s1;
+
+            s1 = b1 * x - a1 * y + s2;
+            s2 = b2 * x - a2 * y;
+            buffer[i] = (float) y;
+        }
+
+        // Flushes denormals, that are very slow on most CPUs.
+        z1 = (Math.abs(s1) < DENORMAL ? 0 : s1);
+        z2 = (Math.abs(s2) < DENORMAL ? 0 : s2);
+    }
+
+    @Override
+    public void reset() {
+        z1 = 0;
+        z2 = 0;
+
+        double[] c = coefficients;
+
+        for (int k = 0; k < ramps.length; k++) {
+            ramps[k].jump(c[k]);
+        }
+
+        applied = c;
+        ramping = 0;
+    }
+
+    // Returns the normalized coefficients of a filter; frequency is relative
+    // to the sample rate.
+    private static double[] design(Type type, double frequency, double q,
+                                   double gain) {
+        double w0 = 2 * Math.PI * frequency;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * q);
+        double a = Math.pow(10, gain / 40);
+        double root = 2 * Math.sqrt(a) * alpha;
+        double b0, b1, b2, a0, a1, a2;
+
+        switch (type) {
+            case LOW_PASS:
+                b0 = (1 - cos) / 2;
+                b1 = 1 - cos;
+                b2 = (1 - cos) / 2;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            case HIGH_PASS:
+                b0 = (1 + cos) / 2;
+                b1 = -(1 + cos);
+                b2 = (1 + cos) / 2;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            case BAND_PASS:
+                b0 = alpha;
+                b1 = 0;
+                b2 = -alpha;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            case NOTCH:
+                b0 = 1;
+                b1 = -2 * cos;
+                b2 = 1;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            case PEAK:
+                b0 = 1 + alpha * a;
+                b1 = -2 * cos;
+                b2 = 1 - alpha * a;
+                a0 = 1 + alpha / a;
+                a1 = -2 * cos;
+                a2 = 1 - alpha / a;
+                break;
+            case LOW_SHELF:
+                b0 = a * ((a + 1) - (a - 1) * cos + root);
+                b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                b2 = a * ((a + 1) - (a - 1) * cos - root);
+                a0 = (a + 1) + (a - 1) * cos + root;
+                a1 = -2 * ((a - 1) + (a + 1) * cos);
+                a2 = (a + 1) + (a - 1) * cos - root;
+                break;
+            default:
+                b0 = a * ((a + 1) + (a - 1) * cos + root);
+                b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                b2 = a * ((a + 1) + (a - 1) * cos - root);
+                a0 = (a + 1) - (a - 1) * cos + root;
+                a1 = 2 * ((a - 1) - (a + 1) * cos);
+                a2 = (a + 1) - (a - 1) * cos - root;
+                break;
+        }
+
+        return new double[] {b0 / a0, b1 / a0, b2 / a0, a1 / a0, a2 / a0};
+    }
+
+}
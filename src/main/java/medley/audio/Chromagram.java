@@ -0,0 +1,276 @@
+package medley.audio;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import medley.util.Frequency;
+
+/**
+ * {@code Chromagram} class that folds the spectrum frames of a
+ * {@link Spectrogram} into the twelve pitch classes.
+ *
+ * <p>Bin {@code i} of a chroma frame is the energy of pitch class {@code i},
+ * as returned by {@link medley.tone.Tone#getPitchClass()}: {@code 0} is C,
+ * {@code 1} is C#/Db, and so on up to {@code 11}, B. Each spectrum bin is
+ * assigned to the nearest semitone of the reference pitch, through
+ * {@link Frequency#getCents(double, double)}, so a chromagram computed with
+ * {@link Frequency#A432} lines up with music tuned to A432. Bins too low to
+ * tell semitones apart at the frame size, or above C8, are ignored. Each
+ * frame is normalized so that its highest pitch class is {@code 1}.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.Spectrogram
+ * @see medley.tone.Tone
+ */
+public class Chromagram {
+
+    /**
+     * The number of pitch classes.
+     */
+    public static final int PITCH_CLASSES = 12;
+
+    private static final int BLOCK = 4096;
+
+    // Semitone distance of A from C, and of C8 from A4.
+    private static final int A = 9;
+    private static final int C8 = 39;
+
+    private final float sampleRate;
+    private final double reference;
+    private final int[] classes;
+
+    /**
+     * Initializes a newly created {@code Chromagram} object for frames of
+     * the specified size, tuned to {@code A440}.
+     *
+     * @param sampleRate the sample rate of the stream, in Hz.
+     * @param frameSize the number of samples of a spectrum frame.
+     */
+    public Chromagram(float sampleRate, int frameSize) {
+        this(sampleRate, frameSize, Frequency.A440);
+    }
+
+    /**
+     * Initializes a newly created {@code Chromagram} object for frames of
+     * the specified size, tuned to the specified reference pitch.
+     *
+     * @param sampleRate the sample rate of the stream, in Hz.
+     * @param frameSize the number of samples of a spectrum frame.
+     * @param reference the frequency of A4, e.g. {@link Frequency#A432}.
+     * @throws IllegalArgumentException
+     *         if a parameter is not positive.
+     */
+    public Chromagram(float sampleRate, int frameSize, double reference)
+            throws IllegalArgumentException {
+        if (!(sampleRate > 0) || frameSize < 2 || !(reference > 0)) {
+            throw new IllegalArgumentException("Invalid chromagram! Sample "
+                                               + "rate, frame size and "
+                                               + "reference must be "
+                                               + "positive.");
+        }
+
+        this.sampleRate = sampleRate;
+        this.reference = reference;
+        this.classes = new int[frameSize / 2 + 1];
+
+        // A bin must be narrower than a semitone at its frequency.
+        double width = (double) sampleRate / frameSize;
+        double low = width / (Math.pow(2, 1 / 12.0) - 1);
+        double high = Frequency.getFrequency(C8, reference);
+
+        for (int k = 0; k < classes.length; k++) {
+            double frequency = k * width;
+
+            if (frequency < low || frequency > high) {
+                classes[k] = -1;
+                continue;
+            }
+
+            long semitones = Math.round(Frequency.getCents(reference,
+                                                           frequency) / 100);
+            classes[k] = (int) Math.floorMod(A + semitones, PITCH_CLASSES);
+        }
+    }
+
+    /**
+     * Returns the reference pitch of this {@code Chromagram}.
+     *
+     * @return the frequency of A4 of this {@code Chromagram}.
+     */
+    public double getReference() {
+        return reference;
+    }
+
+    /**
+     * Returns the sample rate of this {@code Chromagram}, in Hz.
+     *
+     * @return the sample rate of this {@code Chromagram}, in Hz.
+     */
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the pitch class of the specified spectrum bin.
+     *
+     * @param bin a specified bin.
+     * @return the pitch class of the bin, or {@code -1} if the bin is
+     *         ignored.
+     */
+    public int getPitchClass(int bin) {
+        return classes[bin];
+    }
+
+    /**
+     * Folds the specified spectrum frame into the specified chroma frame.
+     *
+     * @param magnitudes the magnitudes of a spectrum frame.
+     * @param chroma the array that receives the chroma frame, at least
+     *        {@link #PITCH_CLASSES} long.
+     */
+    public void compute(double[] magnitudes, double[] chroma) {
+        Arrays.fill(chroma, 0, PITCH_CLASSES, 0);
+
+        int bins = Math.min(magnitudes.length, classes.length);
+
+        for (int k = 0; k < bins; k++) {
+            int c = classes[k];
+
+            if (c >= 0) {
+                chroma[c] += magnitudes[k] * magnitudes[k];
+            }
+        }
+
+        double max = 0;
+
+        for (int c = 0; c < PITCH_CLASSES; c++) {
+            max = Math.max(max, chroma[c]);
+        }
+
+        if (max > 0) {
+            for (int c = 0; c < PITCH_CLASSES; c++) {
+                chroma[c] /= max;
+            }
+        }
+    }
+
+    /**
+     * Computes the chromagram of the specified audio file, streaming it
+     * through the specified spectrogram.
+     *
+     * @param file a specified audio file, e.g. a WAV file.
+     * @param spectrogram the spectrogram that computes the frames; it is
+     *        reset first.
+     * @param reference the frequency of A4.
+     * @return the chroma frames of the file.
+     * @throws IOException
+     *         if the file cannot be read or its format is not supported.
+     */
+    public static double[][] compute(Path file, Spectrogram spectrogram,
+                                     double reference) throws IOException {
+        try (PcmStream input = PcmStream.open(file)) {
+            final Chromagram chromagram = new Chromagram(
+                    input.getSampleRate(), spectrogram.getFrameSize(),
+                    reference);
+            final List<double[]> frames = new ArrayList<double[]>();
+            Spectrogram.Listener listener = new Spectrogram.Listener() {
+                @Override
+                public void frame(long index, double[] values) {
+                    double[] chroma = new double[PITCH_CLASSES];
+                    chromagram.compute(values, chroma);
+                    frames.add(chroma);
+                }
+            };
+
+            float[] buffer = new float[BLOCK];
+            int n;
+
+            spectrogram.reset();
+
+            while ((n = input.read(buffer)) >= 0) {
+                spectrogram.process(buffer, 0, n, listener);
+            }
+
+            return frames.toArray(new double[frames.size()][]);
+        }
+    }
+
+    /**
+     * Computes the chromagram of each specified audio file, splitting the
+     * files among the threads of the specified executor. The threads share
+     * an FFT plan, and each reuses its spectrogram buffers for its files.
+     *
+     * @param files the specified audio files.
+     * @param frameSize the number of samples of a frame, a power of two.
+     * @param hopSize the number of samples between two frames.
+     * @param reference the frequency of A4.
+     * @param executor the executor that runs the computations.
+     * @return the chroma frames of each file, in the order of the files.
+     * @throws IOException
+     *         if a file cannot be read or its format is not supported.
+     * @throws InterruptedException
+     *         if the current thread is interrupted while waiting.
+     */
+    public static List<double[][]> compute(final List<Path> files,
+                                           int frameSize, final int hopSize,
+                                           final double reference,
+                                           ExecutorService executor)
+            throws IOException, InterruptedException {
+        final FFT fft = new FFT(frameSize);
+        final List<double[][]> result = new ArrayList<double[][]>(files.size());
+        int tasks = Math.min(files.size(),
+                             4 * Runtime.getRuntime().availableProcessors());
+        List<Future<?>> futures = new ArrayList<Future<?>>(tasks);
+
+        for (int i = 0; i < files.size(); i++) {
+            result.add(null);
+        }
+
+        for (int t = 0; t < tasks; t++) {
+            final int from = (int) ((long) files.size() * t / tasks);
+            final int to = (int) ((long) files.size() * (t + 1) / tasks);
+
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    Spectrogram spectrogram = new Spectrogram(fft, hopSize);
+
+                    for (int i = from; i < to; i++) {
+                        result.set(i, compute(files.get(i), spectrogram,
+                                              reference));
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,203 @@
+package medley.audio;
+
+import java.util.Arrays;
+
+/**
+ * {@code Delay} class that implements a feedback delay (echo).
+ *
+ * <p>The delay line is a circular buffer allocated for the maximum delay
+ * time. The delay is read with linear interpolation, so it can change
+ * smoothly: delay time, feedback and mix move to their new values over
+ * {@code 50 ms}.
+ *
+ * <p>Parameters may be set from any thread; {@code process} and {@code reset}
+ * must be called by the audio thread.
+ *
+ * @author Salvatore Gentile
+ */
+public class Delay implements Effect {
+
+    private static final double RAMP_SECONDS = 0.05;
+
+    private final float sampleRate;
+    private final float[] line;
+    private int position;
+
+    private volatile double time;
+    private volatile double feedback;
+    private volatile double mix;
+
+    private final Ramp delayRamp;
+    private final Ramp feedbackRamp;
+    private final Ramp mixRamp;
+
+    /**
+     * Initializes a newly created {@code Delay} object with the specified
+     * parameters.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param maxTime the maximum delay time, in seconds.
+     * @param time the delay time, in seconds.
+     * @param feedback the amount of the output fed back into the delay line,
+     *        between {@code 0} (a single echo) and {@code 1} (excluded).
+     * @param mix the amount of delayed signal in the output, between
+     *        {@code 0} (dry) and {@code 1} (wet).
+     * @throws IllegalArgumentException
+     *         if a parameter is not valid.
+     */
+    public Delay(float sampleRate, double maxTime, double time,
+                 double feedback, double mix) throws IllegalArgumentException {
+        if (!(sampleRate > 0) || !(maxTime > 0)) {
+            throw new IllegalArgumentException("Invalid delay! Sample rate "
+                                               + "and maximum time must be "
+                                               + "positive.");
+        }
+
+        this.sampleRate = sampleRate;
+        this.line = new float[(int) Math.ceil(maxTime * sampleRate) + 2];
+
+        setTime(time);
+        setFeedback(feedback);
+        setMix(mix);
+
+        int length = Ramp.samples(sampleRate, RAMP_SECONDS);
+
+        this.delayRamp = new Ramp(samples(time), length);
+        this.feedbackRamp = new Ramp(feedback, length);
+        this.mixRamp = new Ramp(mix, length);
+    }
+
+    /**
+     * Returns the delay time of this {@code Delay}, in seconds.
+     *
+     * @return the delay time of this {@code Delay}, in seconds.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Sets the delay time of this {@code Delay}.
+     *
+     * @param time a specified delay time, in seconds.
+     * @throws IllegalArgumentException
+     *         if the delay time is negative or greater than the maximum one.
+     */
+    public void setTime(double time) throws IllegalArgumentException {
+        if (!(time >= 0 && time * sampleRate <= line.length - 2)) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid delay time! ").append(time).append(" s is out ");
+            e.append("of range.");
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        this.time = time;
+    }
+
+    /**
+     * Returns the feedback of this {@code Delay}.
+     *
+     * @return the feedback of this {@code Delay}.
+     */
+    public double getFeedback() {
+        return feedback;
+    }
+
+    /**
+     * Sets the feedback of this {@code Delay}.
+     *
+     * @param feedback a specified feedback, between {@code 0} and {@code 1}
+     *        (excluded).
+     * @throws IllegalArgumentException
+     *         if the feedback is not valid.
+     */
+    public void setFeedback(double feedback) throws IllegalArgumentException {
+        if (!(feedback >= 0 && feedback < 1)) {
+            throw new IllegalArgumentException("Invalid feedback! It must be "
+                                               + "between 0 and 1 "
+                                               + "(excluded).");
+        }
+
+        this.feedback = feedback;
+    }
+
+    /**
+     * Returns the mix of this {@code Delay}.
+     *
+     * @return the mix of this {@code Delay}.
+     */
+    public double getMix() {
+        return mix;
+    }
+
+    /**
+     * Sets the mix of this {@code Delay}.
+     *
+     * @param mix a specified mix, between {@code 0} and {@code 1}.
+     * @throws IllegalArgumentException
+     *         if the mix is not valid.
+     */
+    public void setMix(double mix) throws IllegalArgumentException {
+        if (!(mix >= 0 && mix <= 1)) {
+            throw new IllegalArgumentException("Invalid mix! It must be "
+                                               + "between 0 and 1.");
+        }
+
+        this.mix = mix;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        delayRamp.setTarget(samples(time));
+        feedbackRamp.setTarget(feedback);
+        mixRamp.setTarget(mix);
+
+        float[] l = line;
+        int size = l.length;
+        int p = position;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            double delay = delayRamp.next();
+            double g = feedbackRamp.next();
+            double wet = mixRamp.next();
+
+            // Reads the line at position p - delay, interpolating.
+            double read = p - delay;
+
+            if (read < 0) {
+                read += size;
+            }
+
+            int r0 = (int) read;
+            int r1 = (r0 + 1 == size ? 0 : r0 + 1);
+            double fraction = read - r0;
+            double delayed = l[r0] + (l[r1] - l[r0]) * fraction;
+            double x = buffer[i];
+
+            l[p] = (float) (x + delayed * g);
+            buffer[i] = (float) (x + (delayed - x) * wet);
+
+            if (++p == size) {
+                p = 0;
+            }
+        }
+
+        position = p;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(line, 0);
+        position = 0;
+        delayRamp.jump(samples(time));
+        feedbackRamp.jump(feedback);
+        mixRamp.jump(mix);
+    }
+
+    // Delays shorter than a sample would read the sample not written yet.
+    private double samples(double seconds) {
+        return Math.max(1, seconds * sampleRate);
+    }
+
+}
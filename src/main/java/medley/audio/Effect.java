@@ -0,0 +1,30 @@
+package medley.audio;
+
+/**
+ * {@code Effect} interface that models an audio effect processing blocks of
+ * samples in place.
+ *
+ * <p>Implementations preallocate their state, so {@code process} does not
+ * allocate. Parameters may be changed while processing: changes are smoothed
+ * over a few samples, so they do not produce clicks.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.EffectsChain
+ */
+public interface Effect {
+
+    /**
+     * Processes the specified block of samples in place.
+     *
+     * @param buffer the buffer that contains the samples.
+     * @param offset the index of the first sample of the block.
+     * @param length the number of samples of the block.
+     */
+    void process(float[] buffer, int offset, int length);
+
+    /**
+     * Clears the state of the effect, e.g. delay lines and filter memories.
+     */
+    void reset();
+
+}
@@ -0,0 +1,123 @@
+package medley.audio;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * {@code EffectsBenchmark} class that measures the throughput of each effect,
+ * and of a chain of effects, in samples per second.
+ *
+ * <p>Each effect processes blocks of noise on a single thread: it is first
+ * warmed up, so the measured blocks run compiled code, then timed over a
+ * number of rounds, of which the best is reported. Run it with:
+ *
+ * <pre>
+ * java -cp medley.jar medley.audio.EffectsBenchmark [block size] [seconds]
+ * </pre>
+ *
+ * @author Salvatore Gentile
+ */
+final class EffectsBenchmark {
+
+    private static final float SAMPLE_RATE = 44100;
+    private static final int ROUNDS = 5;
+
+    private EffectsBenchmark() {}
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the block size, default {@code 256}, and the seconds of
+     *        audio processed in each round, default {@code 60}.
+     */
+    public static void main(String[] args) {
+        int blockSize = (args.length > 0 ? Integer.parseInt(args[0]) : 256);
+        int seconds = (args.length > 1 ? Integer.parseInt(args[1]) : 60);
+        float[] noise = new float[blockSize];
+        Random random = new Random(0);
+
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = random.nextFloat() * 2 - 1;
+        }
+
+        System.out.println(String.format(Locale.ENGLISH,
+                "Block size %d, %d s of audio per round, best of %d rounds",
+                blockSize, seconds, ROUNDS));
+
+        for (Biquad.Type type : Biquad.Type.values()) {
+            run(type.toString(), new Biquad(SAMPLE_RATE, type, 1000, 0.7, 6),
+                noise, seconds);
+        }
+
+        run("DELAY", new Delay(SAMPLE_RATE, 1, 0.25, 0.5, 0.3), noise,
+            seconds);
+        run("REVERB", new Reverb(SAMPLE_RATE, 2, 0.5, 0.3), noise, seconds);
+        run("CHAIN", chain(), noise, seconds);
+
+        // A chain that is reconfigured every round of blocks, so part of
+        // the blocks are crossfaded.
+        final EffectsChain changing = chain();
+        final Effect filter = new Biquad(SAMPLE_RATE, Biquad.Type.PEAK, 3000,
+                                         1, 3);
+        run("CHAIN (changing)", new Effect() {
+            private int blocks;
+
+            @Override
+            public void process(float[] buffer, int offset, int length) {
+                if (++blocks % 64 == 0) {
+                    if (!changing.remove(filter)) {
+                        changing.add(1, filter);
+                    }
+                }
+
+                changing.process(buffer, offset, length);
+            }
+
+            @Override
+            public void reset() {
+                changing.reset();
+            }
+        }, noise, seconds);
+    }
+
+    private static EffectsChain chain() {
+        return new EffectsChain(
+                new Biquad(SAMPLE_RATE, Biquad.Type.HIGH_PASS, 80, 0.7),
+                new Delay(SAMPLE_RATE, 1, 0.25, 0.5, 0.3),
+                new Reverb(SAMPLE_RATE, 2, 0.5, 0.3));
+    }
+
+    private static void run(String name, Effect effect, float[] noise,
+                            int seconds) {
+        float[] buffer = new float[noise.length];
+        long samples = (long) (SAMPLE_RATE * seconds);
+        long blocks = Math.max(1, samples / noise.length);
+        double best = 0;
+
+        // Warm-up.
+        process(effect, noise, buffer, blocks);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            process(effect, noise, buffer, blocks);
+            long elapsed = System.nanoTime() - start;
+
+            best = Math.max(best, blocks * noise.length * 1e9 / elapsed);
+        }
+
+        System.out.println(String.format(Locale.ENGLISH,
+                "%-18s %8.2f M samples/s (%6.1fx real time)", name,
+                best / 1e6, best / SAMPLE_RATE));
+    }
+
+    private static void process(Effect effect, float[] noise, float[] buffer,
+                                long blocks) {
+        effect.reset();
+
+        for (long b = 0; b < blocks; b++) {
+            System.arraycopy(noise, 0, buffer, 0, noise.length);
+            effect.process(buffer, 0, buffer.length);
+        }
+    }
+
+}
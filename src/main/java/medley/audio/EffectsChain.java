@@ -0,0 +1,379 @@
+package medley.audio;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code EffectsChain} class that runs a sequence of effects on the same
+ * blocks of samples.
+ *
+ * <p>The effects are kept in an array that is replaced on every change, so
+ * effects may be added, replaced and removed from any thread while the
+ * audio thread is processing, without locks. An effect added to the chain is
+ * reset by the audio thread when it picks up the change, so it does not
+ * sound with a stale state, and its state is never touched by two threads.
+ *
+ * <p>The audio thread picks up a new chain by crossfading from the old one
+ * over {@value #FADE_LENGTH} samples (about 6 ms at 44.1 kHz): the effects
+ * that the two chains share at their beginning and at their end are
+ * processed once, and the output of the ones in between is faded, so a
+ * removed delay fades its tail out, and an inserted or replaced filter
+ * fades in, without clicks. If the two chains share an effect in between,
+ * e.g. when effects are reordered, it cannot process both chains, so the
+ * output of the old effects in between fades out over half the crossfade,
+ * the order is switched while it is silent, and the new effects fade in.
+ * Changes made during a crossfade are picked up when it ends.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.Effect
+ */
+public class EffectsChain implements Effect {
+
+    /**
+     * The number of samples of the crossfade between two chains.
+     */
+    public static final int FADE_LENGTH = 256;
+
+    private static final Effect[] EMPTY = new Effect[0];
+
+    private final Object lock = new Object();
+
+    // Immutable snapshot, replaced on every change.
+    private volatile Effect[] effects = EMPTY;
+
+    // Audio thread state: the chain being heard, the chain being faded in,
+    // the number of effects they share at both ends, whether they share
+    // effects in between, and the position in the crossfade.
+    private Effect[] current = EMPTY;
+    private Effect[] target = EMPTY;
+    private int prefix;
+    private int suffix;
+    private boolean swap;
+    private int fade = FADE_LENGTH;
+    private final float[] scratch = new float[FADE_LENGTH];
+
+    /**
+     * Initializes a newly created empty {@code EffectsChain} object.
+     */
+    public EffectsChain() {
+    }
+
+    /**
+     * Initializes a newly created {@code EffectsChain} object with the
+     * specified effects.
+     *
+     * @param effects the specified effects, in processing order.
+     */
+    public EffectsChain(Effect... effects) {
+        for (Effect effect : effects) {
+            add(effect);
+            effect.reset();
+        }
+
+        this.current = this.effects;
+        this.target = this.effects;
+    }
+
+    /**
+     * Returns the number of effects of this {@code EffectsChain}.
+     *
+     * @return the number of effects of this {@code EffectsChain}.
+     */
+    public int size() {
+        return effects.length;
+    }
+
+    /**
+     * Returns the effect at the specified position.
+     *
+     * @param index the position of the effect.
+     * @return the effect at the specified position.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    public Effect get(int index) throws IndexOutOfBoundsException {
+        return effects[index];
+    }
+
+    /**
+     * Returns the effects of this {@code EffectsChain}, in processing order.
+     *
+     * @return an unmodifiable list of the effects of this
+     *         {@code EffectsChain}.
+     */
+    public List<Effect> getEffects() {
+        return Collections.unmodifiableList(Arrays.asList(effects));
+    }
+
+    /**
+     * Appends the specified effect to this {@code EffectsChain}.
+     *
+     * @param effect a specified effect.
+     */
+    public void add(Effect effect) {
+        synchronized (lock) {
+            add(effects.length, effect);
+        }
+    }
+
+    /**
+     * Inserts the specified effect at the specified position.
+     *
+     * @param index the position of the effect.
+     * @param effect a specified effect.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index > size()}.
+     */
+    public void add(int index, Effect effect)
+            throws IndexOutOfBoundsException {
+        if (effect == null) {
+            throw new NullPointerException();
+        }
+
+        synchronized (lock) {
+            Effect[] old = effects;
+
+            if (index < 0 || index > old.length) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+
+            Effect[] a = new Effect[old.length + 1];
+            System.arraycopy(old, 0, a, 0, index);
+            System.arraycopy(old, index, a, index + 1, old.length - index);
+            a[index] = effect;
+
+            effects = a;
+        }
+    }
+
+    /**
+     * Replaces the effect at the specified position.
+     *
+     * @param index the position of the effect.
+     * @param effect a specified effect.
+     * @return the replaced effect.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    public Effect set(int index, Effect effect)
+            throws IndexOutOfBoundsException {
+        if (effect == null) {
+            throw new NullPointerException();
+        }
+
+        synchronized (lock) {
+            Effect[] a = effects.clone();
+            Effect previous = a[index];
+            a[index] = effect;
+
+            effects = a;
+
+            return previous;
+        }
+    }
+
+    /**
+     * Removes the effect at the specified position.
+     *
+     * @param index the position of the effect.
+     * @return the removed effect.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    public Effect remove(int index) throws IndexOutOfBoundsException {
+        synchronized (lock) {
+            Effect[] old = effects;
+            Effect previous = old[index];
+            Effect[] a = new Effect[old.length - 1];
+            System.arraycopy(old, 0, a, 0, index);
+            System.arraycopy(old, index + 1, a, index, a.length - index);
+
+            effects = a;
+
+            return previous;
+        }
+    }
+
+    /**
+     * Removes the specified effect from this {@code EffectsChain}.
+     *
+     * @param effect a specified effect.
+     * @return {@code true} if this {@code EffectsChain} contained the effect;
+     *         {@code false} otherwise.
+     */
+    public boolean remove(Effect effect) {
+        synchronized (lock) {
+            Effect[] old = effects;
+
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == effect) {
+                    remove(i);
+
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Removes all the effects from this {@code EffectsChain}.
+     */
+    public void clear() {
+        synchronized (lock) {
+            effects = EMPTY;
+        }
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        if (fade == FADE_LENGTH && effects != current) {
+            begin(effects);
+        }
+
+        if (fade == FADE_LENGTH) {
+            for (Effect effect : current) {
+                effect.process(buffer, offset, length);
+            }
+
+            return;
+        }
+
+        for (int done = 0; done < length;) {
+            int n = Math.min(FADE_LENGTH, length - done);
+
+            // A swap switches the effects in between at half the fade.
+            if (swap && fade < FADE_LENGTH / 2) {
+                n = Math.min(n, FADE_LENGTH / 2 - fade);
+            }
+
+            if (swap) {
+                swap(buffer, offset + done, n);
+            } else {
+                crossfade(buffer, offset + done, n);
+            }
+
+            done += n;
+        }
+
+        if (fade == FADE_LENGTH) {
+            current = target;
+        }
+    }
+
+    /**
+     * Clears the state of the effects, and completes any crossfade.
+     */
+    @Override
+    public void reset() {
+        current = effects;
+        target = current;
+        fade = FADE_LENGTH;
+
+        for (Effect effect : current) {
+            effect.reset();
+        }
+    }
+
+    private void begin(Effect[] next) {
+        int max = Math.min(current.length, next.length);
+
+        prefix = 0;
+
+        while (prefix < max && current[prefix] == next[prefix]) {
+            prefix++;
+        }
+
+        suffix = 0;
+
+        while (suffix < max - prefix && current[current.length - 1 - suffix]
+                                        == next[next.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        target = next;
+        fade = 0;
+        swap = false;
+
+        for (int i = prefix; i < next.length - suffix; i++) {
+            if (contains(current, prefix, current.length - suffix, next[i])) {
+                swap = true;
+            } else if (!contains(current, 0, current.length, next[i])) {
+                // A new effect, that the caller may have used elsewhere.
+                next[i].reset();
+            }
+        }
+    }
+
+    private void crossfade(float[] buffer, int offset, int n) {
+        for (int i = 0; i < prefix; i++) {
+            current[i].process(buffer, offset, n);
+        }
+
+        System.arraycopy(buffer, offset, scratch, 0, n);
+
+        // The old effects in between process a copy; none of them is in
+        // between in the new chain, so no effect runs twice on a block.
+        for (int i = prefix; i < current.length - suffix; i++) {
+            current[i].process(scratch, 0, n);
+        }
+
+        for (int i = prefix; i < target.length - suffix; i++) {
+            target[i].process(buffer, offset, n);
+        }
+
+        for (int k = 0; k < n; k++) {
+            float t = (float) fade / FADE_LENGTH;
+            float from = scratch[k];
+
+            buffer[offset + k] = from + (buffer[offset + k] - from) * t;
+
+            if (fade < FADE_LENGTH) {
+                fade++;
+            }
+        }
+
+        for (int i = target.length - suffix; i < target.length; i++) {
+            target[i].process(buffer, offset, n);
+        }
+    }
+
+    private void swap(float[] buffer, int offset, int n) {
+        int half = FADE_LENGTH / 2;
+        Effect[] chain = (fade < half ? current : target);
+
+        for (int i = 0; i < prefix; i++) {
+            chain[i].process(buffer, offset, n);
+        }
+
+        for (int i = prefix; i < chain.length - suffix; i++) {
+            chain[i].process(buffer, offset, n);
+        }
+
+        for (int k = 0; k < n; k++) {
+            buffer[offset + k] *= (float) Math.abs(fade - half) / half;
+
+            if (fade < FADE_LENGTH) {
+                fade++;
+            }
+        }
+
+        for (int i = chain.length - suffix; i < chain.length; i++) {
+            chain[i].process(buffer, offset, n);
+        }
+    }
+
+    private static boolean contains(Effect[] chain, int from, int to,
+                                    Effect effect) {
+        for (int i = from; i < to; i++) {
+            if (chain[i] == effect) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
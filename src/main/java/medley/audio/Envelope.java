@@ -0,0 +1,92 @@
+package medley.audio;
+
+/**
+ * {@code Envelope} class that describes an ADSR (attack, decay, sustain,
+ * release) amplitude envelope.
+ *
+ * <p>The level rises linearly from {@code 0} to {@code 1} during the attack,
+ * falls linearly to the sustain level during the decay, stays there while the
+ * note is held, and falls linearly to {@code 0} during the release.
+ *
+ * <p>Instances of this class are immutable.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.VoicePool
+ */
+public final class Envelope {
+
+    /**
+     * A short envelope suited to plucked or percussive sounds.
+     */
+    public static final Envelope DEFAULT = new Envelope(0.005, 0.1, 0.7, 0.2);
+
+    private final double attack;
+    private final double decay;
+    private final double sustain;
+    private final double release;
+
+    /**
+     * Initializes a newly created {@code Envelope} object with the specified
+     * parameters.
+     *
+     * @param attack the attack time, in seconds.
+     * @param decay the decay time, in seconds.
+     * @param sustain the sustain level, between {@code 0} and {@code 1}.
+     * @param release the release time, in seconds.
+     * @throws IllegalArgumentException
+     *         if a time is negative, or the sustain level is not between
+     *         {@code 0} and {@code 1}.
+     */
+    public Envelope(double attack, double decay, double sustain,
+                    double release) throws IllegalArgumentException {
+        if (!(attack >= 0 && decay >= 0 && release >= 0)
+                || !(sustain >= 0 && sustain <= 1)) {
+            throw new IllegalArgumentException("Invalid envelope! Times must "
+                                               + "be non-negative and the "
+                                               + "sustain level between 0 "
+                                               + "and 1.");
+        }
+
+        this.attack = attack;
+        this.decay = decay;
+        this.sustain = sustain;
+        this.release = release;
+    }
+
+    /**
+     * Returns the attack time of this {@code Envelope}, in seconds.
+     *
+     * @return the attack time of this {@code Envelope}, in seconds.
+     */
+    public double getAttack() {
+        return attack;
+    }
+
+    /**
+     * Returns the decay time of this {@code Envelope}, in seconds.
+     *
+     * @return the decay time of this {@code Envelope}, in seconds.
+     */
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * Returns the sustain level of this {@code Envelope}.
+     *
+     * @return the sustain level of this {@code Envelope}.
+     */
+    public double getSustain() {
+        return sustain;
+    }
+
+    /**
+     * Returns the release time of this {@code Envelope}, in seconds.
+     *
+     * @return the release time of this {@code Envelope}, in seconds.
+     */
+    public double getRelease() {
+        return release;
+    }
+
+}
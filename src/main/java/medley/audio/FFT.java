@@ -0,0 +1,111 @@
+package medley.audio;
+
+/**
+ * {@code FFT} class that represents a plan for the fast Fourier transform of
+ * a fixed, power of two, size.
+ *
+ * <p>The plan precomputes the twiddle factors and the bit-reversal
+ * permutation, so a transform is an in-place iterative radix-2 FFT without
+ * trigonometric calls or allocation.
+ *
+ * <p>Instances of this class are immutable, and a plan can be shared by
+ * threads transforming different arrays.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.Spectrogram
+ */
+public final class FFT {
+
+    private final int size;
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] reversed;
+
+    /**
+     * Initializes a newly created {@code FFT} plan of the specified size.
+     *
+     * @param size the size of the transform, a power of two.
+     * @throws IllegalArgumentException
+     *         if the size is not a power of two greater than {@code 1}.
+     */
+    public FFT(int size) throws IllegalArgumentException {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid FFT size! ").append(size).append(" is not a ");
+            e.append("power of two.");
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        this.size = size;
+        this.cos = new double[size / 2];
+        this.sin = new double[size / 2];
+        this.reversed = new int[size];
+
+        for (int k = 0; k < size / 2; k++) {
+            cos[k] = Math.cos(2 * Math.PI * k / size);
+            sin[k] = Math.sin(2 * Math.PI * k / size);
+        }
+
+        int bits = Integer.numberOfTrailingZeros(size);
+
+        for (int i = 0; i < size; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Returns the size of this {@code FFT}.
+     *
+     * @return the size of this {@code FFT}.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Computes the forward transform of the specified complex sequence, in
+     * place.
+     *
+     * @param re the real parts, at least {@code getSize()} long.
+     * @param im the imaginary parts, at least {@code getSize()} long.
+     */
+    public void transform(double[] re, double[] im) {
+        int n = size;
+
+        for (int i = 0; i < n; i++) {
+            int j = reversed[i];
+
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int length = 2; length <= n; length <<= 1) {
+            int half = length >> 1;
+            int step = n / length;
+
+            for (int start = 0; start < n; start += length) {
+                for (int k = 0, t = 0; k < half; k++, t += step) {
+                    int a = start + k;
+                    int b = a + half;
+                    double wr = cos[t];
+                    double wi = -sin[t];
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package medley.audio;
+
+import medley.Note;
+
+/**
+ * {@code Instrument} interface that models a polyphonic sound generator
+ * played by notes, such as {@link VoicePool} and {@link Sampler}.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.ScorePlayer
+ */
+public interface Instrument {
+
+    /**
+     * Starts playing the specified note, releasing it after the specified
+     * number of samples.
+     *
+     * @param note a specified note.
+     * @param gateSamples the number of samples before the release, or
+     *        {@code -1} to hold the note until {@link #noteOff(int) noteOff}.
+     * @return the number of voices started.
+     * @throws IllegalArgumentException
+     *         if {@code gateSamples < -1}.
+     */
+    int noteOn(Note note, long gateSamples) throws IllegalArgumentException;
+
+    /**
+     * Releases the held voices that play the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     */
+    void noteOff(int midiNumber);
+
+    /**
+     * Releases all the voices.
+     */
+    void allNotesOff();
+
+    /**
+     * Silences all the voices at once, without release.
+     */
+    void reset();
+
+    /**
+     * Returns the number of voices currently sounding.
+     *
+     * @return the number of voices currently sounding.
+     */
+    int getActiveVoices();
+
+    /**
+     * Renders the next block of samples, adding the voices to the specified
+     * buffer.
+     *
+     * @param out the buffer that receives the samples.
+     * @param offset the index of the first sample of the block.
+     * @param length the number of samples of the block.
+     */
+    void render(float[] out, int offset, int length);
+
+}
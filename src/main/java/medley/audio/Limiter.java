@@ -0,0 +1,102 @@
+package medley.audio;
+
+/**
+ * {@code Limiter} class that keeps the peaks of a signal below a threshold.
+ *
+ * <p>The gain drops at once to the value that brings a peak to the
+ * threshold, and recovers exponentially with the release time, so the output
+ * never exceeds the threshold. Stereo signals are limited with a gain shared
+ * by both channels, so the stereo image does not shift.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.Mixer
+ */
+public class Limiter implements Effect {
+
+    private final float threshold;
+    private final float recovery;
+    private float gain = 1;
+
+    /**
+     * Initializes a newly created {@code Limiter} object with the specified
+     * parameters.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param threshold the highest output amplitude, greater than {@code 0}.
+     * @param release the time the gain takes to recover by about two thirds,
+     *        in seconds.
+     * @throws IllegalArgumentException
+     *         if a parameter is not valid.
+     */
+    public Limiter(float sampleRate, double threshold, double release)
+            throws IllegalArgumentException {
+        if (!(sampleRate > 0) || !(threshold > 0) || !(release >= 0)) {
+            throw new IllegalArgumentException("Invalid limiter! Sample rate "
+                                               + "and threshold must be "
+                                               + "positive.");
+        }
+
+        this.threshold = (float) threshold;
+        this.recovery = (float) (release > 0
+                                 ? 1 - Math.exp(-1 / (release * sampleRate))
+                                 : 1);
+    }
+
+    /**
+     * Returns the threshold of this {@code Limiter}.
+     *
+     * @return the threshold of this {@code Limiter}.
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the current gain of this {@code Limiter}.
+     *
+     * @return the current gain of this {@code Limiter}.
+     */
+    public double getGain() {
+        return gain;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        process(buffer, buffer, offset, length);
+    }
+
+    /**
+     * Processes the specified block of stereo samples in place.
+     *
+     * @param left the buffer that contains the left channel.
+     * @param right the buffer that contains the right channel.
+     * @param offset the index of the first sample of the block.
+     * @param length the number of samples of the block.
+     */
+    public void process(float[] left, float[] right, int offset, int length) {
+        float g = gain;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            float peak = Math.max(Math.abs(left[i]), Math.abs(right[i]));
+            float target = (peak > threshold ? threshold / peak : 1);
+
+            g = (target < g ? target : g + (target - g) * recovery);
+
+            left[i] *= g;
+
+            if (right != left) {
+                right[i] *= g;
+            }
+        }
+
+        gain = g;
+    }
+
+    @Override
+    public void reset() {
+        gain = 1;
+    }
+
+}
@@ -0,0 +1,692 @@
+package medley.audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import medley.util.Metrics;
+
+/**
+ * {@code Mixer} class that mixes mono tracks into a stereo output, through a
+ * tree of submix buses and a master limiter.
+ *
+ * <p>Each {@link Track} renders its {@link Source} into its own buffer, and
+ * is added to its {@link Bus} with its gain and constant-power pan; each bus
+ * is added to its parent with its gain, up to the master bus, whose output
+ * goes through a {@link Limiter}. Gain and pan changes are interpolated over
+ * a block.
+ *
+ * <p>Audio is processed in blocks of a fixed size, small enough for all the
+ * buffers of a bus to stay in cache. A track whose source reports a silent
+ * block (e.g. a span of rests) is skipped, and so is a bus all of whose
+ * inputs are silent.
+ *
+ * <p>Buses of the same depth do not depend on each other, so
+ * {@link #render(float[], float[], int, int, ExecutorService) render} can mix
+ * them in parallel, one depth at a time from the deepest to the master. The
+ * tasks that mix them are created when the tree changes, and the rendering
+ * thread waits for each depth on a counter, so no futures are allocated per
+ * block.
+ *
+ * <p>This class is not synchronized: gains and pans may be set from any
+ * thread, but tracks and buses must not be added while rendering.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.ScorePlayer
+ */
+public class Mixer {
+
+    /**
+     * The default number of samples of a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private final int blockSize;
+    private final Bus master;
+    private final Limiter limiter;
+
+    // Buses grouped by depth, and their mixing tasks, rebuilt when a bus is
+    // added.
+    private List<List<Bus>> levels;
+    private List<List<Runnable>> tasks;
+
+    // State of the depth being mixed in parallel: the size of its block, the
+    // tasks not finished yet, the thread that waits for them and the first
+    // failure of a task.
+    private int block;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile Thread waiter;
+    private volatile Throwable failure;
+
+    /**
+     * Initializes a newly created {@code Mixer} object with the specified
+     * sample rate, the default block size and a limiter at {@code -0.1 dB}.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @throws IllegalArgumentException
+     *         if {@code sampleRate <= 0}.
+     */
+    public Mixer(float sampleRate) throws IllegalArgumentException {
+        this(sampleRate, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Initializes a newly created {@code Mixer} object with the specified
+     * sample rate and block size, and a limiter at {@code -0.1 dB}.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param blockSize the number of samples of a block.
+     * @throws IllegalArgumentException
+     *         if {@code sampleRate <= 0} or {@code blockSize < 1}.
+     */
+    public Mixer(float sampleRate, int blockSize)
+            throws IllegalArgumentException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Invalid block size! It must "
+                                               + "be positive.");
+        }
+
+        this.blockSize = blockSize;
+        this.limiter = new Limiter(sampleRate, Math.pow(10, -0.1 / 20), 0.05);
+        this.master = new Bus("master", null, blockSize);
+    }
+
+    /**
+     * Returns the master bus of this {@code Mixer}.
+     *
+     * @return the master bus of this {@code Mixer}.
+     */
+    public Bus getMaster() {
+        return master;
+    }
+
+    /**
+     * Returns the limiter of the master bus.
+     *
+     * @return the limiter of the master bus.
+     */
+    public Limiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Returns the number of samples of a block.
+     *
+     * @return the number of samples of a block.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Adds a bus to this {@code Mixer}.
+     *
+     * @param name the name of the bus.
+     * @param parent the bus that receives the output of the new one.
+     * @return the new bus.
+     * @throws IllegalArgumentException
+     *         if the parent bus does not belong to this {@code Mixer}.
+     */
+    public Bus addBus(String name, Bus parent)
+            throws IllegalArgumentException {
+        checkBus(parent);
+
+        Bus bus = new Bus(name, parent, blockSize);
+        parent.children.add(bus);
+        levels = null;
+
+        return bus;
+    }
+
+    /**
+     * Adds a track, that feeds the master bus, to this {@code Mixer}.
+     *
+     * @param name the name of the track.
+     * @param source the source of the track.
+     * @return the new track.
+     */
+    public Track addTrack(String name, Source source) {
+        return addTrack(name, source, master);
+    }
+
+    /**
+     * Adds a track to this {@code Mixer}.
+     *
+     * @param name the name of the track.
+     * @param source the source of the track.
+     * @param bus the bus that receives the output of the track.
+     * @return the new track.
+     * @throws IllegalArgumentException
+     *         if the bus does not belong to this {@code Mixer}.
+     */
+    public Track addTrack(String name, Source source, Bus bus)
+            throws IllegalArgumentException {
+        if (source == null) {
+            throw new NullPointerException();
+        }
+
+        checkBus(bus);
+
+        Track track = new Track(name, source, bus, blockSize);
+        bus.tracks.add(track);
+
+        return track;
+    }
+
+    /**
+     * Removes the specified track from this {@code Mixer}.
+     *
+     * @param track a specified track.
+     * @return {@code true} if this {@code Mixer} contained the track;
+     *         {@code false} otherwise.
+     */
+    public boolean removeTrack(Track track) {
+        return track.bus.tracks.remove(track);
+    }
+
+    /**
+     * Renders the next block of the mix into the specified buffers.
+     *
+     * @param left the buffer that receives the left channel.
+     * @param right the buffer that receives the right channel.
+     * @param offset the index of the first sample.
+     * @param length the number of samples.
+     */
+    public void render(float[] left, float[] right, int offset, int length) {
+        long start = Metrics.start();
+        List<List<Bus>> l = levels();
+
+        for (int done = 0; done < length; done += blockSize) {
+            int n = Math.min(blockSize, length - done);
+
+            for (int d = l.size() - 1; d >= 0; d--) {
+                for (Bus bus : l.get(d)) {
+                    bus.mix(n);
+                }
+            }
+
+            output(left, right, offset + done, n);
+        }
+
+        Metrics.stop(Metrics.Timer.MIXER_RENDER, start);
+    }
+
+    /**
+     * Renders the next block of the mix into the specified buffers, mixing
+     * the buses of the same depth in parallel with the specified executor.
+     * The current thread mixes one bus of each depth, and waits for the
+     * executor to mix the others; if it is interrupted, it still waits for
+     * them, so the buses are never left half mixed.
+     *
+     * <p>The tasks passed to the executor are reused from block to block,
+     * but the executor may allocate to queue them (e.g. a
+     * {@code ThreadPoolExecutor} allocates a node of its work queue).
+     *
+     * @param left the buffer that receives the left channel.
+     * @param right the buffer that receives the right channel.
+     * @param offset the index of the first sample.
+     * @param length the number of samples.
+     * @param executor the executor that mixes the buses.
+     * @throws InterruptedException
+     *         if the current thread is interrupted while waiting.
+     */
+    public void render(float[] left, float[] right, int offset, int length,
+                       ExecutorService executor) throws InterruptedException {
+        long start = Metrics.start();
+        List<List<Bus>> l = levels();
+        boolean interrupted = false;
+
+        for (int done = 0; done < length; done += blockSize) {
+            int n = Math.min(blockSize, length - done);
+
+            for (int d = l.size() - 1; d >= 0; d--) {
+                List<Bus> level = l.get(d);
+                List<Runnable> t = tasks.get(d);
+
+                block = n;
+                waiter = Thread.currentThread();
+                pending.set(t.size() - 1);
+
+                for (int i = 1; i < t.size(); i++) {
+                    executor.execute(t.get(i));
+                }
+
+                try {
+                    level.get(0).mix(n);
+                } finally {
+                    interrupted |= await();
+                }
+
+                Throwable f = failure;
+
+                if (f != null) {
+                    failure = null;
+
+                    if (f instanceof RuntimeException) {
+                        throw (RuntimeException) f;
+                    }
+
+                    if (f instanceof Error) {
+                        throw (Error) f;
+                    }
+
+                    throw new IllegalStateException(f);
+                }
+            }
+
+            output(left, right, offset + done, n);
+
+            if (interrupted) {
+                throw new InterruptedException();
+            }
+        }
+
+        Metrics.stop(Metrics.Timer.MIXER_RENDER, start);
+    }
+
+    // Waits for the tasks of a depth; returns true if the current thread was
+    // interrupted meanwhile.
+    private boolean await() {
+        boolean interrupted = false;
+
+        while (pending.get() > 0) {
+            LockSupport.park(this);
+            interrupted |= Thread.interrupted();
+        }
+
+        return interrupted;
+    }
+
+    private void output(float[] left, float[] right, int offset, int n) {
+        float to = master.gain;
+        float from = master.applied;
+
+        master.applied = to;
+
+        if (master.active) {
+            float step = (to - from) / n;
+
+            for (int i = 0; i < n; i++) {
+                float g = from + step * i;
+
+                left[offset + i] = master.left[i] * g;
+                right[offset + i] = master.right[i] * g;
+            }
+        } else {
+            Arrays.fill(left, offset, offset + n, 0);
+            Arrays.fill(right, offset, offset + n, 0);
+        }
+
+        limiter.process(left, right, offset, n);
+    }
+
+    private List<List<Bus>> levels() {
+        if (levels == null) {
+            List<List<Bus>> result = new ArrayList<List<Bus>>();
+            List<List<Runnable>> calls = new ArrayList<List<Runnable>>();
+            List<Bus> level = Collections.singletonList(master);
+
+            while (!level.isEmpty()) {
+                List<Bus> next = new ArrayList<Bus>();
+                List<Runnable> c = new ArrayList<Runnable>();
+
+                for (Bus bus : level) {
+                    next.addAll(bus.children);
+                    c.add(task(bus));
+                }
+
+                result.add(level);
+                calls.add(c);
+                level = next;
+            }
+
+            levels = result;
+            tasks = calls;
+        }
+
+        return levels;
+    }
+
+    // Returns the task that mixes the specified bus for the parallel render.
+    private Runnable task(final Bus bus) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    bus.mix(block);
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        LockSupport.unpark(waiter);
+                    }
+                }
+            }
+        };
+    }
+
+    private void checkBus(Bus bus) throws IllegalArgumentException {
+        Bus root = bus;
+
+        while (root.parent != null) {
+            root = root.parent;
+        }
+
+        if (root != master) {
+            throw new IllegalArgumentException("Invalid bus! It belongs to "
+                                               + "another mixer.");
+        }
+    }
+
+    // Returns the left and right gains of a constant-power pan.
+    private static float panLeft(float gain, float pan) {
+        return gain * (float) Math.cos((pan + 1) * Math.PI / 4);
+    }
+
+    private static float panRight(float gain, float pan) {
+        return gain * (float) Math.sin((pan + 1) * Math.PI / 4);
+    }
+
+    /**
+     * {@code Bus} class that sums tracks and other buses.
+     */
+    public static final class Bus {
+
+        private final String name;
+        private final Bus parent;
+        private final List<Track> tracks = new ArrayList<Track>();
+        private final List<Bus> children = new ArrayList<Bus>();
+        private final float[] left;
+        private final float[] right;
+
+        private volatile float gain = 1;
+        private float applied = 1;
+        private boolean active;
+
+        private Bus(String name, Bus parent, int blockSize) {
+            this.name = name;
+            this.parent = parent;
+            this.left = new float[blockSize];
+            this.right = new float[blockSize];
+        }
+
+        /**
+         * Returns the name of this {@code Bus}.
+         *
+         * @return the name of this {@code Bus}.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the bus that receives the output of this {@code Bus}.
+         *
+         * @return the parent bus, or {@code null} for the master bus.
+         */
+        public Bus getParent() {
+            return parent;
+        }
+
+        /**
+         * Returns the gain of this {@code Bus}.
+         *
+         * @return the gain of this {@code Bus}.
+         */
+        public float getGain() {
+            return gain;
+        }
+
+        /**
+         * Sets the gain of this {@code Bus}.
+         *
+         * @param gain a specified linear gain.
+         * @throws IllegalArgumentException
+         *         if {@code gain < 0}.
+         */
+        public void setGain(float gain) throws IllegalArgumentException {
+            if (!(gain >= 0)) {
+                throw new IllegalArgumentException("Invalid gain! It must be "
+                                                   + "non-negative.");
+            }
+
+            this.gain = gain;
+        }
+
+        /**
+         * Returns a string representation of this {@code Bus}.
+         *
+         * @return a string representation of this {@code Bus}.
+         */
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        private void mix(int n) {
+            boolean any = false;
+
+            for (int t = 0; t < tracks.size(); t++) {
+                any |= tracks.get(t).mix(left, right, n, !any);
+            }
+
+            for (int c = 0; c < children.size(); c++) {
+                Bus child = children.get(c);
+                float to = child.gain;
+                float from = child.applied;
+
+                child.applied = to;
+
+                if (!child.active) {
+                    continue;
+                }
+
+                float step = (to - from) / n;
+
+                for (int i = 0; i < n; i++) {
+                    float g = from + step * i;
+                    float l = child.left[i] * g;
+                    float r = child.right[i] * g;
+
+                    left[i] = (any ? left[i] + l : l);
+                    right[i] = (any ? right[i] + r : r);
+                }
+
+                any = true;
+            }
+
+            active = any;
+        }
+
+    }
+
+    /**
+     * {@code Track} class that feeds a mono {@link Source} into a bus.
+     */
+    public static final class Track {
+
+        private final String name;
+        private final Source source;
+        private final Bus bus;
+        private final float[] buffer;
+
+        private volatile float gain = 1;
+        private volatile float pan;
+        private volatile boolean muted;
+
+        private float appliedLeft;
+        private float appliedRight;
+        private boolean dirty;
+
+        private Track(String name, Source source, Bus bus, int blockSize) {
+            this.name = name;
+            this.source = source;
+            this.bus = bus;
+            this.buffer = new float[blockSize];
+            this.appliedLeft = panLeft(1, 0);
+            this.appliedRight = panRight(1, 0);
+        }
+
+        /**
+         * Returns the name of this {@code Track}.
+         *
+         * @return the name of this {@code Track}.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the source of this {@code Track}.
+         *
+         * @return the source of this {@code Track}.
+         */
+        public Source getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the bus that receives the output of this {@code Track}.
+         *
+         * @return the bus of this {@code Track}.
+         */
+        public Bus getBus() {
+            return bus;
+        }
+
+        /**
+         * Returns the gain of this {@code Track}.
+         *
+         * @return the gain of this {@code Track}.
+         */
+        public float getGain() {
+            return gain;
+        }
+
+        /**
+         * Sets the gain of this {@code Track}.
+         *
+         * @param gain a specified linear gain.
+         * @throws IllegalArgumentException
+         *         if {@code gain < 0}.
+         */
+        public void setGain(float gain) throws IllegalArgumentException {
+            if (!(gain >= 0)) {
+                throw new IllegalArgumentException("Invalid gain! It must be "
+                                                   + "non-negative.");
+            }
+
+            this.gain = gain;
+        }
+
+        /**
+         * Returns the pan of this {@code Track}.
+         *
+         * @return the pan of this {@code Track}.
+         */
+        public float getPan() {
+            return pan;
+        }
+
+        /**
+         * Sets the pan of this {@code Track}.
+         *
+         * @param pan a specified pan, from {@code -1} (left) to {@code 1}
+         *        (right).
+         * @throws IllegalArgumentException
+         *         if the pan is not between {@code -1} and {@code 1}.
+         */
+        public void setPan(float pan) throws IllegalArgumentException {
+            if (!(pan >= -1 && pan <= 1)) {
+                throw new IllegalArgumentException("Invalid pan! It must be "
+                                                   + "between -1 and 1.");
+            }
+
+            this.pan = pan;
+        }
+
+        /**
+         * Returns {@code true} if this {@code Track} is muted.
+         *
+         * @return {@code true} if this {@code Track} is muted; {@code false}
+         *         otherwise.
+         */
+        public boolean isMuted() {
+            return muted;
+        }
+
+        /**
+         * Mutes or unmutes this {@code Track}. A muted track still renders its
+         * source, so it stays in time.
+         *
+         * @param muted {@code true} to mute this {@code Track}.
+         */
+        public void setMuted(boolean muted) {
+            this.muted = muted;
+        }
+
+        /**
+         * Returns a string representation of this {@code Track}.
+         *
+         * @return a string representation of this {@code Track}.
+         */
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        // Renders the source and adds it to the bus, or writes it if first;
+        // returns false if nothing was written.
+        private boolean mix(float[] left, float[] right, int n,
+                            boolean first) {
+            if (dirty) {
+                Arrays.fill(buffer, 0, n, 0);
+            }
+
+            boolean sound = source.render(buffer, 0, n);
+            float g = (muted ? 0 : gain);
+            float p = pan;
+            float toLeft = panLeft(g, p);
+            float toRight = panRight(g, p);
+            float fromLeft = appliedLeft;
+            float fromRight = appliedRight;
+
+            dirty = sound;
+            appliedLeft = toLeft;
+            appliedRight = toRight;
+
+            if (!sound || (fromLeft == 0 && fromRight == 0 && g == 0)) {
+                return false;
+            }
+
+            float stepLeft = (toLeft - fromLeft) / n;
+            float stepRight = (toRight - fromRight) / n;
+
+            if (first) {
+                for (int i = 0; i < n; i++) {
+                    float x = buffer[i];
+
+                    left[i] = x * (fromLeft + stepLeft * i);
+                    right[i] = x * (fromRight + stepRight * i);
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    float x = buffer[i];
+
+                    left[i] += x * (fromLeft + stepLeft * i);
+                    right[i] += x * (fromRight + stepRight * i);
+                }
+            }
+
+            return true;
+        }
+
+    }
+
+}
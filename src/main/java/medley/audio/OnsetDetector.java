@@ -0,0 +1,204 @@
+package medley.audio;
+
+import java.util.Arrays;
+
+/**
+ * {@code OnsetDetector} class that finds note onsets in the frames of a
+ * {@link Spectrogram}, by spectral flux.
+ *
+ * <p>The magnitudes of each frame are compressed logarithmically, and the
+ * onset strength of the frame is the mean increase of its bins over the
+ * previous frame. A frame is an onset when its strength is a local peak that
+ * exceeds the mean strength of the recent frames by a threshold, and it is
+ * at least a minimum interval after the previous onset.
+ *
+ * <p>The detector keeps the previous frame and a fixed window of strengths,
+ * so memory does not grow with the length of the stream. Since a peak is
+ * known one frame later, the {@link Listener} receives each frame with one
+ * frame of latency, and never receives the last frame of a stream.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.BeatTracker
+ */
+public class OnsetDetector implements Spectrogram.Listener {
+
+    /**
+     * {@code Listener} interface that receives the onset strength of each
+     * frame.
+     */
+    public interface Listener {
+
+        /**
+         * Receives the onset strength of the specified frame.
+         *
+         * @param index the index of the frame.
+         * @param strength the onset strength of the frame.
+         * @param onset whether the frame is an onset.
+         */
+        void frame(long index, double strength, boolean onset);
+
+    }
+
+    /**
+     * The default threshold over the mean strength.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.03;
+
+    /**
+     * The default minimum interval between two onsets, in seconds.
+     */
+    public static final double DEFAULT_INTERVAL = 0.05;
+
+    // Gain of the logarithmic compression, and length of the mean window.
+    private static final double COMPRESSION = 100;
+    private static final int WINDOW = 16;
+
+    private final float sampleRate;
+    private final int frameSize;
+    private final int hopSize;
+    private final double threshold;
+    private final long interval;
+    private final Listener listener;
+    private final double[] previous;
+    private final double[] window;
+
+    private double sum;
+    private double last;
+    private double beforeLast;
+    private long lastOnset;
+    private long frames;
+
+    /**
+     * Initializes a newly created {@code OnsetDetector} object for the
+     * specified spectrogram, with the default threshold and interval.
+     *
+     * @param spectrogram the spectrogram whose frames are analyzed.
+     * @param sampleRate the sample rate of the stream, in Hz.
+     * @param listener the listener that receives the onset strengths.
+     */
+    public OnsetDetector(Spectrogram spectrogram, float sampleRate,
+                         Listener listener) {
+        this(spectrogram, sampleRate, DEFAULT_THRESHOLD, DEFAULT_INTERVAL,
+             listener);
+    }
+
+    /**
+     * Initializes a newly created {@code OnsetDetector} object for the
+     * specified spectrogram.
+     *
+     * @param spectrogram the spectrogram whose frames are analyzed.
+     * @param sampleRate the sample rate of the stream, in Hz.
+     * @param threshold the threshold over the mean strength of the recent
+     *        frames.
+     * @param interval the minimum interval between two onsets, in seconds.
+     * @param listener the listener that receives the onset strengths.
+     * @throws IllegalArgumentException
+     *         if the sample rate is not positive, or the threshold or the
+     *         interval is negative.
+     * @throws NullPointerException
+     *         if the listener is {@code null}.
+     */
+    public OnsetDetector(Spectrogram spectrogram, float sampleRate,
+                         double threshold, double interval, Listener listener)
+            throws IllegalArgumentException, NullPointerException {
+        if (!(sampleRate > 0) || !(threshold >= 0) || !(interval >= 0)) {
+            throw new IllegalArgumentException("Invalid onset detector! "
+                                               + "Sample rate must be "
+                                               + "positive, threshold and "
+                                               + "interval must not be "
+                                               + "negative.");
+        }
+
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+
+        this.sampleRate = sampleRate;
+        this.frameSize = spectrogram.getFrameSize();
+        this.hopSize = spectrogram.getHopSize();
+        this.threshold = threshold;
+        this.interval = (long) Math.ceil(interval * sampleRate / hopSize);
+        this.listener = listener;
+        this.previous = new double[spectrogram.getBins()];
+        this.window = new double[WINDOW];
+
+        reset();
+    }
+
+    /**
+     * Returns the number of frames per second of this {@code OnsetDetector}.
+     *
+     * @return the number of frames per second.
+     */
+    public double getFrameRate() {
+        return (double) sampleRate / hopSize;
+    }
+
+    /**
+     * Returns the time of the specified frame, that is the time of the
+     * center of its window.
+     *
+     * @param index a specified frame.
+     * @return the time of the frame, in seconds.
+     */
+    public double getTime(long index) {
+        return (index * hopSize + frameSize / 2.0) / sampleRate;
+    }
+
+    @Override
+    public void frame(long index, double[] values) {
+        double scale = 2.0 / frameSize;
+        double flux = 0;
+
+        for (int k = 0; k < previous.length; k++) {
+            double value = Math.log1p(COMPRESSION * scale * values[k]);
+            double increase = value - previous[k];
+
+            if (increase > 0) {
+                flux += increase;
+            }
+
+            previous[k] = value;
+        }
+
+        flux /= previous.length;
+
+        if (frames > 0) {
+            // The last frame is decided now that its successor is known.
+            long candidate = frames - 1;
+            boolean onset = last > beforeLast && last >= flux
+                            && last > sum / WINDOW + threshold
+                            && candidate - lastOnset >= interval;
+
+            if (onset) {
+                lastOnset = candidate;
+            }
+
+            listener.frame(candidate, last, onset);
+
+            int slot = (int) (candidate % WINDOW);
+            sum += last - window[slot];
+            window[slot] = last;
+        }
+
+        beforeLast = last;
+        last = flux;
+        frames++;
+    }
+
+    /**
+     * Clears the state of this {@code OnsetDetector}, to start a new stream.
+     */
+    public void reset() {
+        Arrays.fill(previous, 0);
+        Arrays.fill(window, 0);
+        sum = 0;
+        last = 0;
+        beforeLast = 0;
+        lastOnset = Long.MIN_VALUE / 2;
+        frames = 0;
+    }
+
+}
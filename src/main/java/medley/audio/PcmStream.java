@@ -0,0 +1,142 @@
+package medley.audio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * {@code PcmStream} class that reads an audio file as a stream of mono
+ * {@code float} samples, averaging its channels.
+ *
+ * <p>The file is decoded by {@code javax.sound.sampled} (e.g. WAV, AIFF and
+ * AU files) and converted to 16-bit PCM, and it is read in blocks, so memory
+ * does not grow with the length of the file.
+ *
+ * @author Salvatore Gentile
+ */
+final class PcmStream implements Closeable {
+
+    private final AudioInputStream input;
+    private final int channels;
+    private final float sampleRate;
+    private byte[] bytes = new byte[0];
+
+    private PcmStream(AudioInputStream input) {
+        this.input = input;
+        this.channels = input.getFormat().getChannels();
+        this.sampleRate = input.getFormat().getSampleRate();
+    }
+
+    /**
+     * Opens the specified audio file.
+     *
+     * @param path a specified audio file.
+     * @return the stream of the samples of the file.
+     * @throws IOException
+     *         if the file cannot be read or its format is not supported.
+     */
+    static PcmStream open(Path path) throws IOException {
+        AudioInputStream source;
+
+        try {
+            source = AudioSystem.getAudioInputStream(path.toFile());
+        } catch (UnsupportedAudioFileException e) {
+            throw new IOException("Unsupported audio file: " + path, e);
+        }
+
+        AudioFormat format = source.getFormat();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                                          format.getSampleRate(), 16,
+                                          format.getChannels(),
+                                          2 * format.getChannels(),
+                                          format.getSampleRate(), false);
+
+        if (format.matches(pcm)) {
+            return new PcmStream(source);
+        }
+
+        try {
+            return new PcmStream(AudioSystem.getAudioInputStream(pcm, source));
+        } catch (IllegalArgumentException e) {
+            source.close();
+
+            throw new IOException("Unsupported audio format: " + format, e);
+        }
+    }
+
+    /**
+     * Returns the sample rate of this {@code PcmStream}, in Hz.
+     *
+     * @return the sample rate of this {@code PcmStream}, in Hz.
+     */
+    float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Reads the next samples into the specified buffer.
+     *
+     * @param buffer the buffer that receives the samples.
+     * @return the number of samples read, or {@code -1} at the end of the
+     *         stream.
+     * @throws IOException
+     *         if the file cannot be read.
+     */
+    int read(float[] buffer) throws IOException {
+        int frameBytes = 2 * channels;
+
+        if (bytes.length < buffer.length * frameBytes) {
+            bytes = new byte[buffer.length * frameBytes];
+        }
+
+        int filled = 0;
+
+        // Reads whole frames only.
+        while (filled < frameBytes) {
+            int n = input.read(bytes, filled,
+                               buffer.length * frameBytes - filled);
+
+            if (n < 0) {
+                return -1;
+            }
+
+            filled += n;
+        }
+
+        while (filled % frameBytes != 0) {
+            int n = input.read(bytes, filled, frameBytes - filled % frameBytes);
+
+            if (n < 0) {
+                break;
+            }
+
+            filled += n;
+        }
+
+        int frames = filled / frameBytes;
+        float scale = 1f / (32768 * channels);
+
+        for (int f = 0, b = 0; f < frames; f++) {
+            int sum = 0;
+
+            for (int c = 0; c < channels; c++, b += 2) {
+                sum += (short) ((bytes[b] & 0xFF) | (bytes[b + 1] << 8));
+            }
+
+            buffer[f] = sum * scale;
+        }
+
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+}
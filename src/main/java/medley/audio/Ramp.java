@@ -0,0 +1,93 @@
+package medley.audio;
+
+/**
+ * {@code Ramp} class that moves a parameter linearly to a new value over a
+ * fixed number of samples, so that parameter changes do not produce clicks.
+ *
+ * <p>A ramp belongs to the audio thread: effects publish their parameters
+ * through {@code volatile} fields and pass them to the ramp at the beginning
+ * of each block.
+ *
+ * @author Salvatore Gentile
+ */
+final class Ramp {
+
+    private final int length;
+    private double value;
+    private double target;
+    private double step;
+    private int remaining;
+
+    /**
+     * Initializes a newly created {@code Ramp} object with the specified
+     * value and length.
+     *
+     * @param value the initial value.
+     * @param length the number of samples of a ramp.
+     */
+    Ramp(double value, int length) {
+        this.length = Math.max(1, length);
+        this.value = value;
+        this.target = value;
+    }
+
+    /**
+     * Starts moving to the specified value, if it is a new one.
+     *
+     * @param target a specified value.
+     */
+    void setTarget(double target) {
+        if (target == this.target) {
+            return;
+        }
+
+        this.target = target;
+        this.step = (target - value) / length;
+        this.remaining = length;
+    }
+
+    /**
+     * Jumps to the specified value.
+     *
+     * @param target a specified value.
+     */
+    void jump(double target) {
+        this.value = target;
+        this.target = target;
+        this.remaining = 0;
+    }
+
+    /**
+     * Returns the current value of this {@code Ramp}.
+     *
+     * @return the current value of this {@code Ramp}.
+     */
+    double getValue() {
+        return value;
+    }
+
+    /**
+     * Moves this {@code Ramp} by a sample and returns its value.
+     *
+     * @return the value of this {@code Ramp} for the next sample.
+     */
+    double next() {
+        if (remaining > 0) {
+            value = (--remaining == 0 ? target : value + step);
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the number of samples of a ramp of the specified duration.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param seconds the duration of the ramp, in seconds.
+     * @return the number of samples of the ramp.
+     */
+    static int samples(float sampleRate, double seconds) {
+        return (int) Math.max(1, Math.round(sampleRate * seconds));
+    }
+
+}
@@ -0,0 +1,302 @@
+package medley.audio;
+
+import java.util.Arrays;
+
+/**
+ * {@code Reverb} class that implements an algorithmic reverb.
+ *
+ * <p>The input goes through two Schroeder allpass diffusers, and then feeds a
+ * feedback delay network of four delay lines of mutually prime lengths,
+ * mixed by a Householder matrix. Each line has a gain that gives the decay
+ * time (RT60), and a one-pole low-pass filter that damps the high
+ * frequencies. Decay, damping and mix move to their new values over
+ * {@code 50 ms}.
+ *
+ * <p>Parameters may be set from any thread; {@code process} and {@code reset}
+ * must be called by the audio thread.
+ *
+ * @author Salvatore Gentile
+ */
+public class Reverb implements Effect {
+
+    private static final double RAMP_SECONDS = 0.05;
+
+    // Lengths at 44.1 kHz, scaled to the sample rate.
+    private static final int[] LINES = {1433, 1601, 1867, 2053};
+    private static final int[] DIFFUSERS = {347, 113};
+    private static final double DIFFUSION = 0.7;
+
+    private final float sampleRate;
+
+    private final float[][] lines = new float[LINES.length][];
+    private final int[] positions = new int[LINES.length];
+    private final double[] filters = new double[LINES.length];
+    private final float[][] diffusers = new float[DIFFUSERS.length][];
+    private final int[] diffuserPositions = new int[DIFFUSERS.length];
+
+    private volatile double decay;
+    private volatile double damping;
+    private volatile double mix;
+
+    private final Ramp[] gainRamps = new Ramp[LINES.length];
+    private final Ramp dampingRamp;
+    private final Ramp mixRamp;
+
+    /**
+     * Initializes a newly created {@code Reverb} object with the specified
+     * parameters.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param decay the time the reverb takes to decay by {@code 60 dB}, in
+     *        seconds.
+     * @param damping the damping of high frequencies, between {@code 0} and
+     *        {@code 1} (excluded).
+     * @param mix the amount of reverberated signal in the output, between
+     *        {@code 0} (dry) and {@code 1} (wet).
+     * @throws IllegalArgumentException
+     *         if a parameter is not valid.
+     */
+    public Reverb(float sampleRate, double decay, double damping, double mix)
+            throws IllegalArgumentException {
+        if (!(sampleRate > 0)) {
+            throw new IllegalArgumentException("Invalid sample rate! It must "
+                                               + "be positive.");
+        }
+
+        this.sampleRate = sampleRate;
+
+        setDecay(decay);
+        setDamping(damping);
+        setMix(mix);
+
+        double scale = sampleRate / 44100.0;
+
+        for (int k = 0; k < LINES.length; k++) {
+            lines[k] = new float[(int) Math.max(1, LINES[k] * scale)];
+        }
+
+        for (int k = 0; k < DIFFUSERS.length; k++) {
+            diffusers[k] = new float[(int) Math.max(1, DIFFUSERS[k] * scale)];
+        }
+
+        int length = Ramp.samples(sampleRate, RAMP_SECONDS);
+
+        for (int k = 0; k < LINES.length; k++) {
+            gainRamps[k] = new Ramp(gain(k, decay), length);
+        }
+
+        this.dampingRamp = new Ramp(damping, length);
+        this.mixRamp = new Ramp(mix, length);
+    }
+
+    /**
+     * Returns the decay time of this {@code Reverb}, in seconds.
+     *
+     * @return the decay time of this {@code Reverb}, in seconds.
+     */
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * Sets the decay time of this {@code Reverb}.
+     *
+     * @param decay the time the reverb takes to decay by {@code 60 dB}, in
+     *        seconds.
+     * @throws IllegalArgumentException
+     *         if the decay time is not positive.
+     */
+    public void setDecay(double decay) throws IllegalArgumentException {
+        if (!(decay > 0) || Double.isInfinite(decay)) {
+            throw new IllegalArgumentException("Invalid decay! It must be "
+                                               + "positive.");
+        }
+
+        this.decay = decay;
+    }
+
+    /**
+     * Returns the damping of this {@code Reverb}.
+     *
+     * @return the damping of this {@code Reverb}.
+     */
+    public double getDamping() {
+        return damping;
+    }
+
+    /**
+     * Sets the damping of high frequencies of this {@code Reverb}.
+     *
+     * @param damping a specified damping, between {@code 0} and {@code 1}
+     *        (excluded).
+     * @throws IllegalArgumentException
+     *         if the damping is not valid.
+     */
+    public void setDamping(double damping) throws IllegalArgumentException {
+        if (!(damping >= 0 && damping < 1)) {
+            throw new IllegalArgumentException("Invalid damping! It must be "
+                                               + "between 0 and 1 "
+                                               + "(excluded).");
+        }
+
+        this.damping = damping;
+    }
+
+    /**
+     * Returns the mix of this {@code Reverb}.
+     *
+     * @return the mix of this {@code Reverb}.
+     */
+    public double getMix() {
+        return mix;
+    }
+
+    /**
+     * Sets the mix of this {@code Reverb}.
+     *
+     * @param mix a specified mix, between {@code 0} and {@code 1}.
+     * @throws IllegalArgumentException
+     *         if the mix is not valid.
+     */
+    public void setMix(double mix) throws IllegalArgumentException {
+        if (!(mix >= 0 && mix <= 1)) {
+            throw new IllegalArgumentException("Invalid mix! It must be "
+                                               + "between 0 and 1.");
+        }
+
+        this.mix = mix;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        double d = decay;
+
+        for (int k = 0; k < LINES.length; k++) {
+            gainRamps[k].setTarget(gain(k, d));
+        }
+
+        dampingRamp.setTarget(damping);
+        mixRamp.setTarget(mix);
+
+        float[] l0 = lines[0];
+        float[] l1 = lines[1];
+        float[] l2 = lines[2];
+        float[] l3 = lines[3];
+        int p0 = positions[0];
+        int p1 = positions[1];
+        int p2 = positions[2];
+        int p3 = positions[3];
+        double f0 = filters[0];
+        double f1 = filters[1];
+        double f2 = filters[2];
+        double f3 = filters[3];
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            double g0 = gainRamps[0].next();
+            double g1 = gainRamps[1].next();
+            double g2 = gainRamps[2].next();
+            double g3 = gainRamps[3].next();
+            double damp = dampingRamp.next();
+            double wet = mixRamp.next();
+            double x = buffer[i];
+            double input = diffuse(x);
+
+            double o0 = l0[p0];
+            double o1 = l1[p1];
+            double o2 = l2[p2];
+            double o3 = l3[p3];
+
+            // One-pole low-pass filters on the line outputs.
+            f0 = o0 + (f0 - o0) * damp;
+            f1 = o1 + (f1 - o1) * damp;
+            f2 = o2 + (f2 - o2) * damp;
+            f3 = o3 + (f3 - o3) * damp;
+
+            // Householder matrix: I - 2/N * ones.
+            double h = (f0 + f1 + f2 + f3) * 0.5;
+
+            l0[p0] = (float) (input + (f0 - h) * g0);
+            l1[p1] = (float) (input + (f1 - h) * g1);
+            l2[p2] = (float) (input + (f2 - h) * g2);
+            l3[p3] = (float) (input + (f3 - h) * g3);
+
+            if (++p0 == l0.length) {
+                p0 = 0;
+            }
+
+            if (++p1 == l1.length) {
+                p1 = 0;
+            }
+
+            if (++p2 == l2.length) {
+                p2 = 0;
+            }
+
+            if (++p3 == l3.length) {
+                p3 = 0;
+            }
+
+            double out = (o0 - o1 + o2 - o3) * 0.5;
+
+            buffer[i] = (float) (x + (out - x) * wet);
+        }
+
+        positions[0] = p0;
+        positions[1] = p1;
+        positions[2] = p2;
+        positions[3] = p3;
+        filters[0] = f0;
+        filters[1] = f1;
+        filters[2] = f2;
+        filters[3] = f3;
+    }
+
+    @Override
+    public void reset() {
+        for (float[] line : lines) {
+            Arrays.fill(line, 0);
+        }
+
+        for (float[] diffuser : diffusers) {
+            Arrays.fill(diffuser, 0);
+        }
+
+        Arrays.fill(positions, 0);
+        Arrays.fill(diffuserPositions, 0);
+        Arrays.fill(filters, 0);
+
+        double d = decay;
+
+        for (int k = 0; k < LINES.length; k++) {
+            gainRamps[k].jump(gain(k, d));
+        }
+
+        dampingRamp.jump(damping);
+        mixRamp.jump(mix);
+    }
+
+    // Runs a sample through the allpass diffusers.
+    private double diffuse(double x) {
+        double y = x;
+
+        for (int k = 0; k < diffusers.length; k++) {
+            float[] d = diffusers[k];
+            int p = diffuserPositions[k];
+            double delayed = d[p];
+            double v = y + DIFFUSION * delayed;
+
+            d[p] = (float) v;
+            y = delayed - DIFFUSION * v;
+            diffuserPositions[k] = (p + 1 == d.length ? 0 : p + 1);
+        }
+
+        return y;
+    }
+
+    // Returns the gain that makes line k decay by 60 dB in the specified
+    // time.
+    private double gain(int k, double decay) {
+        return Math.pow(10, -3 * lines[k].length / (sampleRate * decay));
+    }
+
+}
@@ -0,0 +1,272 @@
+package medley.audio;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import medley.Note;
+
+/**
+ * {@code Sampler} class that plays notes with the samples of a
+ * {@link SoundFont} preset, with a fixed number of preallocated voices.
+ *
+ * <p>A note-on starts a voice for each zone of the preset that matches the
+ * MIDI note number and the volume (as velocity) of the note. The sample is
+ * read from the mapped sample data and pitch-shifted by linear interpolation
+ * to the frequency of the note, so notes tuned to a reference pitch other
+ * than {@code A440} are played in tune. The gain of a voice is the
+ * attenuation of its zone times the square of the velocity divided by
+ * {@code 127}; its amplitude is shaped by an ADSR {@link Envelope}.
+ *
+ * <p>Several samplers may play the same {@code SoundFont}: they share its
+ * mapped pages. When every voice is busy, a voice is stolen according to the
+ * {@link VoicePool.StealPolicy}, but the zones of a note never steal each
+ * other's voices. The envelopes are those of a {@link VoicePool}.
+ *
+ * <p>This class is not synchronized: note-ons and rendering must happen on the
+ * same thread, e.g. the audio thread.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.SoundFont
+ * @see medley.audio.VoicePool
+ */
+public class Sampler implements Instrument {
+
+    private static final float SCALE = 1 / 32768f;
+
+    private final float sampleRate;
+    private final SoundFont.Preset preset;
+    private final ShortBuffer samples;
+    private final Voices voices;
+
+    // Sample playback state, per voice.
+    private final SoundFont.Zone[] zones;
+    private final double[] positions;
+    private final double[] rates;
+
+    /**
+     * Initializes a newly created {@code Sampler} object with the specified
+     * parameters.
+     *
+     * @param sampleRate the output sample rate, in Hz.
+     * @param voices the number of voices.
+     * @param preset the preset to play.
+     * @param envelope the envelope of the voices.
+     * @param policy the policy used to steal voices.
+     * @throws IllegalArgumentException
+     *         if {@code sampleRate <= 0} or {@code voices < 1}.
+     */
+    public Sampler(float sampleRate, int voices, SoundFont.Preset preset,
+                   Envelope envelope, VoicePool.StealPolicy policy)
+            throws IllegalArgumentException {
+        if (!(sampleRate > 0) || voices < 1) {
+            throw new IllegalArgumentException("Invalid sampler! It needs a "
+                                               + "positive sample rate and "
+                                               + "at least a voice.");
+        }
+
+        this.sampleRate = sampleRate;
+        this.preset = preset;
+        this.samples = preset.getSoundFont().getSamples();
+        this.voices = new Voices(sampleRate, voices, envelope, policy);
+
+        this.zones = new SoundFont.Zone[voices];
+        this.positions = new double[voices];
+        this.rates = new double[voices];
+    }
+
+    /**
+     * Returns the preset of this {@code Sampler}.
+     *
+     * @return the preset of this {@code Sampler}.
+     */
+    public SoundFont.Preset getPreset() {
+        return preset;
+    }
+
+    /**
+     * Returns the number of voices currently sounding.
+     *
+     * @return the number of voices currently sounding.
+     */
+    @Override
+    public int getActiveVoices() {
+        return voices.getActiveVoices();
+    }
+
+    /**
+     * Starts playing the specified note, releasing it when its duration has
+     * elapsed at the specified tempo.
+     *
+     * @param note a specified note.
+     * @param crotchetSeconds the length of a crotchet, in seconds.
+     * @return the number of voices started, one per matching zone.
+     * @see #noteOn(Note note, long gateSamples)
+     */
+    public int noteOn(Note note, double crotchetSeconds) {
+        return noteOn(note, voices.gate(note, crotchetSeconds));
+    }
+
+    /**
+     * Starts playing the specified note, releasing it after the specified
+     * number of samples.
+     *
+     * @param note a specified note.
+     * @param gateSamples the number of samples before the release, or
+     *        {@code -1} to hold the note until {@link #noteOff(int) noteOff}.
+     * @return the number of voices started, one per matching zone.
+     * @throws IllegalArgumentException
+     *         if {@code gateSamples < -1}.
+     */
+    @Override
+    public int noteOn(Note note, long gateSamples)
+            throws IllegalArgumentException {
+        if (gateSamples < -1) {
+            throw new IllegalArgumentException("Invalid gate! It must be a "
+                                               + "non-negative value, or -1.");
+        }
+
+        int key = note.getMIDINumber();
+        int velocity = note.getVolume();
+        double pitch = 69 + 12 * Math.log(note.getFrequency() / 440)
+                       / Math.log(2);
+        float amplitude = (velocity / 127f) * (velocity / 127f);
+        long since = voices.getStarted();
+        int started = 0;
+
+        for (SoundFont.Zone zone : preset.zones()) {
+            if (!zone.matches(key, velocity)) {
+                continue;
+            }
+
+            // The layers of the note never steal each other; with more
+            // layers than voices, the last ones are not played.
+            int v = voices.allocate(since);
+
+            if (v < 0) {
+                break;
+            }
+
+            voices.start(v, key, amplitude * SCALE
+                         * (float) Math.pow(10, -zone.getAttenuation() / 20),
+                         gateSamples);
+            zones[v] = zone;
+            positions[v] = zone.getStart();
+            rates[v] = zone.getPitchRatio(pitch) * zone.getSampleRate()
+                       / sampleRate;
+            started++;
+        }
+
+        return started;
+    }
+
+    /**
+     * Releases the held voices that play the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     */
+    @Override
+    public void noteOff(int midiNumber) {
+        voices.noteOff(midiNumber);
+    }
+
+    /**
+     * Releases all the voices.
+     */
+    @Override
+    public void allNotesOff() {
+        voices.allNotesOff();
+    }
+
+    /**
+     * Silences all the voices at once, without release.
+     */
+    @Override
+    public void reset() {
+        voices.reset();
+        Arrays.fill(zones, null);
+    }
+
+    /**
+     * Renders the next block of samples, adding the voices to the specified
+     * buffer.
+     *
+     * @param out the buffer that receives the samples.
+     * @param offset the index of the first sample of the block.
+     * @param length the number of samples of the block.
+     */
+    @Override
+    public void render(float[] out, int offset, int length) {
+        for (int v = 0; v < zones.length; v++) {
+            if (voices.stage[v] != Voices.IDLE) {
+                renderVoice(v, out, offset, length);
+            }
+        }
+    }
+
+    private void renderVoice(int v, float[] out, int offset, int length) {
+        ShortBuffer s = samples;
+        SoundFont.Zone zone = zones[v];
+        int end = zone.getEnd();
+        int loopStart = zone.getLoopStart();
+        int loopEnd = zone.getLoopEnd();
+        double position = positions[v];
+        double rate = rates[v];
+        float gain = voices.gains[v];
+        float level = voices.levels[v];
+        int i = 0;
+
+        while (i < length && voices.stage[v] != Voices.IDLE) {
+            boolean loop = zone.isLooping()
+                           && !(voices.stage[v] == Voices.RELEASE
+                                && zone.isReleasedToEnd());
+            float step = voices.slope(v);
+            int n = voices.run(v, level, length - i);
+
+            // Reads the sample with a constant envelope slope.
+            for (int k = offset + i, last = k + n; k < last; k++) {
+                int index = (int) position;
+                float fraction = (float) (position - index);
+                int s0 = s.get(index);
+                int s1;
+
+                if (loop && index + 1 >= loopEnd) {
+                    // The loop seam interpolates towards the start of the
+                    // loop.
+                    s1 = s.get(loopStart);
+                } else {
+                    s1 = (index + 1 < end ? s.get(index + 1) : 0);
+                }
+
+                out[k] += (s0 + (s1 - s0) * fraction) * level * gain;
+                level += step;
+                position += rate;
+
+                if (loop) {
+                    if (position >= loopEnd) {
+                        // The rate can exceed the length of the loop.
+                        position = loopStart + (position - loopStart)
+                                               % (loopEnd - loopStart);
+                    }
+                } else if (position >= end) {
+                    // The sample is over before the envelope.
+                    voices.stage[v] = Voices.IDLE;
+                    break;
+                }
+            }
+
+            if (voices.stage[v] == Voices.IDLE) {
+                break;
+            }
+
+            i += n;
+            level = voices.advance(v, level, n);
+        }
+
+        positions[v] = position;
+
+        if (voices.stage[v] == Voices.IDLE) {
+            zones[v] = null;
+        }
+    }
+
+}
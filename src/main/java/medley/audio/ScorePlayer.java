@@ -0,0 +1,162 @@
+package medley.audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import medley.Note;
+import medley.score.ScoreElement;
+import medley.time.TempoMap;
+
+/**
+ * {@code ScorePlayer} class that plays a track of score elements with an
+ * {@link Instrument}, as a {@link Source} of a {@link Mixer}.
+ *
+ * <p>The onset and the length of each note are converted into samples once,
+ * through a {@link TempoMap}, when the player is created; rests are not
+ * played. A block in which no note starts and no voice sounds, e.g. a block
+ * within a span of rests, is reported as silent without rendering.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.Mixer
+ */
+public class ScorePlayer implements Source {
+
+    private final Instrument instrument;
+    private final Note[] notes;
+    private final long[] onsets;
+    private final long[] gates;
+    private final long length;
+
+    private long position;
+    private int next;
+
+    /**
+     * Initializes a newly created {@code ScorePlayer} object with the
+     * specified parameters.
+     *
+     * @param track the score elements to play, in order.
+     * @param tempo the tempo of the track.
+     * @param sampleRate the sample rate, in Hz.
+     * @param instrument the instrument that plays the notes.
+     */
+    public ScorePlayer(List<? extends ScoreElement> track, TempoMap tempo,
+                       float sampleRate, Instrument instrument) {
+        long[] ticks = TempoMap.getOnsets(track);
+        long[] bounds = new long[ticks.length + 1];
+        System.arraycopy(ticks, 0, bounds, 0, ticks.length);
+
+        if (ticks.length > 0) {
+            ScoreElement last = track.get(ticks.length - 1);
+            bounds[ticks.length] = ticks[ticks.length - 1]
+                                   + last.getDuration().getTicks();
+        }
+
+        double[] seconds = new double[bounds.length];
+        tempo.toSeconds(bounds, seconds);
+
+        List<Note> played = new ArrayList<Note>();
+        long[] starts = new long[ticks.length];
+        long[] ends = new long[ticks.length];
+
+        for (int i = 0; i < ticks.length; i++) {
+            ScoreElement element = track.get(i);
+
+            if (element instanceof Note) {
+                starts[played.size()] = Math.round(seconds[i] * sampleRate);
+                ends[played.size()] = Math.round(seconds[i + 1] * sampleRate);
+                played.add((Note) element);
+            }
+        }
+
+        this.instrument = instrument;
+        this.notes = played.toArray(new Note[played.size()]);
+        this.onsets = Arrays.copyOf(starts, notes.length);
+        this.gates = new long[notes.length];
+
+        for (int n = 0; n < notes.length; n++) {
+            gates[n] = ends[n] - starts[n];
+        }
+
+        this.length = Math.round(seconds[bounds.length - 1] * sampleRate);
+    }
+
+    /**
+     * Returns the length of the track, in samples, excluding the release of
+     * its last note.
+     *
+     * @return the length of the track, in samples.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the position of this {@code ScorePlayer}, in samples.
+     *
+     * @return the position of this {@code ScorePlayer}, in samples.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns {@code true} if every note has been played and released.
+     *
+     * @return {@code true} if every note has been played and released;
+     *         {@code false} otherwise.
+     */
+    public boolean isFinished() {
+        return next == notes.length && instrument.getActiveVoices() == 0;
+    }
+
+    /**
+     * Silences the instrument and moves this {@code ScorePlayer} back to the
+     * beginning of the track.
+     */
+    public void rewind() {
+        instrument.reset();
+        position = 0;
+        next = 0;
+    }
+
+    @Override
+    public boolean render(float[] out, int offset, int length) {
+        long end = position + length;
+
+        if ((next == notes.length || onsets[next] >= end)
+                && instrument.getActiveVoices() == 0) {
+            position = end;
+
+            return false;
+        }
+
+        int i = offset;
+        long time = position;
+
+        // Renders up to each onset of the block, then starts its note.
+        while (next < notes.length && onsets[next] < end) {
+            long onset = Math.max(time, onsets[next]);
+
+            if (onset > time) {
+                instrument.render(out, i, (int) (onset - time));
+                i += (int) (onset - time);
+                time = onset;
+            }
+
+            instrument.noteOn(notes[next], gates[next]);
+            next++;
+        }
+
+        if (time < end) {
+            instrument.render(out, i, (int) (end - time));
+        }
+
+        position = end;
+
+        return true;
+    }
+
+}
@@ -0,0 +1,761 @@
+package medley.audio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code SoundFont} class that represents a SoundFont 2 (SF2) bank of sampled
+ * instruments.
+ *
+ * <p>Only the preset data ({@code pdta}) is read and parsed; the sample data
+ * ({@code smpl}) is memory-mapped read-only and never copied, so opening a
+ * large bank takes little time and memory, and its pages are shared by every
+ * {@link Sampler} that plays it, and by other processes mapping the same file.
+ *
+ * <p>Each preset is flattened into a list of {@link Zone}s, that combine the
+ * generators of the preset and instrument levels: key and velocity ranges are
+ * intersected, tuning and attenuation are added. Modulators, envelopes and
+ * filters of the file are ignored, and stereo pairs are reduced to their left
+ * sample, since samplers render a single channel.
+ *
+ * <p>Instances of this class are immutable, and can be shared by threads.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.Sampler
+ */
+public final class SoundFont {
+
+    // Generators.
+    private static final int START_OFFSET = 0;
+    private static final int END_OFFSET = 1;
+    private static final int START_LOOP_OFFSET = 2;
+    private static final int END_LOOP_OFFSET = 3;
+    private static final int START_COARSE_OFFSET = 4;
+    private static final int END_COARSE_OFFSET = 12;
+    private static final int INSTRUMENT = 41;
+    private static final int KEY_RANGE = 43;
+    private static final int VELOCITY_RANGE = 44;
+    private static final int START_LOOP_COARSE_OFFSET = 45;
+    private static final int ATTENUATION = 48;
+    private static final int END_LOOP_COARSE_OFFSET = 50;
+    private static final int COARSE_TUNE = 51;
+    private static final int FINE_TUNE = 52;
+    private static final int SAMPLE = 53;
+    private static final int SAMPLE_MODES = 54;
+    private static final int SCALE_TUNING = 56;
+    private static final int ROOT_KEY = 58;
+    private static final int GENERATORS = 61;
+
+    // Sample types.
+    private static final int RIGHT_SAMPLE = 2;
+    private static final int ROM_SAMPLE = 0x8000;
+
+    private final Path path;
+    private final ShortBuffer samples;
+    private final List<Preset> presets;
+    private final Map<Integer, Preset> index = new HashMap<Integer, Preset>();
+
+    private SoundFont(Path path, ShortBuffer samples, ByteBuffer pdta)
+            throws IOException {
+        this.path = path;
+        this.samples = samples;
+        this.presets = Collections.unmodifiableList(parse(pdta));
+
+        for (Preset preset : presets) {
+            index.put((preset.bank << 7) | preset.program, preset);
+        }
+    }
+
+    /**
+     * Opens the specified SoundFont 2 file.
+     *
+     * @param path a specified SF2 file.
+     * @return the {@code SoundFont} of the file.
+     * @throws IOException
+     *         if the file cannot be read or is not a valid SF2 file.
+     */
+    public static SoundFont open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, 12);
+
+            if (!"RIFF".equals(fourcc(header, 0))
+                    || !"sfbk".equals(fourcc(header, 8))) {
+                throw new IOException("Invalid SoundFont file: " + path);
+            }
+
+            long end = Math.min(channel.size(), 8 + unsigned(header, 4));
+            ShortBuffer samples = null;
+            ByteBuffer pdta = null;
+
+            for (long position = 12; position + 12 <= end;) {
+                ByteBuffer chunk = read(channel, position, 12);
+                long size = unsigned(chunk, 4);
+                String type = fourcc(chunk, 8);
+
+                if ("LIST".equals(fourcc(chunk, 0))) {
+                    if ("sdta".equals(type)) {
+                        samples = mapSamples(channel, position + 12,
+                                             position + 8 + size);
+                    } else if ("pdta".equals(type)) {
+                        pdta = read(channel, position + 12, size - 4);
+                    }
+                }
+
+                position += 8 + size + (size & 1);
+            }
+
+            if (samples == null || pdta == null) {
+                throw new IOException("Invalid SoundFont file: " + path);
+            }
+
+            return new SoundFont(path, samples, pdta);
+        }
+    }
+
+    /**
+     * Returns the file of this {@code SoundFont}.
+     *
+     * @return the file of this {@code SoundFont}.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the presets of this {@code SoundFont}.
+     *
+     * @return an unmodifiable list of the presets of this {@code SoundFont}.
+     */
+    public List<Preset> getPresets() {
+        return presets;
+    }
+
+    /**
+     * Returns the preset with the specified bank and program numbers.
+     *
+     * @param bank a specified bank number.
+     * @param program a specified program number.
+     * @return the preset with the specified bank and program numbers, or
+     *         {@code null} if there is none.
+     */
+    public Preset getPreset(int bank, int program) {
+        return index.get((bank << 7) | program);
+    }
+
+    /**
+     * Returns the number of 16-bit sample frames of this {@code SoundFont}.
+     *
+     * @return the number of sample frames of this {@code SoundFont}.
+     */
+    public int getSampleCount() {
+        return samples.limit();
+    }
+
+    /**
+     * Returns the mapped sample data, for absolute reads only.
+     *
+     * @return the mapped sample data.
+     */
+    ShortBuffer getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns a string representation of this {@code SoundFont}.
+     *
+     * @return a string representation of this {@code SoundFont}.
+     */
+    @Override
+    public String toString() {
+        return path + " (" + presets.size() + " presets)";
+    }
+
+    /**
+     * {@code Preset} class that represents a playable instrument of a
+     * {@link SoundFont}.
+     */
+    public static final class Preset {
+
+        private final SoundFont soundFont;
+        private final String name;
+        private final int bank;
+        private final int program;
+        private final Zone[] zones;
+
+        private Preset(SoundFont soundFont, String name, int bank,
+                       int program, Zone[] zones) {
+            this.soundFont = soundFont;
+            this.name = name;
+            this.bank = bank;
+            this.program = program;
+            this.zones = zones;
+        }
+
+        /**
+         * Returns the {@code SoundFont} of this {@code Preset}.
+         *
+         * @return the {@code SoundFont} of this {@code Preset}.
+         */
+        public SoundFont getSoundFont() {
+            return soundFont;
+        }
+
+        /**
+         * Returns the name of this {@code Preset}.
+         *
+         * @return the name of this {@code Preset}.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the bank number of this {@code Preset}.
+         *
+         * @return the bank number of this {@code Preset}.
+         */
+        public int getBank() {
+            return bank;
+        }
+
+        /**
+         * Returns the program number of this {@code Preset}.
+         *
+         * @return the program number of this {@code Preset}.
+         */
+        public int getProgram() {
+            return program;
+        }
+
+        /**
+         * Returns the zones of this {@code Preset}.
+         *
+         * @return an unmodifiable list of the zones of this {@code Preset}.
+         */
+        public List<Zone> getZones() {
+            return Collections.unmodifiableList(Arrays.asList(zones));
+        }
+
+        /**
+         * Returns the zones of this {@code Preset}, for iteration without
+         * allocation.
+         *
+         * @return the zones of this {@code Preset}.
+         */
+        Zone[] zones() {
+            return zones;
+        }
+
+        /**
+         * Returns a string representation of this {@code Preset}.
+         *
+         * @return a string representation of this {@code Preset}.
+         */
+        @Override
+        public String toString() {
+            return bank + ":" + program + " " + name;
+        }
+
+    }
+
+    /**
+     * {@code Zone} class that maps a key and velocity range of a
+     * {@link Preset} to a sample.
+     */
+    public static final class Zone {
+
+        private final int keyLow;
+        private final int keyHigh;
+        private final int velocityLow;
+        private final int velocityHigh;
+        private final int start;
+        private final int end;
+        private final int loopStart;
+        private final int loopEnd;
+        private final int loopMode;
+        private final int sampleRate;
+        private final int rootKey;
+        private final int scaleTuning;
+        private final int tuning;
+        private final int attenuation;
+
+        private Zone(int[] ranges, int[] generators, int[] sample) {
+            this.keyLow = ranges[0];
+            this.keyHigh = ranges[1];
+            this.velocityLow = ranges[2];
+            this.velocityHigh = ranges[3];
+
+            int[] g = generators;
+
+            this.start = sample[0] + g[START_OFFSET]
+                         + 32768 * g[START_COARSE_OFFSET];
+            this.end = sample[1] + g[END_OFFSET]
+                       + 32768 * g[END_COARSE_OFFSET];
+            this.loopStart = sample[2] + g[START_LOOP_OFFSET]
+                             + 32768 * g[START_LOOP_COARSE_OFFSET];
+            this.loopEnd = sample[3] + g[END_LOOP_OFFSET]
+                           + 32768 * g[END_LOOP_COARSE_OFFSET];
+            this.loopMode = g[SAMPLE_MODES] & 3;
+            this.sampleRate = sample[4];
+            this.rootKey = (g[ROOT_KEY] >= 0 ? g[ROOT_KEY] : sample[5]);
+            this.scaleTuning = g[SCALE_TUNING];
+            this.tuning = 100 * g[COARSE_TUNE] + g[FINE_TUNE] + sample[6];
+            this.attenuation = Math.max(0, g[ATTENUATION]);
+        }
+
+        /**
+         * Returns {@code true} if this {@code Zone} plays the specified key
+         * and velocity.
+         *
+         * @param key a specified MIDI note number.
+         * @param velocity a specified velocity.
+         * @return {@code true} if this {@code Zone} plays the specified key and
+         *         velocity; {@code false} otherwise.
+         */
+        public boolean matches(int key, int velocity) {
+            return key >= keyLow && key <= keyHigh
+                   && velocity >= velocityLow && velocity <= velocityHigh;
+        }
+
+        /**
+         * Returns the lowest key of this {@code Zone}.
+         *
+         * @return the lowest key of this {@code Zone}.
+         */
+        public int getKeyLow() {
+            return keyLow;
+        }
+
+        /**
+         * Returns the highest key of this {@code Zone}.
+         *
+         * @return the highest key of this {@code Zone}.
+         */
+        public int getKeyHigh() {
+            return keyHigh;
+        }
+
+        /**
+         * Returns the lowest velocity of this {@code Zone}.
+         *
+         * @return the lowest velocity of this {@code Zone}.
+         */
+        public int getVelocityLow() {
+            return velocityLow;
+        }
+
+        /**
+         * Returns the highest velocity of this {@code Zone}.
+         *
+         * @return the highest velocity of this {@code Zone}.
+         */
+        public int getVelocityHigh() {
+            return velocityHigh;
+        }
+
+        /**
+         * Returns the index of the first sample frame of this {@code Zone}.
+         *
+         * @return the index of the first sample frame of this {@code Zone}.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the index past the last sample frame of this {@code Zone}.
+         *
+         * @return the index past the last sample frame of this {@code Zone}.
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Returns the index of the first sample frame of the loop.
+         *
+         * @return the index of the first sample frame of the loop.
+         */
+        public int getLoopStart() {
+            return loopStart;
+        }
+
+        /**
+         * Returns the index past the last sample frame of the loop.
+         *
+         * @return the index past the last sample frame of the loop.
+         */
+        public int getLoopEnd() {
+            return loopEnd;
+        }
+
+        /**
+         * Returns {@code true} if the sample loops while the note is held.
+         * A zone whose loop points do not lie within its sample does not
+         * loop.
+         *
+         * @return {@code true} if the sample loops while the note is held;
+         *         {@code false} otherwise.
+         */
+        public boolean isLooping() {
+            // Loop points outside the sample make the zone play once.
+            return (loopMode == 1 || loopMode == 3) && start <= loopStart
+                   && loopStart < loopEnd && loopEnd <= end;
+        }
+
+        /**
+         * Returns {@code true} if the sample stops looping and plays until its
+         * end when the note is released.
+         *
+         * @return {@code true} if the sample plays until its end when the note
+         *         is released; {@code false} otherwise.
+         */
+        public boolean isReleasedToEnd() {
+            return loopMode == 3;
+        }
+
+        /**
+         * Returns the sample rate of the sample, in Hz.
+         *
+         * @return the sample rate of the sample, in Hz.
+         */
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        /**
+         * Returns the key at which the sample plays at its original pitch.
+         *
+         * @return the root key of this {@code Zone}.
+         */
+        public int getRootKey() {
+            return rootKey;
+        }
+
+        /**
+         * Returns the attenuation of this {@code Zone}, in dB.
+         *
+         * @return the attenuation of this {@code Zone}, in dB.
+         */
+        public double getAttenuation() {
+            return attenuation / 10.0;
+        }
+
+        /**
+         * Returns the playback rate of the sample for the specified key, that
+         * may be fractional, relative to its sample rate.
+         *
+         * @param key a specified, possibly fractional, MIDI note number.
+         * @return the playback rate of the sample for the specified key.
+         */
+        public double getPitchRatio(double key) {
+            double cents = (key - rootKey) * scaleTuning + tuning;
+
+            return Math.pow(2, cents / 1200);
+        }
+
+        /**
+         * Returns a string representation of this {@code Zone}.
+         *
+         * @return a string representation of this {@code Zone}.
+         */
+        @Override
+        public String toString() {
+            return "keys " + keyLow + "-" + keyHigh + ", velocities "
+                   + velocityLow + "-" + velocityHigh + ", root " + rootKey;
+        }
+
+    }
+
+    // Parsing.
+
+    private static ShortBuffer mapSamples(FileChannel channel, long from,
+                                          long to) throws IOException {
+        for (long position = from; position + 8 <= to;) {
+            ByteBuffer chunk = read(channel, position, 8);
+            long size = unsigned(chunk, 4);
+
+            if ("smpl".equals(fourcc(chunk, 0))) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Sample data too large: " + size
+                                          + " bytes.");
+                }
+
+                return channel.map(FileChannel.MapMode.READ_ONLY,
+                                   position + 8, size)
+                              .order(ByteOrder.LITTLE_ENDIAN)
+                              .asShortBuffer();
+            }
+
+            position += 8 + size + (size & 1);
+        }
+
+        return null;
+    }
+
+    private List<Preset> parse(ByteBuffer pdta) throws IOException {
+        Map<String, ByteBuffer> chunks = new HashMap<String, ByteBuffer>();
+
+        for (int position = 0; position + 8 <= pdta.limit();) {
+            String id = fourcc(pdta, position);
+            int size = pdta.getInt(position + 4);
+
+            if (size < 0 || position + 8 + size > pdta.limit()) {
+                throw new IOException("Invalid SoundFont file: " + path);
+            }
+
+            ByteBuffer chunk = pdta.duplicate();
+            chunk.position(position + 8).limit(position + 8 + size);
+            chunks.put(id, chunk.slice().order(ByteOrder.LITTLE_ENDIAN));
+
+            position += 8 + size + (size & 1);
+        }
+
+        String[] required = {"phdr", "pbag", "pgen", "inst", "ibag", "igen",
+                             "shdr"};
+
+        for (String id : required) {
+            if (!chunks.containsKey(id)) {
+                throw new IOException("Invalid SoundFont file: " + path
+                                      + " (no " + id + " chunk).");
+            }
+        }
+
+        ByteBuffer phdr = chunks.get("phdr");
+        ByteBuffer pbag = chunks.get("pbag");
+        ByteBuffer pgen = chunks.get("pgen");
+        ByteBuffer inst = chunks.get("inst");
+        ByteBuffer ibag = chunks.get("ibag");
+        ByteBuffer igen = chunks.get("igen");
+        ByteBuffer shdr = chunks.get("shdr");
+
+        int presetCount = phdr.limit() / 38 - 1;
+        List<Preset> result = new ArrayList<Preset>(Math.max(0, presetCount));
+
+        for (int p = 0; p < presetCount; p++) {
+            int record = p * 38;
+            String name = string(phdr, record, 20);
+            int program = phdr.getShort(record + 20) & 0xFFFF;
+            int bank = phdr.getShort(record + 22) & 0xFFFF;
+            int firstBag = phdr.getShort(record + 24) & 0xFFFF;
+            int lastBag = phdr.getShort(record + 38 + 24) & 0xFFFF;
+
+            if (firstBag > lastBag || lastBag * 4 + 4 > pbag.limit()) {
+                throw new IOException("Invalid SoundFont file: " + path
+                                      + " (preset " + p + ").");
+            }
+
+            List<Zone> zones = new ArrayList<Zone>();
+            int[] global = presetDefaults();
+
+            for (int b = firstBag; b < lastBag; b++) {
+                int[] g = global.clone();
+                boolean hasInstrument = applyGenerators(pbag, pgen, b, g);
+
+                if (!hasInstrument) {
+                    if (b == firstBag) {
+                        global = g;
+                    }
+
+                    continue;
+                }
+
+                addInstrument(zones, g, inst, ibag, igen, shdr);
+            }
+
+            result.add(new Preset(this, name, bank, program,
+                                  zones.toArray(new Zone[zones.size()])));
+        }
+
+        return result;
+    }
+
+    private void addInstrument(List<Zone> zones, int[] preset,
+                               ByteBuffer inst, ByteBuffer ibag,
+                               ByteBuffer igen, ByteBuffer shdr)
+            throws IOException {
+        int i = preset[INSTRUMENT];
+
+        if ((i + 1) * 22 + 22 > inst.limit()) {
+            throw new IOException("Invalid SoundFont file: " + path
+                                  + " (instrument " + i + ").");
+        }
+
+        int firstBag = inst.getShort(i * 22 + 20) & 0xFFFF;
+        int lastBag = inst.getShort((i + 1) * 22 + 20) & 0xFFFF;
+
+        if (firstBag > lastBag || lastBag * 4 + 4 > ibag.limit()) {
+            throw new IOException("Invalid SoundFont file: " + path
+                                  + " (instrument " + i + ").");
+        }
+        int[] global = instrumentDefaults();
+
+        for (int b = firstBag; b < lastBag; b++) {
+            int[] g = global.clone();
+            boolean hasSample = applyGenerators(ibag, igen, b, g);
+
+            if (!hasSample) {
+                if (b == firstBag) {
+                    global = g;
+                }
+
+                continue;
+            }
+
+            int record = g[SAMPLE] * 46;
+
+            if (record + 46 > shdr.limit()) {
+                throw new IOException("Invalid SoundFont file: " + path
+                                      + " (sample " + g[SAMPLE] + ").");
+            }
+
+            int type = shdr.getShort(record + 44) & 0xFFFF;
+
+            if ((type & (RIGHT_SAMPLE | ROM_SAMPLE)) != 0) {
+                continue;
+            }
+
+            int[] ranges = {
+                Math.max(g[KEY_RANGE] & 0xFF, preset[KEY_RANGE] & 0xFF),
+                Math.min(g[KEY_RANGE] >>> 8, preset[KEY_RANGE] >>> 8),
+                Math.max(g[VELOCITY_RANGE] & 0xFF,
+                         preset[VELOCITY_RANGE] & 0xFF),
+                Math.min(g[VELOCITY_RANGE] >>> 8,
+                         preset[VELOCITY_RANGE] >>> 8)
+            };
+
+            if (ranges[0] > ranges[1] || ranges[2] > ranges[3]) {
+                continue;
+            }
+
+            int[] sample = {
+                shdr.getInt(record + 20),
+                shdr.getInt(record + 24),
+                shdr.getInt(record + 28),
+                shdr.getInt(record + 32),
+                shdr.getInt(record + 36),
+                shdr.get(record + 40) & 0xFF,
+                shdr.get(record + 41)
+            };
+
+            // Preset generators are relative to the instrument ones.
+            g[ATTENUATION] += preset[ATTENUATION];
+            g[COARSE_TUNE] += preset[COARSE_TUNE];
+            g[FINE_TUNE] += preset[FINE_TUNE];
+
+            Zone zone = new Zone(ranges, g, sample);
+
+            if (zone.start >= 0 && zone.start < zone.end
+                    && zone.end <= samples.limit()) {
+                zones.add(zone);
+            }
+        }
+    }
+
+    // Applies the generators of bag b to g, and returns true if the last one
+    // is an instrument or a sample, i.e. the bag is not a global zone.
+    private static boolean applyGenerators(ByteBuffer bags,
+                                           ByteBuffer generators, int b,
+                                           int[] g) {
+        int first = bags.getShort(b * 4) & 0xFFFF;
+        int last = bags.getShort(b * 4 + 4) & 0xFFFF;
+        boolean terminal = false;
+
+        for (int k = first; k < last && k * 4 + 4 <= generators.limit();
+                k++) {
+            int operator = generators.getShort(k * 4) & 0xFFFF;
+            int amount = generators.getShort(k * 4 + 2);
+
+            if (operator >= GENERATORS) {
+                continue;
+            }
+
+            switch (operator) {
+                case KEY_RANGE:
+                case VELOCITY_RANGE:
+                case INSTRUMENT:
+                case SAMPLE:
+                    g[operator] = amount & 0xFFFF;
+                    break;
+                default:
+                    g[operator] = amount;
+                    break;
+            }
+
+            terminal = (operator == INSTRUMENT || operator == SAMPLE);
+        }
+
+        return terminal;
+    }
+
+    private static int[] presetDefaults() {
+        int[] g = new int[GENERATORS];
+        g[KEY_RANGE] = 127 << 8;
+        g[VELOCITY_RANGE] = 127 << 8;
+
+        return g;
+    }
+
+    private static int[] instrumentDefaults() {
+        int[] g = presetDefaults();
+        g[SCALE_TUNING] = 100;
+        g[ROOT_KEY] = -1;
+
+        return g;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position,
+                                   long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid chunk size: " + length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private static long unsigned(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+
+    private static String fourcc(ByteBuffer buffer, int index) {
+        return string(buffer, index, 4);
+    }
+
+    private static String string(ByteBuffer buffer, int index, int length) {
+        byte[] bytes = new byte[length];
+        int n = 0;
+
+        while (n < length && buffer.get(index + n) != 0) {
+            bytes[n] = buffer.get(index + n);
+            n++;
+        }
+
+        return new String(bytes, 0, n, StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,27 @@
+package medley.audio;
+
+/**
+ * {@code Source} interface that models a stream of audio, rendered block by
+ * block, that feeds a track of a {@link Mixer}.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.ScorePlayer
+ */
+public interface Source {
+
+    /**
+     * Renders the next block of samples, adding them to the specified buffer.
+     *
+     * <p>A source that knows that the block is silent, e.g. because it spans
+     * rests only, should return {@code false} without touching the buffer,
+     * so that the mixer skips its track.
+     *
+     * @param out the buffer that receives the samples.
+     * @param offset the index of the first sample of the block.
+     * @param length the number of samples of the block.
+     * @return {@code true} if samples were added to the buffer; {@code false}
+     *         if the block is silent.
+     */
+    boolean render(float[] out, int offset, int length);
+
+}
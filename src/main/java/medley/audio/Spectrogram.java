@@ -0,0 +1,217 @@
+package medley.audio;
+
+/**
+ * {@code Spectrogram} class that computes the short-time Fourier transform of
+ * a stream of samples.
+ *
+ * <p>Samples are pushed in blocks of any length; every {@code hopSize}
+ * samples, once the first frame is full, the last {@code frameSize} samples
+ * are weighted by a Hann window and transformed, and the magnitudes of the
+ * {@code frameSize / 2 + 1} bins are passed to a {@link Listener}. The FFT
+ * plan, the window and the frame buffers are allocated once, so streaming
+ * does not allocate, and memory does not grow with the length of the stream.
+ *
+ * <p>This class is not synchronized; spectrograms of different streams can
+ * share an {@link FFT} plan.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.Chromagram
+ */
+public class Spectrogram {
+
+    /**
+     * {@code Listener} interface that receives the frames of a stream.
+     */
+    public interface Listener {
+
+        /**
+         * Receives the specified frame. The array is reused for the next
+         * frame, so it must be copied to be kept.
+         *
+         * @param index the index of the frame, starting from {@code 0}.
+         * @param values the values of the frame.
+         */
+        void frame(long index, double[] values);
+
+    }
+
+    private final FFT fft;
+    private final int hopSize;
+    private final double[] window;
+    private final float[] history;
+    private final double[] re;
+    private final double[] im;
+    private final double[] magnitudes;
+
+    private int position;
+    private long samples;
+    private long frames;
+
+    /**
+     * Initializes a newly created {@code Spectrogram} object with the
+     * specified frame and hop sizes.
+     *
+     * @param frameSize the number of samples of a frame, a power of two.
+     * @param hopSize the number of samples between two frames.
+     * @throws IllegalArgumentException
+     *         if the frame size is not a power of two, or the hop size is not
+     *         positive.
+     */
+    public Spectrogram(int frameSize, int hopSize)
+            throws IllegalArgumentException {
+        this(new FFT(frameSize), hopSize);
+    }
+
+    /**
+     * Initializes a newly created {@code Spectrogram} object with the
+     * specified FFT plan and hop size.
+     *
+     * @param fft the FFT plan, whose size is the frame size.
+     * @param hopSize the number of samples between two frames.
+     * @throws IllegalArgumentException
+     *         if the hop size is not positive.
+     */
+    public Spectrogram(FFT fft, int hopSize) throws IllegalArgumentException {
+        if (hopSize < 1) {
+            throw new IllegalArgumentException("Invalid hop size! It must be "
+                                               + "positive.");
+        }
+
+        int n = fft.getSize();
+
+        this.fft = fft;
+        this.hopSize = hopSize;
+        this.window = new double[n];
+        this.history = new float[n];
+        this.re = new double[n];
+        this.im = new double[n];
+        this.magnitudes = new double[n / 2 + 1];
+
+        for (int i = 0; i < n; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / n);
+        }
+    }
+
+    /**
+     * Returns the FFT plan of this {@code Spectrogram}.
+     *
+     * @return the FFT plan of this {@code Spectrogram}.
+     */
+    public FFT getFFT() {
+        return fft;
+    }
+
+    /**
+     * Returns the number of samples of a frame.
+     *
+     * @return the number of samples of a frame.
+     */
+    public int getFrameSize() {
+        return fft.getSize();
+    }
+
+    /**
+     * Returns the number of samples between two frames.
+     *
+     * @return the number of samples between two frames.
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * Returns the number of bins of a frame.
+     *
+     * @return the number of bins of a frame.
+     */
+    public int getBins() {
+        return magnitudes.length;
+    }
+
+    /**
+     * Returns the center frequency of the specified bin.
+     *
+     * @param bin a specified bin.
+     * @param sampleRate the sample rate of the stream, in Hz.
+     * @return the center frequency of the bin, in Hz.
+     */
+    public double getFrequency(int bin, float sampleRate) {
+        return (double) bin * sampleRate / fft.getSize();
+    }
+
+    /**
+     * Returns the number of frames computed since the beginning of the
+     * stream.
+     *
+     * @return the number of frames computed.
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Pushes the specified samples, passing the frames they complete to the
+     * specified listener.
+     *
+     * @param buffer the buffer that contains the samples.
+     * @param offset the index of the first sample.
+     * @param length the number of samples.
+     * @param listener the listener that receives the frames.
+     */
+    public void process(float[] buffer, int offset, int length,
+                        Listener listener) {
+        int n = history.length;
+        int i = offset;
+        int end = offset + length;
+
+        while (i < end) {
+            // Samples missing to the next frame.
+            long due = (samples < n ? n - samples
+                                    : hopSize - (samples - n) % hopSize);
+            int count = (int) Math.min(due, end - i);
+            int first = Math.min(count, n - position);
+
+            System.arraycopy(buffer, i, history, position, first);
+            System.arraycopy(buffer, i + first, history, 0, count - first);
+
+            position = (position + count) % n;
+            samples += count;
+            i += count;
+
+            if (count == due) {
+                compute();
+                listener.frame(frames++, magnitudes);
+            }
+        }
+    }
+
+    /**
+     * Clears the samples of this {@code Spectrogram}, to start a new stream.
+     */
+    public void reset() {
+        position = 0;
+        samples = 0;
+        frames = 0;
+    }
+
+    private void compute() {
+        int n = history.length;
+
+        // The oldest sample is at position.
+        for (int k = 0, p = position; k < n; k++) {
+            re[k] = history[p] * window[k];
+            im[k] = 0;
+
+            if (++p == n) {
+                p = 0;
+            }
+        }
+
+        fft.transform(re, im);
+
+        for (int k = 0; k < magnitudes.length; k++) {
+            magnitudes[k] = Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+package medley.audio;
+
+import medley.Note;
+
+/**
+ * {@code VoicePool} class that renders overlapping notes with a fixed number
+ * of preallocated synthesizer voices.
+ *
+ * <p>Each voice is a wavetable oscillator shaped by an ADSR {@link Envelope}.
+ * A note-on takes a free voice; when every voice is busy, a voice is stolen
+ * according to the {@link StealPolicy}, and its envelope restarts from its
+ * current level to avoid clicks. The gain of a voice is the volume of its note
+ * divided by {@code 127}, and the note is released when its duration has
+ * elapsed.
+ *
+ * <p>The state of the voices is kept in primitive arrays, so note-ons do not
+ * allocate, and {@link #render(float[], int, int) render} processes a block of
+ * samples voice by voice, in runs of samples between envelope stage changes.
+ *
+ * <p>This class is not synchronized: note-ons and rendering must happen on the
+ * same thread, e.g. the audio thread.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.Envelope
+ */
+public class VoicePool implements Instrument {
+
+    /**
+     * Waveforms of the oscillators.
+     */
+    public enum Waveform {
+        /**
+         * Sine wave.
+         */
+        SINE,
+
+        /**
+         * Triangle wave.
+         */
+        TRIANGLE,
+
+        /**
+         * Sawtooth wave.
+         */
+        SAWTOOTH,
+
+        /**
+         * Square wave.
+         */
+        SQUARE
+    }
+
+    /**
+     * Policies used to choose the voice to steal when every voice is busy.
+     */
+    public enum StealPolicy {
+        /**
+         * Steals the voice that started first.
+         */
+        OLDEST,
+
+        /**
+         * Steals the voice with the lowest current amplitude.
+         */
+        QUIETEST
+    }
+
+    private static final int TABLE_BITS = 11;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    private final float sampleRate;
+    private final float[] table = new float[TABLE_SIZE + 1];
+    private final Voices voices;
+
+    // Oscillator state, per voice.
+    private final double[] phases;
+    private final double[] increments;
+
+    /**
+     * Initializes a newly created {@code VoicePool} object with the specified
+     * parameters.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param voices the number of voices.
+     * @param waveform the waveform of the oscillators.
+     * @param envelope the envelope of the voices.
+     * @param policy the policy used to steal voices.
+     * @throws IllegalArgumentException
+     *         if {@code sampleRate <= 0} or {@code voices < 1}.
+     */
+    public VoicePool(float sampleRate, int voices, Waveform waveform,
+                     Envelope envelope, StealPolicy policy)
+            throws IllegalArgumentException {
+        if (!(sampleRate > 0) || voices < 1) {
+            throw new IllegalArgumentException("Invalid voice pool! It needs "
+                                               + "a positive sample rate and "
+                                               + "at least a voice.");
+        }
+
+        this.sampleRate = sampleRate;
+        this.voices = new Voices(sampleRate, voices, envelope, policy);
+        this.phases = new double[voices];
+        this.increments = new double[voices];
+
+        fill(table, waveform);
+    }
+
+    /**
+     * Returns the number of voices of this {@code VoicePool}.
+     *
+     * @return the number of voices of this {@code VoicePool}.
+     */
+    public int getVoices() {
+        return phases.length;
+    }
+
+    /**
+     * Returns the number of voices currently sounding.
+     *
+     * @return the number of voices currently sounding.
+     */
+    @Override
+    public int getActiveVoices() {
+        return voices.getActiveVoices();
+    }
+
+    /**
+     * Starts playing the specified note, releasing it when its duration has
+     * elapsed at the specified tempo.
+     *
+     * @param note a specified note.
+     * @param crotchetSeconds the length of a crotchet, in seconds.
+     * @return the number of voices started, i.e. {@code 1}.
+     * @see #noteOn(Note note, long gateSamples)
+     */
+    public int noteOn(Note note, double crotchetSeconds) {
+        return noteOn(note, voices.gate(note, crotchetSeconds));
+    }
+
+    /**
+     * Starts playing the specified note, releasing it after the specified
+     * number of samples.
+     *
+     * @param note a specified note.
+     * @param gateSamples the number of samples before the release, or
+     *        {@code -1} to hold the note until {@link #noteOff(int) noteOff}.
+     * @return the number of voices started, i.e. {@code 1}.
+     * @throws IllegalArgumentException
+     *         if {@code gateSamples < -1}.
+     */
+    @Override
+    public int noteOn(Note note, long gateSamples)
+            throws IllegalArgumentException {
+        if (gateSamples < -1) {
+            throw new IllegalArgumentException("Invalid gate! It must be a "
+                                               + "non-negative value, or -1.");
+        }
+
+        int v = voices.allocate(voices.getStarted());
+
+        // A stolen voice keeps its phase, to avoid clicks.
+        if (voices.stage[v] == Voices.IDLE) {
+            phases[v] = 0;
+        }
+
+        voices.start(v, note.getMIDINumber(), note.getVolume() / 127f,
+                     gateSamples);
+        increments[v] = note.getFrequency() / sampleRate;
+
+        return 1;
+    }
+
+    /**
+     * Releases the held voices that play the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     */
+    @Override
+    public void noteOff(int midiNumber) {
+        voices.noteOff(midiNumber);
+    }
+
+    /**
+     * Releases all the voices.
+     */
+    @Override
+    public void allNotesOff() {
+        voices.allNotesOff();
+    }
+
+    /**
+     * Silences all the voices at once, without release.
+     */
+    @Override
+    public void reset() {
+        voices.reset();
+    }
+
+    /**
+     * Renders the next block of samples, adding the voices to the specified
+     * buffer.
+     *
+     * @param out the buffer that receives the samples.
+     * @param offset the index of the first sample of the block.
+     * @param length the number of samples of the block.
+     */
+    @Override
+    public void render(float[] out, int offset, int length) {
+        for (int v = 0; v < phases.length; v++) {
+            if (voices.stage[v] != Voices.IDLE) {
+                renderVoice(v, out, offset, length);
+            }
+        }
+    }
+
+    private void renderVoice(int v, float[] out, int offset, int length) {
+        float[] t = table;
+        double phase = phases[v];
+        double increment = increments[v];
+        float gain = voices.gains[v];
+        float level = voices.levels[v];
+        int i = 0;
+
+        while (i < length && voices.stage[v] != Voices.IDLE) {
+            float step = voices.slope(v);
+            int n = voices.run(v, level, length - i);
+
+            // Runs the oscillator with a constant envelope slope.
+            for (int k = offset + i, end = k + n; k < end; k++) {
+                double position = phase * TABLE_SIZE;
+                int index = (int) position;
+                float fraction = (float) (position - index);
+                float sample = t[index] + (t[index + 1] - t[index]) * fraction;
+
+                out[k] += sample * level * gain;
+                level += step;
+                phase += increment;
+
+                // Above the Nyquist frequency the increment exceeds a
+                // whole cycle, so a single subtraction is not enough.
+                if (phase >= 1) {
+                    phase -= Math.floor(phase);
+                }
+            }
+
+            i += n;
+            level = voices.advance(v, level, n);
+        }
+
+        phases[v] = phase;
+    }
+
+    private static void fill(float[] table, Waveform waveform) {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            double x = (double) (i % TABLE_SIZE) / TABLE_SIZE;
+            double value;
+
+            switch (waveform) {
+                case TRIANGLE:
+                    value = 1 - 4 * Math.abs(x - 0.5);
+                    break;
+                case SAWTOOTH:
+                    value = 2 * x - 1;
+                    break;
+                case SQUARE:
+                    value = (x < 0.5 ? 1 : -1);
+                    break;
+                default:
+                    value = Math.sin(2 * Math.PI * x);
+                    break;
+            }
+
+            table[i] = (float) value;
+        }
+    }
+
+}
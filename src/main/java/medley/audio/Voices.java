@@ -0,0 +1,340 @@
+package medley.audio;
+
+import java.util.Arrays;
+
+import medley.Note;
+
+/**
+ * {@code Voices} class that allocates a fixed number of preallocated voices
+ * and drives their ADSR {@link Envelope}s, for the instruments that render
+ * them.
+ *
+ * <p>The state of the voices is kept in primitive arrays, indexed by voice.
+ * An instrument renders a voice in runs of samples with a constant envelope
+ * slope: {@link #slope(int) slope} and {@link #run(int, float, int) run}
+ * describe the next run, and {@link #advance(int, float, int) advance} moves
+ * the envelope past it.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.audio.VoicePool
+ * @see medley.audio.Sampler
+ */
+final class Voices {
+
+    static final int IDLE = 0;
+    static final int ATTACK = 1;
+    static final int DECAY = 2;
+    static final int SUSTAIN = 3;
+    static final int RELEASE = 4;
+
+    private final float sampleRate;
+    private final VoicePool.StealPolicy policy;
+
+    private final float attackStep;
+    private final float decayStep;
+    private final float sustain;
+    private final float releaseSamples;
+
+    // Voice state.
+    final int[] stage;
+    final int[] pitches;
+    final float[] gains;
+    final float[] levels;
+    private final float[] releaseSteps;
+    private final long[] gates;
+    private final long[] starts;
+    private long started;
+
+    /**
+     * Initializes a newly created {@code Voices} object with the specified
+     * parameters.
+     *
+     * @param sampleRate the sample rate, in Hz.
+     * @param voices the number of voices.
+     * @param envelope the envelope of the voices.
+     * @param policy the policy used to steal voices.
+     */
+    Voices(float sampleRate, int voices, Envelope envelope,
+           VoicePool.StealPolicy policy) {
+        this.sampleRate = sampleRate;
+        this.policy = policy;
+
+        this.attackStep = step(1, envelope.getAttack());
+        this.sustain = (float) envelope.getSustain();
+        this.decayStep = step(1 - sustain, envelope.getDecay());
+        this.releaseSamples = (float) (envelope.getRelease() * sampleRate);
+
+        this.stage = new int[voices];
+        this.pitches = new int[voices];
+        this.gains = new float[voices];
+        this.levels = new float[voices];
+        this.releaseSteps = new float[voices];
+        this.gates = new long[voices];
+        this.starts = new long[voices];
+    }
+
+    /**
+     * Returns the number of samples of the specified note at the specified
+     * tempo.
+     *
+     * @param note a specified note.
+     * @param crotchetSeconds the length of a crotchet, in seconds.
+     * @return the number of samples of the note.
+     */
+    long gate(Note note, double crotchetSeconds) {
+        double seconds = note.getDurationValue() * 4 * crotchetSeconds;
+
+        return Math.round(seconds * sampleRate);
+    }
+
+    /**
+     * Returns the number of voices started so far, that identifies the next
+     * one.
+     *
+     * @return the number of voices started so far.
+     */
+    long getStarted() {
+        return started;
+    }
+
+    /**
+     * Returns a free voice, or the voice to steal according to the policy.
+     * Voices started since the specified one are never stolen, so the layers
+     * of a note do not steal each other.
+     *
+     * @param since the first voice start, as returned by
+     *        {@link #getStarted() getStarted}, that must not be stolen.
+     * @return the chosen voice, or {@code -1} if every voice is busy with
+     *         the current note.
+     */
+    int allocate(long since) {
+        int chosen = -1;
+        float quietest = Float.MAX_VALUE;
+        long oldest = Long.MAX_VALUE;
+
+        for (int v = 0; v < stage.length; v++) {
+            if (stage[v] == IDLE) {
+                return v;
+            }
+
+            if (starts[v] >= since) {
+                continue;
+            }
+
+            float amplitude = levels[v] * gains[v];
+
+            if (policy == VoicePool.StealPolicy.QUIETEST ? amplitude < quietest
+                                                         : starts[v] < oldest) {
+                chosen = v;
+                quietest = amplitude;
+                oldest = starts[v];
+            }
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Starts the envelope of the specified voice. A stolen voice restarts its
+     * attack from its current level.
+     *
+     * @param v a specified voice.
+     * @param pitch the MIDI note number played by the voice.
+     * @param gain the gain of the voice.
+     * @param gateSamples the number of samples before the release, or
+     *        {@code -1} to hold the voice.
+     */
+    void start(int v, int pitch, float gain, long gateSamples) {
+        if (stage[v] == IDLE) {
+            levels[v] = 0;
+        }
+
+        stage[v] = ATTACK;
+        pitches[v] = pitch;
+        gains[v] = gain;
+        gates[v] = gateSamples;
+        starts[v] = started++;
+    }
+
+    /**
+     * Returns the number of voices currently sounding.
+     *
+     * @return the number of voices currently sounding.
+     */
+    int getActiveVoices() {
+        int active = 0;
+
+        for (int s : stage) {
+            if (s != IDLE) {
+                active++;
+            }
+        }
+
+        return active;
+    }
+
+    /**
+     * Releases the held voices that play the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     */
+    void noteOff(int midiNumber) {
+        for (int v = 0; v < stage.length; v++) {
+            if (pitches[v] == midiNumber && stage[v] != IDLE
+                    && stage[v] != RELEASE) {
+                release(v);
+            }
+        }
+    }
+
+    /**
+     * Releases all the voices.
+     */
+    void allNotesOff() {
+        for (int v = 0; v < stage.length; v++) {
+            if (stage[v] != IDLE && stage[v] != RELEASE) {
+                release(v);
+            }
+        }
+    }
+
+    /**
+     * Silences all the voices at once, without release.
+     */
+    void reset() {
+        Arrays.fill(stage, IDLE);
+        Arrays.fill(levels, 0);
+    }
+
+    /**
+     * Returns the envelope slope of the specified voice in its current
+     * stage.
+     *
+     * @param v a specified voice.
+     * @return the change of the level per sample.
+     */
+    float slope(int v) {
+        switch (stage[v]) {
+            case ATTACK:
+                return attackStep;
+            case DECAY:
+                return -decayStep;
+            case RELEASE:
+                return -releaseSteps[v];
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the number of samples of the specified voice before its next
+     * stage change, or its release, up to the specified maximum.
+     *
+     * @param v a specified voice.
+     * @param level the current level of the voice.
+     * @param max the maximum number of samples.
+     * @return the number of samples of the run.
+     */
+    int run(int v, float level, int max) {
+        int s = stage[v];
+        int n = max;
+
+        switch (s) {
+            case ATTACK:
+                n = Math.min(n, samples(1 - level, attackStep));
+                break;
+            case DECAY:
+                n = Math.min(n, samples(level - sustain, decayStep));
+                break;
+            case RELEASE:
+                n = Math.min(n, samples(level, releaseSteps[v]));
+                break;
+            default:
+                break;
+        }
+
+        if (s != RELEASE && gates[v] >= 0) {
+            n = (int) Math.min(n, gates[v]);
+        }
+
+        return n;
+    }
+
+    /**
+     * Moves the specified voice past a run of samples, to its next envelope
+     * stage if the current one is over.
+     *
+     * @param v a specified voice.
+     * @param level the level of the voice at the end of the run.
+     * @param n the number of samples of the run.
+     * @return the level of the voice.
+     */
+    float advance(int v, float level, int n) {
+        int s = stage[v];
+
+        if (s != RELEASE && gates[v] >= 0) {
+            gates[v] -= n;
+        }
+
+        levels[v] = level;
+
+        if (s != RELEASE && gates[v] == 0) {
+            release(v);
+
+            return levels[v];
+        }
+
+        switch (s) {
+            case ATTACK:
+                if (level >= 1) {
+                    stage[v] = DECAY;
+                    level = 1;
+                }
+                break;
+            case DECAY:
+                if (level <= sustain) {
+                    stage[v] = SUSTAIN;
+                    level = sustain;
+                }
+                break;
+            case RELEASE:
+                if (level <= 0) {
+                    stage[v] = IDLE;
+                    level = 0;
+                }
+                break;
+            default:
+                break;
+        }
+
+        levels[v] = level;
+
+        return level;
+    }
+
+    private void release(int v) {
+        stage[v] = RELEASE;
+        releaseSteps[v] = (releaseSamples >= 1 ? levels[v] / releaseSamples
+                                               : Float.MAX_VALUE);
+    }
+
+    private float step(double range, double seconds) {
+        double samples = seconds * sampleRate;
+
+        return (float) (samples >= 1 ? range / samples : range);
+    }
+
+    // Returns the number of samples needed to cover the specified distance.
+    private static int samples(float distance, float step) {
+        if (distance <= 0) {
+            return 0;
+        }
+
+        double n = Math.ceil(distance / step);
+
+        return (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+}
@@ -0,0 +1,10 @@
+/**
+ * Package that contains classes used to render and process audio.
+ *
+ * <p>Audio is processed in blocks of {@code float} samples, normally between
+ * {@code -1} and {@code 1}. Classes of this package preallocate their state,
+ * so processing a block does not allocate.
+ *
+ * @author Salvatore Gentile
+ */
+package medley.audio;
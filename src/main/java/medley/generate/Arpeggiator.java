@@ -0,0 +1,315 @@
+package medley.generate;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import medley.Duration;
+import medley.Duration.Value;
+import medley.Note;
+
+/**
+ * {@code Arpeggiator} class that expands chords into arpeggios, following a
+ * direction and a rhythm pattern.
+ *
+ * <p>A chord is a list of notes played together, and lasts as long as its
+ * longest note. Each chord is expanded into a sequence of single notes that
+ * fills its length: the durations of the notes follow the rhythm pattern,
+ * restarting at each chord, and the last note is shortened, if needed, so
+ * that it does not exceed the chord.
+ *
+ * <p>Expansion is lazy: chords are read from their source only when the
+ * notes of the previous chord have been consumed, and the notes of a chord
+ * are created one at a time. An endless progression can therefore be
+ * expanded into an endless stream, e.g. to feed a renderer.
+ *
+ * <p>Instances of this class are immutable.
+ *
+ * @author Salvatore Gentile
+ */
+public final class Arpeggiator {
+
+    /**
+     * Directions of an arpeggio.
+     */
+    public enum Direction {
+        /**
+         * From the lowest to the highest note, then again.
+         */
+        UP,
+
+        /**
+         * From the highest to the lowest note, then again.
+         */
+        DOWN,
+
+        /**
+         * From the lowest to the highest note and back, without repeating
+         * the highest and the lowest notes.
+         */
+        UP_DOWN,
+
+        /**
+         * In the order of the notes of the chord.
+         */
+        AS_PLAYED
+    }
+
+    private static final Value[] VALUES = Value.values();
+
+    private final Direction direction;
+    private final int octaves;
+    private final Duration[] pattern;
+
+    /**
+     * Initializes a newly created {@code Arpeggiator} object with the
+     * specified direction and rhythm pattern, spanning a single octave.
+     *
+     * @param direction a specified direction.
+     * @param pattern the durations of the notes, repeated until the end of
+     *        each chord.
+     * @see #Arpeggiator(Direction direction, int octaves,
+     *      Duration... pattern)
+     */
+    public Arpeggiator(Direction direction, Duration... pattern) {
+        this(direction, 1, pattern);
+    }
+
+    /**
+     * Initializes a newly created {@code Arpeggiator} object with the
+     * specified direction, number of octaves and rhythm pattern.
+     *
+     * @param direction a specified direction.
+     * @param octaves the number of octaves spanned by the arpeggio; the
+     *        notes of the chord are repeated an octave higher for each
+     *        octave after the first one.
+     * @param pattern the durations of the notes, repeated until the end of
+     *        each chord.
+     * @throws IllegalArgumentException
+     *         if {@code octaves < 1} or the pattern is empty.
+     */
+    public Arpeggiator(Direction direction, int octaves, Duration... pattern)
+            throws IllegalArgumentException {
+        if (octaves < 1 || pattern.length == 0) {
+            throw new IllegalArgumentException("Invalid arpeggio! It needs at "
+                                               + "least an octave and a "
+                                               + "duration.");
+        }
+
+        this.direction = direction;
+        this.octaves = octaves;
+        this.pattern = new Duration[pattern.length];
+
+        for (int i = 0; i < pattern.length; i++) {
+            this.pattern[i] = Duration.valueOf(pattern[i]);
+        }
+    }
+
+    /**
+     * Returns an iterator over the arpeggios of the specified chords.
+     *
+     * @param chords the specified chords.
+     * @return an iterator over the arpeggios of the specified chords.
+     */
+    public Iterator<Note> expand(Iterator<? extends List<Note>> chords) {
+        return new Expansion(chords);
+    }
+
+    /**
+     * Returns a sequential, ordered stream of the arpeggios of the specified
+     * chords.
+     *
+     * @param chords the specified chords.
+     * @return a stream of the arpeggios of the specified chords.
+     */
+    public Stream<Note> stream(Iterable<? extends List<Note>> chords) {
+        Spliterator<Note> spliterator = Spliterators.spliteratorUnknownSize(
+                expand(chords.iterator()),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Returns a sequential, ordered stream of the arpeggios of the chords of
+     * the specified stream. The chords are consumed lazily.
+     *
+     * @param chords the specified chords.
+     * @return a stream of the arpeggios of the specified chords.
+     */
+    public Stream<Note> stream(Stream<? extends List<Note>> chords) {
+        Spliterator<Note> spliterator = Spliterators.spliteratorUnknownSize(
+                expand(chords.iterator()),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(spliterator, false).onClose(chords::close);
+    }
+
+    // Returns the pitches of a chord, in the order they are played.
+    private int[] pitches(List<Note> chord) {
+        int size = chord.size();
+        int[] base = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            base[i] = chord.get(i).getMIDINumber();
+        }
+
+        if (direction != Direction.AS_PLAYED) {
+            Arrays.sort(base);
+        }
+
+        int[] span = new int[size * octaves];
+        int count = 0;
+
+        for (int o = 0; o < octaves; o++) {
+            for (int i = 0; i < size; i++) {
+                int pitch = base[i] + 12 * o;
+
+                if (pitch <= 127) {
+                    span[count++] = pitch;
+                }
+            }
+        }
+
+        span = Arrays.copyOf(span, count);
+
+        switch (direction) {
+            case DOWN:
+                for (int i = 0; i < count / 2; i++) {
+                    int swap = span[i];
+                    span[i] = span[count - 1 - i];
+                    span[count - 1 - i] = swap;
+                }
+                return span;
+            case UP_DOWN:
+                if (count < 3) {
+                    return span;
+                }
+
+                int[] cycle = Arrays.copyOf(span, 2 * count - 2);
+
+                for (int i = 1; i < count - 1; i++) {
+                    cycle[count - 1 + i] = span[count - 1 - i];
+                }
+                return cycle;
+            default:
+                return span;
+        }
+    }
+
+    // Returns the largest duration that is not longer than the specified
+    // number of ticks, or null.
+    private static Duration floor(long ticks) {
+        Duration best = null;
+
+        for (Value value : VALUES) {
+            for (int dots = 0; dots <= 3; dots++) {
+                Duration d = Duration.valueOf(value, dots);
+
+                if (d.getTicks() <= ticks
+                        && (best == null || d.getTicks() > best.getTicks())) {
+                    best = d;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * {@code Iterator} that expands one chord at a time.
+     */
+    private final class Expansion implements Iterator<Note> {
+
+        private final Iterator<? extends List<Note>> chords;
+
+        private int[] pitches;
+        private int volume;
+        private int step;
+        private long remaining;
+        private Note next;
+
+        Expansion(Iterator<? extends List<Note>> chords) {
+            this.chords = chords;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public Note next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Note result = next;
+            next = null;
+
+            return result;
+        }
+
+        private Note advance() {
+            Duration duration = null;
+
+            while (duration == null) {
+                if (pitches == null || remaining <= 0) {
+                    if (!chords.hasNext()) {
+                        return null;
+                    }
+
+                    start(chords.next());
+                    continue;
+                }
+
+                duration = pattern[step % pattern.length];
+
+                if (duration.getTicks() > remaining) {
+                    duration = floor(remaining);
+
+                    if (duration == null) {
+                        // Too short for any duration: skips the rest.
+                        remaining = 0;
+                    }
+                }
+            }
+
+            Note note = new Note(pitches[step % pitches.length], duration,
+                                 volume);
+
+            remaining -= duration.getTicks();
+            step++;
+
+            return note;
+        }
+
+        private void start(List<Note> chord) {
+            pitches = pitches(chord);
+            step = 0;
+            remaining = 0;
+            volume = 0;
+
+            for (Note note : chord) {
+                remaining = Math.max(remaining,
+                                     note.getDuration().getTicks());
+                volume = Math.max(volume, note.getVolume());
+            }
+
+            if (pitches.length == 0) {
+                remaining = 0;
+            }
+        }
+
+    }
+
+}
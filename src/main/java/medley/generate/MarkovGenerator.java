@@ -0,0 +1,368 @@
+package medley.generate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import medley.Duration;
+import medley.Duration.Value;
+import medley.Note;
+import medley.util.Validator;
+
+/**
+ * {@code MarkovGenerator} class that generates melodies with a variable-order
+ * Markov model trained on example melodies.
+ *
+ * <p>Each step of a melody is a token made of the pitch interval from the
+ * previous note, clamped to two octaves, and of the {@code Value} of the
+ * note. The model counts which token follows each context of up to
+ * {@code order} tokens; when generating, the longest context seen during
+ * training is used, backing off to shorter ones.
+ *
+ * <p>Transitions are compiled into primitive arrays with the alias method,
+ * so drawing the next token takes constant time once its context has been
+ * found with a binary search. A {@code MarkovGenerator} is immutable and can
+ * be shared between threads: each thread passes its own
+ * {@code SplittableRandom}, e.g. obtained with {@code split()}, and the same
+ * seed always produces the same melody.
+ *
+ * @author Salvatore Gentile
+ */
+public final class MarkovGenerator {
+
+    /**
+     * The largest supported order.
+     */
+    public static final int MAX_ORDER = 6;
+
+    private static final int MAX_INTERVAL = 24;
+    private static final Value[] VALUES = Value.values();
+
+    // Tokens take 9 bits each, the context length takes the top bits.
+    private static final int TOKEN_BITS = 9;
+    private static final int ORDER_SHIFT = 60;
+
+    private final int order;
+
+    // Sorted context keys; row i draws from entries rows[i] to rows[i + 1].
+    private final long[] contexts;
+    private final int[] rows;
+    private final int[] outcomes;
+    private final int[] aliases;
+    private final float[] probabilities;
+
+    private MarkovGenerator(int order, long[] contexts, int[] rows,
+                            int[] outcomes, int[] aliases,
+                            float[] probabilities) {
+        this.order = order;
+        this.contexts = contexts;
+        this.rows = rows;
+        this.outcomes = outcomes;
+        this.aliases = aliases;
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * Returns a {@code MarkovGenerator} trained on the specified melodies.
+     *
+     * @param order the longest context, in notes.
+     * @param melodies the specified melodies.
+     * @return a {@code MarkovGenerator} trained on the specified melodies.
+     * @throws IllegalArgumentException
+     *         if {@code order < 0} or {@code order > MAX_ORDER}, or the
+     *         melodies contain no note.
+     */
+    public static MarkovGenerator train(int order,
+                                        List<? extends List<Note>> melodies)
+            throws IllegalArgumentException {
+        if (order < 0 || order > MAX_ORDER) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid order! It must be between 0 and ");
+            e.append(MAX_ORDER).append('.');
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        // Counts are sorted by context, so the rows come out sorted.
+        Map<Long, Map<Integer, Integer>> counts =
+                new TreeMap<Long, Map<Integer, Integer>>();
+        int[] history = new int[order];
+
+        for (List<Note> melody : melodies) {
+            Note previous = null;
+            int length = 0;
+
+            for (Note note : melody) {
+                int interval = (previous == null ? 0
+                                : note.getMIDINumber()
+                                  - previous.getMIDINumber());
+                int token = token(interval, note.getValue());
+
+                for (int k = 0; k <= Math.min(order, length); k++) {
+                    count(counts, key(history, k), token);
+                }
+
+                if (order > 0) {
+                    System.arraycopy(history, 1, history, 0, order - 1);
+                    history[order - 1] = token;
+                }
+
+                length++;
+                previous = note;
+            }
+        }
+
+        if (counts.isEmpty()) {
+            throw new IllegalArgumentException("Invalid melodies! There are "
+                                               + "no notes to train on.");
+        }
+
+        return compile(order, counts);
+    }
+
+    /**
+     * Returns the order of this {@code MarkovGenerator}.
+     *
+     * @return the order of this {@code MarkovGenerator}.
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Generates a melody using a random generator with the specified seed.
+     *
+     * @param start the MIDI note number of the first note.
+     * @param length the number of notes.
+     * @param seed a specified seed.
+     * @return the generated melody.
+     * @see #generate(int start, int length, SplittableRandom random)
+     */
+    public List<Note> generate(int start, int length, long seed) {
+        return generate(start, length, new SplittableRandom(seed));
+    }
+
+    /**
+     * Generates a melody using the specified random generator.
+     *
+     * <p>Intervals that would leave the MIDI range are folded back by
+     * octaves.
+     *
+     * @param start the MIDI note number of the first note.
+     * @param length the number of notes.
+     * @param random a specified random generator; it must not be shared with
+     *        other threads.
+     * @return the generated melody.
+     * @throws IllegalArgumentException
+     *         if {@code start} is not a valid MIDI note number, or
+     *         {@code length < 0}.
+     */
+    public List<Note> generate(int start, int length, SplittableRandom random)
+            throws IllegalArgumentException {
+        Validator.midiNumber(start);
+
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid length! It must be a "
+                                               + "non-negative value.");
+        }
+
+        List<Note> melody = new ArrayList<Note>(length);
+        int[] history = new int[order];
+        int pitch = start;
+
+        for (int i = 0; i < length; i++) {
+            int token = next(history, i, random);
+
+            if (i > 0) {
+                pitch = fold(pitch + interval(token));
+            }
+
+            melody.add(new Note(pitch, Duration.valueOf(value(token))));
+
+            if (order > 0) {
+                System.arraycopy(history, 1, history, 0, order - 1);
+                history[order - 1] = token;
+            }
+        }
+
+        return melody;
+    }
+
+    private int next(int[] history, int length, SplittableRandom random) {
+        for (int k = Math.min(order, length); k >= 0; k--) {
+            int row = Arrays.binarySearch(contexts, key(history, k));
+
+            if (row >= 0) {
+                return draw(row, random);
+            }
+        }
+
+        // The empty context is always trained.
+        throw new IllegalStateException();
+    }
+
+    // Draws an outcome of the specified row with the alias method.
+    private int draw(int row, SplittableRandom random) {
+        int from = rows[row];
+        int entry = from + random.nextInt(rows[row + 1] - from);
+
+        if (random.nextDouble() < probabilities[entry]) {
+            return outcomes[entry];
+        }
+
+        return outcomes[aliases[entry]];
+    }
+
+    private static MarkovGenerator compile(int order,
+                                           Map<Long, Map<Integer, Integer>>
+                                           counts) {
+        int size = 0;
+
+        for (Map<Integer, Integer> row : counts.values()) {
+            size += row.size();
+        }
+
+        long[] contexts = new long[counts.size()];
+        int[] rows = new int[counts.size() + 1];
+        int[] outcomes = new int[size];
+        int[] aliases = new int[size];
+        float[] probabilities = new float[size];
+        int r = 0;
+        int from = 0;
+
+        for (Map.Entry<Long, Map<Integer, Integer>> row : counts.entrySet()) {
+            Map<Integer, Integer> transitions = row.getValue();
+            int m = transitions.size();
+            double[] scaled = new double[m];
+            long total = 0;
+            int i = 0;
+
+            for (Map.Entry<Integer, Integer> t : transitions.entrySet()) {
+                outcomes[from + i] = t.getKey();
+                scaled[i++] = t.getValue();
+                total += t.getValue();
+            }
+
+            for (i = 0; i < m; i++) {
+                scaled[i] = scaled[i] * m / total;
+            }
+
+            alias(scaled, from, aliases, probabilities);
+
+            contexts[r] = row.getKey();
+            from += m;
+            rows[++r] = from;
+        }
+
+        return new MarkovGenerator(order, contexts, rows, outcomes, aliases,
+                                   probabilities);
+    }
+
+    // Builds the alias table of a row (Vose's method); scaled holds the
+    // probabilities multiplied by the number of outcomes.
+    private static void alias(double[] scaled, int from, int[] aliases,
+                              float[] probabilities) {
+        int m = scaled.length;
+        int[] small = new int[m];
+        int[] large = new int[m];
+        int smallSize = 0;
+        int largeSize = 0;
+
+        for (int i = 0; i < m; i++) {
+            if (scaled[i] < 1.0) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+
+        while (smallSize > 0 && largeSize > 0) {
+            int s = small[--smallSize];
+            int l = large[--largeSize];
+
+            probabilities[from + s] = (float) scaled[s];
+            aliases[from + s] = from + l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+
+            if (scaled[l] < 1.0) {
+                small[smallSize++] = l;
+            } else {
+                large[largeSize++] = l;
+            }
+        }
+
+        // Leftovers are 1 up to rounding errors.
+        while (largeSize > 0) {
+            int l = large[--largeSize];
+
+            probabilities[from + l] = 1.0f;
+            aliases[from + l] = from + l;
+        }
+
+        while (smallSize > 0) {
+            int s = small[--smallSize];
+
+            probabilities[from + s] = 1.0f;
+            aliases[from + s] = from + s;
+        }
+    }
+
+    private static void count(Map<Long, Map<Integer, Integer>> counts,
+                              long key, int token) {
+        Map<Integer, Integer> row = counts.get(key);
+
+        if (row == null) {
+            row = new HashMap<Integer, Integer>();
+            counts.put(key, row);
+        }
+
+        Integer count = row.get(token);
+        row.put(token, (count == null ? 1 : count + 1));
+    }
+
+    // Returns the key of the context made of the last k tokens of the
+    // history.
+    private static long key(int[] history, int k) {
+        long key = 0;
+
+        for (int i = history.length - k; i < history.length; i++) {
+            key = (key << TOKEN_BITS) | history[i];
+        }
+
+        return key | ((long) k << ORDER_SHIFT);
+    }
+
+    private static int token(int interval, Value value) {
+        int clamped = Math.max(-MAX_INTERVAL, Math.min(MAX_INTERVAL,
+                                                       interval));
+
+        return (clamped + MAX_INTERVAL) * VALUES.length + value.ordinal();
+    }
+
+    private static int interval(int token) {
+        return token / VALUES.length - MAX_INTERVAL;
+    }
+
+    private static Value value(int token) {
+        return VALUES[token % VALUES.length];
+    }
+
+    private static int fold(int pitch) {
+        int folded = pitch;
+
+        while (folded > 127) {
+            folded -= 12;
+        }
+
+        while (folded < 0) {
+            folded += 12;
+        }
+
+        return folded;
+    }
+
+}
@@ -0,0 +1,6 @@
+/**
+ * Package that contains classes used to generate music.
+ *
+ * @author Salvatore Gentile
+ */
+package medley.generate;
@@ -0,0 +1,540 @@
+package medley.score;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@code ConcurrentScore} class that stores a sequence of score elements
+ * which can be edited by several threads at the same time.
+ *
+ * <p>Elements are stored in immutable chunks of at most {@code 64} elements.
+ * Every edit copies the chunk it touches and the array of chunk references,
+ * then publishes the new version of the score with a compare-and-set: an edit
+ * costs \( O(64 + n / 64) \) and never blocks, and a writer that loses a race
+ * simply retries on the latest version. A full chunk is split in two halves,
+ * and a deletion merges a chunk less than half full with a neighbour, so the
+ * array of chunk references stays short however the score is edited.
+ *
+ * <p>Readers never block either: {@link #snapshot() snapshot} returns the
+ * current version as an immutable list in constant time, and the snapshot
+ * stays consistent while edits continue, which makes it suitable for
+ * rendering.
+ *
+ * <p>Score elements are mutable, so elements added to a
+ * {@code ConcurrentScore} must not be edited afterwards: an edit replaces an
+ * element with a new one, e.g. through
+ * {@link #update(int, UnaryOperator) update}.
+ *
+ * @author Salvatore Gentile
+ * @see medley.score.Score
+ */
+public class ConcurrentScore {
+
+    private static final int CHUNK_SIZE = 64;
+
+    private static final ScoreElement[][] NO_CHUNKS = new ScoreElement[0][];
+
+    private final AtomicReference<Snapshot> current;
+
+    /**
+     * Initializes a newly created empty {@code ConcurrentScore} object.
+     */
+    public ConcurrentScore() {
+        current = new AtomicReference<Snapshot>(new Snapshot(NO_CHUNKS,
+                                                             new int[1], 0));
+    }
+
+    /**
+     * Initializes a newly created {@code ConcurrentScore} object with the
+     * specified elements, in the order returned by their iterator.
+     *
+     * @param elements the specified elements.
+     */
+    public ConcurrentScore(Collection<? extends ScoreElement> elements) {
+        ScoreElement[] array = elements.toArray(new ScoreElement[0]);
+        int count = (array.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        ScoreElement[][] chunks = new ScoreElement[count][];
+        int[] offsets = new int[count + 1];
+
+        for (ScoreElement element : array) {
+            checkElement(element);
+        }
+
+        for (int c = 0; c < count; c++) {
+            int from = c * CHUNK_SIZE;
+            int to = Math.min(array.length, from + CHUNK_SIZE);
+
+            chunks[c] = Arrays.copyOfRange(array, from, to);
+            offsets[c + 1] = to;
+        }
+
+        current = new AtomicReference<Snapshot>(new Snapshot(chunks, offsets,
+                                                             0));
+    }
+
+    /**
+     * Returns the current version of this {@code ConcurrentScore}. The
+     * returned snapshot is not affected by later edits.
+     *
+     * @return the current version of this {@code ConcurrentScore}.
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Returns the number of elements of this {@code ConcurrentScore}.
+     *
+     * @return the number of elements of this {@code ConcurrentScore}.
+     */
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * Returns the element at the specified position of this
+     * {@code ConcurrentScore}.
+     *
+     * @param index a specified position.
+     * @return the element at the specified position.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    public ScoreElement get(int index) throws IndexOutOfBoundsException {
+        return current.get().get(index);
+    }
+
+    /**
+     * Appends the specified element to this {@code ConcurrentScore}.
+     *
+     * @param element a specified element.
+     * @return the version that contains the new element.
+     */
+    public Snapshot add(ScoreElement element) {
+        checkElement(element);
+
+        Snapshot expected;
+        Snapshot replacement;
+
+        do {
+            expected = current.get();
+            replacement = expected.insert(expected.size(), element);
+        } while (!current.compareAndSet(expected, replacement));
+
+        return replacement;
+    }
+
+    /**
+     * Inserts the specified element at the specified position of this
+     * {@code ConcurrentScore}.
+     *
+     * @param index a specified position.
+     * @param element a specified element.
+     * @return the version that contains the new element.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index > size()}.
+     */
+    public Snapshot add(int index, ScoreElement element)
+            throws IndexOutOfBoundsException {
+        checkElement(element);
+
+        Snapshot expected;
+        Snapshot replacement;
+
+        do {
+            expected = current.get();
+            checkIndex(index, expected.size() + 1);
+            replacement = expected.insert(index, element);
+        } while (!current.compareAndSet(expected, replacement));
+
+        return replacement;
+    }
+
+    /**
+     * Replaces the element at the specified position of this
+     * {@code ConcurrentScore} with the specified one.
+     *
+     * @param index a specified position.
+     * @param element a specified element.
+     * @return the version that contains the new element.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    public Snapshot set(int index, final ScoreElement element)
+            throws IndexOutOfBoundsException {
+        checkElement(element);
+
+        return update(index, e -> element);
+    }
+
+    /**
+     * Replaces the element at the specified position of this
+     * {@code ConcurrentScore} with the result of the specified function.
+     *
+     * <p>The function receives the current element and must return a new
+     * element, leaving the current one untouched. It may be called more than
+     * once if other threads edit the score at the same time, so it should be
+     * free of side effects.
+     *
+     * @param index a specified position.
+     * @param function the function that computes the new element.
+     * @return the version that contains the new element.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    public Snapshot update(int index, UnaryOperator<ScoreElement> function)
+            throws IndexOutOfBoundsException {
+        Snapshot expected;
+        Snapshot replacement;
+
+        do {
+            expected = current.get();
+            checkIndex(index, expected.size());
+
+            ScoreElement element = function.apply(expected.get(index));
+
+            checkElement(element);
+            replacement = expected.replace(index, element);
+        } while (!current.compareAndSet(expected, replacement));
+
+        return replacement;
+    }
+
+    /**
+     * Removes the element at the specified position of this
+     * {@code ConcurrentScore}.
+     *
+     * @param index a specified position.
+     * @return the version without the removed element.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    public Snapshot remove(int index) throws IndexOutOfBoundsException {
+        Snapshot expected;
+        Snapshot replacement;
+
+        do {
+            expected = current.get();
+            checkIndex(index, expected.size());
+            replacement = expected.delete(index);
+        } while (!current.compareAndSet(expected, replacement));
+
+        return replacement;
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            StringBuilder e = new StringBuilder(60);
+            e.append("Invalid index! ");
+            e.append(index).append(" is out of bounds.");
+
+            throw new IndexOutOfBoundsException(e.toString());
+        }
+    }
+
+    private static void checkElement(ScoreElement element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    /**
+     * {@code Snapshot} class that represents a version of a
+     * {@code ConcurrentScore} as an immutable list. Each edit of the score
+     * produces a new version with a greater version number.
+     */
+    public static final class Snapshot extends AbstractList<ScoreElement>
+            implements RandomAccess {
+
+        private final ScoreElement[][] chunks;
+
+        // offsets[c] is the index of the first element of chunk c, and
+        // offsets[chunks.length] is the size.
+        private final int[] offsets;
+        private final long version;
+
+        private Snapshot(ScoreElement[][] chunks, int[] offsets,
+                         long version) {
+            this.chunks = chunks;
+            this.offsets = offsets;
+            this.version = version;
+        }
+
+        /**
+         * Returns the version number of this {@code Snapshot}.
+         *
+         * @return the version number of this {@code Snapshot}.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public ScoreElement get(int index) throws IndexOutOfBoundsException {
+            checkIndex(index, size());
+
+            int c = chunkOf(index);
+
+            return chunks[c][index - offsets[c]];
+        }
+
+        @Override
+        public int size() {
+            return offsets[chunks.length];
+        }
+
+        /**
+         * Returns a {@code Spliterator} over the elements of this
+         * {@code Snapshot}. The spliterator is {@code SIZED},
+         * {@code SUBSIZED}, {@code ORDERED}, {@code NONNULL} and
+         * {@code IMMUTABLE}, and splits on chunk boundaries.
+         *
+         * @return a {@code Spliterator} over the elements of this
+         *         {@code Snapshot}.
+         */
+        @Override
+        public Spliterator<ScoreElement> spliterator() {
+            return new ChunkSpliterator(this, 0, chunks.length);
+        }
+
+        // Returns the chunk that contains the specified index.
+        private int chunkOf(int index) {
+            int c = Arrays.binarySearch(offsets, 0, chunks.length, index);
+
+            return (c >= 0 ? c : -c - 2);
+        }
+
+        private Snapshot insert(int index, ScoreElement element) {
+            int count = chunks.length;
+
+            if (count == 0) {
+                return new Snapshot(new ScoreElement[][] {{element}},
+                                    new int[] {0, 1}, version + 1);
+            }
+
+            // An index equal to the size goes to the end of the last chunk.
+            int c = (index == size() ? count - 1 : chunkOf(index));
+            ScoreElement[] chunk = chunks[c];
+            int position = index - offsets[c];
+            ScoreElement[] grown = new ScoreElement[chunk.length + 1];
+
+            System.arraycopy(chunk, 0, grown, 0, position);
+            grown[position] = element;
+            System.arraycopy(chunk, position, grown, position + 1,
+                             chunk.length - position);
+
+            if (grown.length <= CHUNK_SIZE) {
+                ScoreElement[][] newChunks = chunks.clone();
+                int[] newOffsets = offsets.clone();
+
+                newChunks[c] = grown;
+
+                for (int i = c + 1; i <= count; i++) {
+                    newOffsets[i]++;
+                }
+
+                return new Snapshot(newChunks, newOffsets, version + 1);
+            }
+
+            // Splits the full chunk in two halves.
+            int half = grown.length / 2;
+            ScoreElement[][] newChunks = new ScoreElement[count + 1][];
+            int[] newOffsets = new int[count + 2];
+
+            System.arraycopy(chunks, 0, newChunks, 0, c);
+            newChunks[c] = Arrays.copyOfRange(grown, 0, half);
+            newChunks[c + 1] = Arrays.copyOfRange(grown, half, grown.length);
+            System.arraycopy(chunks, c + 1, newChunks, c + 2, count - c - 1);
+
+            System.arraycopy(offsets, 0, newOffsets, 0, c + 1);
+            newOffsets[c + 1] = offsets[c] + half;
+
+            for (int i = c + 1; i <= count; i++) {
+                newOffsets[i + 1] = offsets[i] + 1;
+            }
+
+            return new Snapshot(newChunks, newOffsets, version + 1);
+        }
+
+        private Snapshot replace(int index, ScoreElement element) {
+            int c = chunkOf(index);
+            ScoreElement[][] newChunks = chunks.clone();
+            ScoreElement[] chunk = chunks[c].clone();
+
+            chunk[index - offsets[c]] = element;
+            newChunks[c] = chunk;
+
+            return new Snapshot(newChunks, offsets, version + 1);
+        }
+
+        private Snapshot delete(int index) {
+            int c = chunkOf(index);
+            int count = chunks.length;
+            ScoreElement[] chunk = chunks[c];
+            int position = index - offsets[c];
+            ScoreElement[] shrunk = new ScoreElement[chunk.length - 1];
+
+            System.arraycopy(chunk, 0, shrunk, 0, position);
+            System.arraycopy(chunk, position + 1, shrunk, position,
+                             shrunk.length - position);
+
+            // A chunk less than half full is merged with a neighbour, so
+            // edits do not fragment the score into tiny chunks.
+            if (shrunk.length < CHUNK_SIZE / 2 && count > 1) {
+                if (c + 1 < count) {
+                    return merge(c, shrunk, chunks[c + 1]);
+                }
+
+                return merge(c - 1, chunks[c - 1], shrunk);
+            }
+
+            if (shrunk.length == 0) {
+                return new Snapshot(NO_CHUNKS, new int[1], version + 1);
+            }
+
+            ScoreElement[][] newChunks = chunks.clone();
+            int[] newOffsets = offsets.clone();
+
+            newChunks[c] = shrunk;
+
+            for (int i = c + 1; i <= count; i++) {
+                newOffsets[i]--;
+            }
+
+            return new Snapshot(newChunks, newOffsets, version + 1);
+        }
+
+        // Replaces chunks c and c + 1, after a deletion, with the specified
+        // elements: in a single chunk if they fit, in two halves otherwise.
+        private Snapshot merge(int c, ScoreElement[] first,
+                               ScoreElement[] second) {
+            int count = chunks.length;
+            int total = first.length + second.length;
+            ScoreElement[] merged = new ScoreElement[total];
+
+            System.arraycopy(first, 0, merged, 0, first.length);
+            System.arraycopy(second, 0, merged, first.length, second.length);
+
+            if (total <= CHUNK_SIZE) {
+                ScoreElement[][] newChunks = new ScoreElement[count - 1][];
+                int[] newOffsets = new int[count];
+
+                System.arraycopy(chunks, 0, newChunks, 0, c);
+                newChunks[c] = merged;
+                System.arraycopy(chunks, c + 2, newChunks, c + 1,
+                                 count - c - 2);
+                System.arraycopy(offsets, 0, newOffsets, 0, c + 1);
+
+                for (int i = c + 1; i < count; i++) {
+                    newOffsets[i] = offsets[i + 1] - 1;
+                }
+
+                return new Snapshot(newChunks, newOffsets, version + 1);
+            }
+
+            int half = total / 2;
+            ScoreElement[][] newChunks = chunks.clone();
+            int[] newOffsets = offsets.clone();
+
+            newChunks[c] = Arrays.copyOfRange(merged, 0, half);
+            newChunks[c + 1] = Arrays.copyOfRange(merged, half, total);
+            newOffsets[c + 1] = offsets[c] + half;
+
+            for (int i = c + 2; i <= count; i++) {
+                newOffsets[i]--;
+            }
+
+            return new Snapshot(newChunks, newOffsets, version + 1);
+        }
+
+    }
+
+    /**
+     * {@code Spliterator} over a range of chunks of a {@code Snapshot}.
+     */
+    private static final class ChunkSpliterator
+            implements Spliterator<ScoreElement> {
+
+        private final Snapshot snapshot;
+        private int chunk;
+        private int position;
+        private final int fence;
+
+        ChunkSpliterator(Snapshot snapshot, int chunk, int fence) {
+            this.snapshot = snapshot;
+            this.chunk = chunk;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ScoreElement> action) {
+            ScoreElement[][] chunks = snapshot.chunks;
+
+            while (chunk < fence) {
+                if (position < chunks[chunk].length) {
+                    action.accept(chunks[chunk][position++]);
+
+                    return true;
+                }
+
+                chunk++;
+                position = 0;
+            }
+
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super ScoreElement> action) {
+            ScoreElement[][] chunks = snapshot.chunks;
+
+            for (; chunk < fence; chunk++, position = 0) {
+                ScoreElement[] elements = chunks[chunk];
+
+                for (; position < elements.length; position++) {
+                    action.accept(elements[position]);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<ScoreElement> trySplit() {
+            // Hands over the first half of the chunks, whole, and keeps the
+            // rest as required by the ORDERED characteristic.
+            int middle = (chunk + fence + 1) >>> 1;
+
+            if (middle >= fence) {
+                return null;
+            }
+
+            ChunkSpliterator prefix = new ChunkSpliterator(snapshot, chunk,
+                                                           middle);
+
+            prefix.position = position;
+            chunk = middle;
+            position = 0;
+
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            int[] offsets = snapshot.offsets;
+
+            return offsets[fence] - offsets[chunk] - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return SIZED | SUBSIZED | ORDERED | NONNULL | IMMUTABLE;
+        }
+
+    }
+
+}
@@ -0,0 +1,533 @@
+package medley.score;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import medley.Duration.Value;
+import medley.Note;
+import medley.Rest;
+import medley.tone.Tone;
+
+/**
+ * {@code EditLog} class that edits a {@link Score} and records each edit in
+ * an append-only log, allowing to undo and redo edits and to replay them on
+ * another copy of the score.
+ *
+ * <p>Each edit is stored as a fixed-size binary record of {@value #RECORD_SIZE}
+ * bytes: the operation, the index of the edited element, the argument of the
+ * operation and the previous value (for a transposition, the spelling of the
+ * note), so every record can be inverted. Undoing an edit appends its inverse
+ * to the log, and redoing it appends it again: the log always describes the
+ * whole history, and replaying it on a copy of the original score reproduces
+ * the current one.
+ *
+ * <p>Every {@code snapshotInterval} records the log takes a copy of the
+ * score, so {@link #replay(long) replay} only applies the records that follow
+ * the nearest snapshot. Older snapshots are thinned out exponentially: the
+ * last {@value #RECENT_SNAPSHOTS} are all kept, then every other one for as
+ * many intervals, then one in four, and so on, and the original score is
+ * always kept. The number of snapshots grows with the logarithm of the
+ * length of the history, and recovering a score costs a copy plus at most
+ * {@code snapshotInterval} edits for recent states, or at most their
+ * distance from the end of the log divided by {@value #RECENT_SNAPSHOTS} for
+ * older ones.
+ *
+ * <p>The records are kept in a single buffer, so the log holds at most about
+ * two billion bytes of them: past that limit every edit throws an
+ * {@code IllegalStateException}.
+ *
+ * <p>Only the edits of this class are recorded: the score must not be edited
+ * or structurally modified by other means while it is logged. This class is
+ * not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.score.Score
+ */
+public class EditLog {
+
+    /**
+     * The size, in bytes, of a record.
+     */
+    public static final int RECORD_SIZE = 9;
+
+    /**
+     * The default number of records between two snapshots.
+     */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1024;
+
+    /**
+     * The number of recent snapshots that are all kept.
+     */
+    public static final int RECENT_SNAPSHOTS = 8;
+
+    private static final byte TRANSPOSE = 1;
+    private static final byte SET_VOLUME = 2;
+    private static final byte SET_VALUE = 3;
+    private static final byte SET_DOTS = 4;
+    private static final byte SWITCH_ACCIDENTAL = 5;
+
+    // The largest buffer most VMs can allocate.
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private static final Value[] VALUES = Value.values();
+
+    private final Score score;
+    private final int snapshotInterval;
+
+    private ByteBuffer records = ByteBuffer.allocate(64 * RECORD_SIZE);
+    private long count;
+
+    // snapshots.get(i) is the score after sequences[i] records.
+    private final List<ScoreElement[]> snapshots =
+            new ArrayList<ScoreElement[]>();
+    private long[] sequences = new long[4];
+
+    // Sequence numbers of the records that can be undone and redone.
+    private long[] undo = new long[16];
+    private int undoSize;
+    private long[] redo = new long[16];
+    private int redoSize;
+
+    /**
+     * Initializes a newly created {@code EditLog} object that edits the
+     * specified score, with the default snapshot interval.
+     *
+     * @param score a specified score.
+     */
+    public EditLog(Score score) {
+        this(score, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Initializes a newly created {@code EditLog} object that edits the
+     * specified score.
+     *
+     * @param score a specified score.
+     * @param snapshotInterval the number of records between two snapshots.
+     * @throws IllegalArgumentException
+     *         if {@code snapshotInterval < 1}.
+     */
+    public EditLog(Score score, int snapshotInterval)
+            throws IllegalArgumentException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Invalid snapshot interval! It "
+                                               + "must be a positive value.");
+        }
+
+        this.score = score;
+        this.snapshotInterval = snapshotInterval;
+
+        snapshots.add(copy(score));
+    }
+
+    /**
+     * Returns the score edited by this {@code EditLog}.
+     *
+     * @return the score edited by this {@code EditLog}.
+     */
+    public Score getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of records of this {@code EditLog}.
+     *
+     * @return the number of records of this {@code EditLog}.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Transposes the note at the specified position.
+     *
+     * @param index a specified position.
+     * @param semitones a specified number of half steps.
+     * @throws IllegalArgumentException
+     *         if the element is not a note, or the transposition is not
+     *         valid.
+     * @see medley.Note#transpose(int semitones)
+     */
+    public void transpose(int index, int semitones)
+            throws IllegalArgumentException {
+        if (semitones < Short.MIN_VALUE || semitones > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid transposition!");
+        }
+
+        // Transposing respells the note, so the spelling before the edit
+        // (bit 1) is kept for undo, and the one after (bit 0) for replay.
+        int before = (isSwitched(note(score.get(index))) ? 1 : 0);
+        int after = (semitones == 0 ? before : 0);
+
+        edit(TRANSPOSE, index, semitones, (before << 1) | after);
+    }
+
+    /**
+     * Replaces the volume value of the element at the specified position.
+     *
+     * @param index a specified position.
+     * @param volume a specified volume value.
+     * @throws IllegalArgumentException
+     *         if {@code volume < 0} or {@code volume > 127}.
+     * @see medley.score.Element#setVolume(int volume)
+     */
+    public void setVolume(int index, int volume)
+            throws IllegalArgumentException {
+        edit(SET_VOLUME, index, volume, score.get(index).getVolume());
+    }
+
+    /**
+     * Replaces the {@code Value} of the element at the specified position.
+     *
+     * @param index a specified position.
+     * @param value a specified {@code Value}.
+     * @see medley.score.Element#setValue(Value value)
+     */
+    public void setValue(int index, Value value) {
+        edit(SET_VALUE, index, value.ordinal(),
+             score.get(index).getValue().ordinal());
+    }
+
+    /**
+     * Replaces the number of dots of the element at the specified position.
+     *
+     * @param index a specified position.
+     * @param dots a specified number of dots.
+     * @throws IllegalArgumentException
+     *         if {@code dots < 0} or {@code dots > 3}.
+     * @see medley.score.Element#setDots(int dots)
+     */
+    public void setDots(int index, int dots) throws IllegalArgumentException {
+        edit(SET_DOTS, index, dots, score.get(index).getDots());
+    }
+
+    /**
+     * Switches the {@code Accidental} of the note at the specified position
+     * with an equivalent one.
+     *
+     * @param index a specified position.
+     * @throws IllegalArgumentException
+     *         if the element is not a note.
+     * @see medley.Note#switchAccidental()
+     */
+    public void switchAccidental(int index) throws IllegalArgumentException {
+        edit(SWITCH_ACCIDENTAL, index, 0, 0);
+    }
+
+    /**
+     * Undoes the latest edit that has not been undone yet, appending its
+     * inverse to this {@code EditLog}.
+     *
+     * @return {@code true} if an edit was undone; {@code false} if there is
+     *         nothing to undo.
+     */
+    public boolean undo() {
+        if (undoSize == 0) {
+            return false;
+        }
+
+        reserve();
+
+        long sequence = undo[--undoSize];
+        int offset = (int) (sequence * RECORD_SIZE);
+        byte op = records.get(offset);
+        int index = records.getInt(offset + 1);
+        int argument = records.getShort(offset + 5);
+        int previous = records.getShort(offset + 7);
+
+        if (op == TRANSPOSE) {
+            int before = (isSwitched(note(score.get(index))) ? 1 : 0);
+
+            append(op, index, -argument, (before << 1) | (previous >> 1));
+        } else if (op == SWITCH_ACCIDENTAL) {
+            append(op, index, 0, 0);
+        } else {
+            append(op, index, previous, argument);
+        }
+
+        redo = push(redo, redoSize++, sequence);
+
+        return true;
+    }
+
+    /**
+     * Redoes the latest undone edit, appending it again to this
+     * {@code EditLog}.
+     *
+     * @return {@code true} if an edit was redone; {@code false} if there is
+     *         nothing to redo.
+     */
+    public boolean redo() {
+        if (redoSize == 0) {
+            return false;
+        }
+
+        reserve();
+
+        int offset = (int) (redo[--redoSize] * RECORD_SIZE);
+
+        undo = push(undo, undoSize++, count);
+        append(records.get(offset), records.getInt(offset + 1),
+               records.getShort(offset + 5), records.getShort(offset + 7));
+
+        return true;
+    }
+
+    /**
+     * Returns a new {@code Score} in the state reached after the specified
+     * number of records, starting from the nearest snapshot.
+     *
+     * @param sequence a specified number of records.
+     * @return a new {@code Score} in the state reached after the specified
+     *         number of records.
+     * @throws IllegalArgumentException
+     *         if {@code sequence < 0} or {@code sequence > size()}.
+     */
+    public Score replay(long sequence) throws IllegalArgumentException {
+        if (sequence < 0 || sequence > count) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid sequence! ");
+            e.append(sequence).append(" is not between 0 and ");
+            e.append(count).append('.');
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        int s = Arrays.binarySearch(sequences, 0, snapshots.size(), sequence);
+
+        if (s < 0) {
+            s = -s - 2;
+        }
+
+        Score result = new Score(Arrays.asList(copy(snapshots.get(s))));
+        ByteBuffer buffer = records.duplicate();
+
+        buffer.limit((int) (sequence * RECORD_SIZE));
+        buffer.position((int) (sequences[s] * RECORD_SIZE));
+        apply(result, buffer);
+
+        return result;
+    }
+
+    /**
+     * Writes the records of this {@code EditLog}, starting from the specified
+     * one, to the specified output stream; e.g. to replicate the edits on
+     * another copy of the score with {@link #apply(Score, ByteBuffer) apply}.
+     *
+     * @param out a specified output stream.
+     * @param from the sequence number of the first record to write.
+     * @throws IOException
+     *         if an I/O error occurs.
+     */
+    public void writeTo(OutputStream out, long from) throws IOException {
+        int start = (int) (Math.max(0, Math.min(from, count)) * RECORD_SIZE);
+
+        out.write(records.array(), start, records.position() - start);
+    }
+
+    /**
+     * Applies the records between the position and the limit of the
+     * specified buffer to the specified score.
+     *
+     * @param score a specified score.
+     * @param records the specified records.
+     * @return the number of applied records.
+     * @throws IllegalArgumentException
+     *         if a record is not valid for the specified score.
+     */
+    public static int apply(Score score, ByteBuffer records)
+            throws IllegalArgumentException {
+        int applied = 0;
+
+        while (records.remaining() >= RECORD_SIZE) {
+            byte op = records.get();
+            int index = records.getInt();
+            int argument = records.getShort();
+            int previous = records.getShort();
+
+            apply(score, op, index, argument, previous);
+            applied++;
+        }
+
+        return applied;
+    }
+
+    private void edit(byte op, int index, int argument, int previous) {
+        reserve();
+        apply(score, op, index, argument, previous);
+
+        undo = push(undo, undoSize++, count);
+        redoSize = 0;
+        record(op, index, argument, previous);
+    }
+
+    private void append(byte op, int index, int argument, int previous) {
+        apply(score, op, index, argument, previous);
+        record(op, index, argument, previous);
+    }
+
+    // Makes room for one more record before anything is changed, so a full
+    // log leaves the score and the history as they were.
+    private void reserve() {
+        if (records.remaining() < RECORD_SIZE) {
+            long capacity = Math.min(2L * records.capacity(), MAX_CAPACITY);
+
+            if (capacity - records.position() < RECORD_SIZE) {
+                throw new IllegalStateException("Invalid edit! The log is "
+                        + "full with " + count + " records.");
+            }
+
+            ByteBuffer grown = ByteBuffer.allocate((int) capacity);
+
+            records.flip();
+            grown.put(records);
+            records = grown;
+        }
+    }
+
+    private void record(byte op, int index, int argument, int previous) {
+        records.put(op).putInt(index);
+        records.putShort((short) argument).putShort((short) previous);
+        count++;
+
+        if (count % snapshotInterval == 0) {
+            int s = snapshots.size();
+
+            if (s == sequences.length) {
+                sequences = Arrays.copyOf(sequences, s * 2);
+            }
+
+            sequences[s] = count;
+            snapshots.add(copy(score));
+            thin();
+        }
+    }
+
+    // Drops the snapshots that are too close to the previous one for their
+    // age. Snapshot m (the one after m intervals) is kept while m is a
+    // multiple of the step of its age; steps are powers of two that only
+    // grow with age, so a dropped snapshot would never be kept again.
+    private void thin() {
+        long last = count / snapshotInterval;
+        int kept = 0;
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            long m = sequences[i] / snapshotInterval;
+            long step = Long.highestOneBit(Math.max(1, (last - m)
+                                                       / RECENT_SNAPSHOTS));
+
+            if (m % step == 0) {
+                snapshots.set(kept, snapshots.get(i));
+                sequences[kept++] = sequences[i];
+            }
+        }
+
+        snapshots.subList(kept, snapshots.size()).clear();
+    }
+
+    private static void apply(Score score, byte op, int index, int argument,
+                              int previous) {
+        ScoreElement element = score.get(index);
+
+        switch (op) {
+            case TRANSPOSE:
+                Note note = note(element);
+
+                note.transpose(argument);
+
+                if (isSwitched(note) != ((previous & 1) != 0)) {
+                    note.switchAccidental();
+                }
+                break;
+            case SET_VOLUME:
+                element.setVolume(argument);
+                break;
+            case SET_VALUE:
+                if (argument < 0 || argument >= VALUES.length) {
+                    throw new IllegalArgumentException("Invalid value!");
+                }
+
+                element.setValue(VALUES[argument]);
+                break;
+            case SET_DOTS:
+                element.setDots(argument);
+                break;
+            case SWITCH_ACCIDENTAL:
+                note(element).switchAccidental();
+                break;
+            default:
+                StringBuilder e = new StringBuilder(60);
+                e.append("Invalid record! ");
+                e.append(op).append(" is not a valid operation.");
+
+                throw new IllegalArgumentException(e.toString());
+        }
+    }
+
+    private static Note note(ScoreElement element) {
+        if (!(element instanceof Note)) {
+            throw new IllegalArgumentException("Invalid element! The "
+                                               + "operation requires a "
+                                               + "note.");
+        }
+
+        return (Note) element;
+    }
+
+    // Returns true if the note is not spelled as a new note with the same
+    // MIDI note number.
+    private static boolean isSwitched(Note note) {
+        Tone tone = new Tone(note.getMIDINumber());
+
+        return tone.getName() != note.getName()
+               || tone.getAccidental() != note.getAccidental();
+    }
+
+    private static long[] push(long[] stack, int size, long value) {
+        long[] result = stack;
+
+        if (size == stack.length) {
+            result = Arrays.copyOf(stack, size * 2);
+        }
+
+        result[size] = value;
+
+        return result;
+    }
+
+    // Returns a deep copy of the elements of the specified list.
+    private static ScoreElement[] copy(List<ScoreElement> elements) {
+        ScoreElement[] result = new ScoreElement[elements.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = copy(elements.get(i));
+        }
+
+        return result;
+    }
+
+    private static ScoreElement[] copy(ScoreElement[] elements) {
+        return copy(Arrays.asList(elements));
+    }
+
+    private static ScoreElement copy(ScoreElement element) {
+        if (element instanceof Note) {
+            return new Note((Note) element);
+        }
+
+        if (element instanceof Rest) {
+            return new Rest(element.getDuration());
+        }
+
+        StringBuilder e = new StringBuilder(80);
+        e.append("Invalid element! ");
+        e.append(element.getClass().getName()).append(" cannot be copied.");
+
+        throw new IllegalArgumentException(e.toString());
+    }
+
+}
@@ -15,7 +15,8 @@ public interface Element {
     public static final int DEFAULT_OCTAVE = 4;
     public static final Value DEFAULT_VALUE = Value.Minim;
     public static final int DEFAULT_DOTS = 0;
-    public static final Duration DEFAULT_DURATION = new Duration(DEFAULT_VALUE);
+    public static final Duration DEFAULT_DURATION =
+            Duration.valueOf(DEFAULT_VALUE);
     public static final int DEFAULT_VOLUME = 98;
 
     /**
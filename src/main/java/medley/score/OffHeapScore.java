@@ -0,0 +1,481 @@
+package medley.score;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import medley.Duration;
+import medley.Duration.Value;
+import medley.Note;
+import medley.Rest;
+import medley.tone.Tone;
+import medley.util.Metrics;
+import medley.util.Validator;
+
+/**
+ * {@code OffHeapScore} class that stores score elements outside of the Java
+ * heap, as fixed-size records in direct byte buffers.
+ *
+ * <p>Each element takes {@value #RECORD_SIZE} bytes: its onset in ticks, its
+ * MIDI note number (or {@code -1} for a rest), its spelling, its volume, and
+ * the {@code Value} and dots of its duration. Records live in chunks of
+ * direct buffers, so the store can hold far more elements than an array and
+ * does not add work to the garbage collector.
+ *
+ * <p>Elements are read and edited through a {@link Cursor}: a single mutable
+ * object, implementing {@link Element}, that is moved from record to record,
+ * so iterating the store does not allocate. Elements can be exported back to
+ * {@code Note} and {@code Rest} objects.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ */
+public class OffHeapScore {
+
+    /**
+     * The size, in bytes, of a record.
+     */
+    public static final int RECORD_SIZE = 16;
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+
+    private static final int ONSET = 0;
+    private static final int PITCH = 8;
+    private static final int SPELLING = 9;
+    private static final int VOLUME = 10;
+    private static final int VALUE = 11;
+    private static final int DOTS = 12;
+
+    private static final byte REST = -1;
+    private static final Value[] VALUES = Value.values();
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount;
+    private long size;
+    private long end;
+
+    /**
+     * Initializes a newly created empty {@code OffHeapScore} object.
+     */
+    public OffHeapScore() {
+    }
+
+    /**
+     * Returns the number of elements of this {@code OffHeapScore}.
+     *
+     * @return the number of elements of this {@code OffHeapScore}.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the end, in ticks, of the last added element.
+     *
+     * @return the end, in ticks, of the last added element.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Appends the specified element, starting at the end of the previous one.
+     *
+     * @param element a specified element.
+     * @return the index of the new element.
+     */
+    public long add(ScoreElement element) {
+        return add(end, element);
+    }
+
+    /**
+     * Appends the specified element, starting at the specified onset.
+     *
+     * @param onset the onset of the element, in ticks.
+     * @param element a specified element.
+     * @return the index of the new element.
+     * @throws IllegalArgumentException
+     *         if {@code onset < 0}.
+     */
+    public long add(long onset, ScoreElement element)
+            throws IllegalArgumentException {
+        if (onset < 0) {
+            throw new IllegalArgumentException("Invalid onset! It must be a "
+                                               + "non-negative value.");
+        }
+
+        if ((size >>> CHUNK_BITS) == chunkCount) {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+
+            chunks[chunkCount++] = ByteBuffer
+                    .allocateDirect(CHUNK_RECORDS * RECORD_SIZE)
+                    .order(ByteOrder.nativeOrder());
+        }
+
+        ByteBuffer chunk = chunks[(int) (size >>> CHUNK_BITS)];
+        int offset = (int) (size & CHUNK_MASK) * RECORD_SIZE;
+        Duration duration = element.getDuration();
+
+        chunk.putLong(offset + ONSET, onset);
+
+        if (element instanceof Note) {
+            Note note = (Note) element;
+
+            chunk.put(offset + PITCH, (byte) note.getMIDINumber());
+            chunk.put(offset + SPELLING, (byte) (isSwitched(note) ? 1 : 0));
+        } else {
+            chunk.put(offset + PITCH, REST);
+            chunk.put(offset + SPELLING, (byte) 0);
+        }
+
+        chunk.put(offset + VOLUME, (byte) element.getVolume());
+        chunk.put(offset + VALUE, (byte) duration.getValue().ordinal());
+        chunk.put(offset + DOTS, (byte) duration.getDots());
+
+        end = Math.max(end, onset + duration.getTicks());
+
+        return size++;
+    }
+
+    /**
+     * Appends the specified elements, one after the other.
+     *
+     * @param elements the specified elements.
+     */
+    public void addAll(Iterable<? extends ScoreElement> elements) {
+        for (ScoreElement element : elements) {
+            add(element);
+        }
+    }
+
+    /**
+     * Returns a new {@code Cursor} positioned before the first element.
+     *
+     * @return a new {@code Cursor}.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Transposes all the notes of this {@code OffHeapScore} by a specified
+     * number of half steps. Rests are not affected.
+     *
+     * <p>All the notes are checked before any of them is transposed, so
+     * either all the notes are transposed or none is.
+     *
+     * @param semitones a specified number of half steps.
+     * @throws IllegalArgumentException
+     *         if a note would leave the MIDI range.
+     */
+    public void transpose(int semitones) throws IllegalArgumentException {
+        if (semitones == 0) {
+            return;
+        }
+
+        int low = Integer.MAX_VALUE;
+        int high = Integer.MIN_VALUE;
+
+        for (long i = 0; i < size; i++) {
+            int pitch = pitch(i);
+
+            if (pitch != REST) {
+                low = Math.min(low, pitch);
+                high = Math.max(high, pitch);
+            }
+        }
+
+        if (low > high) {
+            return;
+        }
+
+        Validator.transpose(low, semitones);
+        Validator.transpose(high, semitones);
+
+        for (long i = 0; i < size; i++) {
+            ByteBuffer chunk = chunks[(int) (i >>> CHUNK_BITS)];
+            int offset = (int) (i & CHUNK_MASK) * RECORD_SIZE;
+            int pitch = chunk.get(offset + PITCH);
+
+            if (pitch != REST) {
+                // Transposed notes get their default spelling, as in Note.
+                chunk.put(offset + PITCH, (byte) (pitch + semitones));
+                chunk.put(offset + SPELLING, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the elements between the specified indexes as new {@code Note}
+     * and {@code Rest} objects.
+     *
+     * @param from the index of the first element, inclusive.
+     * @param to the index of the last element, exclusive.
+     * @return the elements between the specified indexes.
+     * @throws IndexOutOfBoundsException
+     *         if {@code from < 0}, {@code to > size()} or {@code from > to}.
+     */
+    public List<ScoreElement> export(long from, long to)
+            throws IndexOutOfBoundsException {
+        if (from < 0 || to > size || from > to
+                || to - from > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Invalid range!");
+        }
+
+        long start = Metrics.start();
+        int count = (int) (to - from);
+        List<ScoreElement> result = new ArrayList<ScoreElement>(count);
+        Cursor cursor = new Cursor();
+
+        for (long i = from; i < to; i++) {
+            cursor.moveTo(i);
+            result.add(cursor.toElement());
+        }
+
+        Metrics.stop(Metrics.Timer.SCORE_EXPORT, start);
+
+        return result;
+    }
+
+    private int pitch(long index) {
+        ByteBuffer chunk = chunks[(int) (index >>> CHUNK_BITS)];
+
+        return chunk.get((int) (index & CHUNK_MASK) * RECORD_SIZE + PITCH);
+    }
+
+    // Returns true if the note is not spelled as a new note with the same
+    // MIDI note number.
+    private static boolean isSwitched(Note note) {
+        Tone tone = new Tone(note.getMIDINumber());
+
+        return tone.getName() != note.getName()
+               || tone.getAccidental() != note.getAccidental();
+    }
+
+    /**
+     * {@code Cursor} class that reads and edits the records of an
+     * {@code OffHeapScore}, one at a time.
+     *
+     * <p>A cursor is a flyweight: the same object represents a different
+     * element each time it is moved, so it must be copied with
+     * {@link #toElement() toElement} to be kept. Edits are written through to
+     * the store. Until it is first moved, a cursor is on no element, and its
+     * element methods throw an {@code IllegalStateException}.
+     */
+    public final class Cursor implements Element {
+
+        private long index = -1;
+        private ByteBuffer chunk;
+        private int offset;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves this {@code Cursor} to the next element.
+         *
+         * @return {@code true} if this {@code Cursor} was moved to the next
+         *         element; {@code false} if there are no more elements.
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                return false;
+            }
+
+            moveTo(index + 1);
+
+            return true;
+        }
+
+        /**
+         * Moves this {@code Cursor} to the specified element.
+         *
+         * @param index the index of a specified element.
+         * @throws IndexOutOfBoundsException
+         *         if {@code index < 0} or {@code index >= size()}.
+         */
+        public void moveTo(long index) throws IndexOutOfBoundsException {
+            if (index < 0 || index >= size) {
+                StringBuilder e = new StringBuilder(60);
+                e.append("Invalid index! ");
+                e.append(index).append(" is out of bounds.");
+
+                throw new IndexOutOfBoundsException(e.toString());
+            }
+
+            this.index = index;
+            this.chunk = chunks[(int) (index >>> CHUNK_BITS)];
+            this.offset = (int) (index & CHUNK_MASK) * RECORD_SIZE;
+        }
+
+        /**
+         * Returns the index of the current element.
+         *
+         * @return the index of the current element, or {@code -1} if this
+         *         {@code Cursor} has not been moved yet.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns {@code true} if the current element is a rest.
+         *
+         * @return {@code true} if the current element is a rest;
+         *         {@code false} if it is a note.
+         */
+        public boolean isRest() {
+            return chunk().get(offset + PITCH) == REST;
+        }
+
+        /**
+         * Returns the MIDI note number of the current element.
+         *
+         * @return the MIDI note number of the current element, or {@code -1}
+         *         if it is a rest.
+         */
+        public int getMIDINumber() {
+            return chunk().get(offset + PITCH);
+        }
+
+        /**
+         * Returns the onset of the current element.
+         *
+         * @return the onset of the current element, in ticks.
+         */
+        public long getOnset() {
+            return chunk().getLong(offset + ONSET);
+        }
+
+        /**
+         * Returns the duration of the current element, in ticks.
+         *
+         * @return the duration of the current element, in ticks.
+         * @see medley.Duration#getTicks()
+         */
+        public int getTicks() {
+            return Duration.valueOf(getValue(), getDots()).getTicks();
+        }
+
+        /**
+         * Transposes the current element, if it is a note, by a specified
+         * number of half steps.
+         *
+         * @param semitones a specified number of half steps.
+         * @throws IllegalArgumentException
+         *         if the note would leave the MIDI range.
+         * @see medley.Note#transpose(int semitones)
+         */
+        public void transpose(int semitones) throws IllegalArgumentException {
+            int pitch = getMIDINumber();
+
+            if (pitch == REST || semitones == 0) {
+                return;
+            }
+
+            Validator.transpose(pitch, semitones);
+
+            chunk().put(offset + PITCH, (byte) (pitch + semitones));
+            chunk().put(offset + SPELLING, (byte) 0);
+        }
+
+        @Override
+        public Value getValue() {
+            return VALUES[chunk().get(offset + VALUE)];
+        }
+
+        @Override
+        public void setValue(Value value) {
+            chunk().put(offset + VALUE, (byte) value.ordinal());
+        }
+
+        @Override
+        public int getDots() {
+            return chunk().get(offset + DOTS);
+        }
+
+        @Override
+        public void setDots(int dots) throws IllegalArgumentException {
+            Validator.dots(dots);
+
+            chunk().put(offset + DOTS, (byte) dots);
+        }
+
+        @Override
+        public double getDurationValue() {
+            return Duration.valueOf(getValue(), getDots()).getDurationValue();
+        }
+
+        @Override
+        public int getVolume() {
+            return chunk().get(offset + VOLUME);
+        }
+
+        /**
+         * Replaces the volume value of the current element with the
+         * specified one.
+         *
+         * @param volume a specified volume value.
+         * @throws IllegalArgumentException
+         *         if {@code volume < 0} or {@code volume > 127}.
+         * @throws UnsupportedOperationException
+         *         if the current element is a rest.
+         */
+        @Override
+        public void setVolume(int volume) throws IllegalArgumentException,
+                UnsupportedOperationException {
+            if (isRest()) {
+                StringBuilder e = new StringBuilder(60);
+
+                e.append("Invalid operation! ");
+                e.append("The volume of a rest cannot be edited.");
+
+                throw new UnsupportedOperationException(e.toString());
+            }
+
+            Validator.volume(volume);
+
+            chunk().put(offset + VOLUME, (byte) volume);
+        }
+
+        // Returns the chunk of the current element.
+        private ByteBuffer chunk() throws IllegalStateException {
+            if (index < 0) {
+                throw new IllegalStateException("Invalid cursor! It has not "
+                                                + "been moved to an element.");
+            }
+
+            return chunk;
+        }
+
+        /**
+         * Returns the current element as a new {@code Note} or {@code Rest}.
+         *
+         * @return the current element as a new {@code Note} or {@code Rest}.
+         */
+        public ScoreElement toElement() {
+            Duration duration = Duration.valueOf(getValue(), getDots());
+
+            if (isRest()) {
+                return new Rest(duration);
+            }
+
+            Note note = new Note(getMIDINumber(), duration, getVolume());
+
+            if (chunk().get(offset + SPELLING) != 0) {
+                note.switchAccidental();
+            }
+
+            return note;
+        }
+
+    }
+
+}
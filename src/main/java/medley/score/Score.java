@@ -0,0 +1,454 @@
+package medley.score;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import medley.Note;
+
+/**
+ * {@code Score} class that stores a sequence of score elements in an array.
+ *
+ * <p>Besides the usual list operations, a {@code Score} is meant to be
+ * analyzed with streams: its {@link #spliterator() spliterator} splits the
+ * backing array in two halves of the same size and reports exact sizes, so
+ * parallel streams balance the work among threads. The
+ * {@link #pitches() pitches}, {@link #volumes() volumes} and
+ * {@link #ticks() ticks} views are primitive streams over the same array, so
+ * computing histograms, ranges or totals does not box any value.
+ *
+ * <p>Spliterators are bound to the elements when they are created: the
+ * score must not be structurally modified while a stream is running, or a
+ * {@code ConcurrentModificationException} is thrown when the traversal ends.
+ * This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.score.ScoreElement
+ */
+public class Score extends AbstractList<ScoreElement> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private ScoreElement[] elements;
+    private int size;
+
+    /**
+     * Initializes a newly created empty {@code Score} object.
+     */
+    public Score() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes a newly created empty {@code Score} object with the
+     * specified initial capacity.
+     *
+     * @param capacity a specified initial capacity.
+     * @throws IllegalArgumentException
+     *         if {@code capacity < 0}.
+     */
+    public Score(int capacity) throws IllegalArgumentException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity! It must be "
+                                               + "a non-negative value.");
+        }
+
+        this.elements = new ScoreElement[capacity];
+    }
+
+    /**
+     * Initializes a newly created {@code Score} object with the specified
+     * elements, in the order returned by their iterator.
+     *
+     * @param elements the specified elements.
+     */
+    public Score(Collection<? extends ScoreElement> elements) {
+        this(elements.size());
+
+        addAll(elements);
+    }
+
+    /**
+     * Returns the element at the specified position of this {@code Score}.
+     *
+     * @param index a specified position.
+     * @return the element at the specified position.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    @Override
+    public ScoreElement get(int index) throws IndexOutOfBoundsException {
+        checkIndex(index, size);
+
+        return elements[index];
+    }
+
+    /**
+     * Replaces the element at the specified position of this {@code Score}
+     * with the specified one.
+     *
+     * @param index a specified position.
+     * @param element a specified element.
+     * @return the replaced element.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    @Override
+    public ScoreElement set(int index, ScoreElement element)
+            throws IndexOutOfBoundsException {
+        checkIndex(index, size);
+        checkElement(element);
+
+        ScoreElement previous = elements[index];
+        elements[index] = element;
+
+        return previous;
+    }
+
+    /**
+     * Inserts the specified element at the specified position of this
+     * {@code Score}.
+     *
+     * @param index a specified position.
+     * @param element a specified element.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index > size()}.
+     */
+    @Override
+    public void add(int index, ScoreElement element)
+            throws IndexOutOfBoundsException {
+        checkIndex(index, size + 1);
+        checkElement(element);
+
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements,
+                                     Math.max(DEFAULT_CAPACITY, size * 2));
+        }
+
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = element;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Removes the element at the specified position of this {@code Score}.
+     *
+     * @param index a specified position.
+     * @return the removed element.
+     * @throws IndexOutOfBoundsException
+     *         if {@code index < 0} or {@code index >= size()}.
+     */
+    @Override
+    public ScoreElement remove(int index) throws IndexOutOfBoundsException {
+        checkIndex(index, size);
+
+        ScoreElement previous = elements[index];
+
+        System.arraycopy(elements, index + 1, elements, index,
+                         size - index - 1);
+        elements[--size] = null;
+        modCount++;
+
+        return previous;
+    }
+
+    /**
+     * Returns the number of elements of this {@code Score}.
+     *
+     * @return the number of elements of this {@code Score}.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a {@code Spliterator} over the elements of this {@code Score}.
+     *
+     * <p>The spliterator is {@code SIZED}, {@code SUBSIZED}, {@code ORDERED}
+     * and {@code NONNULL}, and splits its range in two halves.
+     *
+     * @return a {@code Spliterator} over the elements of this {@code Score}.
+     */
+    @Override
+    public Spliterator<ScoreElement> spliterator() {
+        return new ElementSpliterator(this, 0, size, modCount);
+    }
+
+    /**
+     * Returns a sequential stream of the MIDI note numbers of the notes of
+     * this {@code Score}, in order. Rests are skipped.
+     *
+     * @return a stream of the MIDI note numbers of the notes.
+     * @see medley.Note#getMIDINumber()
+     */
+    public IntStream pitches() {
+        return intStream(IntSpliterator.PITCH);
+    }
+
+    /**
+     * Returns a sequential stream of the volume values of the elements of
+     * this {@code Score}, in order.
+     *
+     * @return a stream of the volume values of the elements.
+     * @see medley.score.Element#getVolume()
+     */
+    public IntStream volumes() {
+        return intStream(IntSpliterator.VOLUME);
+    }
+
+    /**
+     * Returns a sequential stream of the durations of the elements of this
+     * {@code Score}, in ticks, in order.
+     *
+     * @return a stream of the durations of the elements, in ticks.
+     * @see medley.Duration#getTicks()
+     */
+    public IntStream ticks() {
+        return intStream(IntSpliterator.TICKS);
+    }
+
+    private IntStream intStream(int property) {
+        return StreamSupport.intStream(new IntSpliterator(this, 0, size,
+                                                          modCount, property),
+                                       false);
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            StringBuilder e = new StringBuilder(60);
+            e.append("Invalid index! ");
+            e.append(index).append(" is out of bounds.");
+
+            throw new IndexOutOfBoundsException(e.toString());
+        }
+    }
+
+    private static void checkElement(ScoreElement element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    /**
+     * Base class of the spliterators over a range of the backing array.
+     */
+    private abstract static class RangeSpliterator {
+
+        final Score score;
+        final int expectedModCount;
+        int index;
+        final int fence;
+
+        RangeSpliterator(Score score, int index, int fence,
+                         int expectedModCount) {
+            this.score = score;
+            this.index = index;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        // Returns the start of the upper half, after moving this spliterator
+        // to the lower one, or -1 if the range is too small to split.
+        int split() {
+            int low = index;
+            int middle = (low + fence) >>> 1;
+
+            return (low >= middle ? -1 : middle);
+        }
+
+        long remaining() {
+            return fence - index;
+        }
+
+        void checkModCount() {
+            if (score.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+    }
+
+    /**
+     * {@code Spliterator} over the elements of a range.
+     */
+    private static final class ElementSpliterator extends RangeSpliterator
+            implements Spliterator<ScoreElement> {
+
+        ElementSpliterator(Score score, int index, int fence,
+                           int expectedModCount) {
+            super(score, index, fence, expectedModCount);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ScoreElement> action) {
+            if (index >= fence) {
+                return false;
+            }
+
+            action.accept(score.elements[index++]);
+            checkModCount();
+
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super ScoreElement> action) {
+            ScoreElement[] array = score.elements;
+
+            for (int i = index; i < fence; i++) {
+                action.accept(array[i]);
+            }
+
+            index = fence;
+            checkModCount();
+        }
+
+        @Override
+        public Spliterator<ScoreElement> trySplit() {
+            int middle = split();
+
+            if (middle < 0) {
+                return null;
+            }
+
+            Spliterator<ScoreElement> prefix =
+                    new ElementSpliterator(score, index, middle,
+                                           expectedModCount);
+            index = middle;
+
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining();
+        }
+
+        @Override
+        public int characteristics() {
+            return SIZED | SUBSIZED | ORDERED | NONNULL;
+        }
+
+    }
+
+    /**
+     * {@code Spliterator.OfInt} over an {@code int} property of the elements
+     * of a range.
+     */
+    private static final class IntSpliterator extends RangeSpliterator
+            implements Spliterator.OfInt {
+
+        static final int PITCH = 0;
+        static final int VOLUME = 1;
+        static final int TICKS = 2;
+
+        private final int property;
+
+        IntSpliterator(Score score, int index, int fence,
+                       int expectedModCount, int property) {
+            super(score, index, fence, expectedModCount);
+
+            this.property = property;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            ScoreElement[] array = score.elements;
+
+            while (index < fence) {
+                ScoreElement element = array[index++];
+
+                if (property == PITCH) {
+                    if (element instanceof Note) {
+                        action.accept(((Note) element).getMIDINumber());
+                        checkModCount();
+
+                        return true;
+                    }
+                } else {
+                    action.accept(valueOf(element));
+                    checkModCount();
+
+                    return true;
+                }
+            }
+
+            checkModCount();
+
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            ScoreElement[] array = score.elements;
+
+            switch (property) {
+                case PITCH:
+                    for (int i = index; i < fence; i++) {
+                        if (array[i] instanceof Note) {
+                            action.accept(((Note) array[i]).getMIDINumber());
+                        }
+                    }
+                    break;
+                case VOLUME:
+                    for (int i = index; i < fence; i++) {
+                        action.accept(array[i].getVolume());
+                    }
+                    break;
+                default:
+                    for (int i = index; i < fence; i++) {
+                        action.accept(array[i].getDuration().getTicks());
+                    }
+                    break;
+            }
+
+            index = fence;
+            checkModCount();
+        }
+
+        private int valueOf(ScoreElement element) {
+            return (property == VOLUME ? element.getVolume()
+                                       : element.getDuration().getTicks());
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int middle = split();
+
+            if (middle < 0) {
+                return null;
+            }
+
+            Spliterator.OfInt prefix = new IntSpliterator(score, index, middle,
+                                                          expectedModCount,
+                                                          property);
+            index = middle;
+
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining();
+        }
+
+        @Override
+        public int characteristics() {
+            // Skipping rests makes the size of a pitch view unknown.
+            int sized = (property == PITCH ? 0 : SIZED | SUBSIZED);
+
+            return sized | ORDERED;
+        }
+
+    }
+
+}
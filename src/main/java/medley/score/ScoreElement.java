@@ -24,7 +24,7 @@ public abstract class ScoreElement implements Element {
     }
 
     public ScoreElement(Duration duration, int volume) {
-        this.duration = duration;
+        this.duration = Duration.valueOf(duration);
         this.volume = volume;
     }
 
@@ -39,14 +39,17 @@ public abstract class ScoreElement implements Element {
     }
 
     /**
-     * Replaces the {@code Duration} of this {@code ScoreElement} with the
+     * Replaces the {@code Value} of this {@code ScoreElement} with the
      * specified one.
      *
+     * <p>Durations are shared between score elements, so the current
+     * {@code Duration} is replaced rather than edited.
+     *
      * @param value a specified {@code Value}.
-     * @see medley.Duration#setValue(Value value)
+     * @see medley.Duration#valueOf(Value value, int dots)
      */
     public void setValue(Value value) {
-        duration.setValue(value);
+        duration = Duration.valueOf(value, duration.getDots());
     }
 
     /**
@@ -66,10 +69,10 @@ public abstract class ScoreElement implements Element {
      * @param dots a specified number of dots.
      * @throws IllegalArgumentException
      *         if {@code dots < 0} or {@code dots > 3}
-     * @see medley.Duration#setDots(int dots)
+     * @see medley.Duration#valueOf(Value value, int dots)
      */
     public void setDots(int dots) throws IllegalArgumentException {
-        duration.setDots(dots);
+        duration = Duration.valueOf(duration.getValue(), dots);
     }
 
     /**
@@ -82,6 +85,16 @@ public abstract class ScoreElement implements Element {
         return duration.getDurationValue();
     }
 
+    /**
+     * Returns the {@code Duration} of this {@code ScoreElement}. The returned
+     * {@code Duration} is shared and cannot be edited.
+     *
+     * @return the {@code Duration} of this {@code ScoreElement}.
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
     /**
      * Returns the volume value of this {@code ScoreElement}.
      *
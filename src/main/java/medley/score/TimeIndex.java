@@ -0,0 +1,529 @@
+package medley.score;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code TimeIndex} class that finds the score elements sounding in a time
+ * range.
+ *
+ * <p>Times are expressed in semibreves, as returned by
+ * {@link medley.score.Element#getDurationValue() getDurationValue}: an element
+ * added at onset {@code t} spans the time range
+ * {@code [t, t + getDurationValue())}. Elements may overlap, so the index can
+ * hold polyphonic material; the duration of an element is read when it is
+ * added, hence an element whose duration changes must be removed and added
+ * again.
+ *
+ * <p>Elements are kept sorted by onset in blocks of primitive arrays, and the
+ * blocks are the nodes of a treap ordered by onset: each node knows the
+ * latest end time of its subtree, and each block keeps a max tree over the
+ * end times of its own elements. A query only descends into the subtrees and
+ * the parts of a block holding a reported element, in onset order. The
+ * elements starting in the range are adjacent, so they take
+ * \( O(\log n + k) \) steps, where \( k \) is the number of reported
+ * elements; each element that started before the range and still sounds
+ * adds at most \( O(\log n) \) steps. Adding or removing an element shifts
+ * the entries of one block, and only updates the path from its node to the
+ * root; a full block is split, and an empty one removed, in
+ * \( O(\log n) \) expected rotations.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ */
+public class TimeIndex {
+
+    private static final int BLOCK_SIZE = 64;
+
+    private Block root;
+    private int size;
+
+    // State of the xorshift generator of the priorities of the blocks.
+    private int seed = 0x2545F491;
+
+    /**
+     * Initializes a newly created empty {@code TimeIndex} object.
+     */
+    public TimeIndex() {}
+
+    /**
+     * Returns the number of elements in this {@code TimeIndex}.
+     *
+     * @return the number of elements in this {@code TimeIndex}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the latest end time of the elements of this {@code TimeIndex}.
+     *
+     * @return the latest end time of the elements, or {@code 0} if this
+     *         {@code TimeIndex} is empty.
+     */
+    public double getEnd() {
+        return (size == 0 ? 0 : root.max);
+    }
+
+    /**
+     * Adds the specified element at the specified onset.
+     *
+     * @param onset a specified onset, in semibreves.
+     * @param element a specified element.
+     */
+    public void add(double onset, ScoreElement element) {
+        double end = onset + element.getDurationValue();
+
+        if (root == null) {
+            root = new Block(priority());
+        }
+
+        Block block = findBlock(onset);
+
+        block.insert(onset, end, element);
+        size++;
+
+        if (block.size == BLOCK_SIZE) {
+            Block next = block.split(priority());
+
+            update(block);
+            insertAfter(block, next);
+        } else {
+            update(block);
+        }
+    }
+
+    /**
+     * Adds the specified sequence of elements, one after the other, starting
+     * from the specified onset. The onset of each element is the end of the
+     * previous one.
+     *
+     * @param start the onset of the first element, in semibreves.
+     * @param voice a specified sequence of elements.
+     * @return the end time of the last element.
+     */
+    public double addVoice(double start, List<? extends ScoreElement> voice) {
+        double onset = start;
+
+        for (ScoreElement element : voice) {
+            add(onset, element);
+            onset += element.getDurationValue();
+        }
+
+        return onset;
+    }
+
+    /**
+     * Removes the specified element, added at the specified onset.
+     *
+     * @param onset the onset at which the element was added.
+     * @param element a specified element; elements are compared by
+     *        identity.
+     * @return {@code true} if the element was found and removed;
+     *         {@code false} otherwise.
+     */
+    public boolean remove(double onset, ScoreElement element) {
+        for (Block block = findFirstBlock(onset); block != null;
+                block = next(block)) {
+            if (block.onsets[0] > onset) {
+                break;
+            }
+
+            int index = block.indexOf(onset, element);
+
+            if (index >= 0) {
+                block.remove(index);
+                size--;
+
+                if (block.size == 0) {
+                    removeBlock(block);
+                } else {
+                    update(block);
+                }
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the elements sounding in the specified time range, sorted by
+     * onset.
+     *
+     * <p>An element sounds in the range {@code [from, to)} if it starts before
+     * {@code to} and ends after {@code from}. If {@code from == to}, the
+     * elements sounding at that instant are returned.
+     *
+     * @param from the start of the range, in semibreves.
+     * @param to the end of the range, in semibreves.
+     * @return the elements sounding in the specified time range.
+     */
+    public List<ScoreElement> query(double from, double to) {
+        List<ScoreElement> result = new ArrayList<ScoreElement>();
+        query(from, to, result);
+
+        return result;
+    }
+
+    /**
+     * Adds the elements sounding in the specified time range, sorted by
+     * onset, to the specified list.
+     *
+     * @param from the start of the range, in semibreves.
+     * @param to the end of the range, in semibreves.
+     * @param result the list that receives the elements.
+     * @return the number of elements added to the list.
+     * @see #query(double from, double to)
+     */
+    public int query(double from, double to,
+                     List<? super ScoreElement> result) {
+        if (size == 0 || to < from) {
+            return 0;
+        }
+
+        return collect(root, from, to, result);
+    }
+
+    private static int collect(Block node, double from, double to,
+                               List<? super ScoreElement> result) {
+        if (node == null || node.max <= from) {
+            return 0;
+        }
+
+        int count = collect(node.left, from, to, result);
+
+        // The blocks from this one on start after the range.
+        if (node.startsAfter(from, to)) {
+            return count;
+        }
+
+        return count + node.collect(from, to, result)
+               + collect(node.right, from, to, result);
+    }
+
+    // Returns the last block whose first onset is not after the specified
+    // onset, or the first block.
+    private Block findBlock(double onset) {
+        Block result = null;
+
+        for (Block node = root; node != null;) {
+            if (node.onsets[0] <= onset) {
+                result = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+
+        if (result == null) {
+            result = root;
+
+            while (result.left != null) {
+                result = result.left;
+            }
+        }
+
+        return result;
+    }
+
+    // Returns the first block that may contain the specified onset, or null.
+    private Block findFirstBlock(double onset) {
+        Block result = null;
+
+        for (Block node = root; node != null;) {
+            if (node.onsets[node.size - 1] >= onset) {
+                result = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+
+        return result;
+    }
+
+    // Returns the block following the specified one, or null.
+    private static Block next(Block block) {
+        if (block.right != null) {
+            Block node = block.right;
+
+            while (node.left != null) {
+                node = node.left;
+            }
+
+            return node;
+        }
+
+        Block node = block;
+
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+
+        return node.parent;
+    }
+
+    // Inserts the specified block right after the specified one, then
+    // rotates it up to its place in the heap of priorities.
+    private void insertAfter(Block previous, Block block) {
+        if (previous.right == null) {
+            previous.right = block;
+            block.parent = previous;
+        } else {
+            Block node = previous.right;
+
+            while (node.left != null) {
+                node = node.left;
+            }
+
+            node.left = block;
+            block.parent = node;
+        }
+
+        update(block);
+
+        while (block.parent != null
+                && block.priority > block.parent.priority) {
+            rotate(block);
+        }
+    }
+
+    // Rotates the specified block down to a leaf, then unlinks it.
+    private void removeBlock(Block block) {
+        while (block.left != null || block.right != null) {
+            if (block.right == null || block.left != null
+                    && block.left.priority > block.right.priority) {
+                rotate(block.left);
+            } else {
+                rotate(block.right);
+            }
+        }
+
+        Block parent = block.parent;
+
+        if (parent == null) {
+            root = null;
+        } else {
+            if (parent.left == block) {
+                parent.left = null;
+            } else {
+                parent.right = null;
+            }
+
+            update(parent);
+        }
+    }
+
+    // Rotates the specified block above its parent.
+    private void rotate(Block node) {
+        Block parent = node.parent;
+        Block grand = parent.parent;
+
+        if (parent.left == node) {
+            parent.left = node.right;
+
+            if (node.right != null) {
+                node.right.parent = parent;
+            }
+
+            node.right = parent;
+        } else {
+            parent.right = node.left;
+
+            if (node.left != null) {
+                node.left.parent = parent;
+            }
+
+            node.left = parent;
+        }
+
+        parent.parent = node;
+        node.parent = grand;
+
+        if (grand == null) {
+            root = node;
+        } else if (grand.left == parent) {
+            grand.left = node;
+        } else {
+            grand.right = node;
+        }
+
+        parent.pull();
+        node.pull();
+    }
+
+    // Updates the latest end times from the specified block to the root.
+    private static void update(Block block) {
+        for (Block node = block; node != null; node = node.parent) {
+            node.pull();
+        }
+    }
+
+    private int priority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+
+        return seed;
+    }
+
+    /**
+     * A sorted run of at most {@code BLOCK_SIZE} elements, and a node of the
+     * treap of blocks.
+     */
+    private static final class Block {
+
+        final double[] onsets = new double[BLOCK_SIZE];
+        final double[] ends = new double[BLOCK_SIZE];
+        final ScoreElement[] elements = new ScoreElement[BLOCK_SIZE];
+        int size;
+
+        // Max tree over the end times: leaves start at index BLOCK_SIZE,
+        // node i covers nodes 2i and 2i + 1.
+        final double[] tree = new double[2 * BLOCK_SIZE];
+
+        final int priority;
+        Block left;
+        Block right;
+        Block parent;
+
+        // Latest end time of the subtree.
+        double max = Double.NEGATIVE_INFINITY;
+
+        Block(int priority) {
+            this.priority = priority;
+            Arrays.fill(tree, Double.NEGATIVE_INFINITY);
+        }
+
+        void insert(double onset, double end, ScoreElement element) {
+            // Elements with the same onset keep their insertion order.
+            int index = size;
+
+            while (index > 0 && onsets[index - 1] > onset) {
+                index--;
+            }
+
+            System.arraycopy(onsets, index, onsets, index + 1, size - index);
+            System.arraycopy(ends, index, ends, index + 1, size - index);
+            System.arraycopy(elements, index, elements, index + 1,
+                             size - index);
+
+            onsets[index] = onset;
+            ends[index] = end;
+            elements[index] = element;
+            size++;
+            refresh(index);
+        }
+
+        int indexOf(double onset, ScoreElement element) {
+            for (int i = 0; i < size && onsets[i] <= onset; i++) {
+                if (onsets[i] == onset && elements[i] == element) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        void remove(int index) {
+            int moved = size - index - 1;
+
+            System.arraycopy(onsets, index + 1, onsets, index, moved);
+            System.arraycopy(ends, index + 1, ends, index, moved);
+            System.arraycopy(elements, index + 1, elements, index, moved);
+            elements[--size] = null;
+            refresh(index);
+        }
+
+        Block split(int priority) {
+            Block block = new Block(priority);
+            int half = size / 2;
+            int moved = size - half;
+
+            System.arraycopy(onsets, half, block.onsets, 0, moved);
+            System.arraycopy(ends, half, block.ends, 0, moved);
+            System.arraycopy(elements, half, block.elements, 0, moved);
+            Arrays.fill(elements, half, size, null);
+
+            block.size = moved;
+            size = half;
+
+            refresh(half);
+            block.refresh(0);
+
+            return block;
+        }
+
+        // Rebuilds the leaves of the max tree from the specified index, and
+        // the nodes above them.
+        void refresh(int from) {
+            for (int i = from; i < BLOCK_SIZE; i++) {
+                tree[BLOCK_SIZE + i] = (i < size ? ends[i]
+                                        : Double.NEGATIVE_INFINITY);
+            }
+
+            for (int low = (BLOCK_SIZE + from) >>> 1, high = BLOCK_SIZE - 1;
+                    low > 0; low >>>= 1, high >>>= 1) {
+                for (int i = low; i <= high; i++) {
+                    tree[i] = Math.max(tree[2 * i], tree[2 * i + 1]);
+                }
+            }
+        }
+
+        // Recomputes the latest end time of the subtree.
+        void pull() {
+            max = tree[1];
+
+            if (left != null) {
+                max = Math.max(max, left.max);
+            }
+
+            if (right != null) {
+                max = Math.max(max, right.max);
+            }
+        }
+
+        // Returns true if the elements of this block, and of the following
+        // ones, start after the specified range.
+        boolean startsAfter(double from, double to) {
+            double onset = onsets[0];
+
+            return onset > to || (onset == to && from != to);
+        }
+
+        int collect(double from, double to,
+                    List<? super ScoreElement> result) {
+            return collect(1, 0, BLOCK_SIZE - 1, from, to, result);
+        }
+
+        private int collect(int node, int low, int high, double from,
+                            double to, List<? super ScoreElement> result) {
+            if (low >= size || tree[node] <= from) {
+                return 0;
+            }
+
+            double onset = onsets[low];
+
+            if (onset > to || (onset == to && from != to)) {
+                return 0;
+            }
+
+            if (low == high) {
+                result.add(elements[low]);
+                return 1;
+            }
+
+            int middle = (low + high) >>> 1;
+
+            return collect(2 * node, low, middle, from, to, result)
+                   + collect(2 * node + 1, middle + 1, high, from, to,
+                             result);
+        }
+
+    }
+
+}
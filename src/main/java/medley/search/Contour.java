@@ -0,0 +1,112 @@
+package medley.search;
+
+import java.util.List;
+
+import medley.Note;
+
+/**
+ * {@code Contour} class that represents a melody as the sequence of its
+ * steps, stored in primitive arrays.
+ *
+ * <p>Each step is made of the pitch interval, in semitones, and of the binary
+ * logarithm of the duration ratio between two consecutive notes. A contour is
+ * invariant under transposition and tempo changes, and is the input of the
+ * comparisons of {@link MelodicDistance}.
+ *
+ * @author Salvatore Gentile
+ * @see medley.search.MelodicDistance
+ */
+public final class Contour {
+
+    private final int[] intervals;
+    private final float[] ratios;
+
+    /**
+     * Initializes a newly created {@code Contour} object with the specified
+     * steps. The arrays are not copied.
+     *
+     * @param intervals the pitch intervals, in semitones.
+     * @param ratios the binary logarithms of the duration ratios.
+     * @throws IllegalArgumentException
+     *         if the arrays have different lengths.
+     */
+    public Contour(int[] intervals, float[] ratios)
+            throws IllegalArgumentException {
+        if (intervals.length != ratios.length) {
+            throw new IllegalArgumentException("Invalid contour! The arrays "
+                                               + "must have the same length.");
+        }
+
+        this.intervals = intervals;
+        this.ratios = ratios;
+    }
+
+    /**
+     * Returns the {@code Contour} of the specified melody.
+     *
+     * @param melody a specified melody.
+     * @return the {@code Contour} of the specified melody.
+     */
+    public static Contour of(List<Note> melody) {
+        int steps = Math.max(0, melody.size() - 1);
+        int[] intervals = new int[steps];
+        float[] ratios = new float[steps];
+        int index = 0;
+        Note previous = null;
+
+        for (Note note : melody) {
+            if (previous != null) {
+                double ratio = note.getDurationValue()
+                               / previous.getDurationValue();
+
+                intervals[index] = note.getMIDINumber()
+                                   - previous.getMIDINumber();
+                ratios[index] = (float) (Math.log(ratio) / Math.log(2.0));
+                index++;
+            }
+
+            previous = note;
+        }
+
+        return new Contour(intervals, ratios);
+    }
+
+    /**
+     * Returns the number of steps of this {@code Contour}.
+     *
+     * @return the number of steps of this {@code Contour}.
+     */
+    public int length() {
+        return intervals.length;
+    }
+
+    /**
+     * Returns the pitch interval of the specified step.
+     *
+     * @param index a specified step.
+     * @return the pitch interval of the specified step, in semitones.
+     */
+    public int getInterval(int index) {
+        return intervals[index];
+    }
+
+    /**
+     * Returns the binary logarithm of the duration ratio of the specified
+     * step.
+     *
+     * @param index a specified step.
+     * @return the binary logarithm of the duration ratio of the step.
+     */
+    public float getRatio(int index) {
+        return ratios[index];
+    }
+
+    int[] intervals() {
+        return intervals;
+    }
+
+    float[] ratios() {
+        return ratios;
+    }
+
+}
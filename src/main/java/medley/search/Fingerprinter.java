@@ -0,0 +1,140 @@
+package medley.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+import medley.Note;
+
+/**
+ * {@code Fingerprinter} class that computes the fingerprints of a melody.
+ *
+ * <p>A melody is turned into a sequence of steps, each one made of the pitch
+ * interval and of the duration ratio between two consecutive notes. Every
+ * window of {@code window} consecutive steps is hashed into a 64-bit
+ * fingerprint, so the fingerprints are invariant under transposition and
+ * tempo changes. Two melodies sharing most of their fingerprints are likely
+ * to be near-duplicates; see {@link LshTable}.
+ *
+ * @author Salvatore Gentile
+ * @see medley.search.LshTable
+ */
+public final class Fingerprinter {
+
+    /**
+     * The default window length, in steps.
+     */
+    public static final int DEFAULT_WINDOW = 6;
+
+    private static final long MULTIPLIER = 0x100000001B3L;
+
+    private final int window;
+
+    /**
+     * Initializes a newly created {@code Fingerprinter} object that uses the
+     * default window length.
+     */
+    public Fingerprinter() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Initializes a newly created {@code Fingerprinter} object that uses the
+     * specified window length.
+     *
+     * @param window a specified window length, in steps.
+     * @throws IllegalArgumentException
+     *         if {@code window < 1}.
+     */
+    public Fingerprinter(int window) throws IllegalArgumentException {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid window length!");
+        }
+
+        this.window = window;
+    }
+
+    /**
+     * Returns the window length of this {@code Fingerprinter}.
+     *
+     * @return the window length of this {@code Fingerprinter}.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the distinct fingerprints of the specified melody, sorted. A
+     * melody shorter than {@code window + 1} notes has no fingerprints.
+     *
+     * @param melody a specified melody.
+     * @return the distinct fingerprints of the specified melody.
+     */
+    public long[] fingerprint(List<Note> melody) {
+        int steps = melody.size() - 1;
+
+        if (steps < window) {
+            return new long[0];
+        }
+
+        int[] codes = new int[steps];
+        int index = 0;
+        Note previous = null;
+
+        for (Note note : melody) {
+            if (previous != null) {
+                codes[index++] = NGrams.step(previous, note, true);
+            }
+
+            previous = note;
+        }
+
+        // Polynomial rolling hash: the contribution of the step leaving the
+        // window is removed using the precomputed highest power.
+        long power = 1;
+
+        for (int i = 1; i < window; i++) {
+            power *= MULTIPLIER;
+        }
+
+        long[] fingerprints = new long[steps - window + 1];
+        long hash = 0;
+
+        for (int i = 0; i < steps; i++) {
+            if (i >= window) {
+                hash -= codes[i - window] * power;
+            }
+
+            hash = hash * MULTIPLIER + codes[i];
+
+            if (i >= window - 1) {
+                fingerprints[i - window + 1] = mix(hash);
+            }
+        }
+
+        Arrays.sort(fingerprints);
+
+        int distinct = 0;
+
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (i == 0 || fingerprints[i] != fingerprints[distinct - 1]) {
+                fingerprints[distinct++] = fingerprints[i];
+            }
+        }
+
+        return Arrays.copyOf(fingerprints, distinct);
+    }
+
+    /**
+     * Returns a well distributed 64-bit hash of the specified value.
+     *
+     * @param value a specified value.
+     * @return a 64-bit hash of the specified value.
+     */
+    static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+
+        return value ^ (value >>> 31);
+    }
+
+}
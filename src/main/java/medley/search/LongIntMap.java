@@ -0,0 +1,153 @@
+package medley.search;
+
+import java.util.Arrays;
+
+/**
+ * {@code LongIntMap} class that maps primitive {@code long} keys to
+ * non-negative {@code int} values without boxing.
+ *
+ * <p>The map uses open addressing with linear probing over two parallel
+ * arrays; its capacity is always a power of two.
+ *
+ * @author Salvatore Gentile
+ */
+final class LongIntMap {
+
+    /**
+     * Value returned by {@link #get(long) get} for missing keys.
+     */
+    static final int MISSING = -1;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Initializes a newly created empty {@code LongIntMap} object.
+     */
+    LongIntMap() {
+        this(16);
+    }
+
+    /**
+     * Initializes a newly created empty {@code LongIntMap} object able to
+     * hold the specified number of mappings without resizing.
+     *
+     * @param expected a specified number of mappings.
+     */
+    LongIntMap(int expected) {
+        int capacity = Integer.highestOneBit(
+                Math.max(2, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(values, MISSING);
+    }
+
+    /**
+     * Returns the value mapped to the specified key.
+     *
+     * @param key a specified key.
+     * @return the value mapped to the specified key, or {@code MISSING}.
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (values[i] == MISSING) {
+                return MISSING;
+            }
+
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+    }
+
+    /**
+     * Maps the specified key to the specified value.
+     *
+     * @param key a specified key.
+     * @param value a specified non-negative value.
+     */
+    void put(long key, int value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+
+        while (values[i] != MISSING) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash();
+        }
+    }
+
+    /**
+     * Returns the number of mappings of this {@code LongIntMap}.
+     *
+     * @return the number of mappings of this {@code LongIntMap}.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the keys of this {@code LongIntMap}, in no particular order.
+     *
+     * @return the keys of this {@code LongIntMap}.
+     */
+    long[] keys() {
+        long[] result = new long[size];
+        int count = 0;
+
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != MISSING) {
+                result[count++] = keys[i];
+            }
+        }
+
+        return result;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, MISSING);
+
+        int mask = keys.length - 1;
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != MISSING) {
+                int i = hash(oldKeys[j]) & mask;
+
+                while (values[i] != MISSING) {
+                    i = (i + 1) & mask;
+                }
+
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
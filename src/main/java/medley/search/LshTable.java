@@ -0,0 +1,305 @@
+package medley.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@code LshTable} class that finds near-duplicate melodies through
+ * <i>MinHash</i> signatures and <i>locality-sensitive hashing</i>.
+ *
+ * <p>Each melody is represented by the set of its fingerprints, computed by a
+ * {@link Fingerprinter}. The set is summarized by a MinHash signature of
+ * {@code bands * rows} values: the fraction of equal values between two
+ * signatures estimates the Jaccard similarity of the two sets. The signature
+ * is then split into {@code bands} bands of {@code rows} values, and each band
+ * is hashed into a bucket. Two melodies become candidates when they share at
+ * least one bucket, which happens with high probability only when their
+ * similarity is above about \( (1 / bands)^{1 / rows} \).
+ *
+ * <p>A lookup therefore only inspects the melodies sharing a bucket with the
+ * query, instead of comparing it with every stored melody.
+ *
+ * <p>This class is not synchronized: lookups may run concurrently with each
+ * other, but not with {@link #add(long[]) add}.
+ *
+ * @author Salvatore Gentile
+ * @see medley.search.Fingerprinter
+ */
+public class LshTable {
+
+    /**
+     * The default number of bands.
+     */
+    public static final int DEFAULT_BANDS = 16;
+
+    /**
+     * The default number of rows per band.
+     */
+    public static final int DEFAULT_ROWS = 4;
+
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+
+    private final LongIntMap[] buckets;
+    private int[][] members = new int[16][];
+    private int[] memberCounts = new int[16];
+    private int bucketCount;
+
+    private int[] signatures = new int[0];
+    private int size;
+
+    /**
+     * Initializes a newly created empty {@code LshTable} object with the
+     * default number of bands and rows.
+     */
+    public LshTable() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS);
+    }
+
+    /**
+     * Initializes a newly created empty {@code LshTable} object with the
+     * specified number of bands and rows.
+     *
+     * @param bands a specified number of bands.
+     * @param rows a specified number of rows per band.
+     * @throws IllegalArgumentException
+     *         if {@code bands < 1}, {@code rows < 1}, or
+     *         {@code bands * rows > Integer.MAX_VALUE}.
+     */
+    public LshTable(int bands, int rows) throws IllegalArgumentException {
+        if (bands < 1 || rows < 1 || (long) bands * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid number of bands or "
+                                               + "rows!");
+        }
+
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        this.buckets = new LongIntMap[bands];
+
+        // Fixed seeds, so that signatures are stable across runs.
+        long seed = 0x9E3779B97F4A7C15L;
+
+        for (int i = 0; i < seeds.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            seeds[i] = Fingerprinter.mix(seed);
+        }
+
+        for (int band = 0; band < bands; band++) {
+            buckets[band] = new LongIntMap();
+        }
+    }
+
+    /**
+     * Returns the number of melodies in this {@code LshTable}.
+     *
+     * @return the number of melodies in this {@code LshTable}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the melody with the specified fingerprints to this
+     * {@code LshTable}.
+     *
+     * <p>Melodies without fingerprints are counted, but cannot be found.
+     *
+     * @param fingerprints the fingerprints of a melody.
+     * @return the identifier of the melody; identifiers are assigned in
+     *         increasing order, starting from {@code 0}.
+     * @throws IllegalStateException
+     *         if the signatures of all the melodies would not fit in an
+     *         array, that is beyond {@code Integer.MAX_VALUE / (bands * rows)}
+     *         melodies.
+     * @see medley.search.Fingerprinter#fingerprint(java.util.List melody)
+     */
+    public int add(long[] fingerprints) throws IllegalStateException {
+        int length = seeds.length;
+        long needed = (size + 1L) * length;
+
+        if (needed > Integer.MAX_VALUE) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Too many melodies! The signatures of ");
+            e.append(size + 1L).append(" melodies take ").append(needed);
+            e.append(" values, more than ").append(Integer.MAX_VALUE);
+            e.append(".");
+
+            throw new IllegalStateException(e.toString());
+        }
+
+        if (signatures.length < needed) {
+            signatures = Arrays.copyOf(signatures, (int) grow(needed,
+                                       signatures.length));
+        }
+
+        int id = size++;
+
+        signature(fingerprints, signatures, id * length);
+
+        if (fingerprints.length == 0) {
+            return id;
+        }
+
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(signatures, id * length, band);
+            int bucket = buckets[band].get(key);
+
+            if (bucket == LongIntMap.MISSING) {
+                bucket = newBucket();
+                buckets[band].put(key, bucket);
+            }
+
+            addMember(bucket, id);
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the stored melodies whose estimated similarity with the melody
+     * with the specified fingerprints is at least the specified threshold,
+     * sorted by decreasing similarity.
+     *
+     * <p>The score of each {@code Match} is the estimated Jaccard similarity,
+     * between {@code 0} and {@code 1}, of the two sets of fingerprints.
+     *
+     * @param fingerprints the fingerprints of a melody.
+     * @param threshold a specified minimum similarity.
+     * @return the stored melodies similar to the specified one.
+     */
+    public List<Match> query(long[] fingerprints, double threshold) {
+        List<Match> matches = new ArrayList<Match>();
+
+        if (fingerprints.length == 0) {
+            return matches;
+        }
+
+        int length = seeds.length;
+        int[] signature = new int[length];
+        signature(fingerprints, signature, 0);
+
+        // Collects the candidates of every band, then removes duplicates.
+        int[] candidates = new int[16];
+        int count = 0;
+
+        for (int band = 0; band < bands; band++) {
+            int bucket = buckets[band].get(bandKey(signature, 0, band));
+
+            if (bucket == LongIntMap.MISSING) {
+                continue;
+            }
+
+            int bucketSize = memberCounts[bucket];
+
+            if (count + bucketSize > candidates.length) {
+                candidates = Arrays.copyOf(candidates,
+                                           Math.max(count + bucketSize,
+                                                    candidates.length * 2));
+            }
+
+            System.arraycopy(members[bucket], 0, candidates, count,
+                             bucketSize);
+            count += bucketSize;
+        }
+
+        Arrays.sort(candidates, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            int id = candidates[i];
+
+            if (i > 0 && id == candidates[i - 1]) {
+                continue;
+            }
+
+            int equal = 0;
+            int offset = id * length;
+
+            for (int j = 0; j < length; j++) {
+                if (signatures[offset + j] == signature[j]) {
+                    equal++;
+                }
+            }
+
+            float similarity = (float) equal / length;
+
+            if (similarity >= threshold) {
+                matches.add(new Match(id, similarity));
+            }
+        }
+
+        Collections.sort(matches, new Comparator<Match>() {
+            @Override
+            public int compare(Match a, Match b) {
+                return Float.compare(b.getScore(), a.getScore());
+            }
+        });
+
+        return matches;
+    }
+
+    private void signature(long[] fingerprints, int[] target, int offset) {
+        for (int i = 0; i < seeds.length; i++) {
+            long seed = seeds[i];
+            long min = Long.MAX_VALUE;
+
+            for (long fingerprint : fingerprints) {
+                long hash = Fingerprinter.mix(fingerprint ^ seed);
+
+                if (hash < min) {
+                    min = hash;
+                }
+            }
+
+            target[offset + i] = (int) (min >>> 32);
+        }
+    }
+
+    private long bandKey(int[] signature, int offset, int band) {
+        long key = band;
+        int start = offset + band * rows;
+
+        for (int i = 0; i < rows; i++) {
+            key = Fingerprinter.mix(key * 31 + signature[start + i]);
+        }
+
+        return key;
+    }
+
+    // Returns the new capacity of an array of the specified length that must
+    // hold the specified number of values: twice the length, if enough and
+    // if it fits in an int.
+    private static long grow(long needed, int length) {
+        return Math.max(needed, Math.min(2L * length, Integer.MAX_VALUE));
+    }
+
+    private int newBucket() {
+        if (bucketCount == members.length) {
+            int capacity = (int) grow(bucketCount + 1L, bucketCount);
+
+            members = Arrays.copyOf(members, capacity);
+            memberCounts = Arrays.copyOf(memberCounts, capacity);
+        }
+
+        members[bucketCount] = new int[2];
+
+        return bucketCount++;
+    }
+
+    private void addMember(int bucket, int id) {
+        int count = memberCounts[bucket];
+
+        if (count == members[bucket].length) {
+            members[bucket] = Arrays.copyOf(members[bucket],
+                                            (int) grow(count + 1L, count));
+        }
+
+        members[bucket][count] = id;
+        memberCounts[bucket] = count + 1;
+    }
+
+}
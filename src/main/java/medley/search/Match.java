@@ -0,0 +1,164 @@
+package medley.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code Match} class that represents a melody returned by a search, along
+ * with its relevance score.
+ *
+ * @author Salvatore Gentile
+ */
+public final class Match {
+
+    private final int id;
+    private final float score;
+
+    /**
+     * Initializes a newly created {@code Match} object with the specified
+     * melody identifier and score.
+     *
+     * @param id a specified melody identifier.
+     * @param score a specified score.
+     */
+    public Match(int id, float score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    /**
+     * Returns the identifier of the matching melody.
+     *
+     * @return the identifier of the matching melody.
+     */
+    public int getID() {
+        return id;
+    }
+
+    /**
+     * Returns the score of this {@code Match}. Higher scores mean more
+     * relevant matches.
+     *
+     * @return the score of this {@code Match}.
+     */
+    public float getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the matches with the highest positive scores among the
+     * specified ones, sorted by decreasing score.
+     *
+     * <p>The selection uses a bounded min-heap of primitive values, so it
+     * takes \( O(n \log k) \) time and allocates only the returned matches.
+     *
+     * @param scores the scores, indexed by melody identifier minus
+     *        {@code base}.
+     * @param size the number of scores to consider.
+     * @param base a value added to the index of every returned score.
+     * @param k the maximum number of matches to return.
+     * @return the matches with the highest positive scores.
+     */
+    static List<Match> top(float[] scores, int size, int base, int k) {
+        int[] heap = new int[Math.max(0, Math.min(k, size))];
+        int count = 0;
+
+        for (int id = 0; id < size; id++) {
+            float score = scores[id];
+
+            if (score <= 0) {
+                continue;
+            }
+
+            if (count < heap.length) {
+                heap[count] = id;
+                siftUp(heap, count++, scores);
+            } else if (count > 0 && score > scores[heap[0]]) {
+                heap[0] = id;
+                siftDown(heap, count, scores);
+            }
+        }
+
+        List<Match> matches = new ArrayList<Match>(count);
+
+        while (count > 0) {
+            int id = heap[0];
+            matches.add(new Match(base + id, scores[id]));
+            heap[0] = heap[--count];
+            siftDown(heap, count, scores);
+        }
+
+        Collections.reverse(matches);
+
+        return matches;
+    }
+
+    private static void siftUp(int[] heap, int index, float[] scores) {
+        int id = heap[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+
+            if (scores[heap[parent]] <= scores[id]) {
+                break;
+            }
+
+            heap[index] = heap[parent];
+            index = parent;
+        }
+
+        heap[index] = id;
+    }
+
+    private static void siftDown(int[] heap, int size, float[] scores) {
+        if (size == 0) {
+            return;
+        }
+
+        int id = heap[0];
+        int index = 0;
+
+        while (true) {
+            int child = 2 * index + 1;
+
+            if (child >= size) {
+                break;
+            }
+
+            if (child + 1 < size
+                    && scores[heap[child + 1]] < scores[heap[child]]) {
+                child++;
+            }
+
+            if (scores[id] <= scores[heap[child]]) {
+                break;
+            }
+
+            heap[index] = heap[child];
+            index = child;
+        }
+
+        heap[index] = id;
+    }
+
+    /**
+     * Returns a string representation of this {@code Match}.
+     *
+     * @return a string representation of this {@code Match}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("#");
+        sb.append(id);
+        sb.append(" (");
+        sb.append(String.format(Locale.ENGLISH, "%1.3f", score));
+        sb.append(")");
+
+        return sb.toString();
+    }
+
+}
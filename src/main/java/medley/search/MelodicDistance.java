@@ -0,0 +1,374 @@
+package medley.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * {@code MelodicDistance} class that compares melodies using the melodic
+ * edit distance and dynamic time warping.
+ *
+ * <p>Both measures align the steps of two {@link Contour}s. Matching two steps
+ * costs the weighted sum of the difference of their pitch intervals and of
+ * the difference of their duration ratios; the edit distance also allows to
+ * skip a step for a fixed gap cost, while dynamic time warping allows a step
+ * to be matched with several consecutive ones.
+ *
+ * <p>Alignments are restricted to a band around the diagonal (the
+ * Sakoe-Chiba band), so a comparison takes \( O(n \cdot band) \) time. A
+ * comparison is abandoned as soon as its distance is known to exceed the
+ * given threshold, which makes ranking many candidates much cheaper.
+ *
+ * <p>The dynamic programming rows are kept between comparisons, so comparing
+ * melodies does not allocate; for the same reason a {@code MelodicDistance}
+ * must not be shared between threads. Use
+ * {@link #compare(Contour, List, Measure, float, ExecutorService) compare}
+ * to compare a query against many candidates in parallel.
+ *
+ * @author Salvatore Gentile
+ * @see medley.search.Contour
+ */
+public final class MelodicDistance {
+
+    /**
+     * Measures of the distance between two melodies.
+     */
+    public enum Measure {
+        /**
+         * Melodic edit distance.
+         */
+        EDIT,
+
+        /**
+         * Dynamic time warping.
+         */
+        DTW
+    }
+
+    /**
+     * The default weight of one semitone of difference between intervals.
+     */
+    public static final float DEFAULT_PITCH_WEIGHT = 1.0f;
+
+    /**
+     * The default weight of a doubling of difference between duration
+     * ratios.
+     */
+    public static final float DEFAULT_DURATION_WEIGHT = 0.5f;
+
+    /**
+     * The default cost of skipping a step in the edit distance.
+     */
+    public static final float DEFAULT_GAP_COST = 2.0f;
+
+    /**
+     * The default band radius.
+     */
+    public static final int DEFAULT_BAND = 16;
+
+    private static final float INFINITY = Float.POSITIVE_INFINITY;
+
+    private final float pitchWeight;
+    private final float durationWeight;
+    private final float gapCost;
+    private final int band;
+
+    private float[] previous = new float[0];
+    private float[] current = new float[0];
+
+    /**
+     * Initializes a newly created {@code MelodicDistance} object with the
+     * default weights and band.
+     */
+    public MelodicDistance() {
+        this(DEFAULT_PITCH_WEIGHT, DEFAULT_DURATION_WEIGHT, DEFAULT_GAP_COST,
+             DEFAULT_BAND);
+    }
+
+    /**
+     * Initializes a newly created {@code MelodicDistance} object with the
+     * specified weights and band.
+     *
+     * @param pitchWeight the weight of one semitone of difference between
+     *        intervals.
+     * @param durationWeight the weight of a doubling of difference between
+     *        duration ratios.
+     * @param gapCost the cost of skipping a step in the edit distance.
+     * @param band the band radius; the band is widened, if needed, to the
+     *        difference between the lengths of the compared melodies.
+     * @throws IllegalArgumentException
+     *         if a weight or the gap cost is negative, or {@code band < 0}.
+     */
+    public MelodicDistance(float pitchWeight, float durationWeight,
+                           float gapCost, int band)
+            throws IllegalArgumentException {
+        if (pitchWeight < 0 || durationWeight < 0 || gapCost < 0 || band < 0) {
+            throw new IllegalArgumentException("Invalid distance parameters!");
+        }
+
+        this.pitchWeight = pitchWeight;
+        this.durationWeight = durationWeight;
+        this.gapCost = gapCost;
+        this.band = band;
+    }
+
+    /**
+     * Returns the melodic edit distance between the specified contours.
+     *
+     * @param a a specified contour.
+     * @param b another specified contour.
+     * @return the melodic edit distance between the specified contours.
+     * @see #editDistance(Contour a, Contour b, float threshold)
+     */
+    public float editDistance(Contour a, Contour b) {
+        return editDistance(a, b, INFINITY);
+    }
+
+    /**
+     * Returns the melodic edit distance between the specified contours, or
+     * {@code Float.POSITIVE_INFINITY} if it exceeds the specified threshold.
+     *
+     * @param a a specified contour.
+     * @param b another specified contour.
+     * @param threshold a specified threshold.
+     * @return the melodic edit distance between the specified contours, or
+     *         {@code Float.POSITIVE_INFINITY} if it exceeds the threshold.
+     */
+    public float editDistance(Contour a, Contour b, float threshold) {
+        int[] ia = a.intervals();
+        float[] ra = a.ratios();
+        int[] ib = b.intervals();
+        float[] rb = b.ratios();
+        int n = ia.length;
+        int m = ib.length;
+        int w = Math.max(band, Math.abs(n - m));
+
+        ensureCapacity(m + 1);
+
+        float[] prev = previous;
+        float[] curr = current;
+
+        for (int j = 0; j <= m; j++) {
+            prev[j] = (j <= w ? j * gapCost : INFINITY);
+        }
+
+        for (int i = 1; i <= n; i++) {
+            int low = Math.max(1, i - w);
+            int high = Math.min(m, i + w);
+            int interval = ia[i - 1];
+            float ratio = ra[i - 1];
+
+            curr[0] = (i <= w ? i * gapCost : INFINITY);
+            curr[low - 1] = (low == 1 ? curr[0] : INFINITY);
+
+            float rowMin = curr[0];
+
+            for (int j = low; j <= high; j++) {
+                float substitution = prev[j - 1]
+                        + pitchWeight * Math.abs(interval - ib[j - 1])
+                        + durationWeight * Math.abs(ratio - rb[j - 1]);
+                float gap = Math.min(prev[j], curr[j - 1]) + gapCost;
+                float value = Math.min(substitution, gap);
+
+                curr[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            if (high < m) {
+                curr[high + 1] = INFINITY;
+            }
+
+            if (rowMin > threshold) {
+                return INFINITY;
+            }
+
+            float[] swap = prev;
+            prev = curr;
+            curr = swap;
+        }
+
+        float distance = prev[m];
+
+        return (distance > threshold ? INFINITY : distance);
+    }
+
+    /**
+     * Returns the dynamic time warping distance between the specified
+     * contours.
+     *
+     * @param a a specified contour.
+     * @param b another specified contour.
+     * @return the dynamic time warping distance between the specified
+     *         contours.
+     * @see #dtw(Contour a, Contour b, float threshold)
+     */
+    public float dtw(Contour a, Contour b) {
+        return dtw(a, b, INFINITY);
+    }
+
+    /**
+     * Returns the dynamic time warping distance between the specified
+     * contours, or {@code Float.POSITIVE_INFINITY} if it exceeds the
+     * specified threshold. Two empty contours have distance {@code 0}; an
+     * empty contour and a non-empty one have infinite distance.
+     *
+     * @param a a specified contour.
+     * @param b another specified contour.
+     * @param threshold a specified threshold.
+     * @return the dynamic time warping distance between the specified
+     *         contours, or {@code Float.POSITIVE_INFINITY} if it exceeds the
+     *         threshold.
+     */
+    public float dtw(Contour a, Contour b, float threshold) {
+        int[] ia = a.intervals();
+        float[] ra = a.ratios();
+        int[] ib = b.intervals();
+        float[] rb = b.ratios();
+        int n = ia.length;
+        int m = ib.length;
+        int w = Math.max(band, Math.abs(n - m));
+
+        ensureCapacity(m + 1);
+
+        float[] prev = previous;
+        float[] curr = current;
+
+        Arrays.fill(prev, 0, m + 1, INFINITY);
+        prev[0] = 0;
+
+        for (int i = 1; i <= n; i++) {
+            int low = Math.max(1, i - w);
+            int high = Math.min(m, i + w);
+            int interval = ia[i - 1];
+            float ratio = ra[i - 1];
+
+            curr[0] = INFINITY;
+            curr[low - 1] = INFINITY;
+
+            float rowMin = INFINITY;
+
+            for (int j = low; j <= high; j++) {
+                float cost = pitchWeight * Math.abs(interval - ib[j - 1])
+                             + durationWeight * Math.abs(ratio - rb[j - 1]);
+                float best = Math.min(prev[j - 1],
+                                      Math.min(prev[j], curr[j - 1]));
+                float value = cost + best;
+
+                curr[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            if (high < m) {
+                curr[high + 1] = INFINITY;
+            }
+
+            if (rowMin > threshold) {
+                return INFINITY;
+            }
+
+            float[] swap = prev;
+            prev = curr;
+            curr = swap;
+        }
+
+        float distance = prev[m];
+
+        return (distance > threshold ? INFINITY : distance);
+    }
+
+    /**
+     * Returns the distance between the specified contours using the
+     * specified measure, or {@code Float.POSITIVE_INFINITY} if it exceeds the
+     * specified threshold.
+     *
+     * @param a a specified contour.
+     * @param b another specified contour.
+     * @param measure a specified measure.
+     * @param threshold a specified threshold.
+     * @return the distance between the specified contours.
+     */
+    public float distance(Contour a, Contour b, Measure measure,
+                          float threshold) {
+        return (measure == Measure.EDIT ? editDistance(a, b, threshold)
+                                        : dtw(a, b, threshold));
+    }
+
+    /**
+     * Compares the specified query with each specified candidate, splitting
+     * the candidates among the threads of the specified executor.
+     *
+     * <p>Each task uses its own copy of this {@code MelodicDistance}, so the
+     * rows are allocated once per task rather than once per comparison.
+     *
+     * @param query a specified query.
+     * @param candidates the specified candidates.
+     * @param measure a specified measure.
+     * @param threshold a specified threshold.
+     * @param executor the executor that runs the comparisons.
+     * @return the distances between the query and each candidate, in the
+     *         order of the candidates; distances exceeding the threshold are
+     *         {@code Float.POSITIVE_INFINITY}.
+     * @throws InterruptedException
+     *         if the current thread is interrupted while waiting.
+     */
+    public float[] compare(final Contour query,
+                           final List<Contour> candidates,
+                           final Measure measure, final float threshold,
+                           ExecutorService executor)
+            throws InterruptedException {
+        final float[] distances = new float[candidates.size()];
+        int tasks = Math.min(candidates.size(),
+                             4 * Runtime.getRuntime().availableProcessors());
+        List<Future<?>> futures = new ArrayList<Future<?>>(tasks);
+
+        for (int t = 0; t < tasks; t++) {
+            final int from = (int) ((long) distances.length * t / tasks);
+            final int to = (int) ((long) distances.length * (t + 1) / tasks);
+
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    MelodicDistance distance = copy();
+
+                    for (int i = from; i < to; i++) {
+                        distances[i] = distance.distance(query,
+                                                         candidates.get(i),
+                                                         measure, threshold);
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        return distances;
+    }
+
+    private MelodicDistance copy() {
+        return new MelodicDistance(pitchWeight, durationWeight, gapCost, band);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (previous.length < capacity) {
+            previous = new float[capacity];
+            current = new float[capacity];
+        }
+    }
+
+}
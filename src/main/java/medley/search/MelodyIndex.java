@@ -0,0 +1,216 @@
+package medley.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import medley.Note;
+
+/**
+ * {@code MelodyIndex} class that indexes melodies in memory and finds the
+ * ones containing a given motif.
+ *
+ * <p>Melodies are indexed by their interval n-grams: sequences of
+ * {@code length} consecutive pitch intervals (computed from
+ * {@link medley.Note#getMIDINumber() getMIDINumber}) and, optionally,
+ * duration ratios. Since intervals do not depend on the absolute pitch, a
+ * motif matches all its transpositions.
+ *
+ * <p>Each n-gram has a compressed {@link PostingList} of the melodies that
+ * contain it. A search only decodes the posting lists of the n-grams of the
+ * motif and ranks the melodies by the sum of the matching n-grams, each one
+ * weighted by its inverse document frequency, so rare n-grams count more than
+ * common ones.
+ *
+ * <p>This class is not synchronized: searches may run concurrently with each
+ * other, but not with {@link #add(List) add}.
+ *
+ * @author Salvatore Gentile
+ */
+public class MelodyIndex {
+
+    /**
+     * The default n-gram length.
+     */
+    public static final int DEFAULT_LENGTH = 4;
+
+    private final int length;
+    private final boolean rhythm;
+
+    private final LongIntMap dictionary = new LongIntMap();
+    private PostingList[] postings = new PostingList[16];
+    private int size;
+
+    /**
+     * Initializes a newly created empty {@code MelodyIndex} object that
+     * uses n-grams of pitch intervals of the default length.
+     */
+    public MelodyIndex() {
+        this(DEFAULT_LENGTH, false);
+    }
+
+    /**
+     * Initializes a newly created empty {@code MelodyIndex} object that
+     * uses n-grams of the specified length.
+     *
+     * @param length a specified n-gram length, in intervals.
+     * @param rhythm {@code true} if duration ratios must be part of the
+     *        n-grams; {@code false} if only pitch intervals must be used.
+     * @throws IllegalArgumentException
+     *         if {@code length < 1}, or {@code length > 8} without rhythm, or
+     *         {@code length > 4} with rhythm.
+     */
+    public MelodyIndex(int length, boolean rhythm)
+            throws IllegalArgumentException {
+        NGrams.validate(length, rhythm);
+
+        this.length = length;
+        this.rhythm = rhythm;
+    }
+
+    /**
+     * Returns the n-gram length of this {@code MelodyIndex}.
+     *
+     * @return the n-gram length of this {@code MelodyIndex}.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns {@code true} if duration ratios are part of the n-grams of this
+     * {@code MelodyIndex}.
+     *
+     * @return {@code true} if duration ratios are part of the n-grams of this
+     *         {@code MelodyIndex}; {@code false} otherwise.
+     */
+    public boolean usesRhythm() {
+        return rhythm;
+    }
+
+    /**
+     * Returns the number of melodies in this {@code MelodyIndex}.
+     *
+     * @return the number of melodies in this {@code MelodyIndex}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the specified melody to this {@code MelodyIndex}.
+     *
+     * <p>Melodies shorter than {@code length + 1} notes are counted, but
+     * cannot be found.
+     *
+     * @param melody a specified melody.
+     * @return the identifier of the melody; identifiers are assigned in
+     *         increasing order, starting from {@code 0}.
+     */
+    public int add(List<Note> melody) {
+        int id = size++;
+
+        long[] grams = NGrams.extract(melody, length, rhythm);
+        int[] counts = new int[grams.length];
+        int distinct = NGrams.group(grams, counts);
+
+        for (int i = 0; i < distinct; i++) {
+            getPostingList(grams[i]).add(id, counts[i]);
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the melodies that best match the specified motif, sorted by
+     * decreasing score.
+     *
+     * @param motif a specified motif, at least {@code length + 1} notes long.
+     * @param k the maximum number of melodies to return.
+     * @return the melodies that best match the specified motif; the list is
+     *         empty if no melody shares an n-gram with the motif.
+     */
+    public List<Match> search(List<Note> motif, int k) {
+        long[] grams = NGrams.extract(motif, length, rhythm);
+        int[] counts = new int[grams.length];
+        int distinct = NGrams.group(grams, counts);
+
+        if (distinct == 0 || k <= 0) {
+            return new ArrayList<Match>(0);
+        }
+
+        float[] scores = new float[size];
+
+        for (int i = 0; i < distinct; i++) {
+            int index = dictionary.get(grams[i]);
+
+            if (index == LongIntMap.MISSING) {
+                continue;
+            }
+
+            PostingList list = postings[index];
+            float weight = idf(size, list.getDocumentFrequency());
+
+            PostingList.accumulate(list.getPostings(), 0, weight, counts[i],
+                                   scores);
+        }
+
+        return Match.top(scores, size, 0, k);
+    }
+
+    /**
+     * Returns the inverse document frequency of an n-gram.
+     *
+     * @param size the number of melodies.
+     * @param documentFrequency the number of melodies containing the n-gram.
+     * @return the inverse document frequency of the n-gram.
+     */
+    static float idf(int size, int documentFrequency) {
+        return (float) Math.log(1.0 + (double) size / documentFrequency);
+    }
+
+    /**
+     * Returns the n-grams of this {@code MelodyIndex}, sorted.
+     *
+     * @return the n-grams of this {@code MelodyIndex}, sorted.
+     */
+    long[] getGrams() {
+        long[] grams = dictionary.keys();
+        Arrays.sort(grams);
+
+        return grams;
+    }
+
+    /**
+     * Returns the posting list of the specified n-gram.
+     *
+     * @param gram a specified n-gram.
+     * @return the posting list of the specified n-gram, or {@code null} if no
+     *         melody contains it.
+     */
+    PostingList findPostingList(long gram) {
+        int index = dictionary.get(gram);
+
+        return (index == LongIntMap.MISSING ? null : postings[index]);
+    }
+
+    private PostingList getPostingList(long gram) {
+        int index = dictionary.get(gram);
+
+        if (index != LongIntMap.MISSING) {
+            return postings[index];
+        }
+
+        index = dictionary.size();
+
+        if (index == postings.length) {
+            postings = Arrays.copyOf(postings, index * 2);
+        }
+
+        postings[index] = new PostingList();
+        dictionary.put(gram, index);
+
+        return postings[index];
+    }
+
+}
@@ -0,0 +1,167 @@
+package medley.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+import medley.Note;
+
+/**
+ * {@code NGrams} class that extracts the interval n-grams of a melody.
+ *
+ * <p>An n-gram is made of {@code length} consecutive steps of the melody. Each
+ * step is the pitch interval, in semitones, between two consecutive notes and,
+ * optionally, the ratio between their durations. Intervals make the n-grams
+ * transposition-invariant. Every n-gram is packed into a {@code long} key: one
+ * byte per interval and, when rhythm is used, one more byte per duration
+ * ratio.
+ *
+ * @author Salvatore Gentile
+ */
+final class NGrams {
+
+    /**
+     * Maximum n-gram length when only pitch intervals are used.
+     */
+    static final int MAX_LENGTH = 8;
+
+    /**
+     * Maximum n-gram length when both pitch intervals and duration ratios are
+     * used.
+     */
+    static final int MAX_RHYTHM_LENGTH = 4;
+
+    // Duration ratios are stored as rounded binary logarithms, clamped to
+    // this value (a ratio of 256 covers a breve against a hemidemisemiquaver
+    // with room to spare).
+    private static final int MAX_RATIO = 8;
+
+    private NGrams() {}
+
+    /**
+     * Checks the specified n-gram length and throws an exception if it is not
+     * valid.
+     *
+     * @param length a specified n-gram length.
+     * @param rhythm {@code true} if duration ratios are part of the n-grams.
+     * @throws IllegalArgumentException
+     *         if {@code length < 1} or {@code length} is greater than the
+     *         maximum supported length.
+     */
+    static void validate(int length, boolean rhythm)
+            throws IllegalArgumentException {
+        int max = (rhythm ? MAX_RHYTHM_LENGTH : MAX_LENGTH);
+
+        if (length < 1 || length > max) {
+            StringBuilder e = new StringBuilder(80);
+
+            e.append("Invalid n-gram length! ");
+            e.append("It must be a positive integer between 1 and ");
+            e.append(max);
+            e.append(".");
+
+            throw new IllegalArgumentException(e.toString());
+        }
+    }
+
+    /**
+     * Returns the packed n-grams of the specified melody, in order of
+     * appearance. A melody of {@code m} notes has {@code m - length} n-grams.
+     *
+     * @param melody a specified melody.
+     * @param length a specified n-gram length.
+     * @param rhythm {@code true} if duration ratios are part of the n-grams.
+     * @return the packed n-grams of the specified melody.
+     */
+    static long[] extract(List<Note> melody, int length, boolean rhythm) {
+        int steps = melody.size() - 1;
+
+        if (steps < length) {
+            return new long[0];
+        }
+
+        int[] codes = new int[steps];
+        int index = 0;
+        Note previous = null;
+
+        for (Note note : melody) {
+            if (previous != null) {
+                codes[index++] = step(previous, note, rhythm);
+            }
+
+            previous = note;
+        }
+
+        int shift = (rhythm ? 16 : 8);
+        long mask = (length * shift == 64 ? -1L : (1L << (length * shift)) - 1);
+        long[] grams = new long[steps - length + 1];
+        long key = 0;
+
+        for (int i = 0; i < steps; i++) {
+            key = ((key << shift) | codes[i]) & mask;
+
+            if (i >= length - 1) {
+                grams[i - length + 1] = key;
+            }
+        }
+
+        return grams;
+    }
+
+    /**
+     * Returns the distinct n-grams of the specified packed n-grams, sorted,
+     * along with the number of occurrences of each one.
+     *
+     * @param grams specified packed n-grams; the array is sorted in place.
+     * @param counts an array, at least as long as {@code grams}, that receives
+     *        the number of occurrences of each distinct n-gram.
+     * @return the number of distinct n-grams, stored at the beginning of
+     *         {@code grams}.
+     */
+    static int group(long[] grams, int[] counts) {
+        if (grams.length == 0) {
+            return 0;
+        }
+
+        Arrays.sort(grams);
+
+        int distinct = 0;
+        counts[0] = 1;
+
+        for (int i = 1; i < grams.length; i++) {
+            if (grams[i] == grams[distinct]) {
+                counts[distinct]++;
+            } else {
+                distinct++;
+                grams[distinct] = grams[i];
+                counts[distinct] = 1;
+            }
+        }
+
+        return distinct + 1;
+    }
+
+    /**
+     * Returns the packed step between two consecutive notes: the pitch
+     * interval in the low byte or, when rhythm is used, the pitch interval in
+     * the high byte and the duration ratio in the low byte.
+     *
+     * @param from a specified note.
+     * @param to the note that follows {@code from}.
+     * @param rhythm {@code true} if the duration ratio is part of the step.
+     * @return the packed step between the two notes.
+     */
+    static int step(Note from, Note to, boolean rhythm) {
+        int interval = (to.getMIDINumber() - from.getMIDINumber()) & 0xFF;
+
+        if (!rhythm) {
+            return interval;
+        }
+
+        double ratio = to.getDurationValue() / from.getDurationValue();
+        int code = (int) Math.round(Math.log(ratio) / Math.log(2.0));
+        code = Math.max(-MAX_RATIO, Math.min(MAX_RATIO, code));
+
+        return (interval << 8) | (code & 0xFF);
+    }
+
+}
@@ -0,0 +1,180 @@
+package medley.search;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * {@code PostingList} class that stores the melodies containing an n-gram.
+ *
+ * <p>Each posting is made of a melody identifier and of the number of
+ * occurrences of the n-gram in that melody. Identifiers are added in
+ * increasing order and stored as deltas; both deltas and frequencies are
+ * written as variable-length integers (7 bits per byte), so most postings take
+ * two bytes.
+ *
+ * @author Salvatore Gentile
+ */
+final class PostingList {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private byte[] data;
+    private int length;
+    private int documentFrequency;
+    private int lastID;
+
+    /**
+     * Initializes a newly created empty {@code PostingList} object.
+     */
+    PostingList() {
+        this.data = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends a posting to this {@code PostingList}.
+     *
+     * @param id a specified melody identifier, greater than any identifier
+     *        already added.
+     * @param frequency the number of occurrences of the n-gram in the melody.
+     */
+    void add(int id, int frequency) {
+        ensureCapacity(length + 10);
+
+        length = writeVarInt(data, length, id - lastID);
+        length = writeVarInt(data, length, frequency);
+
+        lastID = id;
+        documentFrequency++;
+    }
+
+    /**
+     * Appends all the specified encoded postings to this {@code PostingList}.
+     *
+     * @param postings encoded postings, whose identifiers, once shifted, are
+     *        greater than any identifier already added; the buffer position
+     *        is advanced to its limit.
+     * @param shift a value added to every decoded identifier.
+     */
+    void addAll(ByteBuffer postings, int shift) {
+        int id = shift;
+
+        while (postings.hasRemaining()) {
+            id += readVarInt(postings);
+            add(id, readVarInt(postings));
+        }
+    }
+
+    /**
+     * Returns the number of melodies in this {@code PostingList}.
+     *
+     * @return the number of melodies in this {@code PostingList}.
+     */
+    int getDocumentFrequency() {
+        return documentFrequency;
+    }
+
+    /**
+     * Returns the number of bytes of the encoded postings.
+     *
+     * @return the number of bytes of the encoded postings.
+     */
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns a read-only buffer over the encoded postings.
+     *
+     * @return a read-only buffer over the encoded postings.
+     */
+    ByteBuffer getPostings() {
+        return ByteBuffer.wrap(data, 0, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the encoded postings to the specified stream.
+     *
+     * @param out a specified stream.
+     * @throws IOException
+     *         if an I/O error occurs.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(data, 0, length);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+
+    /**
+     * Adds the weighted frequencies of the specified encoded postings to the
+     * scores of the corresponding melodies.
+     *
+     * <p>The contribution of each posting is the weight multiplied by the
+     * smallest between the frequency of the posting and the frequency of the
+     * n-gram in the query.
+     *
+     * @param postings encoded postings; the buffer position is advanced to
+     *        its limit.
+     * @param base a value added to every decoded identifier.
+     * @param weight a specified weight.
+     * @param queryFrequency the number of occurrences of the n-gram in the
+     *        query.
+     * @param scores the scores, indexed by melody identifier.
+     */
+    static void accumulate(ByteBuffer postings, int base, float weight,
+                           int queryFrequency, float[] scores) {
+        int id = base;
+
+        while (postings.hasRemaining()) {
+            id += readVarInt(postings);
+            int frequency = readVarInt(postings);
+
+            scores[id] += weight * Math.min(frequency, queryFrequency);
+        }
+    }
+
+    /**
+     * Writes the specified value as a variable-length integer.
+     *
+     * @param buffer a specified byte array.
+     * @param offset the offset at which the value is written.
+     * @param value a specified non-negative value.
+     * @return the offset that follows the written value.
+     */
+    static int writeVarInt(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[offset++] = (byte) value;
+
+        return offset;
+    }
+
+    /**
+     * Reads a variable-length integer from the specified buffer.
+     *
+     * @param buffer a specified buffer.
+     * @return the value read.
+     */
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        return value;
+    }
+
+}
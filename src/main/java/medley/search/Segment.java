@@ -0,0 +1,353 @@
+package medley.search;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * {@code Segment} class that represents an immutable, memory-mapped file of a
+ * {@link SegmentedMelodyIndex}.
+ *
+ * <p>A segment holds a contiguous range of melodies, starting from its base
+ * identifier. The file is made of a header, the sorted n-grams, the offsets of
+ * their posting lists, their document frequencies and finally the encoded
+ * posting lists, whose identifiers are relative to the base identifier:
+ *
+ * <pre>
+ * int    magic
+ * int    version
+ * int    base
+ * int    count
+ * int    terms
+ * long[] grams          (terms)
+ * int[]  offsets        (terms + 1)
+ * int[]  frequencies    (terms)
+ * byte[] postings
+ * </pre>
+ *
+ * <p>The file is never read as a whole: looking up an n-gram binary searches
+ * the mapped n-grams and decodes only its posting list, so a query touches
+ * only the pages it needs. The file is mapped by a single buffer and its
+ * offsets are ints, so it is at most {@link #MAX_SIZE} bytes long: a writer
+ * fails rather than write a larger one.
+ *
+ * @author Salvatore Gentile
+ */
+final class Segment {
+
+    /**
+     * The maximum number of bytes of a segment file.
+     */
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private static final int MAGIC = 0x4D444C58; // MDLX
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5 * 4;
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int base;
+    private final int count;
+    private final int terms;
+
+    private final int offsetsStart;
+    private final int frequenciesStart;
+    private final int postingsStart;
+
+    private Segment(Path path, ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid segment file: " + path);
+        }
+
+        this.path = path;
+        this.buffer = buffer;
+        this.base = buffer.getInt(8);
+        this.count = buffer.getInt(12);
+        this.terms = buffer.getInt(16);
+
+        this.offsetsStart = HEADER_SIZE + terms * 8;
+        this.frequenciesStart = offsetsStart + (terms + 1) * 4;
+        this.postingsStart = frequenciesStart + terms * 4;
+    }
+
+    /**
+     * Maps the specified segment file.
+     *
+     * @param path a specified segment file.
+     * @return the mapped segment.
+     * @throws IOException
+     *         if the file cannot be mapped or is not a segment file.
+     */
+    static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  0, channel.size());
+
+            return new Segment(path, buffer);
+        }
+    }
+
+    /**
+     * Returns the file of this {@code Segment}.
+     *
+     * @return the file of this {@code Segment}.
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the identifier of the first melody of this {@code Segment}.
+     *
+     * @return the identifier of the first melody of this {@code Segment}.
+     */
+    int getBase() {
+        return base;
+    }
+
+    /**
+     * Returns the number of melodies of this {@code Segment}.
+     *
+     * @return the number of melodies of this {@code Segment}.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes of this {@code Segment}.
+     *
+     * @return the number of bytes of this {@code Segment}.
+     */
+    long getSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns the number of n-grams of this {@code Segment}.
+     *
+     * @return the number of n-grams of this {@code Segment}.
+     */
+    int getTerms() {
+        return terms;
+    }
+
+    /**
+     * Returns the n-gram at the specified position.
+     *
+     * @param term a specified position.
+     * @return the n-gram at the specified position.
+     */
+    long getGram(int term) {
+        return buffer.getLong(HEADER_SIZE + term * 8);
+    }
+
+    /**
+     * Returns the position of the specified n-gram.
+     *
+     * @param gram a specified n-gram.
+     * @return the position of the specified n-gram, or a negative value if
+     *         the n-gram is not in this {@code Segment}.
+     */
+    int find(long gram) {
+        int low = 0;
+        int high = terms - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = getGram(middle);
+
+            if (value < gram) {
+                low = middle + 1;
+            } else if (value > gram) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the document frequency of the n-gram at the specified position.
+     *
+     * @param term a specified position.
+     * @return the document frequency of the n-gram.
+     */
+    int getDocumentFrequency(int term) {
+        return buffer.getInt(frequenciesStart + term * 4);
+    }
+
+    /**
+     * Returns a buffer over the encoded posting list of the n-gram at the
+     * specified position.
+     *
+     * @param term a specified position.
+     * @return a buffer over the encoded posting list.
+     */
+    ByteBuffer getPostings(int term) {
+        int start = buffer.getInt(offsetsStart + term * 4);
+        int end = buffer.getInt(offsetsStart + (term + 1) * 4);
+
+        ByteBuffer postings = buffer.duplicate();
+        postings.limit(postingsStart + end);
+        postings.position(postingsStart + start);
+
+        return postings.slice();
+    }
+
+    /**
+     * {@code Writer} class that writes a segment file one posting list at a
+     * time.
+     *
+     * <p>Posting lists are streamed to a temporary file while the dictionary
+     * is kept in memory, so that writing a segment never needs all its
+     * posting lists in memory.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path path;
+        private final Path postingsPath;
+        private final DataOutputStream postings;
+
+        private long[] grams = new long[1024];
+        private int[] frequencies = new int[1024];
+        private int[] offsets = new int[1025];
+        private int terms;
+        private long size = HEADER_SIZE + 4;
+
+        /**
+         * Initializes a newly created {@code Writer} object that writes the
+         * specified segment file.
+         *
+         * @param path a specified segment file.
+         * @throws IOException
+         *         if the temporary posting file cannot be created.
+         */
+        Writer(Path path) throws IOException {
+            this.path = path;
+            this.postingsPath = path.resolveSibling(path.getFileName()
+                                                    + ".postings");
+            this.postings = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(postingsPath.toFile()), 1 << 16));
+        }
+
+        /**
+         * Appends the posting list of the specified n-gram. N-grams must be
+         * appended in increasing order.
+         *
+         * @param gram a specified n-gram.
+         * @param list the posting list of the n-gram, with identifiers
+         *        relative to the base identifier of the segment.
+         * @throws IOException
+         *         if the posting list cannot be written, or the segment
+         *         would be larger than {@link #MAX_SIZE} bytes.
+         */
+        void add(long gram, PostingList list) throws IOException {
+            // Each n-gram takes its posting list, and 16 bytes of gram,
+            // offset and frequency.
+            long added = size + 16 + list.getLength();
+
+            if (added > MAX_SIZE) {
+                throw new IOException("Segment too large: " + path + " ("
+                                      + added + " bytes).");
+            }
+
+            if (terms == grams.length) {
+                grams = Arrays.copyOf(grams, terms * 2);
+                frequencies = Arrays.copyOf(frequencies, terms * 2);
+                offsets = Arrays.copyOf(offsets, terms * 2 + 1);
+            }
+
+            list.writeTo(postings);
+
+            grams[terms] = gram;
+            frequencies[terms] = list.getDocumentFrequency();
+            offsets[terms + 1] = postings.size();
+            terms++;
+            size = added;
+        }
+
+        /**
+         * Writes the segment file and maps it.
+         *
+         * @param base the identifier of the first melody of the segment.
+         * @param count the number of melodies of the segment.
+         * @return the mapped segment.
+         * @throws IOException
+         *         if the segment file cannot be written.
+         */
+        Segment finish(int base, int count) throws IOException {
+            postings.flush();
+
+            try (FileOutputStream file = new FileOutputStream(path.toFile())) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(file, 1 << 16));
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(base);
+                out.writeInt(count);
+                out.writeInt(terms);
+
+                for (int i = 0; i < terms; i++) {
+                    out.writeLong(grams[i]);
+                }
+
+                for (int i = 0; i <= terms; i++) {
+                    out.writeInt(offsets[i]);
+                }
+
+                for (int i = 0; i < terms; i++) {
+                    out.writeInt(frequencies[i]);
+                }
+
+                out.flush();
+
+                try (FileChannel source = FileChannel.open(
+                        postingsPath, StandardOpenOption.READ)) {
+                    FileChannel target = file.getChannel();
+                    long size = source.size();
+                    long position = 0;
+
+                    while (position < size) {
+                        position += source.transferTo(position,
+                                                      size - position,
+                                                      target);
+                    }
+                }
+
+                file.getFD().sync();
+            }
+
+            close();
+
+            return open(path);
+        }
+
+        /**
+         * Releases the temporary posting file of this {@code Writer}.
+         *
+         * @throws IOException
+         *         if the temporary file cannot be deleted.
+         */
+        @Override
+        public void close() throws IOException {
+            postings.close();
+            Files.deleteIfExists(postingsPath);
+        }
+
+    }
+
+}
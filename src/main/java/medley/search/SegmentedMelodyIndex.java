@@ -0,0 +1,636 @@
+package medley.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import medley.Note;
+
+/**
+ * {@code SegmentedMelodyIndex} class that indexes melodies on disk and finds
+ * the ones containing a given motif.
+ *
+ * <p>The index uses the same interval n-grams and ranking of
+ * {@link MelodyIndex}, but keeps its posting lists in append-only segment
+ * files inside a directory. New melodies are buffered in memory and written
+ * as a new segment every {@code flushSize} melodies, or when
+ * {@link #flush() flush} is called; only flushed melodies can be found.
+ *
+ * <p>Segment files are memory-mapped and never loaded in the heap: opening
+ * an index only reads the list of its segments, and a search only touches the
+ * pages holding the n-grams of the motif and their posting lists. As segments
+ * accumulate, a background thread merges runs of {@code mergeFactor}
+ * segments of similar size into a single one, up to {@code maxSegmentSize}
+ * melodies and a segment file of 2 GB, so the number of segments stays
+ * logarithmic in the number of melodies.
+ *
+ * <p>Searches never block and may run concurrently with additions and
+ * merges; they see the segments flushed when they started.
+ *
+ * @author Salvatore Gentile
+ * @see medley.search.MelodyIndex
+ */
+public class SegmentedMelodyIndex implements Closeable {
+
+    /**
+     * The default number of melodies buffered in memory before writing a new
+     * segment.
+     */
+    public static final int DEFAULT_FLUSH_SIZE = 10000;
+
+    /**
+     * The default number of segments of similar size merged together.
+     */
+    public static final int DEFAULT_MERGE_FACTOR = 10;
+
+    /**
+     * The default maximum number of melodies of a merged segment.
+     */
+    public static final int DEFAULT_MAX_SEGMENT_SIZE = 1 << 22;
+
+    private static final String MANIFEST = "segments";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final int MAGIC = 0x4D444C4D; // MDLM
+    private static final int VERSION = 1;
+
+    private final Path directory;
+    private final int length;
+    private final boolean rhythm;
+    private final int flushSize;
+    private final int mergeFactor;
+    private final int maxSegmentSize;
+
+    private final Object lock = new Object();
+    private final ExecutorService merger;
+
+    // Immutable snapshot, replaced on every flush and merge.
+    private volatile List<Segment> segments;
+
+    // Guarded by lock.
+    private MelodyIndex buffer;
+    private int nextSegment;
+    private boolean merging;
+    private boolean closed;
+    private IOException mergeFailure;
+
+    /**
+     * Opens the {@code SegmentedMelodyIndex} stored in the specified
+     * directory, or creates a new one, using the default flush size and
+     * merge policy.
+     *
+     * @param directory a specified directory.
+     * @param length a specified n-gram length, in intervals.
+     * @param rhythm {@code true} if duration ratios must be part of the
+     *        n-grams; {@code false} if only pitch intervals must be used.
+     * @throws IOException
+     *         if the index cannot be opened or was created with different
+     *         n-grams.
+     * @see #SegmentedMelodyIndex(Path directory, int length, boolean rhythm,
+     *      int flushSize, int mergeFactor, int maxSegmentSize)
+     */
+    public SegmentedMelodyIndex(Path directory, int length, boolean rhythm)
+            throws IOException {
+        this(directory, length, rhythm, DEFAULT_FLUSH_SIZE,
+             DEFAULT_MERGE_FACTOR, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the {@code SegmentedMelodyIndex} stored in the specified
+     * directory, or creates a new one.
+     *
+     * @param directory a specified directory.
+     * @param length a specified n-gram length, in intervals.
+     * @param rhythm {@code true} if duration ratios must be part of the
+     *        n-grams; {@code false} if only pitch intervals must be used.
+     * @param flushSize the number of melodies buffered before writing a new
+     *        segment.
+     * @param mergeFactor the number of segments of similar size merged
+     *        together.
+     * @param maxSegmentSize the maximum number of melodies of a merged
+     *        segment; a merge is also skipped if the merged file could
+     *        exceed 2 GB.
+     * @throws IllegalArgumentException
+     *         if the n-gram length is not valid, or {@code flushSize < 1}, or
+     *         {@code mergeFactor < 2}.
+     * @throws IOException
+     *         if the index cannot be opened or was created with different
+     *         n-grams.
+     */
+    public SegmentedMelodyIndex(Path directory, int length, boolean rhythm,
+                                int flushSize, int mergeFactor,
+                                int maxSegmentSize)
+            throws IllegalArgumentException, IOException {
+        NGrams.validate(length, rhythm);
+
+        if (flushSize < 1 || mergeFactor < 2) {
+            throw new IllegalArgumentException("Invalid merge policy!");
+        }
+
+        this.directory = directory;
+        this.length = length;
+        this.rhythm = rhythm;
+        this.flushSize = flushSize;
+        this.mergeFactor = mergeFactor;
+        this.maxSegmentSize = maxSegmentSize;
+        this.buffer = new MelodyIndex(length, rhythm);
+
+        Files.createDirectories(directory);
+        this.segments = readManifest();
+        deleteUnusedFiles();
+
+        this.merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "medley-segment-merger");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of melodies in this {@code SegmentedMelodyIndex},
+     * including the ones not flushed yet.
+     *
+     * @return the number of melodies in this {@code SegmentedMelodyIndex}.
+     */
+    public int size() {
+        synchronized (lock) {
+            return flushedSize(segments) + buffer.size();
+        }
+    }
+
+    /**
+     * Returns the number of segments of this {@code SegmentedMelodyIndex}.
+     *
+     * @return the number of segments of this {@code SegmentedMelodyIndex}.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Adds the specified melody to this {@code SegmentedMelodyIndex}.
+     *
+     * @param melody a specified melody.
+     * @return the identifier of the melody; identifiers are assigned in
+     *         increasing order, starting from {@code 0}.
+     * @throws IOException
+     *         if the melody triggers a flush and the new segment cannot be
+     *         written.
+     */
+    public int add(List<Note> melody) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+
+            int id = flushedSize(segments) + buffer.add(melody);
+
+            if (buffer.size() >= flushSize) {
+                flushLocked();
+            }
+
+            return id;
+        }
+    }
+
+    /**
+     * Writes the buffered melodies as a new segment, making them searchable.
+     *
+     * @throws IOException
+     *         if the new segment cannot be written, or if a previous
+     *         background merge failed.
+     */
+    public void flush() throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            flushLocked();
+        }
+    }
+
+    /**
+     * Returns the flushed melodies that best match the specified motif,
+     * sorted by decreasing score.
+     *
+     * @param motif a specified motif, at least {@code length + 1} notes long.
+     * @param k the maximum number of melodies to return.
+     * @return the melodies that best match the specified motif; the list is
+     *         empty if no melody shares an n-gram with the motif.
+     */
+    public List<Match> search(List<Note> motif, int k) {
+        List<Segment> snapshot = segments;
+
+        long[] grams = NGrams.extract(motif, length, rhythm);
+        int[] counts = new int[grams.length];
+        int distinct = NGrams.group(grams, counts);
+
+        List<Match> matches = new ArrayList<Match>();
+
+        if (distinct == 0 || k <= 0) {
+            return matches;
+        }
+
+        // First pass: locates the n-grams in every segment and computes their
+        // global document frequencies.
+        int[][] terms = new int[snapshot.size()][distinct];
+        int[] frequencies = new int[distinct];
+
+        for (int s = 0; s < snapshot.size(); s++) {
+            Segment segment = snapshot.get(s);
+
+            for (int i = 0; i < distinct; i++) {
+                int term = segment.find(grams[i]);
+                terms[s][i] = term;
+
+                if (term >= 0) {
+                    frequencies[i] += segment.getDocumentFrequency(term);
+                }
+            }
+        }
+
+        // Second pass: scores every segment and keeps its best matches.
+        int size = flushedSize(snapshot);
+        float[] scores = new float[0];
+
+        for (int s = 0; s < snapshot.size(); s++) {
+            Segment segment = snapshot.get(s);
+            int count = segment.getCount();
+            boolean found = false;
+
+            if (scores.length < count) {
+                scores = new float[count];
+            } else {
+                Arrays.fill(scores, 0, count, 0);
+            }
+
+            for (int i = 0; i < distinct; i++) {
+                int term = terms[s][i];
+
+                if (term < 0) {
+                    continue;
+                }
+
+                float weight = MelodyIndex.idf(size, frequencies[i]);
+
+                PostingList.accumulate(segment.getPostings(term), 0, weight,
+                                       counts[i], scores);
+                found = true;
+            }
+
+            if (found) {
+                matches.addAll(Match.top(scores, count, segment.getBase(), k));
+            }
+        }
+
+        Collections.sort(matches, new Comparator<Match>() {
+            @Override
+            public int compare(Match a, Match b) {
+                int result = Float.compare(b.getScore(), a.getScore());
+
+                return (result != 0 ? result : a.getID() - b.getID());
+            }
+        });
+
+        if (matches.size() > k) {
+            return new ArrayList<Match>(matches.subList(0, k));
+        }
+
+        return matches;
+    }
+
+    /**
+     * Flushes the buffered melodies, waits for the pending merges and closes
+     * this {@code SegmentedMelodyIndex}.
+     *
+     * @throws IOException
+     *         if the buffered melodies cannot be written, or if a background
+     *         merge failed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+
+            flushLocked();
+            closed = true;
+        }
+
+        merger.shutdown();
+
+        try {
+            merger.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (lock) {
+            if (mergeFailure != null) {
+                throw mergeFailure;
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The index is closed.");
+        }
+
+        if (mergeFailure != null) {
+            throw mergeFailure;
+        }
+    }
+
+    private void flushLocked() throws IOException {
+        if (buffer.size() == 0) {
+            return;
+        }
+
+        Path path = directory.resolve(SEGMENT_PREFIX + nextSegment++);
+        Segment segment;
+
+        try (Segment.Writer writer = new Segment.Writer(path)) {
+            for (long gram : buffer.getGrams()) {
+                writer.add(gram, buffer.findPostingList(gram));
+            }
+
+            segment = writer.finish(flushedSize(segments), buffer.size());
+        }
+
+        List<Segment> updated = new ArrayList<Segment>(segments);
+        updated.add(segment);
+
+        writeManifest(updated);
+        segments = Collections.unmodifiableList(updated);
+        buffer = new MelodyIndex(length, rhythm);
+
+        scheduleMerge();
+    }
+
+    private void scheduleMerge() {
+        if (merging || closed) {
+            return;
+        }
+
+        final List<Segment> run = findMergeRun(segments);
+
+        if (run == null) {
+            return;
+        }
+
+        final Path path = directory.resolve(SEGMENT_PREFIX + nextSegment++);
+        merging = true;
+
+        merger.execute(new Runnable() {
+            @Override
+            public void run() {
+                merge(run, path);
+            }
+        });
+    }
+
+    private List<Segment> findMergeRun(List<Segment> candidates) {
+        int start = 0;
+
+        for (int i = 1; i <= candidates.size(); i++) {
+            if (i == candidates.size()
+                    || level(candidates.get(i))
+                            != level(candidates.get(start))) {
+                // Merges the oldest segments of the run first.
+                for (int j = start; j + mergeFactor <= i; j += mergeFactor) {
+                    List<Segment> run = candidates.subList(j, j + mergeFactor);
+
+                    if (flushedSize(run) <= maxSegmentSize
+                            && mergedSize(run) <= Segment.MAX_SIZE) {
+                        return new ArrayList<Segment>(run);
+                    }
+                }
+
+                start = i;
+            }
+        }
+
+        return null;
+    }
+
+    private int level(Segment segment) {
+        int level = 0;
+
+        for (long size = flushSize; size * mergeFactor <= segment.getCount();
+                size *= mergeFactor) {
+            level++;
+        }
+
+        return level;
+    }
+
+    private void merge(List<Segment> run, Path path) {
+        Segment merged = null;
+        IOException failure = null;
+
+        try {
+            merged = mergeSegments(run, path);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (lock) {
+            merging = false;
+
+            if (failure != null) {
+                mergeFailure = failure;
+                return;
+            }
+
+            List<Segment> updated = new ArrayList<Segment>(segments);
+            int start = updated.indexOf(run.get(0));
+
+            updated.subList(start, start + run.size()).clear();
+            updated.add(start, merged);
+
+            try {
+                writeManifest(updated);
+            } catch (IOException e) {
+                mergeFailure = e;
+                return;
+            }
+
+            segments = Collections.unmodifiableList(updated);
+            scheduleMerge();
+        }
+
+        // Searches still using the old segments keep their mappings valid on
+        // platforms that allow it; elsewhere the files are removed on the next
+        // opening.
+        for (Segment segment : run) {
+            try {
+                Files.deleteIfExists(segment.getPath());
+            } catch (IOException e) {
+                // Deleted when the index is opened again.
+            }
+        }
+    }
+
+    private static Segment mergeSegments(List<Segment> run, Path path)
+            throws IOException {
+        int base = run.get(0).getBase();
+        int[] positions = new int[run.size()];
+
+        try (Segment.Writer writer = new Segment.Writer(path)) {
+            while (true) {
+                long gram = 0;
+                boolean found = false;
+
+                for (int s = 0; s < run.size(); s++) {
+                    Segment segment = run.get(s);
+
+                    if (positions[s] < segment.getTerms()) {
+                        long candidate = segment.getGram(positions[s]);
+
+                        if (!found || candidate < gram) {
+                            gram = candidate;
+                            found = true;
+                        }
+                    }
+                }
+
+                if (!found) {
+                    break;
+                }
+
+                PostingList list = new PostingList();
+
+                for (int s = 0; s < run.size(); s++) {
+                    Segment segment = run.get(s);
+
+                    if (positions[s] < segment.getTerms()
+                            && segment.getGram(positions[s]) == gram) {
+                        list.addAll(segment.getPostings(positions[s]++),
+                                    segment.getBase() - base);
+                    }
+                }
+
+                writer.add(gram, list);
+            }
+
+            return writer.finish(base, flushedSize(run));
+        }
+    }
+
+    // Returns an upper bound of the bytes of the segment merging the
+    // specified ones: the first identifier of each posting list is encoded
+    // again relative to the merged base, and may take up to 4 more bytes.
+    private static long mergedSize(List<Segment> segments) {
+        long size = 0;
+
+        for (Segment segment : segments) {
+            size += segment.getSize() + 4L * segment.getTerms();
+        }
+
+        return size;
+    }
+
+    private static int flushedSize(List<Segment> segments) {
+        int size = 0;
+
+        for (Segment segment : segments) {
+            size += segment.getCount();
+        }
+
+        return size;
+    }
+
+    private List<Segment> readManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        List<Segment> result = new ArrayList<Segment>();
+
+        if (!Files.exists(manifest)) {
+            return Collections.unmodifiableList(result);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(manifest)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Invalid index manifest: " + manifest);
+            }
+
+            if (in.readInt() != length || in.readBoolean() != rhythm) {
+                throw new IOException("The index uses different n-grams.");
+            }
+
+            nextSegment = in.readInt();
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                result.add(Segment.open(directory.resolve(in.readUTF())));
+            }
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    private void writeManifest(List<Segment> updated) throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(file));
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(length);
+            out.writeBoolean(rhythm);
+            out.writeInt(nextSegment);
+            out.writeInt(updated.size());
+
+            for (Segment segment : updated) {
+                out.writeUTF(segment.getPath().getFileName().toString());
+            }
+
+            out.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(temporary, manifest, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteUnusedFiles() throws IOException {
+        Set<Path> used = new HashSet<Path>();
+
+        for (Segment segment : segments) {
+            used.add(segment.getPath().getFileName());
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                directory, SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!used.contains(file.getFileName())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,7 @@
+/**
+ * Package that contains classes used to index and search collections of
+ * melodies.
+ *
+ * @author Salvatore Gentile
+ */
+package medley.search;
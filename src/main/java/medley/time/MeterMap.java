@@ -0,0 +1,247 @@
+package medley.time;
+
+import java.util.Arrays;
+
+/**
+ * {@code MeterMap} class that converts ticks into bar:beat positions, and
+ * viceversa, following the time signature changes of a score.
+ *
+ * <p>Ticks are the ones of {@link medley.Duration#getTicks() Duration}. Time
+ * signatures change at the start of a bar; bars and beats are numbered from
+ * {@code 1}, as in printed music. The tick at which each time signature
+ * starts is precomputed, so every conversion is a binary search over the
+ * time signature changes.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.time.TempoMap
+ * @see medley.time.TimeSignature
+ */
+public final class MeterMap {
+
+    // Bars are stored 0-based.
+    private int[] bars = new int[4];
+    private long[] starts = new long[4];
+    private TimeSignature[] signatures = new TimeSignature[4];
+    private int count;
+
+    /**
+     * Initializes a newly created {@code MeterMap} object in common time.
+     */
+    public MeterMap() {
+        this(TimeSignature.COMMON_TIME);
+    }
+
+    /**
+     * Initializes a newly created {@code MeterMap} object with the specified
+     * time signature.
+     *
+     * @param signature the time signature of the first bar.
+     */
+    public MeterMap(TimeSignature signature) {
+        setTimeSignature(1, signature);
+    }
+
+    /**
+     * Sets the time signature starting from the specified bar, replacing the
+     * time signature previously set at the same bar.
+     *
+     * @param bar a specified bar, starting from {@code 1}.
+     * @param signature a specified time signature.
+     * @throws IllegalArgumentException
+     *         if {@code bar < 1}.
+     */
+    public void setTimeSignature(int bar, TimeSignature signature)
+            throws IllegalArgumentException {
+        if (bar < 1) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid bar! ");
+            e.append(bar).append(" is not a valid bar number.");
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        if (signature == null) {
+            throw new NullPointerException();
+        }
+
+        int index = Arrays.binarySearch(bars, 0, count, bar - 1);
+
+        if (index < 0) {
+            index = -index - 1;
+
+            if (count == bars.length) {
+                bars = Arrays.copyOf(bars, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                signatures = Arrays.copyOf(signatures, count * 2);
+            }
+
+            System.arraycopy(bars, index, bars, index + 1, count - index);
+            System.arraycopy(signatures, index, signatures, index + 1,
+                             count - index);
+            count++;
+        }
+
+        bars[index] = bar - 1;
+        signatures[index] = signature;
+
+        for (int i = Math.max(1, index); i < count; i++) {
+            starts[i] = starts[i - 1] + (bars[i] - bars[i - 1])
+                                        * signatures[i - 1].getBarTicks();
+        }
+    }
+
+    /**
+     * Returns the time signature of the specified bar.
+     *
+     * @param bar a specified bar, starting from {@code 1}.
+     * @return the time signature of the specified bar.
+     */
+    public TimeSignature getTimeSignature(int bar) {
+        return signatures[findBar(bar - 1)];
+    }
+
+    /**
+     * Returns the time signature at the specified tick.
+     *
+     * @param tick a specified tick.
+     * @return the time signature at the specified tick.
+     */
+    public TimeSignature getTimeSignatureAt(long tick) {
+        return signatures[findTick(tick)];
+    }
+
+    /**
+     * Returns the bar:beat position of the specified tick.
+     *
+     * @param tick a specified tick.
+     * @return the bar:beat position of the specified tick.
+     * @throws IllegalArgumentException
+     *         if {@code tick < 0}.
+     */
+    public Position toPosition(long tick) throws IllegalArgumentException {
+        if (tick < 0) {
+            throw new IllegalArgumentException("Invalid tick! It must be a "
+                                               + "non-negative value.");
+        }
+
+        int s = findTick(tick);
+        TimeSignature signature = signatures[s];
+        long offset = tick - starts[s];
+        long barTicks = signature.getBarTicks();
+        int beatTicks = signature.getBeatTicks();
+        long inBar = offset % barTicks;
+
+        return new Position((int) (bars[s] + offset / barTicks) + 1,
+                            (int) (inBar / beatTicks) + 1,
+                            (int) (inBar % beatTicks));
+    }
+
+    /**
+     * Returns the tick of the specified bar:beat position.
+     *
+     * @param bar a specified bar, starting from {@code 1}.
+     * @param beat a specified beat of the bar, starting from {@code 1}; it
+     *        may exceed the number of beats of the bar.
+     * @param tick a specified number of ticks after the beat.
+     * @return the tick of the specified position.
+     * @throws IllegalArgumentException
+     *         if {@code bar < 1} or {@code beat < 1}.
+     */
+    public long toTicks(int bar, int beat, int tick)
+            throws IllegalArgumentException {
+        if (bar < 1 || beat < 1) {
+            throw new IllegalArgumentException("Invalid position! Bars and "
+                                               + "beats start from 1.");
+        }
+
+        int s = findBar(bar - 1);
+        TimeSignature signature = signatures[s];
+
+        return starts[s] + (bar - 1 - bars[s]) * signature.getBarTicks()
+               + (long) (beat - 1) * signature.getBeatTicks() + tick;
+    }
+
+    /**
+     * Returns the tick of the specified position.
+     *
+     * @param position a specified position.
+     * @return the tick of the specified position.
+     */
+    public long toTicks(Position position) {
+        return toTicks(position.bar, position.beat, position.tick);
+    }
+
+    // Returns the last change at or before the specified 0-based bar.
+    private int findBar(int bar) {
+        int index = Arrays.binarySearch(bars, 0, count, bar);
+
+        return (index >= 0 ? index : Math.max(0, -index - 2));
+    }
+
+    // Returns the last change at or before the specified tick.
+    private int findTick(long tick) {
+        int index = Arrays.binarySearch(starts, 0, count, tick);
+
+        return (index >= 0 ? index : Math.max(0, -index - 2));
+    }
+
+    /**
+     * {@code Position} class that represents a bar:beat position. Instances
+     * of this class are immutable.
+     */
+    public static final class Position {
+
+        private final int bar;
+        private final int beat;
+        private final int tick;
+
+        private Position(int bar, int beat, int tick) {
+            this.bar = bar;
+            this.beat = beat;
+            this.tick = tick;
+        }
+
+        /**
+         * Returns the bar of this {@code Position}, starting from {@code 1}.
+         *
+         * @return the bar of this {@code Position}.
+         */
+        public int getBar() {
+            return bar;
+        }
+
+        /**
+         * Returns the beat of this {@code Position}, starting from
+         * {@code 1}.
+         *
+         * @return the beat of this {@code Position}.
+         */
+        public int getBeat() {
+            return beat;
+        }
+
+        /**
+         * Returns the ticks of this {@code Position} after its beat.
+         *
+         * @return the ticks of this {@code Position} after its beat.
+         */
+        public int getTick() {
+            return tick;
+        }
+
+        /**
+         * Returns a string representation of this {@code Position}, in the
+         * form {@code bar:beat:tick}.
+         *
+         * @return a string representation of this {@code Position}.
+         */
+        @Override
+        public String toString() {
+            return bar + ":" + beat + ":" + tick;
+        }
+
+    }
+
+}
@@ -0,0 +1,332 @@
+package medley.time;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import medley.Duration;
+import medley.Duration.Value;
+import medley.Note;
+import medley.Rest;
+import medley.score.Element;
+import medley.score.ScoreElement;
+import medley.util.Validator;
+
+/**
+ * {@code Quantizer} class that turns performed notes, given as raw onset and
+ * offset times, into a sequence of notes and rests.
+ *
+ * <p>Times can be expressed in any unit (seconds, MIDI ticks...): the
+ * quantizer only needs to know the length of a crotchet in that unit. Onsets
+ * and offsets are first snapped to a grid, whose step is a {@code Value},
+ * optionally divided into tuplets (e.g. quaver triplets); then the length of
+ * each note is mapped to the nearest {@code Value} with up to
+ * {@code maxDots} dots, and the gaps between notes are filled with rests.
+ *
+ * <p>The representable durations and the thresholds between them are
+ * computed once, when the quantizer is created, so mapping a length is a
+ * binary search. Since {@code Duration} cannot represent tuplets, tuplet
+ * lengths are mapped to the nearest representable duration; the resulting
+ * error is reported in the {@link Result}.
+ *
+ * <p>Notes are expected to form a single voice: a note that starts before the
+ * end of the previous one cuts it.
+ *
+ * @author Salvatore Gentile
+ */
+public final class Quantizer {
+
+    private final double ticksPerUnit;
+    private final double step;
+
+    // Representable durations, sorted by increasing number of ticks, and the
+    // midpoints between consecutive ones.
+    private final Duration[] durations;
+    private final int[] ticks;
+    private final double[] thresholds;
+
+    /**
+     * Initializes a newly created {@code Quantizer} object with a grid of
+     * semiquavers and durations with up to one dot.
+     *
+     * @param crotchetLength the length of a crotchet, in the unit of the
+     *        times to quantize.
+     * @see #Quantizer(double crotchetLength, Value grid, int tuplet,
+     *      int maxDots)
+     */
+    public Quantizer(double crotchetLength) {
+        this(crotchetLength, Value.Semiquaver, 1, 1);
+    }
+
+    /**
+     * Initializes a newly created {@code Quantizer} object with the specified
+     * grid.
+     *
+     * @param crotchetLength the length of a crotchet, in the unit of the
+     *        times to quantize; e.g. {@code 0.5} for seconds at 120 BPM, or
+     *        the resolution of a MIDI file for its ticks.
+     * @param grid the {@code Value} of a grid step.
+     * @param tuplet the number of grid steps that replace a regular group of
+     *        steps: {@code 1} for no tuplets, {@code 3} for triplets (3 in
+     *        the time of 2), {@code 5} for quintuplets (5 in the time of 4)
+     *        and so on.
+     * @param maxDots the maximum number of dots of the resulting durations.
+     * @throws IllegalArgumentException
+     *         if {@code crotchetLength <= 0}, or {@code tuplet < 1}, or the
+     *         dots number is not a positive integer between 0 and 3.
+     */
+    public Quantizer(double crotchetLength, Value grid, int tuplet,
+                     int maxDots) throws IllegalArgumentException {
+        Validator.dots(maxDots);
+
+        if (crotchetLength <= 0 || tuplet < 1) {
+            throw new IllegalArgumentException("Invalid quantization grid!");
+        }
+
+        int gridTicks = Duration.valueOf(grid).getTicks();
+        int regular = Integer.highestOneBit(tuplet);
+
+        if (regular == tuplet && tuplet > 1) {
+            regular >>= 1;
+        }
+
+        this.ticksPerUnit = Duration.TICKS_PER_CROTCHET / crotchetLength;
+        this.step = (double) gridTicks * regular / tuplet;
+
+        List<Duration> candidates = new ArrayList<Duration>();
+
+        for (Value value : Value.values()) {
+            for (int dots = 0; dots <= maxDots; dots++) {
+                candidates.add(Duration.valueOf(value, dots));
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<Duration>() {
+            @Override
+            public int compare(Duration a, Duration b) {
+                return a.getTicks() - b.getTicks();
+            }
+        });
+
+        this.durations = candidates.toArray(new Duration[candidates.size()]);
+        this.ticks = new int[durations.length];
+        this.thresholds = new double[durations.length - 1];
+
+        for (int i = 0; i < durations.length; i++) {
+            ticks[i] = durations[i].getTicks();
+
+            if (i > 0) {
+                thresholds[i - 1] = (ticks[i - 1] + ticks[i]) / 2.0;
+            }
+        }
+    }
+
+    /**
+     * Quantizes the specified notes, using the default volume.
+     *
+     * @param onsets the onset time of each note, in increasing order.
+     * @param offsets the offset time of each note.
+     * @param pitches the MIDI note number of each note.
+     * @return the quantized notes and rests, with the quantization errors.
+     * @see #quantize(double[] onsets, double[] offsets, int[] pitches,
+     *      int[] volumes)
+     */
+    public Result quantize(double[] onsets, double[] offsets, int[] pitches) {
+        return quantize(onsets, offsets, pitches, null);
+    }
+
+    /**
+     * Quantizes the specified notes.
+     *
+     * <p>The first grid step starts at time {@code 0}; a rest is inserted
+     * before the first note if it starts later.
+     *
+     * @param onsets the onset time of each note, in increasing order.
+     * @param offsets the offset time of each note.
+     * @param pitches the MIDI note number of each note.
+     * @param volumes the volume of each note, or {@code null} to use the
+     *        default volume.
+     * @return the quantized notes and rests, with the quantization errors.
+     * @throws IllegalArgumentException
+     *         if the arrays have different lengths, or a MIDI note number or
+     *         a volume is not valid.
+     */
+    public Result quantize(double[] onsets, double[] offsets, int[] pitches,
+                           int[] volumes) throws IllegalArgumentException {
+        int count = onsets.length;
+
+        if (offsets.length != count || pitches.length != count
+                || (volumes != null && volumes.length != count)) {
+            throw new IllegalArgumentException("Invalid note streams! The "
+                                               + "arrays must have the same "
+                                               + "length.");
+        }
+
+        List<ScoreElement> elements = new ArrayList<ScoreElement>(2 * count);
+        Result result = new Result(elements);
+
+        // Position, in ticks, of the end of the last emitted element.
+        long cursor = 0;
+
+        for (int i = 0; i < count; i++) {
+            double onset = onsets[i] * ticksPerUnit;
+            double offset = offsets[i] * ticksPerUnit;
+
+            if (i + 1 < count) {
+                offset = Math.min(offset, onsets[i + 1] * ticksPerUnit);
+            }
+
+            long start = snap(onset);
+            long end = Math.max(snap(offset), start + Math.round(step));
+
+            // Fills the gap with rests, largest first.
+            while (start - cursor >= ticks[0]) {
+                Duration rest = floor(start - cursor);
+
+                elements.add(new Rest(rest));
+                cursor += rest.getTicks();
+                result.rests++;
+            }
+
+            Duration duration = nearest(Math.max(end - cursor, 1));
+            int volume = (volumes != null ? volumes[i]
+                                          : Element.DEFAULT_VOLUME);
+
+            Validator.volume(volume);
+            elements.add(new Note(pitches[i], duration, volume));
+
+            double onsetError = Math.abs(cursor - onset) / ticksPerUnit;
+            double lengthError = Math.abs(duration.getTicks()
+                                          - (offset - onset)) / ticksPerUnit;
+
+            result.add(onsetError, lengthError);
+            cursor += duration.getTicks();
+        }
+
+        return result;
+    }
+
+    private long snap(double time) {
+        return Math.round(Math.round(time / step) * step);
+    }
+
+    private Duration nearest(double length) {
+        int index = Arrays.binarySearch(thresholds, length);
+
+        if (index < 0) {
+            index = -index - 1;
+        }
+
+        return durations[index];
+    }
+
+    private Duration floor(long length) {
+        int key = (int) Math.min(length, Integer.MAX_VALUE);
+        int index = Arrays.binarySearch(ticks, key);
+
+        if (index < 0) {
+            index = -index - 2;
+        }
+
+        return durations[index];
+    }
+
+    /**
+     * {@code Result} class that contains the quantized elements and the
+     * quantization error statistics. Errors are expressed in the unit of the
+     * quantized times.
+     */
+    public static final class Result {
+
+        private final List<ScoreElement> elements;
+        private int notes;
+        private int rests;
+        private double onsetErrorSum;
+        private double onsetErrorMax;
+        private double lengthErrorSum;
+        private double lengthErrorMax;
+
+        private Result(List<ScoreElement> elements) {
+            this.elements = elements;
+        }
+
+        private void add(double onsetError, double lengthError) {
+            notes++;
+            onsetErrorSum += onsetError;
+            onsetErrorMax = Math.max(onsetErrorMax, onsetError);
+            lengthErrorSum += lengthError;
+            lengthErrorMax = Math.max(lengthErrorMax, lengthError);
+        }
+
+        /**
+         * Returns the quantized notes and rests, in order.
+         *
+         * @return the quantized notes and rests.
+         */
+        public List<ScoreElement> getElements() {
+            return elements;
+        }
+
+        /**
+         * Returns the number of quantized notes.
+         *
+         * @return the number of quantized notes.
+         */
+        public int getNoteCount() {
+            return notes;
+        }
+
+        /**
+         * Returns the number of inserted rests.
+         *
+         * @return the number of inserted rests.
+         */
+        public int getRestCount() {
+            return rests;
+        }
+
+        /**
+         * Returns the mean absolute difference between the performed and the
+         * quantized onsets.
+         *
+         * @return the mean absolute onset error.
+         */
+        public double getMeanOnsetError() {
+            return (notes == 0 ? 0 : onsetErrorSum / notes);
+        }
+
+        /**
+         * Returns the largest absolute difference between a performed and a
+         * quantized onset.
+         *
+         * @return the largest absolute onset error.
+         */
+        public double getMaxOnsetError() {
+            return onsetErrorMax;
+        }
+
+        /**
+         * Returns the mean absolute difference between the performed and the
+         * quantized note lengths.
+         *
+         * @return the mean absolute length error.
+         */
+        public double getMeanLengthError() {
+            return (notes == 0 ? 0 : lengthErrorSum / notes);
+        }
+
+        /**
+         * Returns the largest absolute difference between a performed and a
+         * quantized note length.
+         *
+         * @return the largest absolute length error.
+         */
+        public double getMaxLengthError() {
+            return lengthErrorMax;
+        }
+
+    }
+
+}
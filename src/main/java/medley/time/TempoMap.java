@@ -0,0 +1,321 @@
+package medley.time;
+
+import java.util.Arrays;
+import java.util.List;
+
+import medley.Duration;
+import medley.score.ScoreElement;
+
+/**
+ * {@code TempoMap} class that converts musical time, expressed in ticks, into
+ * real time, expressed in seconds, and viceversa.
+ *
+ * <p>Ticks are the ones of {@link medley.Duration#getTicks() Duration}: a
+ * crotchet lasts {@link medley.Duration#TICKS_PER_CROTCHET} ticks. Tempos are
+ * expressed in crotchets per minute (BPM). The map is made of segments, each
+ * one starting at a tick with a tempo: the tempo is either constant up to the
+ * next segment, or changes linearly to reach the tempo of the next segment
+ * (a ramp, such as an accelerando or a ritardando).
+ *
+ * <p>The time in seconds at which each segment starts is precomputed, and the
+ * time elapsed inside a segment has a closed form, so every conversion is a
+ * binary search over the segments. Bulk conversions of sorted positions walk
+ * the segments once.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.time.MeterMap
+ */
+public final class TempoMap {
+
+    /**
+     * The default tempo, in crotchets per minute.
+     */
+    public static final double DEFAULT_TEMPO = 120.0;
+
+    private static final double TICKS = Duration.TICKS_PER_CROTCHET;
+
+    private long[] starts = new long[4];
+    private double[] tempos = new double[4];
+    private boolean[] ramps = new boolean[4];
+    private double[] seconds = new double[4];
+    private int count;
+
+    /**
+     * Initializes a newly created {@code TempoMap} object with the default
+     * constant tempo.
+     */
+    public TempoMap() {
+        this(DEFAULT_TEMPO);
+    }
+
+    /**
+     * Initializes a newly created {@code TempoMap} object with the specified
+     * constant tempo.
+     *
+     * @param tempo a specified tempo, in crotchets per minute.
+     * @throws IllegalArgumentException
+     *         if {@code tempo <= 0}.
+     */
+    public TempoMap(double tempo) throws IllegalArgumentException {
+        setTempo(0, tempo, false);
+    }
+
+    /**
+     * Sets a constant tempo starting from the specified tick.
+     *
+     * @param tick a specified tick.
+     * @param tempo a specified tempo, in crotchets per minute.
+     * @throws IllegalArgumentException
+     *         if {@code tick < 0} or {@code tempo <= 0}.
+     * @see #setTempo(long tick, double tempo, boolean ramp)
+     */
+    public void setTempo(long tick, double tempo)
+            throws IllegalArgumentException {
+        setTempo(tick, tempo, false);
+    }
+
+    /**
+     * Sets a tempo starting from the specified tick, replacing the tempo
+     * previously set at the same tick.
+     *
+     * @param tick a specified tick.
+     * @param tempo a specified tempo, in crotchets per minute.
+     * @param ramp {@code true} if the tempo must change linearly up to the
+     *        tempo of the next segment; {@code false} if it must stay
+     *        constant. The last segment is always constant.
+     * @throws IllegalArgumentException
+     *         if {@code tick < 0} or {@code tempo <= 0}.
+     */
+    public void setTempo(long tick, double tempo, boolean ramp)
+            throws IllegalArgumentException {
+        if (tick < 0 || !(tempo > 0)) {
+            throw new IllegalArgumentException("Invalid tempo! It must be a "
+                                               + "positive value starting "
+                                               + "from a non-negative tick.");
+        }
+
+        int index = Arrays.binarySearch(starts, 0, count, tick);
+
+        if (index < 0) {
+            index = -index - 1;
+
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                tempos = Arrays.copyOf(tempos, count * 2);
+                ramps = Arrays.copyOf(ramps, count * 2);
+                seconds = Arrays.copyOf(seconds, count * 2);
+            }
+
+            System.arraycopy(starts, index, starts, index + 1, count - index);
+            System.arraycopy(tempos, index, tempos, index + 1, count - index);
+            System.arraycopy(ramps, index, ramps, index + 1, count - index);
+            count++;
+        }
+
+        starts[index] = tick;
+        tempos[index] = tempo;
+        ramps[index] = ramp;
+
+        // The segment before the new one may ramp towards it.
+        integrate(Math.max(0, index - 1));
+    }
+
+    /**
+     * Returns the number of segments of this {@code TempoMap}.
+     *
+     * @return the number of segments of this {@code TempoMap}.
+     */
+    public int getSegmentCount() {
+        return count;
+    }
+
+    /**
+     * Returns the tempo at the specified tick.
+     *
+     * @param tick a specified tick.
+     * @return the tempo at the specified tick, in crotchets per minute.
+     */
+    public double getTempo(double tick) {
+        int s = segment(tick);
+
+        if (!isRamp(s)) {
+            return tempos[s];
+        }
+
+        double progress = (tick - starts[s]) / (starts[s + 1] - starts[s]);
+
+        return tempos[s] + (tempos[s + 1] - tempos[s]) * progress;
+    }
+
+    /**
+     * Returns the time, in seconds, of the specified tick.
+     *
+     * @param tick a specified tick.
+     * @return the time, in seconds, of the specified tick.
+     */
+    public double toSeconds(double tick) {
+        return toSeconds(tick, segment(tick));
+    }
+
+    /**
+     * Returns the tick corresponding to the specified time.
+     *
+     * @param time a specified time, in seconds.
+     * @return the tick corresponding to the specified time; it is not
+     *         rounded.
+     */
+    public double toTicks(double time) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (seconds[middle] <= time) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        int s = low;
+        double elapsed = time - seconds[s];
+        double b0 = tempos[s];
+
+        if (!isRamp(s)) {
+            return starts[s] + elapsed * b0 * TICKS / 60.0;
+        }
+
+        double length = starts[s + 1] - starts[s];
+        double slope = (tempos[s + 1] - b0) / length;
+
+        if (slope == 0) {
+            return starts[s] + elapsed * b0 * TICKS / 60.0;
+        }
+
+        return starts[s] + b0 * Math.expm1(elapsed * TICKS * slope / 60.0)
+                           / slope;
+    }
+
+    /**
+     * Converts the specified ticks into seconds.
+     *
+     * <p>Sorted ticks are converted in a single pass over the segments;
+     * unsorted ones are still converted correctly, at the cost of a binary
+     * search for each backward jump.
+     *
+     * @param ticks the specified ticks.
+     * @param result the array that receives the time, in seconds, of each
+     *        tick; it can be at most as long as {@code ticks}.
+     */
+    public void toSeconds(long[] ticks, double[] result) {
+        int s = 0;
+
+        for (int i = 0; i < result.length; i++) {
+            long tick = ticks[i];
+
+            if (tick < starts[s]) {
+                s = segment(tick);
+            }
+
+            while (s + 1 < count && starts[s + 1] <= tick) {
+                s++;
+            }
+
+            result[i] = toSeconds(tick, s);
+        }
+    }
+
+    /**
+     * Returns the onset, in ticks, of each element of the specified track.
+     * The first element starts at tick {@code 0}, and each element starts at
+     * the end of the previous one.
+     *
+     * @param track a specified sequence of score elements.
+     * @return the onset, in ticks, of each element.
+     */
+    public static long[] getOnsets(List<? extends ScoreElement> track) {
+        long[] onsets = new long[track.size()];
+        long tick = 0;
+        int i = 0;
+
+        for (ScoreElement element : track) {
+            onsets[i++] = tick;
+            tick += element.getDuration().getTicks();
+        }
+
+        return onsets;
+    }
+
+    /**
+     * Returns the onset, in seconds, of each element of the specified track.
+     *
+     * @param track a specified sequence of score elements.
+     * @return the onset, in seconds, of each element.
+     * @see #getOnsets(List track)
+     */
+    public double[] getOnsetSeconds(List<? extends ScoreElement> track) {
+        long[] onsets = getOnsets(track);
+        double[] result = new double[onsets.length];
+
+        toSeconds(onsets, result);
+
+        return result;
+    }
+
+    private boolean isRamp(int s) {
+        return ramps[s] && s + 1 < count;
+    }
+
+    // Returns the last segment starting at or before the specified tick.
+    private int segment(double tick) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (starts[middle] <= tick) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    private double toSeconds(double tick, int s) {
+        return seconds[s] + elapsed(s, tick - starts[s]);
+    }
+
+    // Seconds elapsed in segment s after the specified number of ticks.
+    private double elapsed(int s, double ticks) {
+        double b0 = tempos[s];
+
+        if (!isRamp(s)) {
+            return ticks * 60.0 / (TICKS * b0);
+        }
+
+        double length = starts[s + 1] - starts[s];
+        double slope = (tempos[s + 1] - b0) / length;
+
+        if (slope == 0) {
+            return ticks * 60.0 / (TICKS * b0);
+        }
+
+        return 60.0 / (TICKS * slope) * Math.log1p(slope * ticks / b0);
+    }
+
+    private void integrate(int from) {
+        seconds[0] = 0;
+
+        for (int s = Math.max(1, from); s < count; s++) {
+            seconds[s] = seconds[s - 1]
+                         + elapsed(s - 1, starts[s] - starts[s - 1]);
+        }
+    }
+
+}
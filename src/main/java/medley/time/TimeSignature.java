@@ -0,0 +1,142 @@
+package medley.time;
+
+import medley.Duration;
+
+/**
+ * {@code TimeSignature} class that represents the time signature of a bar,
+ * i.e. the number of beats in a bar and the value of a beat.
+ *
+ * <p>Instances of this class are immutable.
+ *
+ * @author Salvatore Gentile
+ * @see medley.time.MeterMap
+ */
+public final class TimeSignature {
+
+    /**
+     * The common time signature, 4/4.
+     */
+    public static final TimeSignature COMMON_TIME = new TimeSignature(4, 4);
+
+    private static final int MAX_DENOMINATOR = 64;
+
+    private final int numerator;
+    private final int denominator;
+
+    /**
+     * Initializes a newly created {@code TimeSignature} object with the
+     * specified numerator and denominator.
+     *
+     * @param numerator the number of beats in a bar.
+     * @param denominator the value of a beat, as a fraction of a semibreve:
+     *        {@code 4} for a crotchet, {@code 8} for a quaver and so on.
+     * @throws IllegalArgumentException
+     *         if {@code numerator < 1}, or the denominator is not a power of
+     *         two between 1 and 64.
+     */
+    public TimeSignature(int numerator, int denominator)
+            throws IllegalArgumentException {
+        if (numerator < 1 || denominator < 1
+                || denominator > MAX_DENOMINATOR
+                || Integer.bitCount(denominator) != 1) {
+            StringBuilder e = new StringBuilder(80);
+            e.append("Invalid time signature! ");
+            e.append(numerator).append('/').append(denominator);
+            e.append(" is not a valid time signature.");
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        this.numerator = numerator;
+        this.denominator = denominator;
+    }
+
+    /**
+     * Returns the numerator of this {@code TimeSignature}.
+     *
+     * @return the numerator of this {@code TimeSignature}.
+     */
+    public int getNumerator() {
+        return numerator;
+    }
+
+    /**
+     * Returns the denominator of this {@code TimeSignature}.
+     *
+     * @return the denominator of this {@code TimeSignature}.
+     */
+    public int getDenominator() {
+        return denominator;
+    }
+
+    /**
+     * Returns the length of a beat, in ticks.
+     *
+     * @return the length of a beat, in ticks.
+     * @see medley.Duration#getTicks()
+     */
+    public int getBeatTicks() {
+        return Duration.TICKS_PER_SEMIBREVE / denominator;
+    }
+
+    /**
+     * Returns the length of a bar, in ticks.
+     *
+     * @return the length of a bar, in ticks.
+     * @see medley.Duration#getTicks()
+     */
+    public long getBarTicks() {
+        return (long) numerator * getBeatTicks();
+    }
+
+    /**
+     * Compares this {@code TimeSignature} with the specified object.
+     *
+     * @param o a specified object.
+     * @return {@code true} if the specified object is equals to this
+     *         {@code TimeSignature}; {@code false} otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+
+        if (!(o instanceof TimeSignature)) {
+            return false;
+        }
+
+        TimeSignature t = (TimeSignature) o;
+
+        return t.numerator == this.numerator
+               && t.denominator == this.denominator;
+    }
+
+    /**
+     * Returns the hash code value for this {@code TimeSignature}.
+     *
+     * @return the hash code value for this {@code TimeSignature}.
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 911;
+
+        int hash = 1;
+        hash = prime * hash + numerator;
+        hash = prime * hash + denominator;
+
+        return hash;
+    }
+
+    /**
+     * Returns a string representation of this {@code TimeSignature}, e.g.
+     * {@code 3/4}.
+     *
+     * @return a string representation of this {@code TimeSignature}.
+     */
+    @Override
+    public String toString() {
+        return numerator + "/" + denominator;
+    }
+
+}
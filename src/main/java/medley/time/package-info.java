@@ -0,0 +1,7 @@
+/**
+ * Package that contains classes used to convert between musical time and
+ * real time.
+ *
+ * @author Salvatore Gentile
+ */
+package medley.time;
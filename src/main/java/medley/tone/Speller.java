@@ -0,0 +1,232 @@
+package medley.tone;
+
+import java.util.List;
+import java.util.ListIterator;
+
+import medley.Note;
+
+/**
+ * {@code Speller} class that chooses the enharmonic spelling of a whole
+ * sequence of notes at once.
+ *
+ * <p>A {@code Note} created from a frequency or a MIDI note number is always
+ * spelled with sharps. The {@link #spell(List) spell} methods respell every
+ * note of a sequence using the key context: each pitch class can be written
+ * in two ways (e.g. F&#x266f; or G&#x266d;) and the speller picks, for the
+ * whole sequence, the combination of spellings that stays closest to the key
+ * on the <i>line of fifths</i> while avoiding augmented and diminished
+ * intervals between consecutive notes.
+ *
+ * <p>The choice is made by dynamic programming over the two possible
+ * spellings of each note, hence it runs in linear time. The result is written
+ * back into the notes using {@link medley.Note#switchAccidental()
+ * switchAccidental}.
+ *
+ * @author Salvatore Gentile
+ * @see medley.tone.Tone#getLineOfFifths()
+ */
+public final class Speller {
+
+    /**
+     * Lowest supported key, expressed as a number of flats (C&#x266d; major).
+     */
+    public static final int MIN_KEY = -7;
+
+    /**
+     * Highest supported key, expressed as a number of sharps (C&#x266f;
+     * major).
+     */
+    public static final int MAX_KEY = 7;
+
+    // Cost of each line of fifths step outside the diatonic set of the key.
+    private static final int KEY_WEIGHT = 2;
+
+    // Cost of each line of fifths step beyond the tritone between two
+    // consecutive notes (augmented and diminished intervals).
+    private static final int INTERVAL_WEIGHT = 3;
+
+    // Widest distance on the line of fifths between two consecutive notes
+    // that still forms a major, minor or perfect interval (or a tritone).
+    private static final int MAX_INTERVAL_FIFTHS = 6;
+
+    private Speller() {}
+
+    /**
+     * Respells the specified sequence of notes using the key estimated from
+     * the sequence itself.
+     *
+     * @param notes a specified sequence of notes.
+     * @see #estimateKey(List notes)
+     * @see #spell(List notes, int key)
+     */
+    public static void spell(List<Note> notes) {
+        spell(notes, estimateKey(notes));
+    }
+
+    /**
+     * Respells the specified sequence of notes in the specified key.
+     *
+     * <p>The key is expressed as the number of sharps (positive values) or
+     * flats (negative values) of its major key signature; e.g. {@code 0} is C
+     * major, {@code 2} is D major and {@code -3} is E&#x266d; major.
+     *
+     * @param notes a specified sequence of notes.
+     * @param key a specified key.
+     * @throws IllegalArgumentException
+     *         if {@code key < -7} or {@code key > 7}
+     */
+    public static void spell(List<Note> notes, int key)
+            throws IllegalArgumentException {
+        if (key < MIN_KEY || key > MAX_KEY) {
+            StringBuilder e = new StringBuilder(80);
+
+            e.append("Invalid key! ");
+            e.append("It must be an integer between ");
+            e.append(MIN_KEY);
+            e.append(" and ");
+            e.append(MAX_KEY);
+            e.append(".");
+
+            throw new IllegalArgumentException(e.toString());
+        }
+
+        int size = notes.size();
+
+        if (size == 0) {
+            return;
+        }
+
+        int[] pitchClasses = new int[size];
+        int index = 0;
+
+        for (Note note : notes) {
+            pitchClasses[index++] = note.getMIDINumber() % 12;
+        }
+
+        // choices[i] holds, for each spelling of note i, the spelling of note
+        // i - 1 that leads to the cheapest path: bit 0 for spelling 0, bit 1
+        // for spelling 1.
+        byte[] choices = new byte[size];
+
+        int pitchClass = pitchClasses[0];
+        int cost0 = keyCost(Tone.getLineOfFifths(pitchClass, 0), key);
+        int cost1 = keyCost(Tone.getLineOfFifths(pitchClass, 1), key);
+
+        for (int i = 1; i < size; i++) {
+            int previous = pitchClass;
+            pitchClass = pitchClasses[i];
+
+            int prev0 = Tone.getLineOfFifths(previous, 0);
+            int prev1 = Tone.getLineOfFifths(previous, 1);
+            int next0 = Tone.getLineOfFifths(pitchClass, 0);
+            int next1 = Tone.getLineOfFifths(pitchClass, 1);
+
+            int from00 = cost0 + intervalCost(prev0, next0);
+            int from10 = cost1 + intervalCost(prev1, next0);
+            int from01 = cost0 + intervalCost(prev0, next1);
+            int from11 = cost1 + intervalCost(prev1, next1);
+
+            byte choice = 0;
+
+            if (from10 < from00) {
+                choice |= 1;
+            }
+
+            if (from11 < from01) {
+                choice |= 2;
+            }
+
+            choices[i] = choice;
+            cost0 = Math.min(from00, from10) + keyCost(next0, key);
+            cost1 = Math.min(from01, from11) + keyCost(next1, key);
+        }
+
+        // Walks the cheapest path backwards, respelling the notes on the way.
+        int spelling = (cost1 < cost0 ? 1 : 0);
+        ListIterator<Note> iterator = notes.listIterator(size);
+
+        for (int i = size - 1; i >= 0; i--) {
+            Note note = iterator.previous();
+            int current = Tone.getAccidentalID(pitchClasses[i],
+                                               note.getName(),
+                                               note.getAccidental());
+
+            if (current != spelling
+                    && Tone.getLineOfFifths(pitchClasses[i], current)
+                       != Tone.getLineOfFifths(pitchClasses[i], spelling)) {
+                note.switchAccidental();
+            }
+
+            spelling = (choices[i] >> spelling) & 1;
+        }
+    }
+
+    /**
+     * Returns the key that best fits the specified sequence of notes.
+     *
+     * <p>The key is the one whose diatonic scale contains the largest number
+     * of the notes; ties are broken in favour of the key with the fewest
+     * accidentals.
+     *
+     * @param notes a specified sequence of notes.
+     * @return the number of sharps (positive values) or flats (negative
+     *         values) of the key that best fits the specified sequence.
+     */
+    public static int estimateKey(List<Note> notes) {
+        int[] histogram = new int[12];
+
+        for (Note note : notes) {
+            histogram[note.getMIDINumber() % 12]++;
+        }
+
+        int bestKey = 0;
+        int bestCount = -1;
+
+        for (int distance = 0; distance <= MAX_KEY; distance++) {
+            for (int sign = 1; sign >= -1; sign -= 2) {
+                int key = sign * distance;
+                int count = 0;
+
+                // The diatonic set of a major key spans from the fourth to
+                // the seventh degree on the line of fifths.
+                for (int position = key - 1; position <= key + 5; position++) {
+                    count += histogram[((position * 7) % 12 + 12) % 12];
+                }
+
+                if (count > bestCount) {
+                    bestKey = key;
+                    bestCount = count;
+                }
+
+                if (distance == 0) {
+                    break;
+                }
+            }
+        }
+
+        return bestKey;
+    }
+
+    private static int keyCost(int position, int key) {
+        if (position < key - 1) {
+            return KEY_WEIGHT * (key - 1 - position);
+        }
+
+        if (position > key + 5) {
+            return KEY_WEIGHT * (position - key - 5);
+        }
+
+        return 0;
+    }
+
+    private static int intervalCost(int from, int to) {
+        int distance = Math.abs(to - from);
+
+        if (distance > MAX_INTERVAL_FIFTHS) {
+            return INTERVAL_WEIGHT * (distance - MAX_INTERVAL_FIFTHS);
+        }
+
+        return 0;
+    }
+
+}
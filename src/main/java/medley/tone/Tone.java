@@ -28,6 +28,30 @@ public final class Tone {
         { new Tone(B, Natural, 11), new Tone(C, Flat,    11) }   // 11. B (Cb)
     };
 
+    // Position of each spelling on the line of fifths, where C is 0, G is 1,
+    // F is -1 and so on.
+    private static final int[][] fifths = new int[tones.length][2];
+
+    static {
+        final int[] naturals = { 0, 2, 4, -1, 1, 3, 5 }; // C D E F G A B
+
+        for (int pitchClass = 0; pitchClass < tones.length; pitchClass++) {
+            for (int id = 0; id < 2; id++) {
+                Tone t = tones[pitchClass][id];
+                t.accidentalID = id; // B# and E# are not flats
+                int position = naturals[t.getName().ordinal()];
+
+                if (t.getAccidental() == Sharp) {
+                    position += 7;
+                } else if (t.getAccidental() == Flat) {
+                    position -= 7;
+                }
+
+                fifths[pitchClass][id] = position;
+            }
+        }
+    }
+
     private Name name;
     private Accidental accidental;
     private int pitchClass;
@@ -80,6 +104,8 @@ public final class Tone {
 
     public Tone(Tone tone) {
         this(tone.getName(), tone.getAccidental(), tone.getPitchClass());
+
+        this.accidentalID = tone.accidentalID;
     }
 
     /**
@@ -109,6 +135,17 @@ public final class Tone {
         return pitchClass;
     }
 
+    /**
+     * Returns the position of this {@code Tone} on the line of fifths. C is at
+     * position 0, each perfect fifth up adds one (G is 1, D is 2...) and each
+     * perfect fifth down subtracts one (F is -1, B\u266d is -2...).
+     *
+     * @return the position of this {@code Tone} on the line of fifths.
+     */
+    public int getLineOfFifths() {
+        return fifths[pitchClass][accidentalID];
+    }
+
     /**
      * Switches the {@code Accidental} of this {@code Tone} with an equivalent
      * one.
@@ -166,6 +203,39 @@ public final class Tone {
         return -1; // Unreachable
     }
 
+    /**
+     * Returns the position on the line of fifths of the specified pitch class
+     * spelled with the specified enharmonic spelling.
+     *
+     * @param pitchClass a specified pitch class.
+     * @param accidentalID {@code 0} for the default spelling, {@code 1} for the
+     *        alternative one.
+     * @return the position on the line of fifths of the spelling.
+     */
+    static int getLineOfFifths(int pitchClass, int accidentalID) {
+        return fifths[pitchClass][accidentalID];
+    }
+
+    /**
+     * Returns the enharmonic spelling identifier of the specified pitch class
+     * written with the specified {@code Name} and {@code Accidental}.
+     *
+     * @param pitchClass a specified pitch class.
+     * @param name a specified {@code Name}.
+     * @param accidental a specified {@code Accidental}.
+     * @return {@code 0} for the default spelling, {@code 1} for the
+     *         alternative one.
+     */
+    static int getAccidentalID(int pitchClass, Name name,
+                               Accidental accidental) {
+        if (tones[pitchClass][0].getName() == name
+                && tones[pitchClass][0].getAccidental() == accidental) {
+            return 0;
+        }
+
+        return 1;
+    }
+
     /**
      * Returns a string representation of this {@code Tone}. The string consists
      * of a concatenation of the name and an eventual accidental's symbol.
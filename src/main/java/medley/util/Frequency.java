@@ -76,6 +76,7 @@ public final class Frequency {
      *         of semitones from the specified pitch.
      */
     public static double getFrequency(int semitonesDistance, double pitch) {
+        Metrics.increment(Metrics.Counter.FREQUENCY_CONVERSIONS);
 
         return Math.pow(2, (double) semitonesDistance / 12.0) * pitch;
     }
@@ -96,6 +97,7 @@ public final class Frequency {
      *         frequency.
      */
     public static double getCents(double reference, double frequency) {
+        Metrics.increment(Metrics.Counter.FREQUENCY_CONVERSIONS);
 
         return 1200.0 * lb(frequency / reference);
     }
@@ -149,6 +151,7 @@ public final class Frequency {
      */
     public static int getMIDINumber(double frequency)
             throws IllegalArgumentException {
+        Metrics.increment(Metrics.Counter.FREQUENCY_CONVERSIONS);
         Validator.frequency(frequency, MIDI_MIN_FREQUENCY, MIDI_MAX_FREQUENCY);
 
         return (int) Math.round(69.0 + 12.0 * lb(frequency / A440));
@@ -169,6 +172,7 @@ public final class Frequency {
      */
     public static double getMIDINumberFrequency(int midiNumber)
             throws IllegalArgumentException {
+        Metrics.increment(Metrics.Counter.FREQUENCY_CONVERSIONS);
         Validator.midiNumber(midiNumber);
 
         return A440 * Math.pow(2, (midiNumber - 69.0) / 12.0);
@@ -190,6 +194,7 @@ public final class Frequency {
      */
     public static int getPianoKeyNumber(double frequency)
             throws IllegalArgumentException {
+        Metrics.increment(Metrics.Counter.FREQUENCY_CONVERSIONS);
         Validator.frequency(frequency,
                             PIANO_MIN_FREQUENCY,
                             PIANO_MAX_FREQUENCY);
@@ -214,6 +219,7 @@ public final class Frequency {
      */
     public static double getPianoKeyFrequency(int pianoKey)
             throws IllegalArgumentException {
+        Metrics.increment(Metrics.Counter.FREQUENCY_CONVERSIONS);
         Validator.pianoKey(pianoKey);
 
         return Math.pow(2, ((double) pianoKey - 49.0) / 12.0) * A440;
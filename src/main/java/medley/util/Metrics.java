@@ -0,0 +1,242 @@
+package medley.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code Metrics} class that counts the calls of the hot paths of the library
+ * and times its rendering and export operations.
+ *
+ * <p>Metrics are disabled by default, and are enabled by setting the system
+ * property {@value #PROPERTY} to {@code true}, or by calling
+ * {@link #setEnabled(boolean) setEnabled}. While they are disabled, a hook
+ * only reads a flag. Counts and times are kept in {@code LongAdder}s, so
+ * threads updating the same metric do not contend.
+ *
+ * @author Salvatore Gentile
+ */
+public final class Metrics {
+
+    /**
+     * The system property that enables the metrics.
+     */
+    public static final String PROPERTY = "medley.metrics";
+
+    /**
+     * {@code Counter} enum that represents the counted events.
+     */
+    public enum Counter {
+
+        /**
+         * A note string parsed by {@link StringParser#getNote(String)}.
+         */
+        NOTE_PARSES,
+
+        /**
+         * A note string rejected by {@link StringParser#getNote(String)}.
+         */
+        NOTE_PARSE_FAILURES,
+
+        /**
+         * A value rejected by a {@link Validator} check.
+         */
+        VALIDATION_FAILURES,
+
+        /**
+         * A conversion between frequencies, semitones, cents, MIDI note
+         * numbers and piano keys made by {@link Frequency}.
+         */
+        FREQUENCY_CONVERSIONS
+
+    }
+
+    /**
+     * {@code Timer} enum that represents the timed operations.
+     */
+    public enum Timer {
+
+        /**
+         * The rendering of a block by a {@code medley.audio.Mixer}.
+         */
+        MIXER_RENDER,
+
+        /**
+         * The export of elements by a {@code medley.score.OffHeapScore}.
+         */
+        SCORE_EXPORT
+
+    }
+
+    private static final long STOPPED = Long.MIN_VALUE;
+
+    private static final LongAdder[] COUNTS =
+            new LongAdder[Counter.values().length];
+    private static final LongAdder[] CALLS =
+            new LongAdder[Timer.values().length];
+    private static final LongAdder[] TIMES =
+            new LongAdder[Timer.values().length];
+    private static final LongAccumulator[] MAX_TIMES =
+            new LongAccumulator[Timer.values().length];
+
+    private static volatile boolean enabled = Boolean.getBoolean(PROPERTY);
+
+    static {
+        for (int i = 0; i < COUNTS.length; i++) {
+            COUNTS[i] = new LongAdder();
+        }
+
+        for (int i = 0; i < CALLS.length; i++) {
+            CALLS[i] = new LongAdder();
+            TIMES[i] = new LongAdder();
+            MAX_TIMES[i] = new LongAccumulator(Math::max, 0);
+        }
+    }
+
+    private Metrics() {}
+
+    /**
+     * Returns {@code true} if the metrics are enabled.
+     *
+     * @return {@code true} if the metrics are enabled.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the metrics. The collected values are kept.
+     *
+     * @param value {@code true} to enable the metrics.
+     */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Counts an occurrence of the specified event, if the metrics are
+     * enabled.
+     *
+     * @param counter a specified event.
+     */
+    public static void increment(Counter counter) {
+        if (enabled) {
+            COUNTS[counter.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return the start time to pass to {@link #stop(Timer, long) stop}.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : STOPPED;
+    }
+
+    /**
+     * Records the time elapsed since the specified start time for the
+     * specified operation. Nothing is recorded if the metrics were disabled
+     * when the operation started.
+     *
+     * @param timer a specified operation.
+     * @param start the value returned by {@link #start() start}.
+     */
+    public static void stop(Timer timer, long start) {
+        if (start != STOPPED) {
+            long elapsed = System.nanoTime() - start;
+            int i = timer.ordinal();
+
+            CALLS[i].increment();
+            TIMES[i].add(elapsed);
+            MAX_TIMES[i].accumulate(elapsed);
+        }
+    }
+
+    /**
+     * Returns the number of occurrences of the specified event.
+     *
+     * @param counter a specified event.
+     * @return the number of occurrences of the event.
+     */
+    public static long getCount(Counter counter) {
+        return COUNTS[counter.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of timed executions of the specified operation.
+     *
+     * @param timer a specified operation.
+     * @return the number of timed executions of the operation.
+     */
+    public static long getCalls(Timer timer) {
+        return CALLS[timer.ordinal()].sum();
+    }
+
+    /**
+     * Returns the total time spent in the specified operation.
+     *
+     * @param timer a specified operation.
+     * @return the total time spent in the operation, in nanoseconds.
+     */
+    public static long getTime(Timer timer) {
+        return TIMES[timer.ordinal()].sum();
+    }
+
+    /**
+     * Returns the longest time spent in an execution of the specified
+     * operation.
+     *
+     * @param timer a specified operation.
+     * @return the longest execution of the operation, in nanoseconds.
+     */
+    public static long getMaxTime(Timer timer) {
+        return MAX_TIMES[timer.ordinal()].get();
+    }
+
+    /**
+     * Clears all the collected values.
+     */
+    public static void reset() {
+        for (LongAdder count : COUNTS) {
+            count.reset();
+        }
+
+        for (int i = 0; i < CALLS.length; i++) {
+            CALLS[i].reset();
+            TIMES[i].reset();
+            MAX_TIMES[i].reset();
+        }
+    }
+
+    /**
+     * Returns a report of the collected values, one metric per line.
+     *
+     * @return a report of the collected values.
+     */
+    public static String report() {
+        StringBuilder r = new StringBuilder(80 * (COUNTS.length
+                                                  + CALLS.length));
+
+        for (Counter counter : Counter.values()) {
+            r.append(counter).append(": ").append(getCount(counter));
+            r.append('\n');
+        }
+
+        for (Timer timer : Timer.values()) {
+            long calls = getCalls(timer);
+            double total = getTime(timer) / 1e6;
+
+            r.append(timer).append(": ").append(calls).append(" calls, ");
+            r.append(String.format(Locale.ENGLISH, "%.3f ms total, ", total));
+            r.append(String.format(Locale.ENGLISH, "%.3f ms mean, ",
+                                   calls > 0 ? total / calls : 0));
+            r.append(String.format(Locale.ENGLISH, "%.3f ms max",
+                                   getMaxTime(timer) / 1e6));
+            r.append('\n');
+        }
+
+        return r.toString();
+    }
+
+}
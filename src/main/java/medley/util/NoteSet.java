@@ -0,0 +1,441 @@
+package medley.util;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import medley.Note;
+
+/**
+ * {@code NoteSet} class that represents a set of pitches, identified by their
+ * MIDI note numbers, as a 128-bit bitset stored in two {@code long}s.
+ *
+ * <p>Membership tests, insertions and removals are a single bit operation,
+ * and set operations such as union and intersection take two operations,
+ * without hashing or boxing. Notes are added and looked up by MIDI note
+ * number, so enharmonic notes (e.g. C# and Db) are the same element.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.util.PitchIntMap
+ * @see medley.util.PitchObjectMap
+ */
+public final class NoteSet {
+
+    private long low;
+    private long high;
+
+    /**
+     * Initializes a newly created empty {@code NoteSet} object.
+     */
+    public NoteSet() {
+    }
+
+    /**
+     * Initializes a newly created {@code NoteSet} object with the same
+     * pitches of the specified set.
+     *
+     * @param set a specified {@code NoteSet}.
+     */
+    public NoteSet(NoteSet set) {
+        this.low = set.low;
+        this.high = set.high;
+    }
+
+    /**
+     * Returns a new {@code NoteSet} that contains the specified MIDI note
+     * numbers.
+     *
+     * @param midiNumbers the specified MIDI note numbers.
+     * @return a new {@code NoteSet} that contains the specified MIDI note
+     *         numbers.
+     * @throws IllegalArgumentException
+     *         if a MIDI note number is not valid.
+     */
+    public static NoteSet of(int... midiNumbers)
+            throws IllegalArgumentException {
+        NoteSet set = new NoteSet();
+
+        for (int midiNumber : midiNumbers) {
+            set.add(midiNumber);
+        }
+
+        return set;
+    }
+
+    /**
+     * Adds the specified MIDI note number to this {@code NoteSet}.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return {@code true} if this {@code NoteSet} did not already contain
+     *         the specified MIDI note number; {@code false} otherwise.
+     * @throws IllegalArgumentException
+     *         if {@code midiNumber < 0} or {@code midiNumber > 127}.
+     */
+    public boolean add(int midiNumber) throws IllegalArgumentException {
+        Validator.midiNumber(midiNumber);
+
+        boolean added = !contains(midiNumber);
+
+        if (midiNumber < 64) {
+            low |= 1L << midiNumber;
+        } else {
+            high |= 1L << midiNumber;
+        }
+
+        return added;
+    }
+
+    /**
+     * Adds the MIDI note number of the specified note to this
+     * {@code NoteSet}.
+     *
+     * @param note a specified {@code Note}.
+     * @return {@code true} if this {@code NoteSet} did not already contain
+     *         the MIDI note number of the note; {@code false} otherwise.
+     */
+    public boolean add(Note note) {
+        return add(note.getMIDINumber());
+    }
+
+    /**
+     * Removes the specified MIDI note number from this {@code NoteSet}.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return {@code true} if this {@code NoteSet} contained the specified
+     *         MIDI note number; {@code false} otherwise.
+     */
+    public boolean remove(int midiNumber) {
+        if (!contains(midiNumber)) {
+            return false;
+        }
+
+        if (midiNumber < 64) {
+            low &= ~(1L << midiNumber);
+        } else {
+            high &= ~(1L << midiNumber);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the MIDI note number of the specified note from this
+     * {@code NoteSet}.
+     *
+     * @param note a specified {@code Note}.
+     * @return {@code true} if this {@code NoteSet} contained the MIDI note
+     *         number of the note; {@code false} otherwise.
+     */
+    public boolean remove(Note note) {
+        return remove(note.getMIDINumber());
+    }
+
+    /**
+     * Returns {@code true} if this {@code NoteSet} contains the specified
+     * MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return {@code true} if this {@code NoteSet} contains the specified
+     *         MIDI note number; {@code false} otherwise.
+     */
+    public boolean contains(int midiNumber) {
+        if (midiNumber < 0 || midiNumber > 127) {
+            return false;
+        }
+
+        long word = (midiNumber < 64 ? low : high);
+
+        return (word & (1L << midiNumber)) != 0;
+    }
+
+    /**
+     * Returns {@code true} if this {@code NoteSet} contains the MIDI note
+     * number of the specified note.
+     *
+     * @param note a specified {@code Note}.
+     * @return {@code true} if this {@code NoteSet} contains the MIDI note
+     *         number of the note; {@code false} otherwise.
+     */
+    public boolean contains(Note note) {
+        return contains(note.getMIDINumber());
+    }
+
+    /**
+     * Returns the number of MIDI note numbers of this {@code NoteSet}.
+     *
+     * @return the number of MIDI note numbers of this {@code NoteSet}.
+     */
+    public int size() {
+        return Long.bitCount(low) + Long.bitCount(high);
+    }
+
+    /**
+     * Returns {@code true} if this {@code NoteSet} is empty.
+     *
+     * @return {@code true} if this {@code NoteSet} is empty; {@code false}
+     *         otherwise.
+     */
+    public boolean isEmpty() {
+        return (low | high) == 0;
+    }
+
+    /**
+     * Removes all the MIDI note numbers from this {@code NoteSet}.
+     */
+    public void clear() {
+        low = 0;
+        high = 0;
+    }
+
+    /**
+     * Adds all the MIDI note numbers of the specified set to this
+     * {@code NoteSet}.
+     *
+     * @param set a specified {@code NoteSet}.
+     */
+    public void addAll(NoteSet set) {
+        low |= set.low;
+        high |= set.high;
+    }
+
+    /**
+     * Keeps only the MIDI note numbers of this {@code NoteSet} that are also
+     * contained in the specified set.
+     *
+     * @param set a specified {@code NoteSet}.
+     */
+    public void retainAll(NoteSet set) {
+        low &= set.low;
+        high &= set.high;
+    }
+
+    /**
+     * Removes all the MIDI note numbers of the specified set from this
+     * {@code NoteSet}.
+     *
+     * @param set a specified {@code NoteSet}.
+     */
+    public void removeAll(NoteSet set) {
+        low &= ~set.low;
+        high &= ~set.high;
+    }
+
+    /**
+     * Returns a new {@code NoteSet} that contains the MIDI note numbers of
+     * both the specified sets.
+     *
+     * @param a a specified {@code NoteSet}.
+     * @param b another specified {@code NoteSet}.
+     * @return the union of the specified sets.
+     */
+    public static NoteSet union(NoteSet a, NoteSet b) {
+        NoteSet set = new NoteSet(a);
+        set.addAll(b);
+
+        return set;
+    }
+
+    /**
+     * Returns a new {@code NoteSet} that contains the MIDI note numbers
+     * contained in each of the specified sets.
+     *
+     * @param a a specified {@code NoteSet}.
+     * @param b another specified {@code NoteSet}.
+     * @return the intersection of the specified sets.
+     */
+    public static NoteSet intersection(NoteSet a, NoteSet b) {
+        NoteSet set = new NoteSet(a);
+        set.retainAll(b);
+
+        return set;
+    }
+
+    /**
+     * Returns the lowest MIDI note number of this {@code NoteSet} that is
+     * greater than or equal to the specified one.
+     *
+     * <p>To iterate over the MIDI note numbers of a set:
+     *
+     * <pre>
+     * for (int m = set.next(0); m >= 0; m = set.next(m + 1)) {
+     *     ...
+     * }
+     * </pre>
+     *
+     * @param from a specified MIDI note number.
+     * @return the lowest MIDI note number not lower than the specified one,
+     *         or {@code -1} if there is none.
+     */
+    public int next(int from) {
+        int start = Math.max(0, from);
+
+        if (start < 64) {
+            long word = low & (-1L << start);
+
+            if (word != 0) {
+                return Long.numberOfTrailingZeros(word);
+            }
+
+            start = 64;
+        }
+
+        if (start < 128) {
+            long word = high & (-1L << start);
+
+            if (word != 0) {
+                return 64 + Long.numberOfTrailingZeros(word);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the lowest MIDI note number of this {@code NoteSet}.
+     *
+     * @return the lowest MIDI note number, or {@code -1} if this
+     *         {@code NoteSet} is empty.
+     */
+    public int first() {
+        return next(0);
+    }
+
+    /**
+     * Returns the highest MIDI note number of this {@code NoteSet}.
+     *
+     * @return the highest MIDI note number, or {@code -1} if this
+     *         {@code NoteSet} is empty.
+     */
+    public int last() {
+        if (high != 0) {
+            return 127 - Long.numberOfLeadingZeros(high);
+        }
+
+        return (low != 0 ? 63 - Long.numberOfLeadingZeros(low) : -1);
+    }
+
+    /**
+     * Performs the specified action for each MIDI note number of this
+     * {@code NoteSet}, in increasing order.
+     *
+     * @param action a specified action.
+     */
+    public void forEach(IntConsumer action) {
+        for (long word = low; word != 0; word &= word - 1) {
+            action.accept(Long.numberOfTrailingZeros(word));
+        }
+
+        for (long word = high; word != 0; word &= word - 1) {
+            action.accept(64 + Long.numberOfTrailingZeros(word));
+        }
+    }
+
+    /**
+     * Returns the MIDI note numbers of this {@code NoteSet}, in increasing
+     * order.
+     *
+     * @return the MIDI note numbers of this {@code NoteSet}.
+     */
+    public int[] toArray() {
+        int[] result = new int[size()];
+        int i = 0;
+
+        for (int m = next(0); m >= 0; m = next(m + 1)) {
+            result[i++] = m;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a stream of the MIDI note numbers of this {@code NoteSet}, in
+     * increasing order.
+     *
+     * @return a stream of the MIDI note numbers of this {@code NoteSet}.
+     */
+    public IntStream stream() {
+        return IntStream.of(toArray());
+    }
+
+    /**
+     * Returns the pitch classes of the MIDI note numbers of this
+     * {@code NoteSet}, as a 12-bit mask: bit {@code i} is set if the set
+     * contains a note of pitch class {@code i}.
+     *
+     * @return the pitch classes of this {@code NoteSet}.
+     */
+    public int getPitchClasses() {
+        int mask = 0;
+
+        for (int m = next(0); m >= 0; m = next(m + 1)) {
+            mask |= 1 << (m % 12);
+        }
+
+        return mask;
+    }
+
+    /**
+     * Compares this {@code NoteSet} with the specified object.
+     *
+     * @param o a specified object.
+     * @return {@code true} if the specified object is a {@code NoteSet} with
+     *         the same MIDI note numbers; {@code false} otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+
+        if (!(o instanceof NoteSet)) {
+            return false;
+        }
+
+        NoteSet s = (NoteSet) o;
+
+        return s.low == this.low && s.high == this.high;
+    }
+
+    /**
+     * Returns the hash code value for this {@code NoteSet}.
+     *
+     * @return the hash code value for this {@code NoteSet}.
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 911;
+
+        int hash = 1;
+        hash = prime * hash + (int) (low ^ (low >>> 32));
+        hash = prime * hash + (int) (high ^ (high >>> 32));
+
+        return hash;
+    }
+
+    /**
+     * Returns a string representation of this {@code NoteSet}, listing its
+     * MIDI note numbers.
+     *
+     * @return a string representation of this {@code NoteSet}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append('[');
+
+        for (int m = next(0); m >= 0; m = next(m + 1)) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+
+            sb.append(m);
+        }
+
+        sb.append(']');
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,184 @@
+package medley.util;
+
+import java.util.Arrays;
+
+import medley.Note;
+
+/**
+ * {@code PitchIntMap} class that maps pitches, identified by their MIDI note
+ * numbers, to {@code int} values.
+ *
+ * <p>Values are stored in an array indexed by MIDI note number, and the keys
+ * in a {@link NoteSet}, so every operation is an array access, without
+ * hashing or boxing. It is suited e.g. to pitch histograms.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @author Salvatore Gentile
+ * @see medley.util.NoteSet
+ */
+public final class PitchIntMap {
+
+    private final int[] values = new int[128];
+    private final NoteSet keys = new NoteSet();
+    private final int missingValue;
+
+    /**
+     * Initializes a newly created empty {@code PitchIntMap} object, that
+     * returns {@code 0} for missing keys.
+     */
+    public PitchIntMap() {
+        this(0);
+    }
+
+    /**
+     * Initializes a newly created empty {@code PitchIntMap} object, that
+     * returns the specified value for missing keys.
+     *
+     * @param missingValue the value returned for missing keys.
+     */
+    public PitchIntMap(int missingValue) {
+        this.missingValue = missingValue;
+
+        Arrays.fill(values, missingValue);
+    }
+
+    /**
+     * Returns the value of the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return the value of the specified MIDI note number, or the missing
+     *         value if there is none.
+     */
+    public int get(int midiNumber) {
+        return (keys.contains(midiNumber) ? values[midiNumber] : missingValue);
+    }
+
+    /**
+     * Returns the value of the MIDI note number of the specified note.
+     *
+     * @param note a specified {@code Note}.
+     * @return the value of the MIDI note number of the note, or the missing
+     *         value if there is none.
+     */
+    public int get(Note note) {
+        return get(note.getMIDINumber());
+    }
+
+    /**
+     * Sets the value of the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @param value a specified value.
+     * @return the previous value of the MIDI note number, or the missing
+     *         value if there was none.
+     * @throws IllegalArgumentException
+     *         if {@code midiNumber < 0} or {@code midiNumber > 127}.
+     */
+    public int put(int midiNumber, int value) throws IllegalArgumentException {
+        int previous = get(midiNumber);
+
+        keys.add(midiNumber);
+        values[midiNumber] = value;
+
+        return previous;
+    }
+
+    /**
+     * Adds the specified amount to the value of the specified MIDI note
+     * number. A missing key is added with the missing value plus the amount.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @param amount a specified amount.
+     * @return the new value of the MIDI note number.
+     * @throws IllegalArgumentException
+     *         if {@code midiNumber < 0} or {@code midiNumber > 127}.
+     */
+    public int increment(int midiNumber, int amount)
+            throws IllegalArgumentException {
+        keys.add(midiNumber);
+        values[midiNumber] += amount;
+
+        return values[midiNumber];
+    }
+
+    /**
+     * Removes the specified MIDI note number from this {@code PitchIntMap}.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return the previous value of the MIDI note number, or the missing
+     *         value if there was none.
+     */
+    public int remove(int midiNumber) {
+        int previous = get(midiNumber);
+
+        if (keys.remove(midiNumber)) {
+            values[midiNumber] = missingValue;
+        }
+
+        return previous;
+    }
+
+    /**
+     * Returns {@code true} if this {@code PitchIntMap} contains a value for
+     * the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return {@code true} if this {@code PitchIntMap} contains a value for
+     *         the specified MIDI note number; {@code false} otherwise.
+     */
+    public boolean containsKey(int midiNumber) {
+        return keys.contains(midiNumber);
+    }
+
+    /**
+     * Returns the number of keys of this {@code PitchIntMap}.
+     *
+     * @return the number of keys of this {@code PitchIntMap}.
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Returns a copy of the keys of this {@code PitchIntMap}.
+     *
+     * @return a copy of the keys of this {@code PitchIntMap}.
+     */
+    public NoteSet keySet() {
+        return new NoteSet(keys);
+    }
+
+    /**
+     * Removes all the keys from this {@code PitchIntMap}.
+     */
+    public void clear() {
+        keys.clear();
+        Arrays.fill(values, missingValue);
+    }
+
+    /**
+     * Returns a string representation of this {@code PitchIntMap}.
+     *
+     * @return a string representation of this {@code PitchIntMap}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append('{');
+
+        for (int m = keys.next(0); m >= 0; m = keys.next(m + 1)) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+
+            sb.append(m).append('=').append(values[m]);
+        }
+
+        sb.append('}');
+
+        return sb.toString();
+    }
+
+}
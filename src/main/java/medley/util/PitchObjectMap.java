@@ -0,0 +1,170 @@
+package medley.util;
+
+import java.util.Arrays;
+
+import medley.Note;
+
+/**
+ * {@code PitchObjectMap} class that maps pitches, identified by their MIDI
+ * note numbers, to objects.
+ *
+ * <p>Values are stored in an array indexed by MIDI note number, and the keys
+ * in a {@link NoteSet}, so every operation is an array access, without
+ * hashing or boxing. Values cannot be {@code null}.
+ *
+ * <p>This class is not synchronized.
+ *
+ * @param <V> the type of the values.
+ * @author Salvatore Gentile
+ * @see medley.util.NoteSet
+ */
+public final class PitchObjectMap<V> {
+
+    private final Object[] values = new Object[128];
+    private final NoteSet keys = new NoteSet();
+
+    /**
+     * Initializes a newly created empty {@code PitchObjectMap} object.
+     */
+    public PitchObjectMap() {
+    }
+
+    /**
+     * Returns the value of the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return the value of the specified MIDI note number, or {@code null}
+     *         if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int midiNumber) {
+        return (keys.contains(midiNumber) ? (V) values[midiNumber] : null);
+    }
+
+    /**
+     * Returns the value of the MIDI note number of the specified note.
+     *
+     * @param note a specified {@code Note}.
+     * @return the value of the MIDI note number of the note, or {@code null}
+     *         if there is none.
+     */
+    public V get(Note note) {
+        return get(note.getMIDINumber());
+    }
+
+    /**
+     * Sets the value of the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @param value a specified value.
+     * @return the previous value of the MIDI note number, or {@code null} if
+     *         there was none.
+     * @throws IllegalArgumentException
+     *         if {@code midiNumber < 0} or {@code midiNumber > 127}.
+     */
+    public V put(int midiNumber, V value) throws IllegalArgumentException {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        V previous = get(midiNumber);
+
+        keys.add(midiNumber);
+        values[midiNumber] = value;
+
+        return previous;
+    }
+
+    /**
+     * Sets the value of the MIDI note number of the specified note.
+     *
+     * @param note a specified {@code Note}.
+     * @param value a specified value.
+     * @return the previous value of the MIDI note number of the note, or
+     *         {@code null} if there was none.
+     */
+    public V put(Note note, V value) {
+        return put(note.getMIDINumber(), value);
+    }
+
+    /**
+     * Removes the specified MIDI note number from this
+     * {@code PitchObjectMap}.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return the previous value of the MIDI note number, or {@code null} if
+     *         there was none.
+     */
+    public V remove(int midiNumber) {
+        V previous = get(midiNumber);
+
+        if (keys.remove(midiNumber)) {
+            values[midiNumber] = null;
+        }
+
+        return previous;
+    }
+
+    /**
+     * Returns {@code true} if this {@code PitchObjectMap} contains a value
+     * for the specified MIDI note number.
+     *
+     * @param midiNumber a specified MIDI note number.
+     * @return {@code true} if this {@code PitchObjectMap} contains a value for
+     *         the specified MIDI note number; {@code false} otherwise.
+     */
+    public boolean containsKey(int midiNumber) {
+        return keys.contains(midiNumber);
+    }
+
+    /**
+     * Returns the number of keys of this {@code PitchObjectMap}.
+     *
+     * @return the number of keys of this {@code PitchObjectMap}.
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Returns a copy of the keys of this {@code PitchObjectMap}.
+     *
+     * @return a copy of the keys of this {@code PitchObjectMap}.
+     */
+    public NoteSet keySet() {
+        return new NoteSet(keys);
+    }
+
+    /**
+     * Removes all the keys from this {@code PitchObjectMap}.
+     */
+    public void clear() {
+        keys.clear();
+        Arrays.fill(values, null);
+    }
+
+    /**
+     * Returns a string representation of this {@code PitchObjectMap}.
+     *
+     * @return a string representation of this {@code PitchObjectMap}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append('{');
+
+        for (int m = keys.next(0); m >= 0; m = keys.next(m + 1)) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+
+            sb.append(m).append('=').append(values[m]);
+        }
+
+        sb.append('}');
+
+        return sb.toString();
+    }
+
+}
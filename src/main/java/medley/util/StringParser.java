@@ -109,6 +109,22 @@ public final class StringParser {
      *         {@code [A-G][b#]*(-)?[0-9]*}.
      */
     public static Note getNote(String note) {
+        Note result;
+
+        try {
+            result = parseNote(note);
+        } catch (IllegalArgumentException e) {
+            Metrics.increment(Metrics.Counter.NOTE_PARSE_FAILURES);
+
+            throw e;
+        }
+
+        Metrics.increment(Metrics.Counter.NOTE_PARSES);
+
+        return result;
+    }
+
+    private static Note parseNote(String note) {
         if (!(note.matches(NOTE_PATTERN))) {
             throw new IllegalArgumentException("Invalid note!");
         }
@@ -42,6 +42,8 @@ public final class Validator {
             e.append(String.format(Locale.ENGLISH, "%1.2f", max));
             e.append(".");
 
+            Metrics.increment(Metrics.Counter.VALIDATION_FAILURES);
+
             throw new IllegalArgumentException(e.toString());
         }
     }
@@ -66,6 +68,8 @@ public final class Validator {
             e.append(MIDI_MAX_NUMBER);
             e.append(".");
 
+            Metrics.increment(Metrics.Counter.VALIDATION_FAILURES);
+
             throw new IllegalArgumentException(e.toString());
         }
     }
@@ -89,6 +93,8 @@ public final class Validator {
             e.append(PIANO_MAX_KEY);
             e.append(".");
 
+            Metrics.increment(Metrics.Counter.VALIDATION_FAILURES);
+
             throw new IllegalArgumentException(e.toString());
         }
     }
@@ -115,6 +121,8 @@ public final class Validator {
             e.append(midiNumber); e.append(" and +");
             e.append(127 - midiNumber); e.append(".");
 
+            Metrics.increment(Metrics.Counter.VALIDATION_FAILURES);
+
             throw new IllegalArgumentException(e.toString());
         }
     }
@@ -136,6 +144,8 @@ public final class Validator {
             e.append(VOLUME_MAX_VALUE);
             e.append(".");
 
+            Metrics.increment(Metrics.Counter.VALIDATION_FAILURES);
+
             throw new IllegalArgumentException(e.toString());
         }
     }
@@ -157,6 +167,8 @@ public final class Validator {
             e.append(DOTS_MAX);
             e.append(".");
 
+            Metrics.increment(Metrics.Counter.VALIDATION_FAILURES);
+
             throw new IllegalArgumentException(e.toString());
         }
     }
@@ -182,6 +194,8 @@ public final class Validator {
             e.append(max);
             e.append(".");
 
+            Metrics.increment(Metrics.Counter.VALIDATION_FAILURES);
+
             throw new IllegalArgumentException(e.toString());
         }
     }